@@ -21,9 +21,11 @@ import com.google.common.base.Predicate;
 import java.net.URI;
 import java.util.Map;
 import javax.annotation.concurrent.Immutable;
+import org.apache.avro.Schema;
 import org.kitesdk.data.Dataset;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetReader;
+import org.kitesdk.data.IncompatibleSchemaException;
 import org.kitesdk.data.PartitionView;
 import org.kitesdk.data.RefinableView;
 import org.kitesdk.data.URIBuilder;
@@ -86,6 +88,24 @@ public abstract class AbstractRefinableView<E> implements RefinableView<E> {
     this.entityTest = constraints.toEntityPredicate(accessor);
   }
 
+  @SuppressWarnings("unchecked")
+  protected AbstractRefinableView(AbstractRefinableView<?> view, Schema schema,
+                                  Class<E> type) {
+    Schema datasetSchema = view.dataset.getDescriptor().getSchema();
+    if (!SchemaValidationUtil.canRead(datasetSchema, schema)) {
+      throw new IncompatibleSchemaException(String.format(
+          "The projection schema %s is not compatible with the dataset's" +
+          " schema %s", schema, datasetSchema));
+    }
+    // the dataset is only used for its metadata, which is not typed
+    this.dataset = (Dataset<E>) view.dataset;
+    this.comparator = view.comparator;
+    this.constraints = view.constraints;
+    this.keys = view.keys;
+    this.accessor = DataModelUtil.accessor(type, schema);
+    this.entityTest = constraints.toEntityPredicate(accessor);
+  }
+
   public Constraints getConstraints() {
     return constraints;
   }
@@ -178,7 +198,9 @@ public abstract class AbstractRefinableView<E> implements RefinableView<E> {
 
     AbstractRefinableView that = (AbstractRefinableView) o;
     return (Objects.equal(this.dataset, that.dataset) &&
-        Objects.equal(this.constraints, that.constraints));
+        Objects.equal(this.constraints, that.constraints) &&
+        Objects.equal(this.accessor.getEntitySchema(),
+            that.accessor.getEntitySchema()));
   }
 
   @Override
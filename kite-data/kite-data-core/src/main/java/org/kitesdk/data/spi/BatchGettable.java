@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi;
+
+import java.util.Collection;
+import java.util.List;
+import org.kitesdk.data.Key;
+
+/**
+ * Implemented by {@link org.kitesdk.data.RandomAccessDataset} implementations
+ * that can fetch many entities in a single batch, which is more efficient
+ * than calling {@code get(Key)} for each key.
+ *
+ * @param <E> The type of entities stored in the dataset
+ */
+public interface BatchGettable<E> {
+  /**
+   * Return the entities stored in the dataset at the rows specified with each
+   * {@link Key} in {@code keys}.
+   *
+   * @param keys
+   *          The keys of the entities to get
+   * @return A List of entities of type E in the same order as the keys, with
+   *         null for each key that is not found
+   */
+  public List<E> getAll(Collection<Key> keys);
+}
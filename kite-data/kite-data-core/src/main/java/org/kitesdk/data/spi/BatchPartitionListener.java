@@ -0,0 +1,31 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.spi;
+
+import java.util.List;
+
+/**
+ * A {@link PartitionListener} that can be notified of many partitions at once,
+ * so that it can register them with fewer calls to its metadata store.
+ * <p>
+ * Datasets use these methods when an operation, like a merge or a replace,
+ * adds or removes many partitions.
+ */
+public interface BatchPartitionListener extends PartitionListener {
+  void partitionsAdded(String namespace, String name, List<String> partitions);
+
+  void partitionsDeleted(String namespace, String name, List<String> partitions);
+}
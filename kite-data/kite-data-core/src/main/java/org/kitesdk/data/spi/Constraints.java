@@ -39,6 +39,7 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import org.apache.avro.Schema;
 import org.kitesdk.data.PartitionStrategy;
+import org.kitesdk.data.ValidationException;
 import org.kitesdk.data.impl.Accessor;
 import org.kitesdk.data.spi.partition.CalendarFieldPartitioner;
 import org.kitesdk.data.spi.partition.ProvidedFieldPartitioner;
@@ -136,6 +137,21 @@ public class Constraints {
     return toEntityPredicate(accessor);
   }
 
+  /**
+   * Get the {@link Predicate} for each field or partition name that is not
+   * satisfied by every entity that matches the given {@link StorageKey}.
+   *
+   * @param key a StorageKey, or null if entities are not partitioned
+   * @return a Map of field or partition names to the Predicates that must be
+   *         tested for entities stored under {@code key}
+   */
+  public Map<String, Predicate> toPredicateMap(@Nullable StorageKey key) {
+    if (key != null) {
+      return minimizeFor(key);
+    }
+    return constraints; // Immutable, okay to return without copying
+  }
+
   @VisibleForTesting
   @SuppressWarnings("unchecked")
   Map<String, Predicate> minimizeFor(StorageKey key) {
@@ -575,6 +591,9 @@ public class Constraints {
       List<Schema.Field> fields = schema.getFields();
       this.accessor = accessor;
       Map<Schema.Field, Predicate> predicateMap = Maps.newHashMap();
+      // entities may use a projection of the dataset schema, so resolve field
+      // positions using the schema that entities are read with
+      Schema entitySchema = accessor.getEntitySchema();
 
       // in the case of identical source and partition names, the predicate
       // will be applied for both source and partition values.
@@ -582,7 +601,7 @@ public class Constraints {
       for (Schema.Field field : fields) {
         Predicate sourcePredicate = predicates.get(field.name());
         if (sourcePredicate != null) {
-          predicateMap.put(field, sourcePredicate);
+          predicateMap.put(entityField(entitySchema, field), sourcePredicate);
         }
       }
 
@@ -597,7 +616,8 @@ public class Constraints {
           if (partitionPredicate != null) {
             Predicate transformPredicate = new TransformPredicate(
                 fp, partitionPredicate);
-            Schema.Field field = schema.getField(fp.getSourceName());
+            Schema.Field field = entityField(
+                entitySchema, schema.getField(fp.getSourceName()));
             Predicate sourcePredicate = predicateMap.get(field);
             if (sourcePredicate != null) {
               // combine the source and the transform-wrapped predicates
@@ -613,6 +633,18 @@ public class Constraints {
       this.predicatesByField = ImmutableList.copyOf(predicateMap.entrySet());
     }
 
+    private static Schema.Field entityField(Schema entitySchema,
+                                            Schema.Field field) {
+      if (field == null || entitySchema.getType() != Schema.Type.RECORD) {
+        return field;
+      }
+      Schema.Field entityField = entitySchema.getField(field.name());
+      ValidationException.check(entityField != null,
+          "Cannot test field %s: not present in entity schema %s",
+          field.name(), entitySchema);
+      return entityField;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public boolean apply(@Nullable E entity) {
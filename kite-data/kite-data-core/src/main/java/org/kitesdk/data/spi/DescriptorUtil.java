@@ -17,9 +17,13 @@
 package org.kitesdk.data.spi;
 
 import org.kitesdk.data.DatasetDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class DescriptorUtil {
 
+  private static final Logger LOG = LoggerFactory.getLogger(DescriptorUtil.class);
+
   /**
    * Returns whether the value of the descriptor property is {@code true}.
    *
@@ -49,4 +53,48 @@ public class DescriptorUtil {
     }
     return false;
   }
+
+  /**
+   * Returns the value of the descriptor property as a long.
+   *
+   * @param property a String property name
+   * @param descriptor a {@link DatasetDescriptor}
+   * @param defaultValue the value to return if the property is not set
+   * @return the long value of the property if set and a valid long,
+   *         {@code defaultValue} otherwise.
+   */
+  public static long getLong(String property, DatasetDescriptor descriptor,
+                             long defaultValue) {
+    if (descriptor.hasProperty(property)) {
+      try {
+        return Long.parseLong(descriptor.getProperty(property));
+      } catch (NumberFormatException e) {
+        LOG.warn("Not a long: " + property + "=" +
+            descriptor.getProperty(property));
+      }
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Returns the value of the descriptor property as an int.
+   *
+   * @param property a String property name
+   * @param descriptor a {@link DatasetDescriptor}
+   * @param defaultValue the value to return if the property is not set
+   * @return the int value of the property if set and a valid int,
+   *         {@code defaultValue} otherwise.
+   */
+  public static int getInt(String property, DatasetDescriptor descriptor,
+                           int defaultValue) {
+    if (descriptor.hasProperty(property)) {
+      try {
+        return Integer.parseInt(descriptor.getProperty(property));
+      } catch (NumberFormatException e) {
+        LOG.warn("Not an integer: " + property + "=" +
+            descriptor.getProperty(property));
+      }
+    }
+    return defaultValue;
+  }
 }
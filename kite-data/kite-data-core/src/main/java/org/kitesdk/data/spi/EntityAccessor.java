@@ -22,12 +22,14 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.kitesdk.data.PartitionStrategy;
 import org.kitesdk.data.impl.Accessor;
+import org.kitesdk.data.spi.partition.CalendarFieldPartitioner;
 import org.kitesdk.data.spi.partition.ProvidedFieldPartitioner;
 
 @Immutable
@@ -36,7 +38,11 @@ public class EntityAccessor<E> {
   private final Schema schema;
   private final Class<E> type;
   private final GenericData model;
-  private final Map<String, List<Schema.Field>> cache = Maps.newHashMap();
+  // accessors are shared by concurrent readers and writers
+  private final Map<String, List<Schema.Field>> cache = Maps.newConcurrentMap();
+  // writers use one strategy, so only the most recent extractor is kept
+  private final AtomicReference<KeyExtractor> lastExtractor =
+      new AtomicReference<KeyExtractor>();
 
   EntityAccessor(Class<E> type, Schema schema) {
     this.type = DataModelUtil.resolveType(type, schema);
@@ -54,37 +60,34 @@ public class EntityAccessor<E> {
 
   public Object get(E object, String name) {
     List<Schema.Field> fields = cache.get(name);
+    if (fields == null) {
+      fields = resolve(name);
+      cache.put(name, fields);
+    }
+    return get(object, fields);
+  }
 
-    Object value;
-    if (fields != null) {
-      value = get(object, fields);
-
-    } else {
-      value = object;
-      fields = Lists.newArrayList();
-      Schema nested = schema;
-      for (String level : SchemaUtil.NAME_SPLITTER.split(name)) {
-        // assume that the nested schemas are Records or nullable Records
-        // this is checked by SchemaUtil.fieldSchema(Schema, String)
-        if (nested.getType() == Schema.Type.UNION) {
-          // nullable Records are not allowed in partition fields, but the read
-          // schema may contain nullable records when using reflection.
-          List<Schema> types = nested.getTypes();
-          if (types.get(0).getType() == Schema.Type.NULL) {
-            nested = types.get(1);
-          } else {
-            nested = types.get(0);
-          }
+  private List<Schema.Field> resolve(String name) {
+    List<Schema.Field> fields = Lists.newArrayList();
+    Schema nested = schema;
+    for (String level : SchemaUtil.NAME_SPLITTER.split(name)) {
+      // assume that the nested schemas are Records or nullable Records
+      // this is checked by SchemaUtil.fieldSchema(Schema, String)
+      if (nested.getType() == Schema.Type.UNION) {
+        // nullable Records are not allowed in partition fields, but the read
+        // schema may contain nullable records when using reflection.
+        List<Schema> types = nested.getTypes();
+        if (types.get(0).getType() == Schema.Type.NULL) {
+          nested = types.get(1);
+        } else {
+          nested = types.get(0);
         }
-        Schema.Field field = nested.getField(level);
-        fields.add(field);
-        nested = field.schema();
-        value = model.getField(value, level, field.pos());
       }
-      cache.put(name, fields);
+      Schema.Field field = nested.getField(level);
+      fields.add(field);
+      nested = field.schema();
     }
-
-    return value;
+    return fields;
   }
 
   public Object get(E object, Iterable<Schema.Field> fields) {
@@ -99,12 +102,12 @@ public class EntityAccessor<E> {
                            StorageKey reuse) {
     Preconditions.checkNotNull(reuse, "Cannot use null key");
     PartitionStrategy strategy = reuse.getPartitionStrategy();
-    List<FieldPartitioner> partitioners =
-        Accessor.getDefault().getFieldPartitioners(strategy);
-    for (int i = 0, n = partitioners.size(); i < n; i += 1) {
-      reuse.replace(i, partitionValue(object, provided, partitioners.get(i)));
+    KeyExtractor extractor = lastExtractor.get();
+    if (extractor == null || !extractor.isFor(strategy)) {
+      extractor = new KeyExtractor(strategy);
+      lastExtractor.set(extractor);
     }
-    return reuse;
+    return extractor.fill(object, provided, reuse);
   }
 
   @VisibleForTesting
@@ -112,19 +115,97 @@ public class EntityAccessor<E> {
     return keyFor(object, null, reuse);
   }
 
-  @SuppressWarnings("unchecked")
-  @edu.umd.cs.findbugs.annotations.SuppressWarnings(value="NP_NULL_ON_SOME_PATH",
-      justification="Null case checked by precondition")
-  private Object partitionValue(E object, @Nullable Map<String, Object> provided,
-                                FieldPartitioner fp) {
-    if (fp instanceof ProvidedFieldPartitioner) {
-      String name = fp.getName();
-      Preconditions.checkArgument(
-          (provided != null) && provided.containsKey(name),
-          "Cannot construct key, missing provided value: %s", name);
-      return provided.get(name);
-    } else {
-      return fp.apply(get(object, fp.getSourceName()));
+  /**
+   * Fills {@link StorageKey} values for a {@link PartitionStrategy}.
+   * <p>
+   * Field paths are resolved when the extractor is created, partitioners
+   * that share a source field read it once, and calendar partitioners share
+   * one decomposition of the timestamp, so filling a key allocates nothing
+   * beyond what the partition functions return.
+   */
+  private class KeyExtractor {
+    private final PartitionStrategy strategy;
+    private final FieldPartitioner[] partitioners;
+    private final Schema.Field[][] sources;
+    // the index of the first partitioner with the same source field
+    private final int[] sourceIndex;
+
+    @SuppressWarnings("unchecked")
+    private KeyExtractor(PartitionStrategy strategy) {
+      List<FieldPartitioner> fps =
+          Accessor.getDefault().getFieldPartitioners(strategy);
+      this.strategy = strategy;
+      this.partitioners = fps.toArray(new FieldPartitioner[fps.size()]);
+      this.sources = new Schema.Field[partitioners.length][];
+      this.sourceIndex = new int[partitioners.length];
+      for (int i = 0; i < partitioners.length; i += 1) {
+        FieldPartitioner fp = partitioners[i];
+        sourceIndex[i] = i;
+        if (fp instanceof ProvidedFieldPartitioner) {
+          continue;
+        }
+        List<Schema.Field> fields = resolve(fp.getSourceName());
+        sources[i] = fields.toArray(new Schema.Field[fields.size()]);
+        for (int j = 0; j < i; j += 1) {
+          if (sources[j] != null &&
+              fp.getSourceName().equals(partitioners[j].getSourceName())) {
+            sourceIndex[i] = j;
+            break;
+          }
+        }
+      }
+    }
+
+    private boolean isFor(PartitionStrategy other) {
+      return strategy == other || strategy.equals(other);
+    }
+
+    @SuppressWarnings("unchecked")
+    @edu.umd.cs.findbugs.annotations.SuppressWarnings(value="NP_NULL_ON_SOME_PATH",
+        justification="Null case checked by precondition")
+    private StorageKey fill(E object, @Nullable Map<String, Object> provided,
+                            StorageKey reuse) {
+      int lastSource = -1;
+      Object source = null;
+      boolean decomposed = false;
+      long fields = 0;
+      for (int i = 0; i < partitioners.length; i += 1) {
+        FieldPartitioner fp = partitioners[i];
+        Object value;
+        if (sources[i] == null) {
+          String name = fp.getName();
+          Preconditions.checkArgument(
+              (provided != null) && provided.containsKey(name),
+              "Cannot construct key, missing provided value: %s", name);
+          value = provided.get(name);
+        } else {
+          if (sourceIndex[i] != lastSource) {
+            lastSource = sourceIndex[i];
+            source = read(object, sources[i]);
+            decomposed = false;
+          }
+          if (fp instanceof CalendarFieldPartitioner) {
+            long timestamp = (Long) source;
+            if (!decomposed) {
+              fields = CalendarFieldPartitioner.decompose(timestamp);
+              decomposed = true;
+            }
+            value = ((CalendarFieldPartitioner) fp).apply(timestamp, fields);
+          } else {
+            value = fp.apply(source);
+          }
+        }
+        reuse.replace(i, value);
+      }
+      return reuse;
+    }
+
+    private Object read(E object, Schema.Field[] fields) {
+      Object value = object;
+      for (Schema.Field level : fields) {
+        value = model.getField(value, level.name(), level.pos());
+      }
+      return value;
     }
   }
 
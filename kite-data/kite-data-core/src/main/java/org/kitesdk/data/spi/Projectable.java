@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.kitesdk.data.IncompatibleSchemaException;
+import org.kitesdk.data.RefinableView;
+import org.kitesdk.data.View;
+
+/**
+ * Implemented by {@link View} implementations that can read entities with a
+ * projection of the dataset's schema.
+ * <p>
+ * Use {@link Projections#asSchema(View, Schema)} to project a view that
+ * may not implement this interface.
+ */
+public interface Projectable {
+  /**
+   * Creates a copy of this {@code View} that reads entities as
+   * {@link GenericRecord} objects with the given projection {@link Schema}.
+   * <p>
+   * The projection must be readable from the dataset's schema and must include
+   * any fields that this {@code View} is constrained by. Implementations that
+   * store data by column, like Parquet, only read the projected columns.
+   * Projected views cannot be written to.
+   *
+   * @param schema a projection of the dataset's schema
+   * @return a view that reads entities with the projected schema
+   * @throws UnsupportedOperationException
+   *          if the implementation does not support projection
+   * @throws IncompatibleSchemaException
+   *          if the projection cannot be read from the dataset's schema
+   */
+  public RefinableView<GenericRecord> asSchema(Schema schema);
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.kitesdk.data.IncompatibleSchemaException;
+import org.kitesdk.data.RefinableView;
+import org.kitesdk.data.View;
+
+/**
+ * Static helpers for reading {@link View}s with a projection schema.
+ *
+ * @since 1.1.0
+ */
+public class Projections {
+
+  private Projections() {
+  }
+
+  /**
+   * Creates a copy of {@code view} that reads entities as
+   * {@link GenericRecord} objects with the given projection {@link Schema}.
+   *
+   * @param view a view to project
+   * @param schema a projection of the dataset's schema
+   * @return a view that reads entities with the projected schema
+   * @throws UnsupportedOperationException
+   *          if the view does not support projection
+   * @throws IncompatibleSchemaException
+   *          if the projection cannot be read from the dataset's schema
+   * @see Projectable#asSchema(Schema)
+   */
+  public static RefinableView<GenericRecord> asSchema(View<?> view,
+                                                      Schema schema) {
+    if (view instanceof Projectable) {
+      return ((Projectable) view).asSchema(schema);
+    }
+    throw new UnsupportedOperationException(
+        "View does not support projection: " + view);
+  }
+}
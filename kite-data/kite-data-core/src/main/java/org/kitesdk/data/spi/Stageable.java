@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.spi;
+
+import org.apache.hadoop.fs.Path;
+import org.kitesdk.data.DatasetWriter;
+
+/**
+ * This interface is for views whose writers can stage data in a directory so
+ * that it is added to the view later, in one step.
+ * <p>
+ * Output formats use this to add data only when a job commits: each task
+ * attempt writes to its own directory, directories of committed tasks are
+ * kept, and the job commit loads them all.
+ *
+ * @param <E> the type of entities written to the view
+ */
+public interface Stageable<E> {
+
+  /**
+   * Returns whether writers for this view should stage data rather than
+   * write it directly.
+   *
+   * @return true if data should be staged
+   */
+  public boolean isStaged();
+
+  /**
+   * Returns a directory where a job can stage data for this view. The same
+   * directory is returned for the same name.
+   *
+   * @param name a name that identifies the job
+   * @return a Path for staged data
+   */
+  public Path getStagingDirectory(String name);
+
+  /**
+   * Returns a writer that stages data in {@code directory} without adding it
+   * to this view.
+   *
+   * @param directory a directory for staged data
+   * @return a DatasetWriter
+   */
+  public DatasetWriter<E> newStagingWriter(Path directory);
+
+  /**
+   * Adds all data staged by writers in subdirectories of {@code directory}.
+   *
+   * @param directory a directory that contains writers' staging directories
+   */
+  public void loadStaged(Path directory);
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import org.kitesdk.data.DatasetDescriptor;
+import org.kitesdk.data.DatasetException;
+import org.kitesdk.data.DatasetOperationException;
+import org.kitesdk.data.spi.DescriptorUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs file commits, like closing an appender and renaming its temporary
+ * file, in background threads.
+ * <p>
+ * Each pending commit holds an open file, so the number of commits that are
+ * queued or running is limited to twice the number of threads. When the
+ * limit is reached, {@link #submit(Runnable)} blocks until a commit finishes
+ * and {@link #trySubmit(Runnable)} returns false. Commits may wait for writer
+ * locks, so threads that hold a writer's lock must use trySubmit.
+ * <p>
+ * Failures are kept and thrown by the next call to {@link #await()}.
+ */
+class BackgroundCommitter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(
+      BackgroundCommitter.class);
+
+  private final ExecutorService executor;
+  private final Semaphore permits;
+  private final Object lock = new Object();
+  private int pending = 0;
+  private Throwable failure = null;
+
+  BackgroundCommitter(int threads) {
+    Preconditions.checkArgument(threads > 0,
+        "Number of commit threads must be positive: %s", threads);
+    this.executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("kite-file-committer-%d")
+            .build());
+    this.permits = new Semaphore(threads * 2);
+  }
+
+  /**
+   * Returns a committer if {@link FileSystemProperties#WRITER_COMMIT_THREADS_PROP}
+   * is set for the descriptor, or null if commits should be synchronous.
+   */
+  static BackgroundCommitter forDescriptor(DatasetDescriptor descriptor) {
+    int threads = DescriptorUtil.getInt(
+        FileSystemProperties.WRITER_COMMIT_THREADS_PROP, descriptor, 0);
+    if (threads > 0) {
+      return new BackgroundCommitter(threads);
+    }
+    return null;
+  }
+
+  /**
+   * Runs the commit in a background thread, blocking if too many commits are
+   * already pending.
+   *
+   * @param commit a Runnable that closes and commits a file
+   */
+  void submit(Runnable commit) {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasetOperationException(
+          "Interrupted while waiting to commit: " + commit, e);
+    }
+
+    execute(commit);
+  }
+
+  /**
+   * Runs the commit in a background thread if fewer than the limit of commits
+   * are pending, without blocking.
+   *
+   * @param commit a Runnable that closes and commits a file
+   * @return true if the commit was submitted, false if the caller must run it
+   */
+  boolean trySubmit(Runnable commit) {
+    if (!permits.tryAcquire()) {
+      return false;
+    }
+
+    execute(commit);
+    return true;
+  }
+
+  private void execute(final Runnable commit) {
+    synchronized (lock) {
+      pending += 1;
+    }
+
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          commit.run();
+        } catch (Throwable t) {
+          LOG.warn("Background commit failed: " + commit, t);
+          synchronized (lock) {
+            if (failure == null) {
+              failure = t;
+            }
+          }
+        } finally {
+          permits.release();
+          synchronized (lock) {
+            pending -= 1;
+            lock.notifyAll();
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Waits for all pending commits to finish and throws the first failure
+   * since the last call, if there was one.
+   *
+   * @throws DatasetException if a commit failed
+   */
+  void await() {
+    Throwable toThrow;
+    synchronized (lock) {
+      while (pending > 0) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new DatasetOperationException(
+              "Interrupted while waiting for pending commits", e);
+        }
+      }
+      toThrow = failure;
+      this.failure = null;
+    }
+
+    if (toThrow instanceof DatasetException) {
+      throw (DatasetException) toThrow;
+    } else if (toThrow instanceof Error) {
+      throw (Error) toThrow;
+    } else if (toThrow != null) {
+      throw new DatasetOperationException("Background commit failed", toThrow);
+    }
+  }
+
+  /**
+   * Stops the background threads after pending commits finish.
+   */
+  void shutdown() {
+    executor.shutdown();
+  }
+}
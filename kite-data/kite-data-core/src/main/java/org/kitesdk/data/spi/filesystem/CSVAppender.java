@@ -61,6 +61,11 @@ class CSVAppender<E> implements FileSystemWriter.FileAppender<E> {
     writer.writeNext(shred(entity));
   }
 
+  @Override
+  public long pos() throws IOException {
+    return outgoing.getPos();
+  }
+
   @Override
   public void close() throws IOException {
     writer.close();
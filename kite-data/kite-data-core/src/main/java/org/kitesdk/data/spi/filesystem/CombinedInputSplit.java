@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * An {@link InputSplit} that groups several small splits so that they are
+ * read sequentially by a single task.
+ * <p>
+ * Splits are grouped by {@link #combine(List, long)}, which packs the splits
+ * for each host together before packing what remains across hosts, so that
+ * most combined splits can still be read locally.
+ */
+class CombinedInputSplit extends InputSplit implements Writable {
+
+  private static final int MAX_LOCATIONS = 3;
+  private static final String NO_HOST = "";
+
+  private List<InputSplit> splits;
+  private long length;
+  private String[] locations;
+
+  /**
+   * Used by Hadoop to deserialize a split.
+   */
+  public CombinedInputSplit() {
+    this.splits = ImmutableList.of();
+    this.length = 0;
+    this.locations = new String[0];
+  }
+
+  private CombinedInputSplit(List<InputSplit> splits) throws IOException,
+      InterruptedException {
+    this.splits = ImmutableList.copyOf(splits);
+    this.length = 0;
+
+    // report the hosts that store the most bytes
+    Map<String, Long> bytesByHost = Maps.newHashMap();
+    for (InputSplit split : splits) {
+      long splitLength = split.getLength();
+      this.length += splitLength;
+      for (String host : split.getLocations()) {
+        Long bytes = bytesByHost.get(host);
+        bytesByHost.put(host, (bytes == null ? 0 : bytes) + splitLength);
+      }
+    }
+    List<String> hosts = Ordering.natural().reverse()
+        .onResultOf(Functions.forMap(bytesByHost))
+        .sortedCopy(bytesByHost.keySet());
+    int numLocations = Math.min(MAX_LOCATIONS, hosts.size());
+    this.locations = hosts.subList(0, numLocations)
+        .toArray(new String[numLocations]);
+  }
+
+  /**
+   * Packs splits that are smaller than {@code targetSize} into combined
+   * splits of up to {@code targetSize} bytes.
+   * <p>
+   * Splits that are at least {@code targetSize} bytes, or that cannot be
+   * serialized as a {@link Writable}, are returned unchanged.
+   *
+   * @param splits a List of splits from a file-based InputFormat
+   * @param targetSize the target size, in bytes, of combined splits
+   * @return a List of splits, some of which may be CombinedInputSplits
+   */
+  static List<InputSplit> combine(List<InputSplit> splits, long targetSize)
+      throws IOException, InterruptedException {
+    Preconditions.checkArgument(targetSize > 0,
+        "Target split size must be positive: %s", targetSize);
+
+    List<InputSplit> result = Lists.newArrayList();
+
+    // group small splits by their first (preferred) host
+    Map<String, List<InputSplit>> byHost = new TreeMap<String, List<InputSplit>>();
+    for (InputSplit split : splits) {
+      if (!(split instanceof Writable) || split.getLength() >= targetSize) {
+        result.add(split);
+        continue;
+      }
+      String[] hosts = split.getLocations();
+      String host = (hosts != null && hosts.length > 0) ? hosts[0] : NO_HOST;
+      List<InputSplit> hostSplits = byHost.get(host);
+      if (hostSplits == null) {
+        hostSplits = Lists.newArrayList();
+        byHost.put(host, hostSplits);
+      }
+      hostSplits.add(split);
+    }
+
+    // fill splits from each host, then pack the leftovers together
+    List<InputSplit> leftovers = Lists.newArrayList();
+    for (List<InputSplit> hostSplits : byHost.values()) {
+      List<InputSplit> group = Lists.newArrayList();
+      long groupSize = 0;
+      for (InputSplit split : hostSplits) {
+        group.add(split);
+        groupSize += split.getLength();
+        if (groupSize >= targetSize) {
+          result.add(group(group));
+          group = Lists.newArrayList();
+          groupSize = 0;
+        }
+      }
+      leftovers.addAll(group);
+    }
+
+    List<InputSplit> group = Lists.newArrayList();
+    long groupSize = 0;
+    for (InputSplit split : leftovers) {
+      if (!group.isEmpty() && groupSize + split.getLength() > targetSize) {
+        result.add(group(group));
+        group = Lists.newArrayList();
+        groupSize = 0;
+      }
+      group.add(split);
+      groupSize += split.getLength();
+    }
+    if (!group.isEmpty()) {
+      result.add(group(group));
+    }
+
+    return result;
+  }
+
+  private static InputSplit group(List<InputSplit> splits)
+      throws IOException, InterruptedException {
+    if (splits.size() == 1) {
+      return splits.get(0);
+    }
+    return new CombinedInputSplit(splits);
+  }
+
+  /**
+   * @return the splits that make up this split, in the order they are read
+   */
+  List<InputSplit> getSplits() {
+    return splits;
+  }
+
+  @Override
+  public long getLength() {
+    return length;
+  }
+
+  @Override
+  public String[] getLocations() {
+    return locations;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(splits.size());
+    for (InputSplit split : splits) {
+      Text.writeString(out, split.getClass().getName());
+      ((Writable) split).write(out);
+    }
+    out.writeLong(length);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int numSplits = in.readInt();
+    List<InputSplit> readSplits = Lists.newArrayListWithCapacity(numSplits);
+    for (int i = 0; i < numSplits; i += 1) {
+      String className = Text.readString(in);
+      InputSplit split;
+      try {
+        split = (InputSplit) ReflectionUtils.newInstance(
+            Class.forName(className), null);
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Cannot find split class: " + className, e);
+      }
+      ((Writable) split).readFields(in);
+      readSplits.add(split);
+    }
+    this.splits = ImmutableList.copyOf(readSplits);
+    this.length = in.readLong();
+    // locations are only used to schedule tasks and are not serialized
+    this.locations = new String[0];
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("length", length)
+        .add("splits", splits)
+        .toString();
+  }
+}
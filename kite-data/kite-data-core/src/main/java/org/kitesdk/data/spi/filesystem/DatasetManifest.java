@@ -0,0 +1,787 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.kitesdk.data.DatasetDescriptor;
+import org.kitesdk.data.DatasetIOException;
+import org.kitesdk.data.spi.DescriptorUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A record of the data files in a filesystem dataset, stored in the dataset's
+ * metadata directory so that partitions and files can be found without
+ * walking the directory tree. It is only used by datasets that set
+ * {@link FileSystemProperties#MANIFEST_PROP}.
+ * <p>
+ * The manifest is a directory of JSON files. A snapshot lists every data file
+ * with its size, record count (-1 if unknown) and modification time. Each
+ * change, like a writer committing a file, is recorded by writing one new
+ * delta file that lists the files added and the files or partition
+ * directories removed. Deltas are named by the time they are written and a
+ * random ID, so writers never coordinate and never rewrite a file.
+ * <p>
+ * A snapshot lists the deltas it covers. Readers use the latest snapshot and
+ * apply the deltas it does not cover in name order, and keep the result so
+ * that later loads only read new deltas. A delta that is still being written
+ * cannot be parsed and is skipped until it is complete. Writers compact the
+ * manifest after about {@code COMPACT_INTERVAL} deltas, never readers.
+ * Covered deltas are removed by the compaction after the one that folded
+ * them, so that concurrent compactions never remove a delta that the latest
+ * snapshot does not cover.
+ * <p>
+ * The manifest is only used once a snapshot exists. If a change cannot be
+ * recorded, or a delta is left incomplete, a rebuild marker is written in its
+ * place. Readers list directories while there is an uncovered marker, and the
+ * next compaction rebuilds the snapshot from a listing.
+ */
+class DatasetManifest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DatasetManifest.class);
+
+  private static final String MANIFEST_DIRECTORY = ".metadata/manifest";
+  private static final String SNAPSHOT_EXT = ".snapshot";
+  private static final String DELTA_EXT = ".delta";
+  private static final String REBUILD_EXT = ".rebuild";
+  private static final String TEMP_EXT = ".tmp";
+  private static final String NAME_FORMAT = "%019d-%s";
+  private static final String ADDED = "added";
+  private static final String REMOVED = "removed";
+  private static final String COVERED = "covered";
+  private static final String PATH = "path";
+  private static final String SIZE = "size";
+  private static final String RECORDS = "records";
+  private static final String MODIFIED = "modified";
+  private static final int MAX_LOAD_ATTEMPTS = 3;
+  private static final int COMPACT_INTERVAL = 100;
+  // deltas that still cannot be parsed after this long were left incomplete
+  private static final long INCOMPLETE_TIMEOUT_MS = 10 * 60 * 1000;
+  private static final int MAX_CACHED_MANIFESTS = 1000;
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final Splitter PATH_SPLITTER = Splitter.on('/');
+  private static final Joiner PATH_JOINER = Joiner.on('/');
+  private static final Random RANDOM = new Random();
+  // keeps names from this JVM in the order they were created
+  private static final AtomicLong LAST_NAME_TIME = new AtomicLong(0);
+
+  // the contents last loaded from each manifest directory, used by readers
+  private static final Cache<Path, Loaded> LOADED = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_MANIFESTS)
+      .build();
+
+  private final FileSystem fs;
+  private final Path root;
+  private final Path manifestDir;
+  private final int compactInterval;
+
+  /**
+   * Returns the manifest for a dataset if it is enabled by
+   * {@link FileSystemProperties#MANIFEST_PROP}, or null.
+   */
+  @Nullable
+  static DatasetManifest forDescriptor(FileSystem fs, DatasetDescriptor descriptor) {
+    if (descriptor.getLocation() == null ||
+        !DescriptorUtil.isEnabled(FileSystemProperties.MANIFEST_PROP, descriptor)) {
+      return null;
+    }
+    return new DatasetManifest(fs, new Path(descriptor.getLocation()));
+  }
+
+  DatasetManifest(FileSystem fs, Path root) {
+    this(fs, root, COMPACT_INTERVAL);
+  }
+
+  /**
+   * @param compactInterval the average number of deltas this writes between
+   *                        compactions, or 0 to never compact after a write
+   */
+  @VisibleForTesting
+  DatasetManifest(FileSystem fs, Path root, int compactInterval) {
+    this.fs = fs;
+    this.root = fs.makeQualified(root);
+    this.manifestDir = new Path(this.root, MANIFEST_DIRECTORY);
+    this.compactInterval = compactInterval;
+  }
+
+  /**
+   * A data file in the manifest.
+   */
+  static class Entry {
+    private final String path;
+    private final long size;
+    private final long records;
+    private final long modified;
+
+    private Entry(String path, long size, long records, long modified) {
+      this.path = path;
+      this.size = size;
+      this.records = records;
+      this.modified = modified;
+    }
+
+    String getPath() {
+      return path;
+    }
+
+    long getSize() {
+      return size;
+    }
+
+    long getRecords() {
+      return records;
+    }
+
+    long getModified() {
+      return modified;
+    }
+
+    private String getDirectory() {
+      int slash = path.lastIndexOf('/');
+      return (slash < 0 ? "" : path.substring(0, slash));
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+          .add("path", path)
+          .add("size", size)
+          .add("records", records)
+          .add("modified", modified)
+          .toString();
+    }
+  }
+
+  /**
+   * The data files in a manifest, grouped by directory.
+   */
+  class Contents {
+    private final SortedMap<String, Entry> files;
+    private final Map<String, List<Entry>> directories = Maps.newTreeMap();
+
+    private Contents(SortedMap<String, Entry> files) {
+      this.files = files;
+      for (Entry entry : files.values()) {
+        String dir = entry.getDirectory();
+        List<Entry> entries = directories.get(dir);
+        if (entries == null) {
+          entries = Lists.newArrayList();
+          directories.put(dir, entries);
+        }
+        entries.add(entry);
+      }
+    }
+
+    /**
+     * Returns the directories that contain data files and are {@code depth}
+     * levels below the dataset root, as lists of directory names.
+     */
+    Iterable<List<String>> partitions(int depth) {
+      List<List<String>> partitions = Lists.newArrayList();
+      for (String dir : directories.keySet()) {
+        List<String> names = ImmutableList.copyOf(PATH_SPLITTER.split(dir));
+        if (!dir.isEmpty() && names.size() == depth) {
+          partitions.add(names);
+        }
+      }
+      return partitions;
+    }
+
+    /**
+     * Returns the entries for files in a directory relative to the root.
+     */
+    Collection<Entry> entries(@Nullable Path relativeDir) {
+      List<Entry> entries = directories.get(
+          relativeDir == null ? "" : relativeDir.toString());
+      return (entries == null ? Collections.<Entry>emptyList() : entries);
+    }
+
+    /**
+     * Returns the data files in a directory relative to the root.
+     */
+    List<Path> files(@Nullable Path relativeDir) {
+      List<Path> paths = Lists.newArrayList();
+      for (Entry entry : entries(relativeDir)) {
+        paths.add(new Path(root, entry.getPath()));
+      }
+      return paths;
+    }
+
+    Collection<Entry> entries() {
+      return files.values();
+    }
+  }
+
+  /**
+   * The files in the manifest directory.
+   */
+  private static class Listing {
+    // the name of the latest snapshot, or null if there is none
+    private String snapshot = null;
+    private final List<String> snapshots = Lists.newArrayList();
+    // deltas and rebuild markers, by name
+    private final SortedMap<String, FileStatus> changes = Maps.newTreeMap();
+
+    /**
+     * Returns the changes that are not covered, in name order.
+     */
+    private List<FileStatus> uncovered(Set<String> covered) {
+      List<FileStatus> uncovered = Lists.newArrayList();
+      for (Map.Entry<String, FileStatus> entry : changes.entrySet()) {
+        if (!covered.contains(entry.getKey())) {
+          uncovered.add(entry.getValue());
+        }
+      }
+      return uncovered;
+    }
+  }
+
+  /**
+   * Contents replayed from a snapshot and the deltas applied to it.
+   */
+  private static class Loaded {
+    private final String snapshot;
+    private final Set<String> covered;
+    // the deltas applied after the snapshot, in order
+    private final List<String> applied;
+    private final SortedMap<String, Entry> files;
+    private final Contents contents;
+    // false if a delta was skipped because it is still being written
+    private final boolean complete;
+
+    private Loaded(String snapshot, Set<String> covered, List<String> applied,
+                   SortedMap<String, Entry> files, Contents contents,
+                   boolean complete) {
+      this.snapshot = snapshot;
+      this.covered = covered;
+      this.applied = applied;
+      this.files = files;
+      this.contents = contents;
+      this.complete = complete;
+    }
+
+    private boolean isPrefixOf(List<FileStatus> uncovered) {
+      if (applied.size() > uncovered.size()) {
+        return false;
+      }
+      for (int i = 0; i < applied.size(); i += 1) {
+        if (!applied.get(i).equals(uncovered.get(i).getPath().getName())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Returns the current contents of the manifest or null if there is no
+   * snapshot and the directory tree should be listed instead.
+   */
+  @Nullable
+  Contents load() {
+    for (int attempt = 1; ; attempt += 1) {
+      try {
+        Listing listing = list();
+        if (listing.snapshot == null) {
+          LOADED.invalidate(manifestDir);
+          return null;
+        }
+
+        Loaded base = LOADED.getIfPresent(manifestDir);
+        if (base == null || !base.snapshot.equals(listing.snapshot)) {
+          base = readSnapshot(listing.snapshot);
+        }
+        List<FileStatus> uncovered = listing.uncovered(base.covered);
+        if (!base.isPrefixOf(uncovered)) {
+          // a delta with an earlier name was written after the last load
+          base = readSnapshot(listing.snapshot);
+        }
+
+        // only read the deltas written since the cached contents
+        Loaded loaded = replay(base, uncovered);
+        if (loaded == null) {
+          LOADED.invalidate(manifestDir);
+          return null;
+        }
+        if (loaded.complete) {
+          LOADED.put(manifestDir, loaded);
+        }
+        return loaded.contents;
+
+      } catch (FileNotFoundException e) {
+        // a file was removed by a concurrent compaction
+        if (attempt >= MAX_LOAD_ATTEMPTS) {
+          throw new DatasetIOException("Cannot load manifest " + manifestDir, e);
+        }
+      } catch (IOException e) {
+        throw new DatasetIOException("Cannot load manifest " + manifestDir, e);
+      }
+    }
+  }
+
+  /**
+   * Records a committed data file.
+   *
+   * @param file the data file's Path
+   * @param records the number of records in the file, or -1 if unknown
+   */
+  void added(Path file, long records) {
+    added(Collections.singletonList(file), records);
+  }
+
+  /**
+   * Records committed data files.
+   *
+   * @param files the data files' Paths
+   * @param records the number of records in each file, or -1 if unknown
+   */
+  void added(List<Path> files, long records) {
+    replaced(Collections.<Path>emptyList(), files, records);
+  }
+
+  /**
+   * Records removed data files or partition directories.
+   *
+   * @param paths Paths of files or directories that were removed
+   */
+  void removed(List<Path> paths) {
+    replaced(paths, Collections.<Path>emptyList(), -1);
+  }
+
+  /**
+   * Records removed paths and committed data files in one change, so readers
+   * never see the removals without the additions. Removals are applied first,
+   * so files may be added to a directory that was removed.
+   *
+   * @param removed Paths of files or directories that were removed
+   * @param added the committed data files' Paths
+   * @param records the number of records in each added file, or -1 if unknown
+   */
+  void replaced(List<Path> removed, List<Path> added, long records) {
+    if (removed.isEmpty() && added.isEmpty()) {
+      return;
+    }
+    List<Entry> entries = Lists.newArrayListWithCapacity(added.size());
+    try {
+      for (Path file : added) {
+        FileStatus stat = fs.getFileStatus(file);
+        entries.add(new Entry(relativize(stat.getPath()), stat.getLen(),
+            records, stat.getModificationTime()));
+      }
+    } catch (IOException e) {
+      disable(e);
+      return;
+    }
+    List<String> paths = Lists.newArrayListWithCapacity(removed.size());
+    for (Path path : removed) {
+      paths.add(relativize(fs.makeQualified(path)));
+    }
+    record(entries, paths);
+  }
+
+  /**
+   * Writes a delta, then occasionally compacts the manifest.
+   */
+  private void record(Collection<Entry> added, Collection<String> removed) {
+    try {
+      writeChange(DELTA_EXT, added, removed);
+    } catch (IOException e) {
+      disable(e);
+      return;
+    }
+    // compacting at random avoids listing the manifest to count deltas
+    if (compactInterval > 0 && RANDOM.nextInt(compactInterval) == 0) {
+      try {
+        compact();
+      } catch (RuntimeException e) {
+        LOG.warn("Failed to compact manifest " + manifestDir, e);
+      }
+    }
+  }
+
+  /**
+   * Folds deltas into a new snapshot, or builds a snapshot by listing the
+   * dataset's files if there is none or a change was not recorded. Removes
+   * the deltas covered by the snapshot that this compaction started from.
+   */
+  void compact() {
+    try {
+      // the snapshot is named by the time of this listing, so a snapshot
+      // with a later name covers at least the deltas that this one covers
+      String name = newName(SNAPSHOT_EXT);
+      Listing listing = list();
+      Loaded base = (listing.snapshot != null ?
+          readSnapshot(listing.snapshot) : null);
+
+      Set<String> covered = Sets.newHashSet();
+      SortedMap<String, Entry> files = null;
+      if (base != null) {
+        covered.addAll(base.covered);
+        files = fold(base, listing.uncovered(base.covered), covered);
+      }
+
+      if (files == null) {
+        // each delta is written after its change is made, so a listing that
+        // starts now includes the changes of all listed deltas and of any
+        // change that could not be recorded. deltas from concurrent writers
+        // are replayed on top.
+        covered.clear();
+        for (FileStatus stat : listing.changes.values()) {
+          if (!isInProgress(stat)) {
+            covered.add(stat.getPath().getName());
+          }
+        }
+        files = Maps.newTreeMap();
+        listFiles(root, files);
+      }
+
+      if (base == null || !covered.equals(base.covered)) {
+        writeSnapshot(name, files.values(), covered);
+      }
+      if (base != null) {
+        deleteCovered(listing, base);
+      }
+
+    } catch (FileNotFoundException e) {
+      // a concurrent compaction removed the snapshot or a delta
+      LOG.debug("Manifest " + manifestDir + " was compacted concurrently", e);
+    } catch (IOException e) {
+      throw new DatasetIOException("Cannot compact manifest " + manifestDir, e);
+    }
+  }
+
+  /**
+   * Applies deltas to the files in a snapshot and adds them to
+   * {@code covered}, skipping deltas that are still being written.
+   *
+   * @return the files, or null if the snapshot must be rebuilt
+   */
+  @Nullable
+  private SortedMap<String, Entry> fold(Loaded base, List<FileStatus> uncovered,
+                                        Set<String> covered)
+      throws IOException {
+    SortedMap<String, Entry> files = Maps.newTreeMap(base.files);
+    for (FileStatus stat : uncovered) {
+      String name = stat.getPath().getName();
+      JsonNode node = (name.endsWith(DELTA_EXT) ? read(stat.getPath()) : null);
+      if (node == null) {
+        if (isInProgress(stat)) {
+          continue;
+        }
+        return null; // a change was not recorded
+      }
+      apply(node, files);
+      covered.add(name);
+    }
+    return files;
+  }
+
+  /**
+   * Applies the uncovered deltas that {@code base} has not applied.
+   *
+   * @return the replayed contents, or null if directories must be listed
+   */
+  @Nullable
+  private Loaded replay(Loaded base, List<FileStatus> uncovered)
+      throws IOException {
+    SortedMap<String, Entry> files = Maps.newTreeMap(base.files);
+    List<String> applied = Lists.newArrayList(base.applied);
+    boolean complete = true;
+    for (FileStatus stat : uncovered.subList(applied.size(), uncovered.size())) {
+      String name = stat.getPath().getName();
+      JsonNode node = (name.endsWith(DELTA_EXT) ? read(stat.getPath()) : null);
+      if (node == null) {
+        if (isInProgress(stat)) {
+          // the change is applied by a later load, once it is complete
+          complete = false;
+          continue;
+        }
+        return null; // a change was not recorded
+      }
+      apply(node, files);
+      if (complete) {
+        applied.add(name);
+      }
+    }
+    return new Loaded(base.snapshot, base.covered, applied, files,
+        new Contents(files), complete);
+  }
+
+  /**
+   * Returns the files in the manifest directory.
+   */
+  private Listing list() throws IOException {
+    Listing listing = new Listing();
+    if (!fs.exists(manifestDir)) {
+      return listing;
+    }
+    for (FileStatus stat : fs.listStatus(manifestDir)) {
+      String name = stat.getPath().getName();
+      if (name.startsWith(".")) {
+        continue; // temporary snapshot
+      } else if (name.endsWith(SNAPSHOT_EXT)) {
+        listing.snapshots.add(name);
+        if (listing.snapshot == null || name.compareTo(listing.snapshot) > 0) {
+          listing.snapshot = name;
+        }
+      } else if (name.endsWith(DELTA_EXT) || name.endsWith(REBUILD_EXT)) {
+        listing.changes.put(name, stat);
+      }
+    }
+    return listing;
+  }
+
+  /**
+   * Returns a new file name that sorts after the names of files written
+   * earlier.
+   */
+  private static String newName(String ext) {
+    long time;
+    long last;
+    do {
+      last = LAST_NAME_TIME.get();
+      time = Math.max(System.currentTimeMillis(), last + 1);
+    } while (!LAST_NAME_TIME.compareAndSet(last, time));
+    return String.format(NAME_FORMAT, time, UUID.randomUUID()) + ext;
+  }
+
+  /**
+   * Returns whether a change that cannot be parsed may still be written.
+   */
+  private static boolean isInProgress(FileStatus stat) {
+    return stat.getPath().getName().endsWith(DELTA_EXT) &&
+        System.currentTimeMillis() - stat.getModificationTime() <
+            INCOMPLETE_TIMEOUT_MS;
+  }
+
+  private Loaded readSnapshot(String name) throws IOException {
+    JsonNode node = read(new Path(manifestDir, name));
+    if (node == null) {
+      // snapshots are renamed into place, so this is not a partial write
+      throw new IOException("Cannot parse manifest snapshot " + name);
+    }
+    SortedMap<String, Entry> files = Maps.newTreeMap();
+    apply(node, files);
+    Set<String> covered = Sets.newHashSet();
+    JsonNode coveredNode = node.get(COVERED);
+    if (coveredNode != null) {
+      for (JsonNode change : coveredNode) {
+        covered.add(change.asText());
+      }
+    }
+    return new Loaded(name, covered, Collections.<String>emptyList(), files,
+        new Contents(files), true);
+  }
+
+  /**
+   * Reads a manifest file.
+   *
+   * @return the file's JSON object, or null if it is incomplete
+   */
+  @Nullable
+  private JsonNode read(Path path) throws IOException {
+    InputStream in = fs.open(path);
+    try {
+      JsonNode node = MAPPER.readTree(in);
+      return (node != null && node.isObject() ? node : null);
+    } catch (JsonProcessingException e) {
+      return null;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void apply(JsonNode node, SortedMap<String, Entry> files) {
+    JsonNode removed = node.get(REMOVED);
+    if (removed != null) {
+      for (JsonNode path : removed) {
+        String prefix = path.asText();
+        files.remove(prefix);
+        // remove all files under a removed directory
+        String dir = prefix + "/";
+        files.subMap(dir, dir + Character.MAX_VALUE).clear();
+      }
+    }
+
+    JsonNode added = node.get(ADDED);
+    if (added != null) {
+      for (JsonNode file : added) {
+        Entry entry = new Entry(file.get(PATH).asText(), file.get(SIZE).asLong(),
+            file.get(RECORDS).asLong(), file.get(MODIFIED).asLong());
+        files.put(entry.getPath(), entry);
+      }
+    }
+  }
+
+  /**
+   * Writes a delta or rebuild marker with a new name. This is the only
+   * manifest operation when a change is recorded.
+   */
+  private void writeChange(String ext, Collection<Entry> added,
+                           Collection<String> removed) throws IOException {
+    Path path = new Path(manifestDir, newName(ext));
+    try {
+      write(path, added, removed, Collections.<String>emptySet());
+    } catch (IOException e) {
+      // a partial delta is also replaced by a rebuild once it is too old
+      fs.delete(path, false);
+      throw e;
+    }
+  }
+
+  /**
+   * Writes a snapshot to a hidden temporary name and renames it into place,
+   * so that readers never see a partial snapshot.
+   */
+  private void writeSnapshot(String name, Collection<Entry> files,
+                             Set<String> covered) throws IOException {
+    Path temp = new Path(manifestDir, "." + name + TEMP_EXT);
+    write(temp, files, Collections.<String>emptyList(), covered);
+    Path path = new Path(manifestDir, name);
+    if (!fs.rename(temp, path)) {
+      fs.delete(temp, false);
+      throw new IOException("Failed to rename " + temp + " to " + path);
+    }
+  }
+
+  private void write(Path path, Collection<Entry> added,
+                     Collection<String> removed, Set<String> covered)
+      throws IOException {
+    ObjectNode node = MAPPER.createObjectNode();
+    ArrayNode addedNode = node.putArray(ADDED);
+    for (Entry entry : added) {
+      addedNode.addObject()
+          .put(PATH, entry.getPath())
+          .put(SIZE, entry.getSize())
+          .put(RECORDS, entry.getRecords())
+          .put(MODIFIED, entry.getModified());
+    }
+    ArrayNode removedNode = node.putArray(REMOVED);
+    for (String removedPath : removed) {
+      removedNode.add(removedPath);
+    }
+    if (!covered.isEmpty()) {
+      ArrayNode coveredNode = node.putArray(COVERED);
+      for (String change : covered) {
+        coveredNode.add(change);
+      }
+    }
+
+    OutputStream out = fs.create(path, false /* do not overwrite */ );
+    try {
+      MAPPER.writeValue(out, node);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Removes the deltas and rebuild markers covered by {@code base}, and
+   * snapshots older than it. Any snapshot written after {@code base} covers
+   * the same changes, so these are no longer read.
+   */
+  private void deleteCovered(Listing listing, Loaded base) throws IOException {
+    for (String change : listing.changes.keySet()) {
+      if (base.covered.contains(change)) {
+        fs.delete(new Path(manifestDir, change), false);
+      }
+    }
+    for (String snapshot : listing.snapshots) {
+      if (snapshot.compareTo(base.snapshot) < 0) {
+        fs.delete(new Path(manifestDir, snapshot), false);
+      }
+    }
+  }
+
+  /**
+   * Writes a rebuild marker in place of a change that could not be recorded,
+   * so that readers list directories until the manifest is rebuilt by
+   * {@link #compact()}.
+   */
+  private void disable(Exception cause) {
+    LOG.warn("Cannot update manifest " + manifestDir +
+        ", marking it for a rebuild", cause);
+    try {
+      writeChange(REBUILD_EXT, Collections.<Entry>emptyList(),
+          Collections.<String>emptyList());
+      LOADED.invalidate(manifestDir);
+    } catch (IOException e) {
+      throw new DatasetIOException(
+          "Cannot update or disable manifest " + manifestDir, e);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private void listFiles(Path dir, SortedMap<String, Entry> files)
+      throws IOException {
+    for (FileStatus stat : fs.listStatus(dir, PathFilters.notHidden())) {
+      if (stat.isDir()) {
+        listFiles(stat.getPath(), files);
+      } else {
+        Entry entry = new Entry(relativize(stat.getPath()), stat.getLen(), -1,
+            stat.getModificationTime());
+        files.put(entry.getPath(), entry);
+      }
+    }
+  }
+
+  private String relativize(Path qualified) {
+    URI relative = root.toUri().relativize(qualified.toUri());
+    if (relative.isAbsolute() || relative.getPath().startsWith("/")) {
+      throw new IllegalArgumentException(
+          "Path " + qualified + " is not in dataset " + root);
+    }
+    // normalize directory paths
+    List<String> names = Lists.newArrayList();
+    for (String name : PATH_SPLITTER.omitEmptyStrings().split(relative.getPath())) {
+      names.add(name);
+    }
+    return PATH_JOINER.join(names);
+  }
+}
@@ -18,6 +18,7 @@ package org.kitesdk.data.spi.filesystem;
 import com.google.common.base.Objects;
 import com.google.common.io.Closeables;
 import java.io.IOException;
+import javax.annotation.Nullable;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.IndexedRecord;
 import org.apache.hadoop.conf.Configuration;
@@ -40,7 +41,8 @@ class DurableParquetAppender<E extends IndexedRecord> implements FileSystemWrite
   private final FileSystem fs;
 
   public DurableParquetAppender(FileSystem fs, Path path, Schema schema,
-                                Configuration conf, CompressionType compressionType) {
+                                Configuration conf, CompressionType compressionType,
+                                @Nullable ParquetMemoryManager memoryManager) {
     this.fs = fs;
     this.path = path;
     this.schema = schema;
@@ -48,7 +50,7 @@ class DurableParquetAppender<E extends IndexedRecord> implements FileSystemWrite
     this.avroAppender = new AvroAppender<E>(
         fs, avroPath, schema, CompressionType.Snappy);
     this.parquetAppender = new ParquetAppender<E>(
-        fs, path, schema, conf, compressionType);
+        fs, path, schema, conf, compressionType, memoryManager);
   }
 
   @Override
@@ -63,6 +65,11 @@ class DurableParquetAppender<E extends IndexedRecord> implements FileSystemWrite
     parquetAppender.append(entity);
   }
 
+  @Override
+  public long pos() throws IOException {
+    return parquetAppender.pos();
+  }
+
   @Override
   public void flush() throws IOException {
     avroAppender.flush();
@@ -81,6 +88,7 @@ class DurableParquetAppender<E extends IndexedRecord> implements FileSystemWrite
 
   @Override
   public void cleanup() throws IOException {
+    parquetAppender.cleanup();
     // this is called after the parquet file is committed
     // the avro copy is no longer needed
     fs.delete(avroPath, false /* no recursion, should be a file */ );
@@ -35,6 +35,8 @@ import org.kitesdk.data.spi.InputFormatAccessor;
 import org.kitesdk.data.spi.LastModifiedAccessor;
 import org.kitesdk.data.spi.Mergeable;
 import org.kitesdk.data.spi.PartitionListener;
+import org.kitesdk.data.spi.Projectable;
+import com.google.common.base.Charsets;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -49,20 +51,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.util.Collections;
 import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.IndexedRecord;
 import org.kitesdk.data.Formats;
 
 @SuppressWarnings("deprecation")
 public class FileSystemDataset<E> extends AbstractDataset<E> implements
     Mergeable<FileSystemDataset<E>>, InputFormatAccessor<E>, LastModifiedAccessor,
-    PartitionedDataset<E>, SizeAccessor, Signalable<E>, Replaceable<View<E>> {
+    PartitionedDataset<E>, SizeAccessor, Signalable<E>, Replaceable<View<E>>,
+    Projectable {
 
   private static final Logger LOG = LoggerFactory
     .getLogger(FileSystemDataset.class);
 
+  private static final String COMPACTED_SOURCES = ".compacted-sources";
+  private static final String COMPACTED_FILES = ".compacted-files";
+
   private final FileSystem fileSystem;
   private final Path directory;
   private final String namespace;
@@ -206,6 +219,11 @@ public class FileSystemDataset<E> extends AbstractDataset<E> implements
     return unbounded;
   }
 
+  @Override
+  public FileSystemView<GenericRecord> asSchema(Schema schema) {
+    return unbounded.asSchema(schema);
+  }
+
   @Override
   public FileSystemView<E> filter(Constraints c) {
     return unbounded.filter(c);
@@ -329,9 +347,11 @@ public class FileSystemDataset<E> extends AbstractDataset<E> implements
 
   public void addExistingPartitions() {
     if (partitionListener != null && descriptor.isPartitioned()) {
+      List<String> partitions = Lists.newArrayList();
       for (Path partition : pathIterator()) {
-        partitionListener.partitionAdded(namespace, name, partition.toString());
+        partitions.add(partition.toString());
       }
+      PartitionListeners.added(partitionListener, namespace, name, partitions);
     }
   }
 
@@ -350,32 +370,57 @@ public class FileSystemDataset<E> extends AbstractDataset<E> implements
     // check that the dataset's descriptor can read the update
     Compatibility.checkCompatible(updateDescriptor, descriptor);
 
+    DatasetManifest manifest = DatasetManifest.forDescriptor(
+        fileSystem, descriptor);
+
+    List<FileSystemPartitionView<E>> sources = Lists.newArrayList();
+    List<String> added = Lists.newArrayList();
     for (PartitionView<E> src : update.getCoveringPartitions()) {
       if (src instanceof FileSystemPartitionView) {
-        URI relative = ((FileSystemPartitionView<E>) src).getRelativeLocation();
-        PartitionView<E> dest = relative != null ?
-            getPartitionView(relative) : unbounded;
-
-        // We call this listener before we attempt to create any partition
-        // directories. This lets the listener decide how to create the
-        // directory, if desired. Hive managed datasets let the Hive
-        // metastore create them while external datasets create it
-        // locally
-        if (descriptor.isPartitioned() && partitionListener != null &&
-            relative != null) {
-          partitionListener.partitionAdded(namespace, name, relative.toString());
+        FileSystemPartitionView<E> source = (FileSystemPartitionView<E>) src;
+        sources.add(source);
+        if (source.getRelativeLocation() != null) {
+          added.add(source.getRelativeLocation().toString());
         }
-
-        List<Pair<Path, Path>> staged = FileSystemUtil.stageMove(fileSystem,
-            new Path(src.getLocation()), new Path(dest.getLocation()),
-            "tmp" /* data should be added to recover from a failure */ );
-        FileSystemUtil.finishMove(fileSystem, staged);
-
       } else {
         throw new IllegalArgumentException(
             "Incompatible PartitionView: " + src.getClass().getName());
       }
     }
+
+    // We call this listener before we attempt to create any partition
+    // directories. This lets the listener decide how to create the
+    // directory, if desired. Hive managed datasets let the Hive
+    // metastore create them while external datasets create it
+    // locally. All of the partitions are passed at once so that the
+    // listener can register them in batches.
+    if (descriptor.isPartitioned() && partitionListener != null) {
+      PartitionListeners.added(partitionListener, namespace, name, added);
+    }
+
+    for (FileSystemPartitionView<E> src : sources) {
+      URI relative = src.getRelativeLocation();
+      PartitionView<E> dest = relative != null ?
+          getPartitionView(relative) : unbounded;
+
+      List<Pair<Path, Path>> staged = FileSystemUtil.stageMove(fileSystem,
+          new Path(src.getLocation()), new Path(dest.getLocation()),
+          "tmp" /* data should be added to recover from a failure */ );
+      FileSystemUtil.finishMove(fileSystem, staged);
+
+      if (manifest != null) {
+        List<Path> moved = Lists.newArrayListWithCapacity(staged.size());
+        for (Pair<Path, Path> pair : staged) {
+          moved.add(pair.second());
+        }
+        manifest.added(moved, -1);
+      }
+    }
+
+    PartitionListingCache.invalidate(fileSystem, directory);
+    if (manifest != null) {
+      manifest.compact();
+    }
   }
 
   @Override
@@ -399,6 +444,15 @@ public class FileSystemDataset<E> extends AbstractDataset<E> implements
     // check that the dataset's descriptor can read the update
     Compatibility.checkCompatible(updateDescriptor, descriptor);
 
+    // find partitions to remove using a current listing
+    PartitionListingCache.invalidate(fileSystem, directory);
+    DatasetManifest manifest = DatasetManifest.forDescriptor(
+        fileSystem, descriptor);
+
+    // partition changes are sent to the listener together after the replace
+    List<String> deletedPartitions = Lists.newArrayList();
+    List<String> addedPartitions = Lists.newArrayList();
+
     // replace leaf partitions one at a time
     for (PartitionView<E> src : update.getCoveringPartitions()) {
       if (src instanceof FileSystemPartitionView) {
@@ -418,10 +472,7 @@ public class FileSystemDataset<E> extends AbstractDataset<E> implements
               (FileSystemPartitionView<E>) partition;
           Path path = new Path(toRemove.getLocation());
           removals.add(path);
-          if (partitionListener != null && descriptor.isPartitioned()) {
-            partitionListener.partitionDeleted(
-                namespace, name, toRemove.getRelativeLocation().toString());
-          }
+          deletedPartitions.add(toRemove.getRelativeLocation().toString());
         }
 
         // replace the directory all at once
@@ -429,16 +480,282 @@ public class FileSystemDataset<E> extends AbstractDataset<E> implements
             new Path(dest.getLocation()), new Path(src.getLocation()),
             removals);
 
-        if (partitionListener != null && descriptor.isPartitioned()) {
-          partitionListener.partitionAdded(
-              namespace, name, dest.getRelativeLocation().toString());
+        if (manifest != null) {
+          manifest.replaced(
+              removals, dataFiles(new Path(dest.getLocation())), -1);
         }
 
+        addedPartitions.add(dest.getRelativeLocation().toString());
+
       } else {
         throw new IllegalArgumentException(
             "Incompatible PartitionView: " + src.getClass().getName());
       }
     }
+
+    if (partitionListener != null && descriptor.isPartitioned()) {
+      // drop the replaced partitions first because a replacement may have the
+      // same name as a partition that it replaced
+      PartitionListeners.deleted(
+          partitionListener, namespace, name, deletedPartitions);
+      PartitionListeners.added(
+          partitionListener, namespace, name, addedPartitions);
+    }
+
+    PartitionListingCache.invalidate(fileSystem, directory);
+    if (manifest != null) {
+      manifest.compact();
+    }
+  }
+
+  /**
+   * Merges the data files smaller than {@code smallFileSize} in each leaf
+   * partition covered by {@code view} into new files of about
+   * {@code targetFileSize} bytes.
+   * <p>
+   * The size of merged files is estimated from the files they replace: small
+   * files are merged in groups whose total size is at most
+   * {@code targetFileSize}, and a small file that cannot be grouped with
+   * another is not rewritten. Files that are not merged are kept as they are.
+   * <p>
+   * The merged files are written to a hidden directory next to each
+   * partition. The partition is then swapped for a copy with the merged
+   * files in place of their sources using the same process as
+   * {@link #replace(View)}, so readers see either the old files or the new
+   * files. Like {@link #replace(View)}, this must not run while writers are
+   * adding files to the compacted partitions.
+   * <p>
+   * If compaction fails, running it again finishes any partition whose merged
+   * files were complete. A partition that is missing after a failure was
+   * being swapped and is in the hidden {@code .name.replacement} directory
+   * next to it; move it back before running compaction again.
+   *
+   * @param view a View of this dataset
+   * @param smallFileSize files smaller than this many bytes are merged
+   * @param targetFileSize the target size in bytes for merged files
+   * @return the number of small files that were replaced
+   */
+  public long compactSmallFiles(View<E> view, long smallFileSize,
+                                long targetFileSize) {
+    Preconditions.checkArgument(equals(view.getDataset()),
+        "Not a view of this dataset: %s", view);
+    Preconditions.checkArgument(descriptor.isPartitioned(),
+        "Cannot incrementally compact unpartitioned dataset: %s", name);
+    Preconditions.checkArgument(smallFileSize > 0,
+        "Small file size must be positive: %s", smallFileSize);
+    Preconditions.checkArgument(targetFileSize > 0,
+        "Target file size must be positive: %s", targetFileSize);
+
+    // merged files are tracked when they are swapped into the partition and
+    // are sized by grouping sources, so writers do not roll
+    DatasetDescriptor mergeDescriptor = new DatasetDescriptor.Builder(descriptor)
+        .property(FileSystemProperties.TARGET_FILE_SIZE_PROP, "0")
+        .property(FileSystemProperties.TARGET_RECORD_COUNT_PROP, "0")
+        .property(FileSystemProperties.MANIFEST_PROP, "false")
+        .build();
+    DatasetManifest manifest = DatasetManifest.forDescriptor(
+        fileSystem, descriptor);
+
+    long replaced = 0;
+    for (PartitionView<E> partition : view.getCoveringPartitions()) {
+      replaced += compactPartition(new Path(partition.getLocation()),
+          smallFileSize, targetFileSize, mergeDescriptor, manifest);
+    }
+
+    PartitionListingCache.invalidate(fileSystem, directory);
+    if (manifest != null) {
+      manifest.compact();
+    }
+
+    return replaced;
+  }
+
+  private long compactPartition(Path partition, long smallFileSize,
+                                long targetFileSize,
+                                DatasetDescriptor mergeDescriptor,
+                                @Nullable DatasetManifest manifest) {
+    Path staged = new Path(partition.getParent(),
+        "." + partition.getName() + ".compaction");
+    // the path that FileSystemUtil.replace uses to stage a replacement
+    Path replacement = new Path(partition.getParent(),
+        "." + partition.getName() + ".replacement");
+    Path sourcesFile = new Path(staged, COMPACTED_SOURCES);
+    Path mergedFile = new Path(staged, COMPACTED_FILES);
+
+    try {
+      if (!fileSystem.exists(sourcesFile)) {
+        if (fileSystem.exists(replacement)) {
+          LOG.warn("Skipping compaction of {}: unfinished replacement {}",
+              partition, replacement);
+          return 0;
+        }
+
+        // remove the output of an incomplete merge
+        fileSystem.delete(staged, true /* recursive */ );
+
+        List<FileStatus> smallFiles = Lists.newArrayList();
+        for (FileStatus stat : fileSystem.listStatus(
+            partition, PathFilters.notHidden())) {
+          if (!stat.isDir() && stat.getLen() < smallFileSize) {
+            smallFiles.add(stat);
+          }
+        }
+
+        List<Path> sources = Lists.newArrayList();
+        for (List<Path> group : groupBySize(smallFiles, targetFileSize)) {
+          merge(group, staged, mergeDescriptor);
+          sources.addAll(group);
+        }
+        if (sources.isEmpty()) {
+          return 0;
+        }
+
+        writeNames(mergedFile, dataFiles(staged));
+        // written last, this signals that the merged files are complete
+        writeNames(sourcesFile, sources);
+      }
+
+      // the merge is complete; the steps below can be repeated after a failure
+      List<Path> sources = readNames(sourcesFile, partition);
+      List<Path> merged = readNames(mergedFile, partition);
+
+      // build the new partition from the current one while it is hidden
+      if (!fileSystem.exists(replacement)) {
+        rename(partition, replacement);
+      }
+      for (Path file : merged) {
+        Path stagedFile = new Path(staged, file.getName());
+        if (fileSystem.exists(stagedFile)) {
+          rename(stagedFile, new Path(replacement, file.getName()));
+        }
+      }
+      for (Path source : sources) {
+        fileSystem.delete(new Path(replacement, source.getName()),
+            false /* not recursive */ );
+      }
+
+      FileSystemUtil.replace(fileSystem, directory, partition, replacement,
+          Collections.<Path>emptyList());
+
+      if (manifest != null) {
+        manifest.replaced(sources, merged, -1);
+      }
+
+      // deleted last, this signals that the compaction is finished
+      fileSystem.delete(staged, true /* recursive */ );
+
+      LOG.info("Compacted {} small files in {} into {} files",
+          new Object[] { sources.size(), partition, merged.size() });
+
+      return sources.size();
+
+    } catch (IOException e) {
+      throw new DatasetIOException("Cannot compact partition " + partition, e);
+    }
+  }
+
+  private void rename(Path source, Path target) throws IOException {
+    if (!fileSystem.rename(source, target)) {
+      throw new IOException("Failed to rename " + source + " to " + target);
+    }
+  }
+
+  /**
+   * Groups files so that the total size of each group is at most
+   * {@code targetFileSize}, and returns the groups with more than one file.
+   */
+  private static List<List<Path>> groupBySize(List<FileStatus> files,
+                                              long targetFileSize) {
+    List<List<Path>> groups = Lists.newArrayList();
+    List<Path> group = Lists.newArrayList();
+    long groupSize = 0;
+    for (FileStatus stat : files) {
+      if (!group.isEmpty() && groupSize + stat.getLen() > targetFileSize) {
+        if (group.size() > 1) {
+          groups.add(group);
+        }
+        group = Lists.newArrayList();
+        groupSize = 0;
+      }
+      group.add(stat.getPath());
+      groupSize += stat.getLen();
+    }
+    if (group.size() > 1) {
+      groups.add(group);
+    }
+    return groups;
+  }
+
+  private void merge(List<Path> sources, Path staged,
+                     DatasetDescriptor mergeDescriptor) {
+    MultiFileDatasetReader<E> reader = new MultiFileDatasetReader<E>(
+        fileSystem, sources, descriptor,
+        new Constraints(descriptor.getSchema(),
+            descriptor.getPartitionStrategy()),
+        unbounded.getAccessor());
+    FileSystemWriter<E> writer = FileSystemWriter.newWriter(
+        fileSystem, staged, mergeDescriptor);
+    reader.initialize();
+    try {
+      writer.initialize();
+      try {
+        for (E entity : reader) {
+          writer.write(entity);
+        }
+      } finally {
+        writer.close();
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void writeNames(Path namesFile, List<Path> files)
+      throws IOException {
+    Writer out = new OutputStreamWriter(
+        fileSystem.create(namesFile, true /* overwrite */ ), Charsets.UTF_8);
+    try {
+      for (Path file : files) {
+        out.write(file.getName());
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private List<Path> readNames(Path namesFile, Path partition)
+      throws IOException {
+    List<Path> files = Lists.newArrayList();
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        fileSystem.open(namesFile), Charsets.UTF_8));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (!line.isEmpty()) {
+          files.add(new Path(partition, line));
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return files;
+  }
+
+  @SuppressWarnings("deprecation")
+  private List<Path> dataFiles(Path partition) {
+    List<Path> files = Lists.newArrayList();
+    try {
+      for (FileStatus stat : fileSystem.listStatus(
+          partition, PathFilters.notHidden())) {
+        if (!stat.isDir()) {
+          files.add(stat.getPath());
+        }
+      }
+    } catch (IOException e) {
+      throw new DatasetIOException("Cannot list files in " + partition, e);
+    }
+    return files;
   }
 
   @Override
@@ -137,6 +137,7 @@ public class FileSystemDatasetRepository extends AbstractDatasetRepository
     newDescriptor = metadataProvider.create(namespace, name, newDescriptor);
 
     FileSystemUtil.ensureLocationExists(newDescriptor, conf);
+    buildManifest(newDescriptor);
 
     LOG.debug("Created dataset: {} schema: {} datasetPath: {}", new Object[] {
         name, newDescriptor.getSchema(), newDescriptor.getLocation() });
@@ -171,6 +172,7 @@ public class FileSystemDatasetRepository extends AbstractDatasetRepository
     Compatibility.checkUpdate(oldDescriptor, descriptor);
 
     DatasetDescriptor updatedDescriptor = metadataProvider.update(namespace, name, descriptor);
+    buildManifest(updatedDescriptor);
 
     LOG.debug("Updated dataset: {} schema: {} location: {}", new Object[] {
         name, updatedDescriptor.getSchema(), updatedDescriptor.getLocation() });
@@ -187,6 +189,19 @@ public class FileSystemDatasetRepository extends AbstractDatasetRepository
         .build();
   }
 
+  /**
+   * Builds the dataset's manifest from its current files if the manifest is
+   * enabled and has not been built.
+   */
+  private void buildManifest(DatasetDescriptor descriptor) {
+    Path dataLocation = new Path(descriptor.getLocation());
+    DatasetManifest manifest = DatasetManifest.forDescriptor(
+        fsForPath(dataLocation, conf), descriptor);
+    if (manifest != null && manifest.load() == null) {
+      manifest.compact();
+    }
+  }
+
   @Override
   public <E> Dataset<E> load(String namespace, String name, Class<E> type) {
     Preconditions.checkNotNull(namespace, "Namespace cannot be null");
@@ -232,6 +247,7 @@ public class FileSystemDatasetRepository extends AbstractDatasetRepository
 
     Path dataLocation = new Path(descriptor.getLocation());
     FileSystem dataFS = fsForPath(dataLocation, conf);
+    PartitionListingCache.invalidate(dataFS, dataLocation);
 
     if (fs.getUri().equals(dataFS.getUri())) {
       // the data location is on the right FS, so cleanlyDelete will work
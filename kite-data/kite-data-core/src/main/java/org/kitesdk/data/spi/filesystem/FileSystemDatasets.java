@@ -67,4 +67,23 @@ public class FileSystemDatasets {
     throw new IllegalArgumentException("Not a file system dataset: " + dataset);
   }
 
+  /**
+   * Merges the data files smaller than {@code smallFileSize} in each leaf
+   * partition of a {@link View} into files of about {@code targetFileSize}
+   * bytes, without rewriting larger files.
+   * @param view a view of a partitioned filesystem dataset
+   * @param smallFileSize files smaller than this many bytes are merged
+   * @param targetFileSize the target size in bytes for merged files
+   * @return the number of small files that were replaced
+   */
+  public static <E> long compactSmallFiles(View<E> view, long smallFileSize,
+                                           long targetFileSize) {
+    Dataset<E> dataset = view.getDataset();
+    if (dataset instanceof FileSystemDataset) {
+      return ((FileSystemDataset<E>) dataset)
+          .compactSmallFiles(view, smallFileSize, targetFileSize);
+    }
+    throw new IllegalArgumentException("Not a file system dataset: " + dataset);
+  }
+
 }
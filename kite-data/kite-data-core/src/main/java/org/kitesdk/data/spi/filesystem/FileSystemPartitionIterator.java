@@ -115,6 +115,20 @@ class FileSystemPartitionIterator implements
         predicate);
   }
 
+  /**
+   * Creates an iterator over partition directories that have already been
+   * listed, see {@link PartitionListingCache}.
+   */
+  FileSystemPartitionIterator(
+      FileSystem fs, Path root, PartitionStrategy strategy, Schema schema,
+      final Predicate<StorageKey> predicate, Iterable<List<String>> partitions) {
+    this.fs = fs;
+    this.rootDirectory = root;
+    this.iterator = Iterators.filter(
+        Iterators.transform(partitions.iterator(), new MakeKey(strategy, schema)),
+        predicate);
+  }
+
   @Override
   public boolean hasNext() {
     return iterator.hasNext();
@@ -27,6 +27,7 @@ import java.util.Iterator;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.fs.Path;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.PartitionStrategy;
@@ -91,6 +92,19 @@ class FileSystemPartitionView<E> extends FileSystemView<E>
     this.relativeLocation = relativeLocation;
   }
 
+  private FileSystemPartitionView(FileSystemPartitionView<?> view,
+                                  Schema projection, Class<E> type) {
+    super(view, projection, type);
+    this.location = view.location;
+    this.relativeLocation = view.relativeLocation;
+  }
+
+  @Override
+  public FileSystemPartitionView<GenericRecord> asSchema(Schema schema) {
+    return new FileSystemPartitionView<GenericRecord>(
+        this, schema, GenericRecord.class);
+  }
+
   @Override
   public URI getLocation() {
     return location.toUri();
@@ -36,6 +36,107 @@ public class FileSystemProperties {
    */
   public static final String WRITER_CACHE_SIZE_PROP = "kite.writer.cache-size";
 
+  /**
+   * Used to allow multiple threads to write to a partitioned dataset using a
+   * single writer. Each partition's file writer is used by one thread at a
+   * time, so threads share one open file per partition rather than opening
+   * files for each thread.
+   *
+   * Writers for datasets that are not partitioned are not thread-safe.
+   *
+   * The value should be a boolean.
+   */
+  public static final String WRITER_CONCURRENT_PROP = "kite.writer.concurrent";
+
+  /**
+   * Used to roll to a new data file once the current file reaches a target
+   * size in bytes. The size is checked after each record is written, so files
+   * may be slightly larger than the target.
+   *
+   * Parquet file sizes are estimated every 100 records from the bytes written
+   * and the size of the row group buffered in memory. This depends on the
+   * internals of Parquet 1.4.1, and writers for Parquet datasets are rejected
+   * if the size cannot be measured.
+   *
+   * The value should be a long. Files are not rolled by default.
+   */
+  public static final String TARGET_FILE_SIZE_PROP = "kite.writer.target-file-size";
+
+  /**
+   * Used to roll to a new data file once the current file contains a target
+   * number of records.
+   *
+   * The value should be a long. Files are not rolled by default.
+   */
+  public static final String TARGET_RECORD_COUNT_PROP = "kite.writer.target-record-count";
+
+  /**
+   * Used to limit the memory used by buffered Parquet row groups. The budget,
+   * in bytes, is shared by the partition writers of one dataset writer, and
+   * when their buffered row groups exceed it, the largest are written early.
+   * This allows partitioned writers to keep many Parquet files open at once.
+   *
+   * Parquet does not (currently) expose the size of buffered row groups or a
+   * way to write them early, so this uses private Parquet internals. These
+   * were verified against Parquet 1.4.1, the version Kite is built with, and
+   * are checked when writers are created. If they have changed, a warning is
+   * logged and memory is not managed.
+   *
+   * The value should be a long. Memory is not managed by default.
+   */
+  public static final String PARQUET_MEMORY_BUDGET_PROP = "kite.writer.parquet-memory-budget";
+
+  /**
+   * Used to close and commit data files in background threads. Files that
+   * are rolled, and partition writers that are evicted from the writer
+   * cache, are committed by up to this many threads while writes continue.
+   * Closing the writer waits for all pending commits and throws the first
+   * failure.
+   *
+   * The value should be an integer. Files are committed by the writing
+   * thread by default.
+   */
+  public static final String WRITER_COMMIT_THREADS_PROP = "kite.writer.commit-threads";
+
+  /**
+   * Used to cache partition directory listings for a dataset. Listings are
+   * reused for up to this many milliseconds. Partitions created by writers in
+   * the same JVM are added to the cached listing, and deletes, merges, and
+   * replaces invalidate it.
+   *
+   * The value should be a long. Listings are not cached by default.
+   */
+  public static final String LISTING_CACHE_TTL_PROP = "kite.listing.cache-ttl";
+
+  /**
+   * Used to list sibling partition directories in parallel. This also
+   * applies to the directory listings used by getSize and getLastModified.
+   *
+   * The value should be an integer. Directories are listed one at a time by
+   * default.
+   */
+  public static final String LISTING_PARALLELISM_PROP = "kite.listing.parallelism";
+
+  /**
+   * Used to keep a manifest of a dataset's data files in its metadata
+   * directory. Writers, merges, replaces, and deletes record changes in the
+   * manifest, and readers use it to find partitions and files instead of
+   * listing directories.
+   *
+   * The value should be a boolean.
+   */
+  public static final String MANIFEST_PROP = "kite.manifest.enabled";
+
+  /**
+   * Used to combine small input splits in MapReduce jobs. Splits that are
+   * smaller than this many bytes are packed, by host, into combined splits of
+   * up to this size that are read sequentially by a single task. This can
+   * also be set in the job configuration, which takes precedence.
+   *
+   * The value should be a long. Splits are not combined by default.
+   */
+  public static final String COMBINE_SPLIT_SIZE_PROP = "kite.splits.combine-size";
+
   /**
    * Used to enable CSV writing; for testing only.
    *
@@ -48,4 +149,15 @@ public class FileSystemProperties {
    * Used to enable record reuse, if supported by the implementation.
    */
   public static final String REUSE_RECORDS = "kite.reader.reuse-records";
+
+  /**
+   * Used to read multiple data files in parallel. When greater than 1, up to
+   * this many files are opened and decoded ahead of the caller on background
+   * threads. Records are still returned in file order.
+   *
+   * Records are not reused when reading in parallel.
+   *
+   * The value should be an integer. Files are read one at a time by default.
+   */
+  public static final String READER_PARALLELISM_PROP = "kite.reader.parallelism";
 }
@@ -18,18 +18,28 @@ package org.kitesdk.data.spi.filesystem;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import org.apache.avro.Schema;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.kitesdk.compat.DynMethods;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetIOException;
+import org.kitesdk.data.DatasetOperationException;
 import org.kitesdk.data.Format;
 import org.kitesdk.data.Formats;
 import org.kitesdk.data.PartitionStrategy;
@@ -48,6 +58,19 @@ public class FileSystemUtil {
   private static final List<Format> SUPPORTED_FORMATS = Lists.newArrayList(
       Formats.AVRO, Formats.PARQUET, Formats.JSON, Formats.CSV);
 
+  // the number of threads shared by all concurrent listStatus calls. when all
+  // are busy, the calling thread lists the directories itself
+  private static final int MAX_LISTING_THREADS = 32;
+
+  private static final ExecutorService LISTING_EXECUTOR =
+      new ThreadPoolExecutor(0, MAX_LISTING_THREADS,
+          60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("kite-list-status-%d")
+              .build(),
+          new ThreadPoolExecutor.CallerRunsPolicy());
+
   /**
    * Creates, if necessary, the given the location for {@code descriptor}.
    *
@@ -237,6 +260,77 @@ public class FileSystemUtil {
     }
   }
 
+  /**
+   * Lists the contents of each directory in {@code dirs}, using up to
+   * {@code parallelism} threads to list sibling directories concurrently.
+   * Threads are shared by all calls.
+   *
+   * @param fs a FileSystem
+   * @param dirs a List of directories to list
+   * @param filter an optional PathFilter
+   * @param parallelism the number of listStatus calls to run concurrently
+   * @return a List of listings, in the same order as {@code dirs}
+   */
+  static List<FileStatus[]> listStatus(final FileSystem fs,
+                                       final List<Path> dirs,
+                                       @Nullable final PathFilter filter,
+                                       int parallelism) {
+    List<FileStatus[]> listings = Lists.newArrayListWithCapacity(dirs.size());
+    if (parallelism <= 1 || dirs.size() <= 1) {
+      for (Path dir : dirs) {
+        listings.add(listStatus(fs, dir, filter));
+      }
+      return listings;
+    }
+
+    // each task lists every numTasks-th directory, so that at most
+    // parallelism directories are listed at once
+    final FileStatus[][] results = new FileStatus[dirs.size()][];
+    final int numTasks = Math.min(parallelism, dirs.size());
+    List<Future<?>> futures = Lists.newArrayListWithCapacity(numTasks);
+    try {
+      for (int i = 0; i < numTasks; i += 1) {
+        final int first = i;
+        futures.add(LISTING_EXECUTOR.submit(new Runnable() {
+          @Override
+          public void run() {
+            for (int d = first; d < dirs.size(); d += numTasks) {
+              results[d] = listStatus(fs, dirs.get(d), filter);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasetOperationException("Interrupted while listing files", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new DatasetOperationException(
+          "Cannot list directories", e.getCause());
+    } finally {
+      for (Future<?> future : futures) {
+        future.cancel(true /* stop listing after a failure */ );
+      }
+    }
+
+    for (FileStatus[] stats : results) {
+      listings.add(stats);
+    }
+    return listings;
+  }
+
+  private static FileStatus[] listStatus(FileSystem fs, Path dir,
+                                         @Nullable PathFilter filter) {
+    try {
+      return (filter != null ? fs.listStatus(dir, filter) : fs.listStatus(dir));
+    } catch (IOException e) {
+      throw new DatasetIOException("Cannot list directory: " + dir, e);
+    }
+  }
+
   public static Schema schema(String name, FileSystem fs, Path location) throws IOException {
     if (!fs.exists(location)) {
       return null;
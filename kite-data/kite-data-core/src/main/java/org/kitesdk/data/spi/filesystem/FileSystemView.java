@@ -18,22 +18,30 @@ package org.kitesdk.data.spi.filesystem;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import java.util.Iterator;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetException;
 import org.kitesdk.data.DatasetIOException;
 import org.kitesdk.data.DatasetReader;
 import org.kitesdk.data.DatasetWriter;
+import org.kitesdk.data.PartitionStrategy;
 import org.kitesdk.data.Signalable;
 import org.kitesdk.data.PartitionView;
+import org.kitesdk.data.impl.Accessor;
 import org.kitesdk.data.spi.AbstractDatasetReader;
 import org.kitesdk.data.spi.AbstractDatasetWriter;
 import org.kitesdk.data.spi.AbstractRefinableView;
 import org.kitesdk.data.spi.Constraints;
+import org.kitesdk.data.spi.DescriptorUtil;
 import org.kitesdk.data.spi.InputFormatAccessor;
 import org.kitesdk.data.spi.LastModifiedAccessor;
 import org.kitesdk.data.spi.PartitionListener;
+import org.kitesdk.data.spi.Projectable;
 import org.kitesdk.data.spi.SizeAccessor;
 import org.kitesdk.data.spi.StorageKey;
 import org.apache.hadoop.fs.FileStatus;
@@ -55,7 +63,7 @@ import org.slf4j.LoggerFactory;
  */
 @Immutable
 class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatAccessor<E>,
-    LastModifiedAccessor, SizeAccessor, Signalable<E> {
+    LastModifiedAccessor, SizeAccessor, Signalable<E>, Projectable {
 
   private static final Logger LOG = LoggerFactory.getLogger(FileSystemView.class);
 
@@ -66,12 +74,16 @@ class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatA
 
   private final SignalManager signalManager;
 
+  // the projection used to read GenericRecords, or null if not projected
+  private final Schema projection;
+
   FileSystemView(FileSystemDataset<E> dataset, @Nullable PartitionListener listener, @Nullable SignalManager signalManager, Class<E> type) {
     super(dataset, type);
     this.fs = dataset.getFileSystem();
     this.root = dataset.getDirectory();
     this.listener = listener;
     this.signalManager = signalManager;
+    this.projection = null;
   }
 
   FileSystemView(FileSystemView<E> view, Constraints c) {
@@ -80,6 +92,16 @@ class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatA
     this.root = view.root;
     this.listener = view.listener;
     this.signalManager = view.signalManager;
+    this.projection = view.projection;
+  }
+
+  FileSystemView(FileSystemView<?> view, Schema projection, Class<E> type) {
+    super(view, projection, type);
+    this.fs = view.fs;
+    this.root = view.root;
+    this.listener = view.listener;
+    this.signalManager = view.signalManager;
+    this.projection = projection;
   }
 
   @Override
@@ -87,16 +109,38 @@ class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatA
     return new FileSystemView<E>(this, c);
   }
 
+  @Override
+  public FileSystemView<GenericRecord> asSchema(Schema schema) {
+    return new FileSystemView<GenericRecord>(this, schema, GenericRecord.class);
+  }
+
+  Schema getProjection() {
+    return projection;
+  }
+
   @Override
   public DatasetReader<E> newReader() {
-    AbstractDatasetReader<E> reader = new MultiFileDatasetReader<E>(fs,
-        pathIterator(), dataset.getDescriptor(), constraints, getAccessor());
+    DatasetDescriptor descriptor = dataset.getDescriptor();
+    int parallelism = DescriptorUtil.getInt(
+        FileSystemProperties.READER_PARALLELISM_PROP, descriptor, 1);
+    AbstractDatasetReader<E> reader;
+    if (parallelism > 1) {
+      reader = new ParallelMultiFileDatasetReader<E>(fs, pathIterator(),
+          descriptor, constraints, getAccessor(), parallelism);
+    } else {
+      reader = new MultiFileDatasetReader<E>(fs, pathIterator(),
+          descriptor, constraints, getAccessor());
+    }
     reader.initialize();
     return reader;
   }
 
   @Override
   public DatasetWriter<E> newWriter() {
+    if (projection != null) {
+      throw new UnsupportedOperationException(
+          "Cannot write to a projected view: " + this);
+    }
     AbstractDatasetWriter<E> writer;
     if (dataset.getDescriptor().isPartitioned()) {
       writer = PartitionedDatasetWriter.newWriter(this);
@@ -120,9 +164,15 @@ class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatA
                 @edu.umd.cs.findbugs.annotations.SuppressWarnings(
                     value="NP_PARAMETER_MUST_BE_NONNULL_BUT_MARKED_AS_NULLABLE",
                     justification="False positive, initialized above as non-null.")
+                @SuppressWarnings("unchecked")
                 public PartitionView<E> apply(@Nullable StorageKey key) {
-                  return FileSystemPartitionView.getPartition(
-                      fsDataset.unbounded, key.getPath());
+                  FileSystemPartitionView<E> partition = FileSystemPartitionView
+                      .getPartition(fsDataset.unbounded, key.getPath());
+                  if (projection != null) {
+                    // entities in this view are GenericRecords
+                    return (PartitionView<E>) partition.asSchema(projection);
+                  }
+                  return partition;
                 }
               });
         }
@@ -131,7 +181,13 @@ class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatA
     } else {
       return new Iterable<PartitionView<E>>() {
         @Override
+        @SuppressWarnings("unchecked")
         public Iterator<PartitionView<E>> iterator() {
+          if (projection != null) {
+            // entities in this view are GenericRecords
+            return Iterators.singletonIterator((PartitionView<E>)
+                fsDataset.unbounded.asSchema(projection));
+          }
           return Iterators.singletonIterator((PartitionView<E>) fsDataset.unbounded);
         }
       };
@@ -153,13 +209,41 @@ class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatA
   }
 
   PathIterator pathIterator() {
+    DatasetManifest.Contents manifest = manifest();
     if (dataset.getDescriptor().isPartitioned()) {
-      return new PathIterator(fs, root, partitionIterator());
+      return new PathIterator(fs, root, partitionIterator(manifest), manifest);
     } else {
-      return new PathIterator(fs, root, null);
+      return new PathIterator(fs, root, null, manifest);
     }
   }
 
+  /**
+   * Returns the contents of the dataset's manifest, or null if the manifest
+   * is not enabled or has not been built.
+   */
+  @Nullable
+  private DatasetManifest.Contents manifest() {
+    DatasetManifest manifest = DatasetManifest.forDescriptor(
+        fs, dataset.getDescriptor());
+    return (manifest != null ? manifest.load() : null);
+  }
+
+  /**
+   * Returns the manifest entries for data files in this view.
+   */
+  private List<DatasetManifest.Entry> manifestEntries(
+      DatasetManifest.Contents manifest) {
+    List<DatasetManifest.Entry> entries = Lists.newArrayList();
+    if (dataset.getDescriptor().isPartitioned()) {
+      for (StorageKey key : partitionIterator(manifest)) {
+        entries.addAll(manifest.entries(key.getPath()));
+      }
+    } else {
+      entries.addAll(manifest.entries(null));
+    }
+    return entries;
+  }
+
   /**
    * Returns an iterator that provides all leaf-level directories in this view.
    *
@@ -182,7 +266,31 @@ class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatA
   }
 
   private FileSystemPartitionIterator partitionIterator() {
+    return partitionIterator(manifest());
+  }
+
+  private FileSystemPartitionIterator partitionIterator(
+      @Nullable DatasetManifest.Contents manifest) {
     DatasetDescriptor descriptor = dataset.getDescriptor();
+    if (manifest != null) {
+      PartitionStrategy strategy = descriptor.getPartitionStrategy();
+      return new FileSystemPartitionIterator(fs, root, strategy,
+          descriptor.getSchema(), getKeyPredicate(), manifest.partitions(
+              Accessor.getDefault().getFieldPartitioners(strategy).size()));
+    }
+
+    long ttl = DescriptorUtil.getLong(
+        FileSystemProperties.LISTING_CACHE_TTL_PROP, descriptor, 0);
+    int parallelism = listingParallelism();
+    if (ttl > 0 || parallelism > 1) {
+      PartitionStrategy strategy = descriptor.getPartitionStrategy();
+      Iterable<List<String>> partitions = PartitionListingCache.partitions(
+          fs, root, Accessor.getDefault().getFieldPartitioners(strategy).size(),
+          ttl, parallelism);
+      return new FileSystemPartitionIterator(fs, root, strategy,
+          descriptor.getSchema(), getKeyPredicate(), partitions);
+    }
+
     try {
       return new FileSystemPartitionIterator(
           fs, root, descriptor.getPartitionStrategy(), descriptor.getSchema(),
@@ -192,41 +300,74 @@ class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatA
     }
   }
 
+  private int listingParallelism() {
+    return DescriptorUtil.getInt(FileSystemProperties.LISTING_PARALLELISM_PROP,
+        dataset.getDescriptor(), 1);
+  }
+
   boolean deleteAllUnsafe() {
     boolean deleted = false;
+    List<Path> removed = Lists.newArrayList();
     if (dataset.getDescriptor().isPartitioned()) {
-      for (StorageKey key : partitionIterator()) {
+      // list the current partitions rather than a cached listing or manifest
+      PartitionListingCache.invalidate(fs, root);
+      List<String> partitions = Lists.newArrayList();
+      for (StorageKey key : partitionIterator(null)) {
         deleted = FileSystemUtil.cleanlyDelete(fs, root, key.getPath()) || deleted;
+        removed.add(new Path(root, key.getPath()));
 
-        if (listener != null) {
-
-          // the relative path is the partition name, so we can simply delete it
-          // in Hive
-          listener.partitionDeleted(dataset.getNamespace(),
-              dataset.getName(), key.getPath().toString());
-        }
+        // the relative path is the partition name, so we can simply delete it
+        // in Hive
+        partitions.add(key.getPath().toString());
+      }
+      PartitionListingCache.invalidate(fs, root);
 
+      if (listener != null) {
+        PartitionListeners.deleted(listener, dataset.getNamespace(),
+            dataset.getName(), partitions);
       }
     }
     else {
-      for (Path path : pathIterator()) {
+      for (Path path : new PathIterator(fs, root, null)) {
         deleted = FileSystemUtil.cleanlyDelete(fs, root, path) || deleted;
+        removed.add(path);
       }
     }
+
+    DatasetManifest manifest = DatasetManifest.forDescriptor(
+        fs, dataset.getDescriptor());
+    if (manifest != null) {
+      manifest.removed(removed);
+    }
+
     return deleted;
   }
 
   @Override
   public long getSize() {
     long size = 0;
-    for (Iterator<Path> i = dirIterator(); i.hasNext(); ) {
-      Path dir = i.next();
-      try {
-        for (FileStatus st : fs.listStatus(dir)) {
+    DatasetManifest.Contents manifest = manifest();
+    if (manifest != null) {
+      for (DatasetManifest.Entry entry : manifestEntries(manifest)) {
+        size += entry.getSize();
+      }
+    } else if (listingParallelism() > 1) {
+      for (FileStatus[] stats : FileSystemUtil.listStatus(fs,
+          Lists.newArrayList(dirIterator()), null, listingParallelism())) {
+        for (FileStatus st : stats) {
           size += st.getLen();
         }
-      } catch (IOException e) {
-        throw new DatasetIOException("Cannot find size of " + dir, e);
+      }
+    } else {
+      for (Iterator<Path> i = dirIterator(); i.hasNext(); ) {
+        Path dir = i.next();
+        try {
+          for (FileStatus st : fs.listStatus(dir)) {
+            size += st.getLen();
+          }
+        } catch (IOException e) {
+          throw new DatasetIOException("Cannot find size of " + dir, e);
+        }
       }
     }
     return size;
@@ -235,16 +376,34 @@ class FileSystemView<E> extends AbstractRefinableView<E> implements InputFormatA
   @Override
   public long getLastModified() {
     long lastMod = -1;
-    for (Iterator<Path> i = dirIterator(); i.hasNext(); ) {
-      Path dir = i.next();
-      try {
-        for (FileStatus st : fs.listStatus(dir)) {
+    DatasetManifest.Contents manifest = manifest();
+    if (manifest != null) {
+      for (DatasetManifest.Entry entry : manifestEntries(manifest)) {
+        if (lastMod < entry.getModified()) {
+          lastMod = entry.getModified();
+        }
+      }
+    } else if (listingParallelism() > 1) {
+      for (FileStatus[] stats : FileSystemUtil.listStatus(fs,
+          Lists.newArrayList(dirIterator()), null, listingParallelism())) {
+        for (FileStatus st : stats) {
           if (lastMod < st.getModificationTime()) {
             lastMod = st.getModificationTime();
           }
         }
-      } catch (IOException e) {
-        throw new DatasetIOException("Cannot find last modified time of of " + dir, e);
+      }
+    } else {
+      for (Iterator<Path> i = dirIterator(); i.hasNext(); ) {
+        Path dir = i.next();
+        try {
+          for (FileStatus st : fs.listStatus(dir)) {
+            if (lastMod < st.getModificationTime()) {
+              lastMod = st.getModificationTime();
+            }
+          }
+        } catch (IOException e) {
+          throw new DatasetIOException("Cannot find last modified time of of " + dir, e);
+        }
       }
     }
 
@@ -20,6 +20,8 @@ import com.google.common.collect.Lists;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.hadoop.io.AvroSerialization;
 import org.apache.avro.mapred.AvroKey;
 import org.apache.avro.mapreduce.AvroJob;
@@ -43,6 +45,7 @@ import org.kitesdk.data.Formats;
 import org.kitesdk.data.spi.AbstractKeyRecordReaderWrapper;
 import org.kitesdk.data.spi.AbstractRefinableView;
 import org.kitesdk.data.spi.DataModelUtil;
+import org.kitesdk.data.spi.DescriptorUtil;
 import org.kitesdk.data.spi.FilteredRecordReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -102,12 +105,49 @@ class FileSystemViewKeyInputFormat<E> extends InputFormat<E, Void> {
     this((FileSystemDataset<E>) view.getDataset(), conf);
     this.view = view;
     LOG.debug("View: {}", view);
+
+    Schema projection = view.getProjection();
+    if (projection != null) {
+      Format format = dataset.getDescriptor().getFormat();
+      if (Formats.AVRO.equals(format)) {
+        setModel.invoke(conf, GenericData.class);
+        conf.set(AVRO_SCHEMA_INPUT_KEY, projection.toString());
+      } else if (Formats.PARQUET.equals(format)) {
+        AvroReadSupport.setAvroReadSchema(conf, projection);
+        Schema columns = ParquetFilters.projection(
+            dataset.getDescriptor().getSchema(), projection);
+        if (columns != null) {
+          AvroReadSupport.setRequestedProjection(conf, columns);
+        }
+      }
+    }
   }
 
   @Override
-  @SuppressWarnings({"unchecked", "deprecation"})
   public List<InputSplit> getSplits(JobContext jobContext) throws IOException {
     Configuration conf = Hadoop.JobContext.getConfiguration.invoke(jobContext);
+    List<InputSplit> splits = getFileSplits(jobContext, conf);
+
+    long combineSize = conf.getLong(FileSystemProperties.COMBINE_SPLIT_SIZE_PROP,
+        DescriptorUtil.getLong(FileSystemProperties.COMBINE_SPLIT_SIZE_PROP,
+            dataset.getDescriptor(), 0));
+    if (combineSize > 0 && splits.size() > 1) {
+      try {
+        List<InputSplit> combined = CombinedInputSplit.combine(splits, combineSize);
+        LOG.debug("Combined {} splits into {}", splits.size(), combined.size());
+        return combined;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while combining splits", e);
+      }
+    }
+
+    return splits;
+  }
+
+  @SuppressWarnings({"unchecked", "deprecation"})
+  private List<InputSplit> getFileSplits(JobContext jobContext,
+                                         Configuration conf) throws IOException {
     Job job = new Job(conf);
     Format format = dataset.getDescriptor().getFormat();
 
@@ -159,8 +199,13 @@ class FileSystemViewKeyInputFormat<E> extends InputFormat<E, Void> {
   @Override
   public RecordReader<E, Void> createRecordReader(InputSplit inputSplit,
       TaskAttemptContext taskAttemptContext) throws IOException, InterruptedException {
-    RecordReader<E, Void> unfilteredRecordReader = createUnfilteredRecordReader
-        (inputSplit, taskAttemptContext);
+    RecordReader<E, Void> unfilteredRecordReader;
+    if (inputSplit instanceof CombinedInputSplit) {
+      unfilteredRecordReader = new CombinedRecordReader();
+    } else {
+      unfilteredRecordReader = createUnfilteredRecordReader(
+          inputSplit, taskAttemptContext);
+    }
     if (view != null) {
       // use the constraints to filter out entities from the reader
       return new FilteredRecordReader<E>(unfilteredRecordReader,
@@ -195,6 +240,77 @@ class FileSystemViewKeyInputFormat<E> extends InputFormat<E, Void> {
     }
   }
 
+  /**
+   * Reads each split in a {@link CombinedInputSplit} in order, using a new
+   * record reader for each.
+   */
+  private class CombinedRecordReader extends RecordReader<E, Void> {
+    private TaskAttemptContext context = null;
+    private Iterator<InputSplit> splits = null;
+    private RecordReader<E, Void> current = null;
+    private long totalLength = 0;
+    private long finishedLength = 0;
+    private long currentLength = 0;
+
+    @Override
+    public void initialize(InputSplit inputSplit, TaskAttemptContext context)
+        throws IOException, InterruptedException {
+      CombinedInputSplit combined = (CombinedInputSplit) inputSplit;
+      this.context = context;
+      this.splits = combined.getSplits().iterator();
+      this.totalLength = combined.getLength();
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+      while (current == null || !current.nextKeyValue()) {
+        if (current != null) {
+          current.close();
+          this.current = null;
+          this.finishedLength += currentLength;
+        }
+        if (!splits.hasNext()) {
+          return false;
+        }
+        InputSplit split = splits.next();
+        this.currentLength = split.getLength();
+        this.current = createUnfilteredRecordReader(split, context);
+        current.initialize(split, context);
+      }
+      return true;
+    }
+
+    @Override
+    public E getCurrentKey() throws IOException, InterruptedException {
+      return current.getCurrentKey();
+    }
+
+    @Override
+    public Void getCurrentValue() throws IOException, InterruptedException {
+      return null;
+    }
+
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+      if (totalLength <= 0) {
+        return 0.0f;
+      }
+      float read = finishedLength;
+      if (current != null) {
+        read += current.getProgress() * currentLength;
+      }
+      return Math.min(1.0f, read / totalLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (current != null) {
+        current.close();
+        this.current = null;
+      }
+    }
+  }
+
   private static class AvroKeyReaderWrapper<E> extends
       AbstractKeyRecordReaderWrapper<E, AvroKey<E>, NullWritable> {
     public AvroKeyReaderWrapper(AvroKeyInputFormat<E> inputFormat) {
@@ -24,6 +24,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Set;
 import java.util.UUID;
+import javax.annotation.Nullable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -64,15 +65,22 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
   static interface FileAppender<E> extends java.io.Flushable, Closeable {
     public void open() throws IOException;
     public void append(E entity) throws IOException;
+    public long pos() throws IOException;
     public void sync() throws IOException;
     public void cleanup() throws IOException;
   }
 
   private final Path directory;
   private final DatasetDescriptor descriptor;
+  private final long targetFileSize;
+  private final long targetRecordCount;
+  private final DatasetManifest manifest;
+  private final BackgroundCommitter committer;
+  private final boolean ownsCommitter;
+  private final ParquetMemoryManager memoryManager;
   private Path tempPath;
   private Path finalPath;
-  private int count = 0;
+  private long count = 0;
 
   protected final FileSystem fs;
   protected FileAppender<E> appender;
@@ -84,7 +92,9 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
   @VisibleForTesting
   final Configuration conf;
 
-  private FileSystemWriter(FileSystem fs, Path path, DatasetDescriptor descriptor) {
+  private FileSystemWriter(FileSystem fs, Path path, DatasetDescriptor descriptor,
+                           @Nullable BackgroundCommitter committer,
+                           @Nullable ParquetMemoryManager memoryManager) {
     Preconditions.checkNotNull(fs, "File system is not defined");
     Preconditions.checkNotNull(path, "Destination directory is not defined");
     Preconditions.checkNotNull(descriptor, "Descriptor is not defined");
@@ -93,6 +103,25 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
     this.descriptor = descriptor;
     this.conf = new Configuration(fs.getConf());
     this.state = ReaderWriterState.NEW;
+    this.targetFileSize = DescriptorUtil.getLong(
+        FileSystemProperties.TARGET_FILE_SIZE_PROP, descriptor, -1);
+    this.targetRecordCount = DescriptorUtil.getLong(
+        FileSystemProperties.TARGET_RECORD_COUNT_PROP, descriptor, -1);
+    ValidationException.check(targetFileSize <= 0 ||
+        !Formats.PARQUET.equals(descriptor.getFormat()) ||
+        ParquetAppender.canMeasureSize(),
+        "Cannot roll Parquet files by size with this version of Parquet: %s",
+        FileSystemProperties.TARGET_FILE_SIZE_PROP);
+    this.manifest = DatasetManifest.forDescriptor(fs, descriptor);
+    if (committer != null) {
+      this.committer = committer;
+      this.ownsCommitter = false;
+    } else {
+      this.committer = BackgroundCommitter.forDescriptor(descriptor);
+      this.ownsCommitter = (this.committer != null);
+    }
+    this.memoryManager = (memoryManager != null ? memoryManager :
+        ParquetMemoryManager.forDescriptor(descriptor));
 
     // copy file format settings from custom properties to the Configuration
     for (String prop : descriptor.listProperties()) {
@@ -120,6 +149,12 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
       throw new DatasetIOException("Failed to create path " + directory, ex);
     }
 
+    openAppender();
+
+    this.state = ReaderWriterState.OPEN;
+  }
+
+  private void openAppender() {
     // initialize paths
     try {
       this.finalPath = new Path(directory, uniqueFilename(descriptor.getFormat()));
@@ -145,8 +180,6 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
     this.count = 0;
 
     LOG.info("Opened output appender {} for {}", appender, finalPath);
-
-    this.state = ReaderWriterState.OPEN;
   }
 
   @Override
@@ -167,6 +200,39 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
       throw new DatasetIOException(
           "Failed to append " + entity + " to " + appender, e);
     }
+
+    if (targetFileSize > 0 || targetRecordCount > 0) {
+      rollIfTargetReached();
+    }
+  }
+
+  /**
+   * Commits the current file and opens a new one if the current file has
+   * reached the target size or record count.
+   */
+  private void rollIfTargetReached() {
+    try {
+      if ((targetRecordCount > 0 && count >= targetRecordCount) ||
+          (targetFileSize > 0 && appender.pos() >= targetFileSize)) {
+        LOG.debug("Rolling {} after {} entities", finalPath, count);
+        // the state is OPEN, so the rolled file is committed if not empty
+        PendingFile rolled = new PendingFile(true, count > 0);
+        // concurrent writers roll while holding this writer's lock, which
+        // queued commits of evicted writers may need, so never wait for the
+        // committer. the rolled file does not need the lock to be committed.
+        if (committer == null || !committer.trySubmit(rolled)) {
+          rolled.run();
+        }
+        this.flushed = false;
+        openAppender();
+      }
+    } catch (RuntimeException e) {
+      this.state = ReaderWriterState.ERROR;
+      throw e;
+    } catch (IOException e) {
+      this.state = ReaderWriterState.ERROR;
+      throw new DatasetIOException("Failed to roll appender " + appender, e);
+    }
   }
 
   @Override
@@ -179,63 +245,144 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
 
       // Only try to close the appender if not in an error state. Any calls to
       // flush and sync must produce recoverable data without a call to close.
-      if (!ReaderWriterState.ERROR.equals(state)) {
-        try {
-          appender.close();
-        } catch (RuntimeException e) {
-          throw new DatasetOperationException(e,
-              "Failed to close appender %s", appender);
-        } catch (IOException e) {
-          throw new DatasetIOException("Failed to close appender " + appender, e);
-        }
+      // Make the file visible if any data was written and either some data
+      // has been flushed or the writer is not in an error state. Only
+      // instances of IncrementalWriter set flushed to true.
+      new PendingFile(!ReaderWriterState.ERROR.equals(state),
+          count > 0 && (flushed || ReaderWriterState.OPEN.equals(state)))
+          .run();
+
+      if (ownsCommitter) {
+        // wait for rolled files and surface any failures
+        committer.await();
       }
 
-      // Make the file visible if any data was written and either some data has
-      // been flushed or the writer is not in an error state. Only instances of
-      // IncrementalWriter set flushed to true.
-      if (count > 0 && (flushed || ReaderWriterState.OPEN.equals(state))) {
-        // commit the temp file
-        try {
-          if (!fs.rename(tempPath, finalPath)) {
-            throw new DatasetOperationException(
-                "Failed to move %s to %s", tempPath, finalPath);
+    } finally {
+      this.state = ReaderWriterState.CLOSED;
+      if (ownsCommitter) {
+        committer.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Closes, commits or discards, and cleans up a file. This holds the
+   * appender and paths so that the writer can open a new file before a
+   * rolled file is committed by a {@link BackgroundCommitter}.
+   */
+  private class PendingFile implements Runnable {
+    private final FileAppender<E> appender;
+    private final Path tempPath;
+    private final Path finalPath;
+    private final long count;
+    private final boolean close;
+    private final boolean commit;
+
+    private PendingFile(boolean close, boolean commit) {
+      this.appender = FileSystemWriter.this.appender;
+      this.tempPath = FileSystemWriter.this.tempPath;
+      this.finalPath = FileSystemWriter.this.finalPath;
+      this.count = FileSystemWriter.this.count;
+      this.close = close;
+      this.commit = commit;
+    }
+
+    @Override
+    public void run() {
+      if (close) {
+        closeAppender(appender);
+      }
+      try {
+        commitOrDiscard(appender, tempPath, finalPath, count, commit);
+      } catch (RuntimeException e) {
+        if (!close && !commit) {
+          // the file is not used either way, so release the appender's
+          // resources even though the temp file could not be removed
+          try {
+            appender.cleanup();
+          } catch (IOException cleanupException) {
+            LOG.warn("Failed to clean up " + appender, cleanupException);
           }
-        } catch (RuntimeException e) {
-          throw new DatasetOperationException(e,
-              "Failed to commit %s", finalPath);
-        } catch (IOException e) {
-          throw new DatasetIOException("Failed to commit " + finalPath, e);
         }
+        throw e;
+      }
+      cleanupAppender(appender);
+    }
+
+    @Override
+    public String toString() {
+      return finalPath.toString();
+    }
+  }
 
-        LOG.debug("Committed {} for appender {} ({} entities)",
-            new Object[]{finalPath, appender, count});
+  private static void closeAppender(FileAppender<?> appender) {
+    try {
+      appender.close();
+    } catch (RuntimeException e) {
+      throw new DatasetOperationException(e,
+          "Failed to close appender %s", appender);
+    } catch (IOException e) {
+      throw new DatasetIOException("Failed to close appender " + appender, e);
+    }
+  }
 
-      } else {
-        // discard the temp file
-        try {
-          if (!fs.delete(tempPath, true)) {
-            throw new DatasetOperationException(
-                "Failed to delete %s", tempPath);
-          }
-        } catch (RuntimeException e) {
-          throw new DatasetOperationException(e,
-              "Failed to remove temporary file %s", tempPath);
-        } catch (IOException e) {
-          throw new DatasetIOException(
-              "Failed to remove temporary file " + tempPath, e);
+  private void commitOrDiscard(FileAppender<?> appender, Path tempPath,
+                               Path finalPath, long count, boolean commit) {
+    if (commit) {
+      // commit the temp file
+      try {
+        if (!fs.rename(tempPath, finalPath)) {
+          throw new DatasetOperationException(
+              "Failed to move %s to %s", tempPath, finalPath);
         }
+      } catch (RuntimeException e) {
+        throw new DatasetOperationException(e,
+            "Failed to commit %s", finalPath);
+      } catch (IOException e) {
+        throw new DatasetIOException("Failed to commit " + finalPath, e);
+      }
 
-        LOG.debug("Discarded {} ({} entities)", tempPath, count);
+      LOG.debug("Committed {} for appender {} ({} entities)",
+          new Object[]{finalPath, appender, count});
+
+      if (manifest != null) {
+        manifest.added(finalPath, count);
       }
 
+    } else {
+      // discard the temp file
       try {
-        appender.cleanup();
+        if (!fs.delete(tempPath, true)) {
+          throw new DatasetOperationException(
+              "Failed to delete %s", tempPath);
+        }
+      } catch (RuntimeException e) {
+        throw new DatasetOperationException(e,
+            "Failed to remove temporary file %s", tempPath);
       } catch (IOException e) {
-        throw new DatasetIOException("Failed to clean up " + appender, e);
+        throw new DatasetIOException(
+            "Failed to remove temporary file " + tempPath, e);
       }
 
-    } finally {
-      this.state = ReaderWriterState.CLOSED;
+      LOG.debug("Discarded {} ({} entities)", tempPath, count);
+    }
+  }
+
+  private static void cleanupAppender(FileAppender<?> appender) {
+    try {
+      appender.cleanup();
+    } catch (IOException e) {
+      throw new DatasetIOException("Failed to clean up " + appender, e);
+    }
+  }
+
+  boolean ownsCommitter() {
+    return ownsCommitter;
+  }
+
+  void awaitCommits() {
+    if (committer != null) {
+      committer.await();
     }
   }
 
@@ -261,11 +408,12 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
       if (DescriptorUtil.isDisabled(
           FileSystemProperties.NON_DURABLE_PARQUET_PROP, descriptor)) {
         return (FileAppender<E>) new DurableParquetAppender(
-            fs, temp, descriptor.getSchema(), conf, descriptor.getCompressionType());
+            fs, temp, descriptor.getSchema(), conf, descriptor.getCompressionType(),
+            memoryManager);
       } else {
         return (FileAppender<E>) new ParquetAppender(
             fs, temp, descriptor.getSchema(), conf,
-            descriptor.getCompressionType());
+            descriptor.getCompressionType(), memoryManager);
       }
     } else if (Formats.AVRO.equals(format)) {
       return new AvroAppender<E>(fs, temp, descriptor.getSchema(),
@@ -281,27 +429,48 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
 
   static <E> FileSystemWriter<E> newWriter(FileSystem fs, Path path,
                                            DatasetDescriptor descriptor) {
+    return newWriter(fs, path, descriptor, null, null);
+  }
+
+  /**
+   * Creates a writer that commits rolled files using a shared committer and
+   * limits buffered Parquet row groups using a shared memory manager. If
+   * the committer is null, the writer will create its own if
+   * {@link FileSystemProperties#WRITER_COMMIT_THREADS_PROP} is set. If the
+   * memory manager is null, the writer will create its own if
+   * {@link FileSystemProperties#PARQUET_MEMORY_BUDGET_PROP} is set.
+   */
+  static <E> FileSystemWriter<E> newWriter(FileSystem fs, Path path,
+                                           DatasetDescriptor descriptor,
+                                           @Nullable BackgroundCommitter committer,
+                                           @Nullable ParquetMemoryManager memoryManager) {
     Format format = descriptor.getFormat();
     if (Formats.PARQUET.equals(format)) {
       // by default, Parquet is not durable
       if (DescriptorUtil.isDisabled(
           FileSystemProperties.NON_DURABLE_PARQUET_PROP, descriptor)) {
-        return new IncrementalWriter<E>(fs, path, descriptor);
+        return new IncrementalWriter<E>(fs, path, descriptor, committer,
+            memoryManager);
       } else {
-        return new FileSystemWriter<E>(fs, path, descriptor);
+        return new FileSystemWriter<E>(fs, path, descriptor, committer,
+            memoryManager);
       }
     } else if (Formats.AVRO.equals(format) || Formats.CSV.equals(format)) {
-      return new IncrementalWriter<E>(fs, path, descriptor);
+      return new IncrementalWriter<E>(fs, path, descriptor, committer,
+          memoryManager);
     } else {
-      return new FileSystemWriter<E>(fs, path, descriptor);
+      return new FileSystemWriter<E>(fs, path, descriptor, committer,
+          memoryManager);
     }
   }
 
   static class IncrementalWriter<E> extends FileSystemWriter<E>
       implements Flushable, Syncable {
     private IncrementalWriter(FileSystem fs, Path path,
-                              DatasetDescriptor descriptor) {
-      super(fs, path, descriptor);
+                              DatasetDescriptor descriptor,
+                              @Nullable BackgroundCommitter committer,
+                              @Nullable ParquetMemoryManager memoryManager) {
+      super(fs, path, descriptor, committer, memoryManager);
     }
 
     @Override
@@ -336,6 +505,12 @@ class FileSystemWriter<E> extends AbstractDatasetWriter<E> {
         this.state = ReaderWriterState.ERROR;
         throw new DatasetIOException("Failed to sync appender " + appender, e);
       }
+
+      // rolled files are durable once they are committed. when the committer
+      // is shared, the owner waits for it.
+      if (ownsCommitter()) {
+        awaitCommits();
+      }
     }
   }
 
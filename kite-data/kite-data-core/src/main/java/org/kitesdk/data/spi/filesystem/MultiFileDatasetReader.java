@@ -18,6 +18,8 @@ package org.kitesdk.data.spi.filesystem;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.avro.Schema;
 import org.apache.hadoop.fs.Path;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.Format;
@@ -27,6 +29,7 @@ import org.kitesdk.data.spi.AbstractDatasetReader;
 import org.kitesdk.data.spi.Constraints;
 import org.kitesdk.data.spi.EntityAccessor;
 import org.kitesdk.data.spi.ReaderWriterState;
+import org.kitesdk.data.spi.StorageKey;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.fs.FileSystem;
@@ -36,7 +39,7 @@ import java.util.NoSuchElementException;
 
 class MultiFileDatasetReader<E> extends AbstractDatasetReader<E> {
 
-  private static final Set<Format> SUPPORTED_FORMATS = Sets.newHashSet(
+  static final Set<Format> SUPPORTED_FORMATS = Sets.newHashSet(
       Formats.AVRO, Formats.PARQUET, Formats.CSV, Formats.JSON,
       Formats.INPUTFORMAT
   );
@@ -45,6 +48,7 @@ class MultiFileDatasetReader<E> extends AbstractDatasetReader<E> {
   private final DatasetDescriptor descriptor;
   private final Constraints constraints;
   private final EntityAccessor<E> accessor;
+  private final Schema projection;
 
   private final Iterator<Path> filesIter;
   private final PathIterator pathIter;
@@ -71,6 +75,7 @@ class MultiFileDatasetReader<E> extends AbstractDatasetReader<E> {
       this.pathIter = null;
     }
     this.accessor = accessor;
+    this.projection = projection(descriptor, accessor);
   }
 
   @Override
@@ -86,27 +91,56 @@ class MultiFileDatasetReader<E> extends AbstractDatasetReader<E> {
     this.state = ReaderWriterState.OPEN;
   }
 
-  @SuppressWarnings("unchecked") // See https://github.com/Parquet/parquet-mr/issues/106
   private void openNextReader() {
+    Path path = filesIter.next();
+    StorageKey key = (pathIter != null ? pathIter.getStorageKey() : null);
+    this.reader = newFileReader(fileSystem, path, key, descriptor,
+        constraints, accessor, projection);
+    reader.initialize();
+    this.readerIterator = Iterators.filter(reader,
+        constraints.toEntityPredicate(key, accessor));
+  }
+
+  /**
+   * Returns the Parquet projection for reading entities with the accessor's
+   * schema, or null if files are not projected.
+   */
+  static Schema projection(DatasetDescriptor descriptor,
+                           EntityAccessor<?> accessor) {
     if (Formats.PARQUET.equals(descriptor.getFormat())) {
-      this.reader = new ParquetFileSystemDatasetReader(fileSystem,
-          filesIter.next(), accessor.getEntitySchema(), accessor.getType());
+      return ParquetFilters.projection(
+          descriptor.getSchema(), accessor.getEntitySchema());
+    }
+    return null;
+  }
+
+  /**
+   * Returns a new, uninitialized reader for a single data file.
+   * <p>
+   * Constraints are pushed down to the file reader where the format supports
+   * it, but callers must still filter entities using
+   * {@link Constraints#toEntityPredicate(StorageKey, EntityAccessor)}.
+   */
+  @SuppressWarnings("unchecked") // See https://github.com/Parquet/parquet-mr/issues/106
+  static <E> AbstractDatasetReader<E> newFileReader(
+      FileSystem fileSystem, Path path, @Nullable StorageKey key,
+      DatasetDescriptor descriptor, Constraints constraints,
+      EntityAccessor<E> accessor, @Nullable Schema projection) {
+    if (Formats.PARQUET.equals(descriptor.getFormat())) {
+      return new ParquetFileSystemDatasetReader(fileSystem, path,
+          accessor.getEntitySchema(), accessor.getType(), projection,
+          ParquetFilters.recordFilter(constraints.toPredicateMap(key),
+              projection != null ? projection : descriptor.getSchema()));
     } else if (Formats.JSON.equals(descriptor.getFormat())) {
-      this.reader = new JSONFileReader<E>(
-          fileSystem, filesIter.next(), accessor);
+      return new JSONFileReader<E>(fileSystem, path, accessor);
     } else if (Formats.CSV.equals(descriptor.getFormat())) {
-      this.reader = new CSVFileReader<E>(fileSystem, filesIter.next(),
-          descriptor, accessor);
+      return new CSVFileReader<E>(fileSystem, path, descriptor, accessor);
     } else if (Formats.INPUTFORMAT.equals(descriptor.getFormat())) {
-      this.reader = new InputFormatReader(fileSystem, filesIter.next(), descriptor);
+      return new InputFormatReader(fileSystem, path, descriptor);
     } else {
-      this.reader = new FileSystemDatasetReader<E>(fileSystem, filesIter.next(),
+      return new FileSystemDatasetReader<E>(fileSystem, path,
           accessor.getEntitySchema(), accessor.getType());
     }
-    reader.initialize();
-    this.readerIterator = Iterators.filter(reader,
-        constraints.toEntityPredicate(
-            (pathIter != null ? pathIter.getStorageKey() : null), accessor));
   }
 
   @Override
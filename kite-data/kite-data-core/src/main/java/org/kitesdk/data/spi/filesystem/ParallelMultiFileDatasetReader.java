@@ -0,0 +1,305 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+import org.apache.avro.Schema;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.kitesdk.data.DatasetDescriptor;
+import org.kitesdk.data.DatasetOperationException;
+import org.kitesdk.data.Format;
+import org.kitesdk.data.UnknownFormatException;
+import org.kitesdk.data.spi.AbstractDatasetReader;
+import org.kitesdk.data.spi.Constraints;
+import org.kitesdk.data.spi.DescriptorUtil;
+import org.kitesdk.data.spi.EntityAccessor;
+import org.kitesdk.data.spi.ReaderWriterState;
+import org.kitesdk.data.spi.StorageKey;
+
+/**
+ * A reader that opens and decodes up to {@code parallelism} data files ahead
+ * of the caller on a bounded thread pool.
+ * <p>
+ * Each file is read by a single background thread into its own bounded
+ * buffer, and buffers are drained in file order, so records are returned in
+ * the same order as {@link MultiFileDatasetReader}. Files are listed on the
+ * caller's thread and each file's {@link StorageKey} is used to filter its
+ * records, just as in the sequential reader.
+ * <p>
+ * Records are handed between threads, so they are never reused.
+ */
+class ParallelMultiFileDatasetReader<E> extends AbstractDatasetReader<E> {
+
+  private static final int FILE_BUFFER_SIZE = 1000;
+  private static final Object END = new Object();
+
+  private final FileSystem fileSystem;
+  private final DatasetDescriptor descriptor;
+  private final Constraints constraints;
+  private final EntityAccessor<E> accessor;
+  private final Schema projection;
+  private final int parallelism;
+
+  private final Iterator<Path> filesIter;
+  private final PathIterator pathIter;
+  private final LinkedList<FileTask> pending = new LinkedList<FileTask>();
+  private ExecutorService executor = null;
+  private FileTask current = null;
+  private Object next = null;
+
+  private ReaderWriterState state;
+
+  public ParallelMultiFileDatasetReader(FileSystem fileSystem,
+      Iterable<Path> files, DatasetDescriptor descriptor,
+      Constraints constraints, EntityAccessor<E> accessor, int parallelism) {
+    Preconditions.checkNotNull(fileSystem, "FileSystem cannot be null");
+    Preconditions.checkNotNull(descriptor, "Descriptor cannot be null");
+    Preconditions.checkNotNull(files, "Partition paths cannot be null");
+    Preconditions.checkArgument(parallelism > 0,
+        "Parallelism must be positive: %s", parallelism);
+
+    this.fileSystem = fileSystem;
+    if (DescriptorUtil.isEnabled(FileSystemProperties.REUSE_RECORDS, descriptor)) {
+      // buffered records must be distinct objects
+      this.descriptor = new DatasetDescriptor.Builder(descriptor)
+          .property(FileSystemProperties.REUSE_RECORDS, "false")
+          .build();
+    } else {
+      this.descriptor = descriptor;
+    }
+    this.constraints = constraints;
+    this.accessor = accessor;
+    this.projection = MultiFileDatasetReader.projection(descriptor, accessor);
+    this.parallelism = parallelism;
+    this.filesIter = files.iterator();
+    if (files instanceof PathIterator) {
+      this.pathIter = (PathIterator) files;
+    } else {
+      this.pathIter = null;
+    }
+    this.state = ReaderWriterState.NEW;
+  }
+
+  @Override
+  public void initialize() {
+    Preconditions.checkState(state.equals(ReaderWriterState.NEW),
+      "A reader may not be opened more than once - current state:%s", state);
+
+    final Format format = descriptor.getFormat();
+    if (!MultiFileDatasetReader.SUPPORTED_FORMATS.contains(format)) {
+      throw new UnknownFormatException("Cannot open format:" + format.getName());
+    }
+
+    this.executor = Executors.newFixedThreadPool(parallelism,
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("kite-file-reader-%d")
+            .build());
+    this.state = ReaderWriterState.OPEN;
+  }
+
+  /**
+   * Submits files until {@code parallelism} files are being read, including
+   * the current file.
+   */
+  private void submitFiles() {
+    while ((pending.size() + (current != null ? 1 : 0)) < parallelism &&
+        filesIter.hasNext()) {
+      Path path = filesIter.next();
+      StorageKey key = (pathIter != null ? pathIter.getStorageKey() : null);
+      // the iterator reuses keys, so a copy is needed for background threads
+      FileTask task = new FileTask(path,
+          (key != null ? StorageKey.copy(key) : null));
+      pending.add(task);
+      executor.execute(task);
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to read from a file in state:%s", state);
+
+    while (next == null) {
+      if (current == null) {
+        submitFiles();
+        if (pending.isEmpty()) {
+          return false;
+        }
+        this.current = pending.removeFirst();
+        // keep the pool busy while the current file is drained
+        submitFiles();
+      }
+
+      Object item = current.take();
+      if (item == END) {
+        this.current = null;
+      } else if (item instanceof Failure) {
+        this.current = null;
+        throw ((Failure) item).propagate();
+      } else {
+        this.next = item;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E next() {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to read from a file in state:%s", state);
+    if (hasNext()) {
+      E entity = (E) next;
+      this.next = null;
+      return entity;
+    } else {
+      throw new NoSuchElementException();
+    }
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException(
+        "Remove is not supported when reading files in parallel");
+  }
+
+  @Override
+  public void close() {
+    if (!state.equals(ReaderWriterState.OPEN)) {
+      return;
+    }
+    // interrupts background readers that are waiting on full buffers
+    executor.shutdownNow();
+    pending.clear();
+    this.current = null;
+    this.next = null;
+    state = ReaderWriterState.CLOSED;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return state.equals(ReaderWriterState.OPEN);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("fileSystem", fileSystem)
+      .add("descriptor", descriptor)
+      .add("parallelism", parallelism)
+      .add("filesIter", filesIter)
+      .add("state", state)
+      .toString();
+  }
+
+  /**
+   * Reads a single file into a bounded buffer, followed by either
+   * {@link #END} or a {@link Failure}.
+   */
+  private class FileTask implements Runnable {
+    private final Path path;
+    private final StorageKey key;
+    private final BlockingQueue<Object> buffer =
+        new ArrayBlockingQueue<Object>(FILE_BUFFER_SIZE);
+
+    private FileTask(Path path, @Nullable StorageKey key) {
+      this.path = path;
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      Object last = END;
+      AbstractDatasetReader<E> reader = null;
+      try {
+        reader = MultiFileDatasetReader.newFileReader(fileSystem, path, key,
+            descriptor, constraints, accessor, projection);
+        reader.initialize();
+        Predicate<E> predicate = constraints.toEntityPredicate(key, accessor);
+        Iterator<E> entities = Iterators.filter(reader, predicate);
+        while (entities.hasNext()) {
+          buffer.put(entities.next());
+        }
+      } catch (InterruptedException e) {
+        // the reader was closed
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Throwable t) {
+        last = new Failure(t);
+      } finally {
+        if (reader != null) {
+          try {
+            reader.close();
+          } catch (Throwable t) {
+            if (last == END) {
+              last = new Failure(t);
+            }
+          }
+        }
+      }
+
+      try {
+        buffer.put(last);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private Object take() {
+      try {
+        return buffer.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DatasetOperationException(
+            "Interrupted while reading " + path, e);
+      }
+    }
+  }
+
+  private static class Failure {
+    private final Throwable cause;
+
+    private Failure(Throwable cause) {
+      this.cause = cause;
+    }
+
+    private RuntimeException propagate() {
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new DatasetOperationException(
+          "Failed to read file: " + cause.getMessage(), cause);
+    }
+  }
+}
@@ -18,17 +18,25 @@ package org.kitesdk.data.spi.filesystem;
 import com.google.common.base.Objects;
 import com.google.common.io.Closeables;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.IndexedRecord;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.kitesdk.compat.DynMethods;
 import org.kitesdk.data.CompressionType;
+import org.kitesdk.data.DatasetOperationException;
 import org.kitesdk.data.Formats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import parquet.avro.AvroParquetWriter;
+import parquet.column.impl.ColumnWriteStoreImpl;
+import parquet.hadoop.ParquetFileWriter;
 import parquet.hadoop.ParquetWriter;
 import parquet.hadoop.metadata.CompressionCodecName;
 
@@ -37,6 +45,7 @@ class ParquetAppender<E extends IndexedRecord> implements FileSystemWriter.FileA
   private static final Logger LOG = LoggerFactory
     .getLogger(ParquetAppender.class);
   private static final int DEFAULT_BLOCK_SIZE = 50 * 1024 * 1024;
+  private static final int MEMORY_CHECK_INTERVAL = 100;
 
   private final Path path;
   private final Schema schema;
@@ -45,16 +54,48 @@ class ParquetAppender<E extends IndexedRecord> implements FileSystemWriter.FileA
   private final boolean enableCompression;
   private final CompressionType compressionType;
 
+  private final ParquetMemoryManager memoryManager;
+  private final long targetFileSize;
+  // held while writing so that other threads can flush row groups safely
+  private final ReentrantLock lock = new ReentrantLock();
+
   private AvroParquetWriter<E> avroParquetWriter = null;
+  private RowGroupBuffer buffer = null;
+  private long recordsSinceCheck = 0;
+  // estimated file size, updated with each memory check
+  private long estimatedPos = 0;
+  // set if another thread failed to write a row group for this appender
+  private Exception failure = null;
 
   public ParquetAppender(FileSystem fileSystem, Path path, Schema schema,
                          Configuration conf, CompressionType compressionType) {
+    this(fileSystem, path, schema, conf, compressionType, null);
+  }
+
+  /**
+   * Creates an appender that reports its buffered row group to a memory
+   * manager shared by a group of writers, if the manager is not null.
+   */
+  ParquetAppender(FileSystem fileSystem, Path path, Schema schema,
+                  Configuration conf, CompressionType compressionType,
+                  @Nullable ParquetMemoryManager memoryManager) {
     this.fileSystem = fileSystem;
     this.path = path;
     this.schema = schema;
     this.conf = conf;
     this.enableCompression = compressionType != CompressionType.Uncompressed;
     this.compressionType = compressionType;
+    this.memoryManager = memoryManager;
+    this.targetFileSize = conf.getLong(
+        FileSystemProperties.TARGET_FILE_SIZE_PROP, 0);
+  }
+
+  /**
+   * Returns whether the size of Parquet files can be measured while they are
+   * written, which is required to roll files by size.
+   */
+  static boolean canMeasureSize() {
+    return RowGroupBuffer.SUPPORTED;
   }
 
   @Override
@@ -67,11 +108,136 @@ class ParquetAppender<E extends IndexedRecord> implements FileSystemWriter.FileA
         schema, codecName, DEFAULT_BLOCK_SIZE,
         ParquetWriter.DEFAULT_PAGE_SIZE,
         ParquetWriter.DEFAULT_IS_DICTIONARY_ENABLED, conf);
+
+    if (memoryManager != null || targetFileSize > 0) {
+      this.buffer = RowGroupBuffer.of(avroParquetWriter);
+      if (buffer == null) {
+        if (targetFileSize > 0) {
+          throw new DatasetOperationException(
+              "Cannot measure the size of Parquet file " + path +
+              ": Parquet internals are not accessible");
+        }
+        // the writer flushes row groups itself when they reach the block size
+        LOG.warn("Cannot manage memory for Parquet file {}: " +
+            "Parquet internals are not accessible", path);
+      } else if (memoryManager != null) {
+        memoryManager.register(this);
+      }
+    }
   }
 
   @Override
   public void append(E entity) throws IOException {
-    avroParquetWriter.write(entity);
+    lock.lock();
+    try {
+      checkFailure();
+      avroParquetWriter.write(entity);
+      if (buffer != null) {
+        recordsSinceCheck += 1;
+        if (recordsSinceCheck >= MEMORY_CHECK_INTERVAL) {
+          this.recordsSinceCheck = 0;
+          long buffered = buffer.size();
+          this.estimatedPos = buffer.written() + buffered;
+          if (memoryManager != null) {
+            checkMemory(buffered);
+          }
+        }
+      }
+    } catch (IOException e) {
+      // the writer fails and will not close this appender
+      releaseMemory();
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // called while holding the lock. Other appenders are only flushed if they
+  // are not in use, so appenders never wait on each other.
+  private void checkMemory(long buffered) throws IOException {
+    List<ParquetAppender<?>> toFlush =
+        memoryManager.update(this, buffered);
+    for (ParquetAppender<?> appender : toFlush) {
+      if (appender == this) {
+        flushRowGroup();
+      } else {
+        try {
+          appender.flushRowGroup();
+        } catch (IOException e) {
+          // the other appender's next write or close fails with this cause
+          LOG.warn("Failed to write row group for " + appender.path, e);
+        } catch (RuntimeException e) {
+          LOG.warn("Failed to write row group for " + appender.path, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered row group, unless another thread is writing.
+   * <p>
+   * If the row group cannot be written, this appender is failed so that its
+   * writer does not commit the file.
+   */
+  private void flushRowGroup() throws IOException {
+    if (!lock.tryLock()) {
+      // the writing thread will check memory again shortly
+      return;
+    }
+    try {
+      if (buffer != null && buffer.flush()) {
+        memoryManager.flushed(this);
+      }
+    } catch (IOException e) {
+      fail(e);
+      throw e;
+    } catch (RuntimeException e) {
+      fail(e);
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // called while holding the lock
+  private void fail(Exception cause) {
+    this.failure = cause;
+    releaseMemory();
+  }
+
+  // called while holding the lock
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException("Failed to write a row group for " + path, failure);
+    }
+  }
+
+  /**
+   * Stops tracking this appender's buffered row group. This is called when
+   * the appender is closed, cleaned up, or fails.
+   */
+  private void releaseMemory() {
+    lock.lock();
+    try {
+      if (buffer != null) {
+        if (memoryManager != null) {
+          memoryManager.unregister(this);
+        }
+        this.buffer = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the bytes already written plus the size of the buffered row
+   * group. This is only measured if the size or memory is needed, and is
+   * updated every {@code MEMORY_CHECK_INTERVAL} records.
+   */
+  @Override
+  public long pos() {
+    return estimatedPos;
   }
 
   @Override
@@ -86,12 +252,20 @@ class ParquetAppender<E extends IndexedRecord> implements FileSystemWriter.FileA
 
   @Override
   public void close() throws IOException {
-    Closeables.close(avroParquetWriter, false);
+    lock.lock();
+    try {
+      releaseMemory();
+      checkFailure();
+      Closeables.close(avroParquetWriter, false);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
   public void cleanup() throws IOException {
-    // No cleanup tasks needed
+    // writers in an error state clean up without closing
+    releaseMemory();
   }
 
   @Override
@@ -123,4 +297,157 @@ class ParquetAppender<E extends IndexedRecord> implements FileSystemWriter.FileA
     }
   }
 
+  /**
+   * Measures and writes the row group buffered by a {@link ParquetWriter}.
+   * <p>
+   * Parquet doesn't (currently) expose either operation, so this uses the
+   * writer's internals: the {@code ParquetWriter.writer} field, and the
+   * {@code store} field, the {@link ParquetFileWriter} field, and the
+   * {@code flushStore} and {@code initStore} methods of
+   * {@code InternalParquetRecordWriter}. These were verified
+   * against Parquet 1.4.1, the version this project is built with; later
+   * versions replace {@code ColumnWriteStoreImpl} and rename
+   * {@code flushStore}. All of them are checked when this class is loaded,
+   * and if any are missing or have unexpected types then memory is not
+   * managed and appenders use the writer as-is.
+   */
+  private static class RowGroupBuffer {
+    private static final String INTERNAL_WRITER =
+        "parquet.hadoop.InternalParquetRecordWriter";
+    private static final String STORE_IMPL =
+        "parquet.column.impl.ColumnWriteStoreImpl";
+    private static final Field WRITER = hiddenField(
+        ParquetWriter.class.getName(), "writer");
+    private static final Field STORE = hiddenField(INTERNAL_WRITER, "store");
+    // the file writer field has been renamed, so it is found by type
+    private static final Field FILE_WRITER = hiddenFieldOfType(
+        INTERNAL_WRITER, ParquetFileWriter.class);
+    private static final DynMethods.UnboundMethod FLUSH_STORE =
+        hiddenMethod("flushStore");
+    private static final DynMethods.UnboundMethod INIT_STORE =
+        hiddenMethod("initStore");
+    private static final boolean SUPPORTED = checkInternals();
+
+    private static boolean checkInternals() {
+      if (WRITER == null || STORE == null || FILE_WRITER == null ||
+          FLUSH_STORE == null || INIT_STORE == null) {
+        LOG.debug("Parquet row group internals not found: writer={}, " +
+            "store={}, fileWriter={}, flushStore={}, initStore={}",
+            new Object[] {WRITER, STORE, FILE_WRITER, FLUSH_STORE, INIT_STORE});
+        return false;
+      }
+      if (!WRITER.getType().getName().equals(INTERNAL_WRITER) ||
+          !STORE.getType().getName().equals(STORE_IMPL)) {
+        LOG.debug("Parquet row group internals have unexpected types: " +
+            "writer={}, store={}", WRITER.getType(), STORE.getType());
+        return false;
+      }
+      return true;
+    }
+
+    private final Object internalWriter;
+    private final ParquetFileWriter fileWriter;
+
+    private RowGroupBuffer(Object internalWriter, ParquetFileWriter fileWriter) {
+      this.internalWriter = internalWriter;
+      this.fileWriter = fileWriter;
+    }
+
+    @Nullable
+    private static RowGroupBuffer of(ParquetWriter<?> writer) {
+      if (!SUPPORTED) {
+        return null;
+      }
+      try {
+        Object internalWriter = WRITER.get(writer);
+        return new RowGroupBuffer(internalWriter,
+            (ParquetFileWriter) FILE_WRITER.get(internalWriter));
+      } catch (IllegalAccessException e) {
+        return null;
+      }
+    }
+
+    private long size() {
+      ColumnWriteStoreImpl store = store();
+      return (store != null ? store.memSize() : 0);
+    }
+
+    /**
+     * @return the number of bytes written to the file
+     */
+    private long written() throws IOException {
+      return fileWriter.getPos();
+    }
+
+    /**
+     * @return true if a row group was written
+     */
+    private boolean flush() throws IOException {
+      if (size() <= 0) {
+        return false;
+      }
+      try {
+        FLUSH_STORE.invokeChecked(internalWriter);
+        INIT_STORE.invokeChecked(internalWriter);
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new DatasetOperationException(
+            "Failed to write Parquet row group", e);
+      }
+      return true;
+    }
+
+    private ColumnWriteStoreImpl store() {
+      try {
+        return (ColumnWriteStoreImpl) STORE.get(internalWriter);
+      } catch (IllegalAccessException e) {
+        throw new DatasetOperationException(
+            "Cannot access Parquet row group", e);
+      }
+    }
+
+    @Nullable
+    private static Field hiddenField(String className, String name) {
+      try {
+        Field field = Class.forName(className).getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+      } catch (ClassNotFoundException e) {
+        return null;
+      } catch (NoSuchFieldException e) {
+        return null;
+      } catch (SecurityException e) {
+        return null;
+      }
+    }
+
+    @Nullable
+    private static Field hiddenFieldOfType(String className, Class<?> type) {
+      try {
+        for (Field field : Class.forName(className).getDeclaredFields()) {
+          if (type.equals(field.getType())) {
+            field.setAccessible(true);
+            return field;
+          }
+        }
+        return null;
+      } catch (ClassNotFoundException e) {
+        return null;
+      } catch (SecurityException e) {
+        return null;
+      }
+    }
+
+    @Nullable
+    private static DynMethods.UnboundMethod hiddenMethod(String name) {
+      try {
+        return new DynMethods.Builder(name)
+            .hiddenImpl(INTERNAL_WRITER)
+            .buildChecked();
+      } catch (NoSuchMethodException e) {
+        return null;
+      }
+    }
+  }
 }
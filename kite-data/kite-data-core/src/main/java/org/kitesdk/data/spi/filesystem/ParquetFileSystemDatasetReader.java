@@ -17,6 +17,7 @@ package org.kitesdk.data.spi.filesystem;
 
 import java.util.NoSuchElementException;
 
+import javax.annotation.Nullable;
 import org.apache.hadoop.conf.Configuration;
 import org.kitesdk.data.DatasetIOException;
 import org.kitesdk.data.spi.DataModelUtil;
@@ -35,6 +36,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import parquet.avro.AvroParquetReader;
 import parquet.avro.AvroReadSupport;
+import parquet.filter.UnboundRecordFilter;
+import parquet.io.InvalidRecordException;
 
 class ParquetFileSystemDatasetReader<E extends IndexedRecord> extends AbstractDatasetReader<E> {
 
@@ -43,6 +46,8 @@ class ParquetFileSystemDatasetReader<E extends IndexedRecord> extends AbstractDa
   private Schema schema;
   private Schema readerSchema;
   private Class<E> type;
+  private Schema projection;
+  private UnboundRecordFilter filter;
 
   private ReaderWriterState state;
   private AvroParquetReader<E> reader;
@@ -54,6 +59,20 @@ class ParquetFileSystemDatasetReader<E extends IndexedRecord> extends AbstractDa
 
   public ParquetFileSystemDatasetReader(FileSystem fileSystem, Path path,
       Schema schema, Class<E> type) {
+    this(fileSystem, path, schema, type, null, null);
+  }
+
+  /**
+   * Creates a reader that only reads the columns in {@code projection} and
+   * skips records that do not match {@code filter}.
+   *
+   * If the file does not contain every column in the projection, for example
+   * because it was written with an older schema, the whole file is read
+   * without the filter.
+   */
+  public ParquetFileSystemDatasetReader(FileSystem fileSystem, Path path,
+      Schema schema, Class<E> type, @Nullable Schema projection,
+      @Nullable UnboundRecordFilter filter) {
     Preconditions.checkArgument(fileSystem != null, "FileSystem cannot be null");
     Preconditions.checkArgument(path != null, "Path cannot be null");
     Preconditions.checkArgument(schema != null, "Schema cannot be null");
@@ -66,6 +85,8 @@ class ParquetFileSystemDatasetReader<E extends IndexedRecord> extends AbstractDa
     this.schema = schema;
     this.type = type;
     this.readerSchema = DataModelUtil.getReaderSchema(type, schema);
+    this.projection = projection;
+    this.filter = filter;
 
     this.state = ReaderWriterState.NEW;
   }
@@ -78,10 +99,15 @@ class ParquetFileSystemDatasetReader<E extends IndexedRecord> extends AbstractDa
     LOG.debug("Opening reader on path:{}", path);
 
     try {
-      final Configuration conf = fileSystem.getConf();
+      final Configuration conf = new Configuration(fileSystem.getConf());
       AvroReadSupport.setAvroReadSchema(conf, readerSchema);
-      reader = new AvroParquetReader<E>(
-          conf, fileSystem.makeQualified(path));
+      if (projection != null || filter != null) {
+        reader = newProjectedReader(conf);
+      }
+      if (reader == null) {
+        reader = new AvroParquetReader<E>(
+            conf, fileSystem.makeQualified(path));
+      }
     } catch (IOException e) {
       throw new DatasetIOException("Unable to create reader path:" + path, e);
     }
@@ -145,6 +171,22 @@ class ParquetFileSystemDatasetReader<E extends IndexedRecord> extends AbstractDa
       .toString();
   }
 
+  private AvroParquetReader<E> newProjectedReader(Configuration conf)
+      throws IOException {
+    Configuration projected = new Configuration(conf);
+    if (projection != null) {
+      AvroReadSupport.setRequestedProjection(projected, projection);
+    }
+    try {
+      return new AvroParquetReader<E>(
+          projected, fileSystem.makeQualified(path), filter);
+    } catch (InvalidRecordException e) {
+      LOG.debug("Cannot project {}, reading all columns: {}",
+          path, e.getMessage());
+      return null;
+    }
+  }
+
   private void advance() {
     try {
       this.next = reader.read();
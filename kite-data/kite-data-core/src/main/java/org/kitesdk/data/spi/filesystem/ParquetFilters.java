@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.apache.avro.Schema;
+import org.kitesdk.data.spi.predicates.In;
+import org.kitesdk.data.spi.predicates.Range;
+import parquet.column.ColumnReader;
+import parquet.filter.AndRecordFilter;
+import parquet.filter.ColumnPredicates;
+import parquet.filter.ColumnRecordFilter;
+import parquet.filter.RecordFilter;
+import parquet.filter.UnboundRecordFilter;
+
+/**
+ * Translates {@link org.kitesdk.data.spi.Constraints} into Parquet read
+ * options: a requested projection and a record filter.
+ * <p>
+ * Parquet 1.4 does not support skipping row groups based on column statistics,
+ * but a record filter is evaluated on column values before records are
+ * assembled, so non-matching records are never materialized. Only predicates
+ * on required, top-level columns with primitive types are pushed down;
+ * everything else is still tested by the entity predicate. Data files written
+ * with an older schema may not have a filtered column, so those predicates are
+ * also left to the entity predicate when reading them.
+ */
+class ParquetFilters {
+
+  private static final RecordFilter MATCH_ALL = new RecordFilter() {
+    @Override
+    public boolean isMatch() {
+      return true;
+    }
+  };
+
+  /**
+   * Returns a projection of {@code datasetSchema} with the fields of
+   * {@code readSchema}, or null if all of the dataset's fields are read.
+   * <p>
+   * Field definitions are taken from the dataset's schema so that column
+   * repetition matches the data files.
+   *
+   * @param datasetSchema the Schema data files are written with
+   * @param readSchema the Schema entities are read with
+   * @return a projection Schema or null if no projection is needed
+   */
+  static Schema projection(Schema datasetSchema, Schema readSchema) {
+    if (datasetSchema.getType() != Schema.Type.RECORD ||
+        readSchema.getType() != Schema.Type.RECORD) {
+      return null;
+    }
+
+    List<Schema.Field> fields = Lists.newArrayList();
+    for (Schema.Field field : datasetSchema.getFields()) {
+      if (readSchema.getField(field.name()) != null) {
+        fields.add(new Schema.Field(field.name(), field.schema(), field.doc(),
+            field.defaultValue()));
+      }
+    }
+
+    if (fields.isEmpty() ||
+        fields.size() == datasetSchema.getFields().size()) {
+      return null;
+    }
+
+    Schema projection = Schema.createRecord(datasetSchema.getName(),
+        datasetSchema.getDoc(), datasetSchema.getNamespace(),
+        datasetSchema.isError());
+    projection.setFields(fields);
+    return projection;
+  }
+
+  /**
+   * Returns an {@link UnboundRecordFilter} for the predicates that can be
+   * evaluated on columns in {@code schema}, or null if there are none.
+   *
+   * @param predicates a Map of field names to Predicates
+   * @param schema the Schema of the columns that will be read
+   * @return a record filter or null if no predicate can be pushed down
+   */
+  static UnboundRecordFilter recordFilter(Map<String, Predicate> predicates,
+                                          Schema schema) {
+    if (schema.getType() != Schema.Type.RECORD) {
+      return null;
+    }
+
+    UnboundRecordFilter filter = null;
+    for (Map.Entry<String, Predicate> entry : predicates.entrySet()) {
+      Predicate predicate = entry.getValue();
+      if (!(predicate instanceof In) && !(predicate instanceof Range)) {
+        // Exists is always satisfied by required columns
+        continue;
+      }
+
+      Schema.Field field = schema.getField(entry.getKey());
+      if (field == null) {
+        // partition names and nested fields are not columns
+        continue;
+      }
+
+      ColumnPredicates.Predicate columnPredicate = columnPredicate(
+          field.schema().getType(), predicate);
+      if (columnPredicate != null) {
+        UnboundRecordFilter columnFilter = new ExistingColumnFilter(
+            field.name(), columnPredicate);
+        filter = (filter == null ?
+            columnFilter : AndRecordFilter.and(filter, columnFilter));
+      }
+    }
+
+    return filter;
+  }
+
+  /**
+   * A {@link ColumnRecordFilter} that matches all records if the column is not
+   * in the file, rather than failing when it is bound to the file's columns.
+   */
+  private static class ExistingColumnFilter implements UnboundRecordFilter {
+    private final String column;
+    private final UnboundRecordFilter filter;
+
+    private ExistingColumnFilter(String column,
+                                 ColumnPredicates.Predicate predicate) {
+      this.column = column;
+      this.filter = ColumnRecordFilter.column(column, predicate);
+    }
+
+    @Override
+    public RecordFilter bind(Iterable<ColumnReader> readers) {
+      for (ColumnReader reader : readers) {
+        String[] path = reader.getDescriptor().getPath();
+        if (path.length == 1 && column.equals(path[0])) {
+          return filter.bind(readers);
+        }
+      }
+      return MATCH_ALL;
+    }
+  }
+
+  /**
+   * Returns a Parquet column predicate that applies a Kite {@link Predicate}
+   * to column values, or null if the type is not supported. Optional columns
+   * are unions and are not supported because null values cannot be tested.
+   */
+  private static ColumnPredicates.Predicate columnPredicate(
+      Schema.Type type, final Predicate predicate) {
+    switch (type) {
+      case STRING:
+        return ColumnPredicates.applyFunctionToString(
+            new ColumnPredicates.PredicateFunction<String>() {
+              @Override
+              @SuppressWarnings("unchecked")
+              public boolean functionToApply(@Nullable String input) {
+                return predicate.apply(input);
+              }
+            });
+      case INT:
+        return ColumnPredicates.applyFunctionToInteger(
+            new ColumnPredicates.IntegerPredicateFunction() {
+              @Override
+              @SuppressWarnings("unchecked")
+              public boolean functionToApply(int input) {
+                return predicate.apply(input);
+              }
+            });
+      case LONG:
+        return ColumnPredicates.applyFunctionToLong(
+            new ColumnPredicates.LongPredicateFunction() {
+              @Override
+              @SuppressWarnings("unchecked")
+              public boolean functionToApply(long input) {
+                return predicate.apply(input);
+              }
+            });
+      case FLOAT:
+        return ColumnPredicates.applyFunctionToFloat(
+            new ColumnPredicates.FloatPredicateFunction() {
+              @Override
+              @SuppressWarnings("unchecked")
+              public boolean functionToApply(float input) {
+                return predicate.apply(input);
+              }
+            });
+      case DOUBLE:
+        return ColumnPredicates.applyFunctionToDouble(
+            new ColumnPredicates.DoublePredicateFunction() {
+              @Override
+              @SuppressWarnings("unchecked")
+              public boolean functionToApply(double input) {
+                return predicate.apply(input);
+              }
+            });
+      case BOOLEAN:
+        return ColumnPredicates.applyFunctionToBoolean(
+            new ColumnPredicates.BooleanPredicateFunction() {
+              @Override
+              @SuppressWarnings("unchecked")
+              public boolean functionToApply(boolean input) {
+                return predicate.apply(input);
+              }
+            });
+      default:
+        return null;
+    }
+  }
+}
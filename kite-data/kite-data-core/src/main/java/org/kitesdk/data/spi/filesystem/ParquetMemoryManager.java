@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import org.kitesdk.data.DatasetDescriptor;
+import org.kitesdk.data.Formats;
+import org.kitesdk.data.spi.DescriptorUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the memory used by buffered Parquet row groups for a group of
+ * Parquet writers, such as the partition writers of a
+ * {@link PartitionedDatasetWriter}.
+ * <p>
+ * Each Parquet file buffers a whole row group in memory before writing it,
+ * so a partitioned writer with many open partitions can use far more memory
+ * than one row group. Writers in a group report their buffered size to its
+ * manager, and when the group's total is over
+ * {@link FileSystemProperties#PARQUET_MEMORY_BUDGET_PROP}, the writers with
+ * the largest buffers are asked to write their row groups early. Each group
+ * has its own budget, so separate dataset writers do not affect each other.
+ */
+class ParquetMemoryManager {
+
+  private static final Logger LOG = LoggerFactory.getLogger(
+      ParquetMemoryManager.class);
+
+  // flush until the total is below this fraction of the budget, so that the
+  // next flush is not triggered by the next few records
+  private static final double LOW_WATER_MARK = 0.75;
+
+  private final long budget;
+  private final Map<ParquetAppender<?>, Long> buffered = Maps.newHashMap();
+  private long bufferedBytes = 0;
+  private long peakBufferedBytes = 0;
+  private long earlyFlushes = 0;
+
+  ParquetMemoryManager(long budget) {
+    Preconditions.checkArgument(budget > 0,
+        "Memory budget must be positive: %s", budget);
+    this.budget = budget;
+  }
+
+  /**
+   * Returns a memory manager if the descriptor is for Parquet and
+   * {@link FileSystemProperties#PARQUET_MEMORY_BUDGET_PROP} is set, or null
+   * if memory should not be managed.
+   */
+  static ParquetMemoryManager forDescriptor(DatasetDescriptor descriptor) {
+    if (!Formats.PARQUET.equals(descriptor.getFormat())) {
+      return null;
+    }
+    long budget = DescriptorUtil.getLong(
+        FileSystemProperties.PARQUET_MEMORY_BUDGET_PROP, descriptor, 0);
+    if (budget > 0) {
+      return new ParquetMemoryManager(budget);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the current number of bytes buffered by writers in this group.
+   * This is updated periodically by each writer, so it may lag slightly.
+   *
+   * @return the number of buffered bytes
+   */
+  synchronized long getBufferedBytes() {
+    return bufferedBytes;
+  }
+
+  /**
+   * @return the largest number of bytes buffered at one time
+   */
+  synchronized long getPeakBufferedBytes() {
+    return peakBufferedBytes;
+  }
+
+  /**
+   * @return the memory budget for this group
+   */
+  long getBudget() {
+    return budget;
+  }
+
+  /**
+   * @return the number of open writers in this group
+   */
+  synchronized int getOpenWriters() {
+    return buffered.size();
+  }
+
+  /**
+   * @return the number of row groups that were written early to stay within
+   *         the memory budget
+   */
+  synchronized long getEarlyFlushes() {
+    return earlyFlushes;
+  }
+
+  synchronized void register(ParquetAppender<?> appender) {
+    buffered.put(appender, 0L);
+  }
+
+  synchronized void unregister(ParquetAppender<?> appender) {
+    Long size = buffered.remove(appender);
+    if (size != null) {
+      bufferedBytes -= size;
+    }
+  }
+
+  /**
+   * Updates the buffered size for a writer and returns the writers that
+   * should write their row groups, largest first.
+   *
+   * @param appender a registered appender
+   * @param size the number of bytes it is buffering
+   * @return a List of appenders that should flush, possibly empty
+   */
+  synchronized List<ParquetAppender<?>> update(
+      ParquetAppender<?> appender, long size) {
+    Long previous = buffered.get(appender);
+    if (previous == null) {
+      return Collections.emptyList();
+    }
+    buffered.put(appender, size);
+    bufferedBytes += size - previous;
+    peakBufferedBytes = Math.max(peakBufferedBytes, bufferedBytes);
+
+    if (bufferedBytes <= budget) {
+      return Collections.emptyList();
+    }
+
+    List<Map.Entry<ParquetAppender<?>, Long>> bySize =
+        Lists.newArrayList(buffered.entrySet());
+    Collections.sort(bySize, LargestFirst.INSTANCE);
+
+    List<ParquetAppender<?>> toFlush = Lists.newArrayList();
+    long remaining = bufferedBytes;
+    long target = (long) (budget * LOW_WATER_MARK);
+    for (Map.Entry<ParquetAppender<?>, Long> entry : bySize) {
+      if (remaining <= target || entry.getValue() <= 0) {
+        break;
+      }
+      toFlush.add(entry.getKey());
+      remaining -= entry.getValue();
+    }
+
+    LOG.debug("Buffered {} bytes, over budget {}: flushing {} writers",
+        new Object[] {bufferedBytes, budget, toFlush.size()});
+
+    return toFlush;
+  }
+
+  synchronized void flushed(ParquetAppender<?> appender) {
+    earlyFlushes += 1;
+    Long previous = buffered.get(appender);
+    if (previous != null) {
+      buffered.put(appender, 0L);
+      bufferedBytes -= previous;
+    }
+  }
+
+  private static class LargestFirst implements
+      Comparator<Map.Entry<ParquetAppender<?>, Long>>, Serializable {
+    private static final LargestFirst INSTANCE = new LargestFirst();
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public int compare(Map.Entry<ParquetAppender<?>, Long> left,
+                       Map.Entry<ParquetAppender<?>, Long> right) {
+      return right.getValue().compareTo(left.getValue());
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.spi.filesystem;
+
+import java.util.List;
+import org.kitesdk.data.spi.BatchPartitionListener;
+import org.kitesdk.data.spi.PartitionListener;
+
+/**
+ * Notifies a {@link PartitionListener} of many partitions, in one call if it
+ * is a {@link BatchPartitionListener}.
+ */
+class PartitionListeners {
+
+  private PartitionListeners() {
+  }
+
+  static void added(PartitionListener listener, String namespace,
+                    String name, List<String> partitions) {
+    if (partitions.isEmpty()) {
+      return;
+    }
+    if (listener instanceof BatchPartitionListener) {
+      ((BatchPartitionListener) listener)
+          .partitionsAdded(namespace, name, partitions);
+    } else {
+      for (String partition : partitions) {
+        listener.partitionAdded(namespace, name, partition);
+      }
+    }
+  }
+
+  static void deleted(PartitionListener listener, String namespace,
+                      String name, List<String> partitions) {
+    if (partitions.isEmpty()) {
+      return;
+    }
+    if (listener instanceof BatchPartitionListener) {
+      ((BatchPartitionListener) listener)
+          .partitionsDeleted(namespace, name, partitions);
+    } else {
+      for (String partition : partitions) {
+        listener.partitionDeleted(namespace, name, partition);
+      }
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import java.io.IOException;
+import java.util.List;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.kitesdk.data.DatasetIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lists and caches the leaf partition directories of filesystem datasets.
+ * <p>
+ * Listings are keyed by the qualified dataset root directory and are reused
+ * until they are older than the TTL requested by the caller. Partitions that
+ * are created by writers in this JVM are added to cached listings, and
+ * deletes, merges and replaces invalidate them, so the TTL only bounds how
+ * long changes made by other processes can go unnoticed.
+ * <p>
+ * Listings are done one directory level at a time, so the directories in each
+ * level can be listed in parallel.
+ */
+class PartitionListingCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(
+      PartitionListingCache.class);
+
+  private static final int MAX_DATASETS = 1000;
+  private static final Splitter PATH_SPLITTER = Splitter.on('/')
+      .omitEmptyStrings();
+  private static final Ordering<Iterable<String>> PARTITION_ORDER =
+      Ordering.<String>natural().lexicographical();
+
+  private static final Cache<Path, Listing> LISTINGS = CacheBuilder.newBuilder()
+      .maximumSize(MAX_DATASETS)
+      .build();
+
+  // incremented by every change so that listings that may have missed a
+  // change are not cached
+  private static long version = 0;
+
+  private static class Listing {
+    private final long listedAt;
+    private final int depth;
+    private final ImmutableSortedSet<List<String>> partitions;
+
+    private Listing(long listedAt, int depth, Iterable<List<String>> partitions) {
+      this.listedAt = listedAt;
+      this.depth = depth;
+      this.partitions = ImmutableSortedSet.copyOf(PARTITION_ORDER, partitions);
+    }
+  }
+
+  /**
+   * Returns the leaf partition directories under {@code root}, as lists of
+   * directory names.
+   *
+   * @param fs the dataset's FileSystem
+   * @param root the dataset's root directory
+   * @param depth the number of partition directory levels
+   * @param ttlMillis how long a listing may be reused; 0 disables caching
+   * @param parallelism the number of directories to list concurrently
+   * @return an Iterable of partition directory name lists
+   */
+  static Iterable<List<String>> partitions(FileSystem fs, Path root, int depth,
+                                           long ttlMillis, int parallelism) {
+    if (ttlMillis <= 0) {
+      return list(fs, root, depth, parallelism);
+    }
+
+    Path key = fs.makeQualified(root);
+    long startVersion;
+    synchronized (PartitionListingCache.class) {
+      Listing cached = LISTINGS.getIfPresent(key);
+      if (cached != null && cached.depth == depth &&
+          (System.currentTimeMillis() - cached.listedAt) < ttlMillis) {
+        return cached.partitions;
+      }
+      startVersion = version;
+    }
+
+    long listedAt = System.currentTimeMillis();
+    Listing listing = new Listing(listedAt, depth,
+        list(fs, root, depth, parallelism));
+
+    synchronized (PartitionListingCache.class) {
+      if (version == startVersion) {
+        LISTINGS.put(key, listing);
+      } else {
+        LOG.debug("Not caching partitions for {}: changed while listing", key);
+      }
+    }
+
+    return listing.partitions;
+  }
+
+  /**
+   * Adds a new partition directory to the cached listing for {@code root}.
+   *
+   * @param fs the dataset's FileSystem
+   * @param root the dataset's root directory
+   * @param partition the partition directory, relative to {@code root}
+   */
+  static void partitionAdded(FileSystem fs, Path root, Path partition) {
+    Path key = fs.makeQualified(root);
+    List<String> dirs = ImmutableList.copyOf(
+        PATH_SPLITTER.split(partition.toString()));
+    synchronized (PartitionListingCache.class) {
+      version += 1;
+      Listing cached = LISTINGS.getIfPresent(key);
+      if (cached != null && !cached.partitions.contains(dirs)) {
+        if (cached.depth == dirs.size()) {
+          List<List<String>> partitions = Lists.newArrayList(cached.partitions);
+          partitions.add(dirs);
+          LISTINGS.put(key, new Listing(cached.listedAt, cached.depth, partitions));
+        } else {
+          LISTINGS.invalidate(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the cached listing for {@code root}, if there is one.
+   *
+   * @param fs the dataset's FileSystem
+   * @param root the dataset's root directory
+   */
+  static void invalidate(FileSystem fs, Path root) {
+    Path key = fs.makeQualified(root);
+    synchronized (PartitionListingCache.class) {
+      version += 1;
+      LISTINGS.invalidate(key);
+    }
+  }
+
+  @VisibleForTesting
+  @SuppressWarnings("deprecation")
+  static List<List<String>> list(FileSystem fs, Path root, int depth,
+                                 int parallelism) {
+    try {
+      Preconditions.checkArgument(fs.isDirectory(root),
+          "Not a directory: %s", root);
+    } catch (IOException e) {
+      throw new DatasetIOException("Cannot list partitions in " + root, e);
+    }
+
+    List<List<String>> level = Lists.newArrayList();
+    level.add(ImmutableList.<String>of());
+    for (int i = 0; i < depth && !level.isEmpty(); i += 1) {
+      List<Path> dirs = Lists.newArrayListWithCapacity(level.size());
+      for (List<String> names : level) {
+        Path dir = root;
+        for (String name : names) {
+          dir = new Path(dir, name);
+        }
+        dirs.add(dir);
+      }
+
+      List<FileStatus[]> listings = FileSystemUtil.listStatus(
+          fs, dirs, PathFilters.notHidden(), parallelism);
+
+      List<List<String>> next = Lists.newArrayList();
+      for (int j = 0, n = level.size(); j < n; j += 1) {
+        for (FileStatus stat : listings.get(j)) {
+          if (stat.isDir()) {
+            next.add(ImmutableList.<String>builder()
+                .addAll(level.get(j))
+                .add(stat.getPath().getName())
+                .build());
+          }
+        }
+      }
+      level = next;
+    }
+
+    return level;
+  }
+}
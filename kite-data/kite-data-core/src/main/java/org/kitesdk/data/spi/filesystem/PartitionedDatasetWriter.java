@@ -17,6 +17,7 @@ package org.kitesdk.data.spi.filesystem;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.util.Map;
+import javax.annotation.Nullable;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetWriter;
 import org.kitesdk.data.Format;
@@ -57,11 +58,14 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
   private final PartitionStrategy partitionStrategy;
   protected LoadingCache<StorageKey, W> cachedWriters;
 
-  private final StorageKey reusedKey;
+  private final ThreadLocal<StorageKey> reusedKey;
   private final EntityAccessor<E> accessor;
   private final Map<String, Object> provided;
+  private final boolean concurrent;
+  protected final BackgroundCommitter committer;
+  protected final ParquetMemoryManager memoryManager;
 
-  protected ReaderWriterState state;
+  protected volatile ReaderWriterState state;
 
   static <E> PartitionedDatasetWriter<E, ?> newWriter(FileSystemView<E> view) {
     DatasetDescriptor descriptor = view.getDataset().getDescriptor();
@@ -104,9 +108,20 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
     this.maxWriters = maxWriters;
 
     this.state = ReaderWriterState.NEW;
-    this.reusedKey = new StorageKey(partitionStrategy);
+    // keys are reused by each thread to avoid allocation for every entity
+    this.reusedKey = new ThreadLocal<StorageKey>() {
+      @Override
+      protected StorageKey initialValue() {
+        return new StorageKey(partitionStrategy);
+      }
+    };
+    this.concurrent = DescriptorUtil.isEnabled(
+        FileSystemProperties.WRITER_CONCURRENT_PROP, descriptor);
     this.accessor = view.getAccessor();
     this.provided = view.getProvidedValues();
+    this.committer = BackgroundCommitter.forDescriptor(descriptor);
+    // the memory budget is shared by this writer's partition writers
+    this.memoryManager = ParquetMemoryManager.forDescriptor(descriptor);
   }
 
   @Override
@@ -122,8 +137,10 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
     LOG.debug("Opening partitioned dataset writer w/strategy:{}",
       partitionStrategy);
 
+    // use a single segment so that maxWriters is enforced across partitions
     cachedWriters = CacheBuilder.newBuilder().maximumSize(maxWriters)
-      .removalListener(new DatasetWriterCloser<E>())
+      .concurrencyLevel(1)
+      .removalListener(new DatasetWriterCloser<E>(committer))
       .build(createCacheLoader());
 
     state = ReaderWriterState.OPEN;
@@ -136,9 +153,41 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
         "Attempt to write to a writer in state:%s", state);
 
-    accessor.keyFor(entity, provided, reusedKey);
+    StorageKey key = accessor.keyFor(entity, provided, reusedKey.get());
+
+    W writer = writerFor(entity, key);
+    if (!concurrent) {
+      writer.write(entity);
+      return;
+    }
+
+    // each partition writer is used by one thread at a time. cache methods
+    // may close evicted writers, so they are never called while holding a
+    // writer's lock.
+    while (true) {
+      synchronized (writer) {
+        if (writer.isOpen()) {
+          writer.write(entity);
+          return;
+        }
+      }
+
+      W current = writerFor(entity, key);
+      if (current == writer) {
+        // the writer was not evicted; write to it to surface its state
+        synchronized (writer) {
+          writer.write(entity);
+        }
+        return;
+      }
+
+      // the writer was evicted and closed by another thread
+      writer = current;
+    }
+  }
 
-    DatasetWriter<E> writer = cachedWriters.getIfPresent(reusedKey);
+  private W writerFor(E entity, StorageKey reusedKey) {
+    W writer = cachedWriters.getIfPresent(reusedKey);
     if (writer == null) {
       // avoid checking in every whether the entity belongs in the view by only
       // checking when a new writer is created
@@ -153,8 +202,7 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
             "Problem creating view for entity: " + entity, ex.getCause());
       }
     }
-
-    writer.write(entity);
+    return writer;
   }
 
   @Override
@@ -163,12 +211,29 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
 
       LOG.debug("Closing all cached writers for view:{}", view);
 
-      for (DatasetWriter<E> writer : cachedWriters.asMap().values()) {
-        LOG.debug("Closing partition writer:{}", writer);
-        writer.close();
+      try {
+        for (DatasetWriter<E> writer : cachedWriters.asMap().values()) {
+          LOG.debug("Closing partition writer:{}", writer);
+          if (committer != null) {
+            committer.submit(new WriterCloser<E>(writer));
+          } else {
+            synchronized (writer) {
+              writer.close();
+            }
+          }
+        }
+
+        // wait for evicted writers and rolled files, and surface failures
+        if (committer != null) {
+          committer.await();
+        }
+
+      } finally {
+        if (committer != null) {
+          committer.shutdown();
+        }
+        state = ReaderWriterState.CLOSED;
       }
-
-      state = ReaderWriterState.CLOSED;
     }
   }
 
@@ -193,11 +258,21 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
 
     private final FileSystemView<E> view;
     private final PathConversion convert;
+    private final BackgroundCommitter committer;
+    private final ParquetMemoryManager memoryManager;
 
     public DatasetWriterCacheLoader(FileSystemView<E> view) {
+      this(view, null, null);
+    }
+
+    DatasetWriterCacheLoader(FileSystemView<E> view,
+                             @Nullable BackgroundCommitter committer,
+                             @Nullable ParquetMemoryManager memoryManager) {
       this.view = view;
       this.convert = new PathConversion(
           view.getDataset().getDescriptor().getSchema());
+      this.committer = committer;
+      this.memoryManager = memoryManager;
     }
 
     @Override
@@ -210,7 +285,7 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
       FileSystemWriter<E> writer = FileSystemWriter.newWriter(
           dataset.getFileSystem(),
           new Path(dataset.getDirectory(), partition),
-          dataset.getDescriptor());
+          dataset.getDescriptor(), committer, memoryManager);
 
       PartitionListener listener = dataset.getPartitionListener();
       if (listener != null) {
@@ -222,6 +297,8 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
       // this lets the listener decide if and how to create the
       // partition directory
       writer.initialize();
+      PartitionListingCache.partitionAdded(
+          dataset.getFileSystem(), dataset.getDirectory(), partition);
 
       return writer;
     }
@@ -234,11 +311,21 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
 
     private final FileSystemView<E> view;
     private final PathConversion convert;
+    private final BackgroundCommitter committer;
+    private final ParquetMemoryManager memoryManager;
 
     public IncrementalDatasetWriterCacheLoader(FileSystemView<E> view) {
+      this(view, null, null);
+    }
+
+    IncrementalDatasetWriterCacheLoader(FileSystemView<E> view,
+                                        @Nullable BackgroundCommitter committer,
+                                        @Nullable ParquetMemoryManager memoryManager) {
       this.view = view;
       this.convert = new PathConversion(
           view.getDataset().getDescriptor().getSchema());
+      this.committer = committer;
+      this.memoryManager = memoryManager;
     }
 
     @Override
@@ -254,7 +341,7 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
       FileSystemWriter<E> writer = FileSystemWriter.newWriter(
           dataset.getFileSystem(),
           new Path(dataset.getDirectory(), partition),
-          dataset.getDescriptor());
+          dataset.getDescriptor(), committer, memoryManager);
 
       PartitionListener listener = dataset.getPartitionListener();
       if (listener != null) {
@@ -266,6 +353,8 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
       // this lets the listener decide if and how to create the
       // partition directory
       writer.initialize();
+      PartitionListingCache.partitionAdded(
+          dataset.getFileSystem(), dataset.getDirectory(), partition);
 
       return (FileSystemWriter.IncrementalWriter<E>) writer;
     }
@@ -275,6 +364,12 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
   private static class DatasetWriterCloser<E> implements
     RemovalListener<StorageKey, DatasetWriter<E>> {
 
+    private final BackgroundCommitter committer;
+
+    private DatasetWriterCloser(@Nullable BackgroundCommitter committer) {
+      this.committer = committer;
+    }
+
     @Override
     public void onRemoval(
       RemovalNotification<StorageKey, DatasetWriter<E>> notification) {
@@ -284,9 +379,37 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
       LOG.debug("Closing writer:{} for partition:{}", writer,
         notification.getKey());
 
-      writer.close();
+      WriterCloser<E> closer = new WriterCloser<E>(writer);
+      if (committer != null) {
+        // evicted writers are not returned by the cache, but concurrent
+        // writers may still hold them. closing holds the writer's lock, so
+        // records written before the close are committed.
+        committer.submit(closer);
+      } else {
+        closer.run();
+      }
+    }
+
+  }
+
+  private static class WriterCloser<E> implements Runnable {
+    private final DatasetWriter<E> writer;
+
+    private WriterCloser(DatasetWriter<E> writer) {
+      this.writer = writer;
     }
 
+    @Override
+    public void run() {
+      synchronized (writer) {
+        writer.close();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return writer.toString();
+    }
   }
 
   private static class NonDurablePartitionedDatasetWriter<E> extends
@@ -298,7 +421,7 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
 
     @Override
     protected CacheLoader<StorageKey, FileSystemWriter<E>> createCacheLoader() {
-      return new DatasetWriterCacheLoader<E>(view);
+      return new DatasetWriterCacheLoader<E>(view, committer, memoryManager);
     }
   }
 
@@ -313,7 +436,8 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
     @Override
     protected CacheLoader<StorageKey, FileSystemWriter.IncrementalWriter<E>>
         createCacheLoader() {
-      return new IncrementalDatasetWriterCacheLoader<E>(view);
+      return new IncrementalDatasetWriterCacheLoader<E>(
+          view, committer, memoryManager);
     }
 
     @Override
@@ -332,7 +456,9 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
      */
       for (FileSystemWriter.IncrementalWriter<E> writer : cachedWriters.asMap().values()) {
         LOG.debug("Flushing partition writer:{}", writer);
-        writer.flush();
+        synchronized (writer) {
+          writer.flush();
+        }
       }
     }
 
@@ -345,7 +471,14 @@ abstract class PartitionedDatasetWriter<E, W extends FileSystemWriter<E>> extend
 
       for (FileSystemWriter.IncrementalWriter<E> writer : cachedWriters.asMap().values()) {
         LOG.debug("Syncing partition writer:{}", writer);
-        writer.sync();
+        synchronized (writer) {
+          writer.sync();
+        }
+      }
+
+      // files from evicted writers and rolls are durable once committed
+      if (committer != null) {
+        committer.await();
       }
     }
   }
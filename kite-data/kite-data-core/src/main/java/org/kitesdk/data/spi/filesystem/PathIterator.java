@@ -32,14 +32,26 @@ public class PathIterator implements Iterator<Path>, Iterable<Path> {
   private final FileSystem fs;
   private final Path root;
   private final Iterator<StorageKey> partitions;
+  private final DatasetManifest.Contents manifest;
   private StorageKey key = null;
   private Iterator<Path> files = null;
 
   public PathIterator(FileSystem fs, Path root,
                       @Nullable Iterator<StorageKey> partitions) {
+    this(fs, root, partitions, null);
+  }
+
+  /**
+   * Creates an iterator that finds the files in each partition using a
+   * dataset manifest, if one is given, rather than listing directories.
+   */
+  PathIterator(FileSystem fs, Path root,
+               @Nullable Iterator<StorageKey> partitions,
+               @Nullable DatasetManifest.Contents manifest) {
     this.fs = fs;
     this.root = root;
     this.partitions = partitions;
+    this.manifest = manifest;
   }
 
   @Override
@@ -79,6 +91,27 @@ public class PathIterator implements Iterator<Path>, Iterable<Path> {
   @SuppressWarnings("deprecation")
   private boolean advance() {
     while (true) {
+      if (manifest != null) {
+        List<Path> nextFileSet;
+        if (partitions == null) {
+          if (files != null) {
+            return false;
+          }
+          nextFileSet = manifest.files(null);
+          this.key = null;
+        } else if (partitions.hasNext()) {
+          this.key = partitions.next();
+          nextFileSet = manifest.files(key.getPath());
+        } else {
+          return false;
+        }
+        this.files = nextFileSet.iterator();
+        if (files.hasNext()) {
+          return true;
+        }
+        continue;
+      }
+
       FileStatus[] stats;
       if (partitions == null) {
         if (files != null) {
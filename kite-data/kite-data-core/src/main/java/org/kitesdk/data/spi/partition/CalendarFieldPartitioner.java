@@ -40,6 +40,26 @@ import org.kitesdk.data.spi.FieldPartitioner;
 public class CalendarFieldPartitioner extends FieldPartitioner<Long, Integer> {
 
   protected static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+  /**
+   * The first instant, 1582-10-15T00:00:00Z, of the Gregorian calendar. The
+   * arithmetic in {@link #decompose(long)} agrees with {@link Calendar} from
+   * this point on.
+   */
+  private static final long GREGORIAN_CUTOVER = -12219292800000L;
+  private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+  private static final long MILLIS_PER_MINUTE = 60L * 1000;
+  private static final long NOT_DECOMPOSED = -1L;
+
+  // boxed years, so that recent years can be returned without allocation
+  private static final int FIRST_CACHED_YEAR = 1900;
+  private static final Integer[] YEARS = new Integer[400];
+  static {
+    for (int i = 0; i < YEARS.length; i += 1) {
+      YEARS[i] = FIRST_CACHED_YEAR + i;
+    }
+  }
+
   protected final int calendarField;
 
   public CalendarFieldPartitioner(String sourceName, String name,
@@ -50,11 +70,98 @@ public class CalendarFieldPartitioner extends FieldPartitioner<Long, Integer> {
 
   @Override
   public Integer apply(@Nonnull Long timestamp) {
+    long millis = timestamp;
+    return apply(millis, decompose(millis));
+  }
+
+  /**
+   * Returns the value of this partitioner's field for a timestamp that has
+   * already been decomposed. Partitioners that share a source field can use a
+   * single decomposition to avoid repeating the date arithmetic.
+   *
+   * @param timestamp a UTC timestamp in milliseconds
+   * @param decomposed the result of {@link #decompose(long)} for timestamp
+   * @return the field value
+   */
+  public Integer apply(long timestamp, long decomposed) {
+    int value = valueOf(timestamp, decomposed);
+    int yearIndex = value - FIRST_CACHED_YEAR;
+    if (yearIndex >= 0 && yearIndex < YEARS.length) {
+      return YEARS[yearIndex];
+    }
+    return value; // Integer.valueOf caches small values
+  }
+
+  /**
+   * Returns the {@link Calendar} value of this partitioner's field.
+   * Subclasses may override this to adjust the value.
+   *
+   * @param timestamp a UTC timestamp in milliseconds
+   * @param decomposed the result of {@link #decompose(long)} for timestamp
+   * @return the field value
+   */
+  protected int valueOf(long timestamp, long decomposed) {
+    if (decomposed != NOT_DECOMPOSED) {
+      switch (calendarField) {
+        case Calendar.YEAR:
+          return (int) (decomposed >>> 32);
+        case Calendar.MONTH:
+          return ((int) (decomposed >>> 24) & 0xFF) - 1; // 0-based
+        case Calendar.DAY_OF_MONTH:
+          return (int) (decomposed >>> 16) & 0xFF;
+        case Calendar.HOUR_OF_DAY:
+          return (int) (decomposed >>> 8) & 0xFF;
+        case Calendar.MINUTE:
+          return (int) decomposed & 0xFF;
+        default:
+          break;
+      }
+    }
     Calendar cal = Calendar.getInstance(UTC);
     cal.setTimeInMillis(timestamp);
     return cal.get(calendarField);
   }
 
+  /**
+   * Decomposes a UTC timestamp into its year, month, day of month, hour, and
+   * minute without allocating a {@link Calendar}. The fields are packed into
+   * a single long for {@link #apply(long, long)}.
+   *
+   * @param timestamp a UTC timestamp in milliseconds
+   * @return the packed calendar fields
+   */
+  public static long decompose(long timestamp) {
+    if (timestamp < GREGORIAN_CUTOVER) {
+      // Calendar uses the Julian calendar before the cutover
+      return NOT_DECOMPOSED;
+    }
+
+    long days = timestamp / MILLIS_PER_DAY;
+    long millisOfDay = timestamp % MILLIS_PER_DAY;
+    if (millisOfDay < 0) {
+      days -= 1;
+      millisOfDay += MILLIS_PER_DAY;
+    }
+    long minuteOfDay = millisOfDay / MILLIS_PER_MINUTE;
+
+    // civil date from days since the epoch, using 400-year eras that start
+    // on March 1st. Days after the cutover are never in a negative era.
+    long shifted = days + 719468;
+    long era = shifted / 146097;
+    long dayOfEra = shifted - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 -
+        dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 -
+        yearOfEra / 100);
+    long shiftedMonth = (5 * dayOfYear + 2) / 153;
+    long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+    long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+    return (year << 32) | (month << 24) | (day << 16) |
+        ((minuteOfDay / 60) << 8) | (minuteOfDay % 60);
+  }
+
   @Override
   public Predicate<Integer> project(Predicate<Long> predicate) {
     return null;
@@ -17,7 +17,6 @@ package org.kitesdk.data.spi.partition;
 
 import java.text.NumberFormat;
 import java.util.Calendar;
-import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
@@ -42,9 +41,7 @@ public class MonthFieldPartitioner extends CalendarFieldPartitioner {
   }
 
   @Override
-  public Integer apply(@Nonnull Long timestamp) {
-    Calendar cal = Calendar.getInstance(UTC);
-    cal.setTimeInMillis(timestamp);
-    return cal.get(calendarField) + 1; // Calendar month is 0-based
+  protected int valueOf(long timestamp, long decomposed) {
+    return super.valueOf(timestamp, decomposed) + 1; // Calendar month is 0-based
   }
 }
@@ -16,6 +16,9 @@
 
 package org.kitesdk.data.spi;
 
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.List;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
 import org.apache.avro.generic.GenericData;
@@ -27,6 +30,7 @@ import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.PartitionStrategy;
 import org.kitesdk.data.TestHelpers;
 import org.kitesdk.data.ValidationException;
+import org.kitesdk.data.impl.Accessor;
 
 public class TestNestedFieldPartitioning {
 
@@ -170,4 +174,49 @@ public class TestNestedFieldPartitioning {
 
     Assert.assertEquals(expected, key);
   }
+
+  @Test
+  public void testStorageKeyWithSharedSource() {
+    Schema eventSchema = SchemaBuilder.record("Event").fields()
+        .requiredString("id")
+        .requiredLong("timestamp")
+        .endRecord();
+    PartitionStrategy timeStrategy = new PartitionStrategy.Builder()
+        .year("timestamp")
+        .month("timestamp")
+        .identity("id", "id_copy")
+        .day("timestamp")
+        .hour("timestamp")
+        .minute("timestamp")
+        .build();
+    EntityAccessor<GenericRecord> accessor =
+        DataModelUtil.accessor(GenericRecord.class, eventSchema);
+
+    StorageKey key = new StorageKey(timeStrategy);
+    GenericData.Record event = new GenericData.Record(eventSchema);
+    event.put("id", "a");
+    event.put("timestamp", 1384912178434L); // 2013-11-20T01:49:38.434Z
+    key.reuseFor(event, accessor);
+    Assert.assertEquals(
+        Arrays.<Object>asList(2013, 11, "a", 20, 1, 49),
+        values(key));
+
+    // the same key and accessor are reused for the next record
+    event.put("id", "b");
+    event.put("timestamp", 1420070399999L); // 2014-12-31T23:59:59.999Z
+    key.reuseFor(event, accessor);
+    Assert.assertEquals(
+        Arrays.<Object>asList(2014, 12, "b", 31, 23, 59),
+        values(key));
+  }
+
+  private static List<Object> values(StorageKey key) {
+    List<Object> values = Lists.newArrayList();
+    int size = Accessor.getDefault()
+        .getFieldPartitioners(key.getPartitionStrategy()).size();
+    for (int i = 0; i < size; i += 1) {
+      values.add(key.get(i));
+    }
+    return values;
+  }
 }
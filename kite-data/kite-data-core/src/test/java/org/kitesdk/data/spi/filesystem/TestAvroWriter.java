@@ -16,10 +16,13 @@
 
 package org.kitesdk.data.spi.filesystem;
 
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericData.Record;
@@ -91,4 +94,145 @@ public class TestAvroWriter extends TestFileSystemWriters {
     Assert.assertEquals("Should match written records",
         written, Lists.newArrayList((Iterator) init(reader)));
   }
+
+  @Test
+  public void testRollOnTargetRecordCount() throws IOException {
+    FileSystemWriter<Record> writer = FileSystemWriter.newWriter(
+        fs, testDirectory,
+        new DatasetDescriptor.Builder()
+            .property(FileSystemProperties.TARGET_RECORD_COUNT_PROP, "1000")
+            .schema(TEST_SCHEMA)
+            .format("avro")
+            .build());
+    init(writer);
+
+    for (long i = 0; i < 2500; i += 1) {
+      writer.write(record(i, "test-" + i));
+    }
+
+    FileStatus[] stats = fs.listStatus(testDirectory, PathFilters.notHidden());
+    Assert.assertEquals("Should have committed two rolled files", 2, stats.length);
+
+    writer.close();
+
+    stats = fs.listStatus(testDirectory, PathFilters.notHidden());
+    Assert.assertEquals("Should contain three visible data files", 3, stats.length);
+
+    long total = 0;
+    for (FileStatus stat : stats) {
+      total += Lists.newArrayList(
+          (Iterator) init(newReader(stat.getPath(), TEST_SCHEMA))).size();
+    }
+    Assert.assertEquals("Should contain all written records", 2500, total);
+  }
+
+  @Test
+  public void testRollWithBackgroundCommits() throws IOException {
+    FileSystemWriter<Record> writer = FileSystemWriter.newWriter(
+        fs, testDirectory,
+        new DatasetDescriptor.Builder()
+            .property(FileSystemProperties.TARGET_RECORD_COUNT_PROP, "1000")
+            .property(FileSystemProperties.WRITER_COMMIT_THREADS_PROP, "2")
+            .schema(TEST_SCHEMA)
+            .format("avro")
+            .build());
+    init(writer);
+
+    for (long i = 0; i < 2500; i += 1) {
+      writer.write(record(i, "test-" + i));
+    }
+
+    // close waits for the rolled files to be committed
+    writer.close();
+
+    FileStatus[] stats = fs.listStatus(testDirectory, PathFilters.notHidden());
+    Assert.assertEquals("Should contain three visible data files", 3, stats.length);
+    Assert.assertEquals("Should not leave temporary files", 3,
+        fs.listStatus(testDirectory).length);
+
+    long total = 0;
+    for (FileStatus stat : stats) {
+      total += Lists.newArrayList(
+          (Iterator) init(newReader(stat.getPath(), TEST_SCHEMA))).size();
+    }
+    Assert.assertEquals("Should contain all written records", 2500, total);
+  }
+
+  @Test(timeout = 30000)
+  public void testRollDoesNotWaitForBusyCommitter() throws IOException {
+    BackgroundCommitter committer = new BackgroundCommitter(1);
+    final CountDownLatch blocked = new CountDownLatch(1);
+    try {
+      // fill all of the committer's slots with commits that cannot finish
+      while (committer.trySubmit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            blocked.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      })) {
+      }
+
+      FileSystemWriter<Record> writer = FileSystemWriter.newWriter(
+          fs, testDirectory,
+          new DatasetDescriptor.Builder()
+              .property(FileSystemProperties.TARGET_RECORD_COUNT_PROP, "1000")
+              .schema(TEST_SCHEMA)
+              .format("avro")
+              .build(),
+          committer);
+      init(writer);
+
+      // rolled files are committed by the writing thread
+      for (long i = 0; i < 2500; i += 1) {
+        writer.write(record(i, "test-" + i));
+      }
+      Assert.assertEquals("Should commit rolled files without waiting", 2,
+          fs.listStatus(testDirectory, PathFilters.notHidden()).length);
+
+      blocked.countDown();
+      writer.close();
+      committer.await();
+    } finally {
+      blocked.countDown();
+      committer.shutdown();
+    }
+
+    Assert.assertEquals("Should contain three visible data files", 3,
+        fs.listStatus(testDirectory, PathFilters.notHidden()).length);
+  }
+
+  @Test
+  public void testRollOnTargetFileSize() throws IOException {
+    FileSystemWriter<Record> writer = FileSystemWriter.newWriter(
+        fs, testDirectory,
+        new DatasetDescriptor.Builder()
+            .property(FileSystemProperties.TARGET_FILE_SIZE_PROP, "32768")
+            .schema(TEST_SCHEMA)
+            .format("avro")
+            .build());
+    init(writer);
+
+    List<Record> written = Lists.newArrayList();
+    for (long i = 0; i < 10000; i += 1) {
+      Record record = record(i, "test-" + i);
+      writer.write(record);
+      written.add(record);
+    }
+    writer.close();
+
+    FileStatus[] stats = fs.listStatus(testDirectory, PathFilters.notHidden());
+    Assert.assertTrue("Should roll to multiple files", stats.length > 1);
+
+    List<Record> read = Lists.newArrayList();
+    for (FileStatus stat : stats) {
+      Iterators.addAll(read, (Iterator<Record>) init(
+          newReader(stat.getPath(), TEST_SCHEMA)));
+    }
+    Assert.assertEquals("Should contain all written records",
+        Sets.newHashSet(written), Sets.newHashSet(read));
+  }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitesdk.data.DatasetIOException;
+import org.kitesdk.data.DatasetOperationException;
+import org.kitesdk.data.TestHelpers;
+
+public class TestBackgroundCommitter {
+
+  private BackgroundCommitter committer;
+
+  @Before
+  public void createCommitter() {
+    this.committer = new BackgroundCommitter(2);
+  }
+
+  @After
+  public void shutdownCommitter() {
+    committer.shutdown();
+  }
+
+  @Test
+  public void testAwaitPendingCommits() {
+    final AtomicInteger committed = new AtomicInteger(0);
+    for (int i = 0; i < 20; i += 1) {
+      committer.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          committed.incrementAndGet();
+        }
+      });
+    }
+    committer.await();
+    Assert.assertEquals("Should wait for all commits", 20, committed.get());
+  }
+
+  @Test
+  public void testFailuresAreThrownByAwait() {
+    committer.submit(new Runnable() {
+      @Override
+      public void run() {
+        throw new DatasetIOException("Failed to commit", null);
+      }
+    });
+
+    TestHelpers.assertThrows("Should rethrow dataset exceptions",
+        DatasetIOException.class, new Runnable() {
+          @Override
+          public void run() {
+            committer.await();
+          }
+        });
+
+    // failures are only thrown once
+    committer.await();
+
+    committer.submit(new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException("Not a dataset exception");
+      }
+    });
+
+    TestHelpers.assertThrows("Should wrap other exceptions",
+        DatasetOperationException.class, new Runnable() {
+          @Override
+          public void run() {
+            committer.await();
+          }
+        });
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.collect.Lists;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCombinedInputSplit {
+
+  @Test
+  public void testCombineByHost() throws Exception {
+    List<InputSplit> splits = Lists.<InputSplit>newArrayList(
+        split("a", 40, "host1"), split("b", 40, "host2"),
+        split("c", 40, "host1"), split("d", 40, "host2"),
+        split("e", 40, "host1"), split("f", 250, "host3"));
+
+    List<InputSplit> combined = CombinedInputSplit.combine(splits, 80);
+    Assert.assertEquals("Should combine splits by host", 4, combined.size());
+
+    // large splits are not combined
+    Assert.assertSame(splits.get(5), combined.get(0));
+
+    CombinedInputSplit host1 = (CombinedInputSplit) combined.get(1);
+    Assert.assertEquals(80, host1.getLength());
+    Assert.assertArrayEquals(new String[] {"host1"}, host1.getLocations());
+    Assert.assertEquals(Lists.newArrayList(splits.get(0), splits.get(2)),
+        host1.getSplits());
+
+    CombinedInputSplit host2 = (CombinedInputSplit) combined.get(2);
+    Assert.assertArrayEquals(new String[] {"host2"}, host2.getLocations());
+
+    // the leftover split is not wrapped
+    Assert.assertSame(splits.get(4), combined.get(3));
+  }
+
+  @Test
+  public void testCombineLeftovers() throws Exception {
+    List<InputSplit> splits = Lists.<InputSplit>newArrayList(
+        split("a", 30, "host1"), split("b", 20, "host2"),
+        split("c", 20, "host3"), split("d", 20));
+
+    List<InputSplit> combined = CombinedInputSplit.combine(splits, 100);
+    Assert.assertEquals("Should combine leftovers across hosts",
+        1, combined.size());
+
+    CombinedInputSplit split = (CombinedInputSplit) combined.get(0);
+    Assert.assertEquals(90, split.getLength());
+    Assert.assertEquals(4, split.getSplits().size());
+    Assert.assertEquals("Should prefer the host with the most data",
+        "host1", split.getLocations()[0]);
+    Assert.assertEquals(3, split.getLocations().length);
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    List<InputSplit> combined = CombinedInputSplit.combine(
+        Lists.<InputSplit>newArrayList(
+            split("a", 10, "host1"), split("b", 20, "host1")), 100);
+    CombinedInputSplit split = (CombinedInputSplit) combined.get(0);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    split.write(out);
+    out.close();
+
+    CombinedInputSplit copy = new CombinedInputSplit();
+    copy.readFields(new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())));
+
+    Assert.assertEquals(30, copy.getLength());
+    Assert.assertEquals(2, copy.getSplits().size());
+    for (int i = 0; i < 2; i += 1) {
+      FileSplit expected = (FileSplit) split.getSplits().get(i);
+      FileSplit actual = (FileSplit) copy.getSplits().get(i);
+      Assert.assertEquals(expected.getPath(), actual.getPath());
+      Assert.assertEquals(expected.getStart(), actual.getStart());
+      Assert.assertEquals(expected.getLength(), actual.getLength());
+    }
+  }
+
+  private static FileSplit split(String name, long length, String... hosts) {
+    return new FileSplit(new Path("/data/" + name), 0, length, hosts);
+  }
+}
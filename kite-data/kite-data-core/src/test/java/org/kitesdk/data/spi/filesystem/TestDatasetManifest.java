@@ -0,0 +1,222 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDatasetManifest {
+
+  private FileSystem fs;
+  private Path root;
+  private DatasetManifest manifest;
+
+  @Before
+  public void createFiles() throws IOException {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.root = fs.makeQualified(
+        new Path(Files.createTempDir().getAbsolutePath()));
+    // compact only when a test calls compact()
+    this.manifest = new DatasetManifest(fs, root, 0);
+    createFile(new Path(root, "a=1/b=1/one.avro"), 10);
+    createFile(new Path(root, "a=1/b=2/two.avro"), 20);
+    // hidden files are not data files
+    createFile(new Path(root, "a=1/b=2/.two.avro.tmp"), 5);
+  }
+
+  @After
+  public void removeFiles() throws IOException {
+    fs.delete(root, true);
+  }
+
+  @Test
+  public void testNotBuilt() {
+    Assert.assertNull("Should not load a manifest without a snapshot",
+        manifest.load());
+
+    manifest.added(new Path(root, "a=1/b=1/one.avro"), 1);
+    Assert.assertNull("Should not load a manifest with only deltas",
+        manifest.load());
+  }
+
+  @Test
+  public void testBuild() {
+    manifest.compact();
+
+    DatasetManifest.Contents contents = manifest.load();
+    Assert.assertNotNull("Should load a built manifest", contents);
+    Assert.assertEquals("Should contain data files",
+        Sets.newHashSet("a=1/b=1/one.avro", "a=1/b=2/two.avro"),
+        paths(contents));
+    Assert.assertEquals("Should list partitions",
+        Sets.<List<String>>newHashSet(
+            ImmutableList.of("a=1", "b=1"), ImmutableList.of("a=1", "b=2")),
+        Sets.newHashSet(contents.partitions(2)));
+    Assert.assertEquals("Should find files by partition",
+        Lists.newArrayList(new Path(root, "a=1/b=2/two.avro")),
+        contents.files(new Path("a=1/b=2")));
+
+    DatasetManifest.Entry entry = contents.entries(new Path("a=1/b=1"))
+        .iterator().next();
+    Assert.assertEquals("Should record size", 10, entry.getSize());
+    Assert.assertEquals("Should not know record count", -1, entry.getRecords());
+  }
+
+  @Test
+  public void testChanges() throws IOException {
+    manifest.compact();
+
+    Path three = new Path(root, "a=2/b=1/three.avro");
+    createFile(three, 30);
+    manifest.added(three, 3);
+    manifest.removed(Lists.newArrayList(new Path(root, "a=1/b=1")));
+
+    DatasetManifest.Contents contents = manifest.load();
+    Assert.assertEquals("Should apply deltas",
+        Sets.newHashSet("a=1/b=2/two.avro", "a=2/b=1/three.avro"),
+        paths(contents));
+    Assert.assertEquals("Should record the record count", 3,
+        contents.entries(new Path("a=2/b=1")).iterator().next().getRecords());
+
+    Assert.assertEquals("Loading should not compact", 3, manifestFiles());
+
+    manifest.compact();
+    Assert.assertEquals("Should not change contents",
+        paths(contents), paths(manifest.load()));
+    Assert.assertEquals("Should keep folded deltas until the next compaction",
+        4, manifestFiles());
+
+    manifest.compact();
+    Assert.assertEquals("Should not change contents",
+        paths(contents), paths(manifest.load()));
+    Assert.assertEquals("Should replace deltas with a snapshot",
+        1, manifestFiles());
+  }
+
+  @Test
+  public void testReplaced() throws IOException {
+    manifest.compact();
+
+    // a partition is replaced with a directory that has different files
+    Path replacement = new Path(root, "a=1/b=1/replacement.avro");
+    createFile(replacement, 15);
+    manifest.replaced(Lists.newArrayList(new Path(root, "a=1/b=1")),
+        Lists.newArrayList(replacement), 2);
+
+    Assert.assertEquals("Should record removals and additions in one delta",
+        2, manifestFiles());
+    Assert.assertEquals("Should add files to the removed directory",
+        Sets.newHashSet("a=1/b=1/replacement.avro", "a=1/b=2/two.avro"),
+        paths(manifest.load()));
+  }
+
+  @Test
+  public void testLaterChangesAfterLoad() throws IOException {
+    manifest.compact();
+    Assert.assertEquals("Should load the snapshot",
+        Sets.newHashSet("a=1/b=1/one.avro", "a=1/b=2/two.avro"),
+        paths(manifest.load()));
+
+    // a different instance, like another process, records a change
+    Path three = new Path(root, "a=2/b=1/three.avro");
+    createFile(three, 30);
+    new DatasetManifest(fs, root, 0).added(three, 3);
+
+    Assert.assertEquals("Should apply deltas written after the last load",
+        Sets.newHashSet(
+            "a=1/b=1/one.avro", "a=1/b=2/two.avro", "a=2/b=1/three.avro"),
+        paths(manifest.load()));
+  }
+
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    manifest.compact();
+
+    final int numWriters = 8;
+    final int numFiles = 20;
+    ExecutorService pool = Executors.newFixedThreadPool(numWriters);
+    try {
+      List<Future<Void>> results = Lists.newArrayList();
+      for (int i = 0; i < numWriters; i += 1) {
+        final int writer = i;
+        results.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            // compact often so that writers also compact concurrently
+            DatasetManifest writerManifest = new DatasetManifest(fs, root, 10);
+            for (int j = 0; j < numFiles; j += 1) {
+              Path file = new Path(root, "w=" + writer + "/" + j + ".avro");
+              createFile(file, 1);
+              writerManifest.added(file, 1);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    Assert.assertEquals("Should record every file from every writer",
+        2 + numWriters * numFiles, paths(manifest.load()).size());
+    manifest.compact();
+    Assert.assertEquals("Should keep every file after compaction",
+        2 + numWriters * numFiles, paths(manifest.load()).size());
+  }
+
+  private int manifestFiles() throws IOException {
+    return fs.listStatus(new Path(root, ".metadata/manifest"),
+        PathFilters.notHidden()).length;
+  }
+
+  private static Set<String> paths(DatasetManifest.Contents contents) {
+    Set<String> paths = Sets.newHashSet();
+    for (DatasetManifest.Entry entry : contents.entries()) {
+      paths.add(entry.getPath());
+    }
+    return paths;
+  }
+
+  private void createFile(Path path, int length) throws IOException {
+    OutputStream out = fs.create(path);
+    try {
+      out.write(new byte[length]);
+    } finally {
+      out.close();
+    }
+  }
+}
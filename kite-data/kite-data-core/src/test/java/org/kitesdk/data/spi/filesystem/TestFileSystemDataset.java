@@ -16,7 +16,9 @@
 package org.kitesdk.data.spi.filesystem;
 
 import org.kitesdk.data.Signalable;
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.kitesdk.data.Dataset;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetException;
@@ -24,6 +26,7 @@ import org.kitesdk.data.DatasetReader;
 import org.kitesdk.data.Format;
 import org.kitesdk.data.Formats;
 import org.kitesdk.data.MiniDFSTest;
+import org.kitesdk.data.PartitionView;
 import org.kitesdk.data.URIBuilder;
 import org.kitesdk.data.ValidationException;
 import org.kitesdk.data.impl.Accessor;
@@ -32,14 +35,19 @@ import org.kitesdk.data.PartitionStrategy;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericData.Record;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.junit.After;
 import org.junit.Assert;
@@ -428,6 +436,209 @@ public class TestFileSystemDataset extends MiniDFSTest {
 
   }
 
+  @Test
+  public void testCompactSmallFiles() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
+        "username", 2).build();
+
+    FileSystemDataset<Record> ds = new FileSystemDataset.Builder<Record>()
+        .namespace("ns")
+        .name("partitioned-users")
+        .configuration(getConfiguration())
+        .descriptor(new DatasetDescriptor.Builder()
+            .schema(USER_SCHEMA)
+            .format(format)
+            .compressionType(compressionType)
+            .location(testDirectory)
+            .partitionStrategy(partitionStrategy)
+            .build())
+        .type(Record.class)
+        .build();
+
+    writeTestUsers(ds, 50, 0);
+    Map<Path, Long> largeFiles = Maps.newHashMap();
+    long smallFileSize = Long.MAX_VALUE;
+    for (Path file : ds.pathIterator()) {
+      long size = fileSystem.getFileStatus(file).getLen();
+      largeFiles.put(file, size);
+      smallFileSize = Math.min(smallFileSize, size);
+    }
+
+    // each write adds one small file
+    for (int i = 50; i < 56; i += 1) {
+      writeTestUsers(ds, 1, i);
+    }
+
+    int expectedCompacted = 0;
+    for (PartitionView<Record> partition : ds.getCoveringPartitions()) {
+      int smallFiles = 0;
+      for (FileStatus stat : fileSystem.listStatus(
+          new Path(partition.getLocation()), PathFilters.notHidden())) {
+        if (stat.getLen() < smallFileSize) {
+          smallFiles += 1;
+        }
+      }
+      if (smallFiles > 1) {
+        expectedCompacted += smallFiles;
+      }
+    }
+    Assert.assertTrue("Should have small files to compact",
+        expectedCompacted > 0);
+
+    // an incomplete merge from a failed compaction is discarded
+    Path firstPartition = new Path(
+        ds.getCoveringPartitions().iterator().next().getLocation());
+    Path staged = new Path(firstPartition.getParent(),
+        "." + firstPartition.getName() + ".compaction");
+    fileSystem.create(new Path(staged, "incomplete." + format.getExtension()))
+        .close();
+
+    Assert.assertEquals(expectedCompacted,
+        ds.compactSmallFiles(ds, smallFileSize, 1024 * 1024 * 1024));
+
+    checkTestUsers(ds, 56);
+    for (Map.Entry<Path, Long> entry : largeFiles.entrySet()) {
+      Assert.assertEquals("Large files should not be rewritten",
+          (long) entry.getValue(),
+          fileSystem.getFileStatus(entry.getKey()).getLen());
+    }
+    for (PartitionView<Record> partition : ds.getCoveringPartitions()) {
+      Path location = new Path(partition.getLocation());
+      Assert.assertFalse("Should remove the compaction directory",
+          fileSystem.exists(new Path(location.getParent(),
+              "." + location.getName() + ".compaction")));
+      Assert.assertTrue("Should merge small files",
+          fileSystem.listStatus(location, PathFilters.notHidden()).length <= 2);
+    }
+
+    // nothing is left to compact
+    Assert.assertEquals(0,
+        ds.compactSmallFiles(ds, smallFileSize, 1024 * 1024 * 1024));
+    checkTestUsers(ds, 56);
+  }
+
+  @Test
+  public void testCompactSmallFilesToTargetSize() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
+        "username", 1).build();
+
+    FileSystemDataset<Record> ds = new FileSystemDataset.Builder<Record>()
+        .namespace("ns")
+        .name("partitioned-users")
+        .configuration(getConfiguration())
+        .descriptor(new DatasetDescriptor.Builder()
+            .schema(USER_SCHEMA)
+            .format(format)
+            .compressionType(compressionType)
+            .location(testDirectory)
+            .partitionStrategy(partitionStrategy)
+            .build())
+        .type(Record.class)
+        .build();
+
+    for (int i = 0; i < 6; i += 1) {
+      writeTestUsers(ds, 1, i);
+    }
+    long maxFileSize = 0;
+    for (Path file : ds.pathIterator()) {
+      maxFileSize = Math.max(maxFileSize,
+          fileSystem.getFileStatus(file).getLen());
+    }
+
+    // any two files fit in the target size, but not three
+    Assert.assertEquals(6,
+        ds.compactSmallFiles(ds, Long.MAX_VALUE, 2 * maxFileSize));
+    checkTestUsers(ds, 6);
+    Path partition = new Path(
+        ds.getCoveringPartitions().iterator().next().getLocation());
+    Assert.assertEquals("Should merge files in groups of the target size",
+        3, fileSystem.listStatus(partition, PathFilters.notHidden()).length);
+  }
+
+  @Test
+  public void testCompactSmallFilesKeepsOtherFiles() throws Exception {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
+        "username", 1).build();
+
+    FileSystemDataset<Record> ds = new FileSystemDataset.Builder<Record>()
+        .namespace("ns")
+        .name("partitioned-users")
+        .configuration(getConfiguration())
+        .descriptor(new DatasetDescriptor.Builder()
+            .schema(USER_SCHEMA)
+            .format(format)
+            .compressionType(compressionType)
+            .location(testDirectory)
+            .partitionStrategy(partitionStrategy)
+            // readers use the manifest after the first compaction builds it
+            .property(FileSystemProperties.MANIFEST_PROP, "true")
+            .build())
+        .type(Record.class)
+        .build();
+
+    for (int i = 0; i < 4; i += 1) {
+      writeTestUsers(ds, 1, i);
+    }
+    Path partition = new Path(
+        ds.getCoveringPartitions().iterator().next().getLocation());
+
+    // hidden files are carried over to the new partition
+    Path temp = new Path(partition, ".in-progress." + format.getExtension() +
+        ".tmp");
+    fileSystem.create(temp).close();
+    Assert.assertEquals("Should merge files next to a hidden file",
+        4, ds.compactSmallFiles(ds, Long.MAX_VALUE, 1024 * 1024 * 1024));
+    checkTestUsers(ds, 4);
+    Assert.assertTrue("Should keep hidden files", fileSystem.exists(temp));
+    Assert.assertFalse("Should remove the replacement directory",
+        fileSystem.exists(new Path(partition.getParent(),
+            "." + partition.getName() + ".replacement")));
+    fileSystem.delete(temp, false);
+
+    // files committed after compaction are kept
+    for (int i = 4; i < 6; i += 1) {
+      writeTestUsers(ds, 1, i);
+    }
+    Assert.assertEquals("Should keep files committed after the compaction",
+        3, fileSystem.listStatus(partition, PathFilters.notHidden()).length);
+
+    // a compaction that stopped after its merge was complete is finished
+    Path source = fileSystem.listStatus(
+        partition, PathFilters.notHidden())[0].getPath();
+    Path staged = new Path(partition.getParent(),
+        "." + partition.getName() + ".compaction");
+    String copyName = "copy." + format.getExtension();
+    FileUtil.copy(fileSystem, source, fileSystem, new Path(staged, copyName),
+        false /* keep source */, getConfiguration());
+    writeLines(new Path(staged, ".compacted-files"), copyName);
+    writeLines(new Path(staged, ".compacted-sources"), source.getName());
+    Assert.assertEquals("Should finish the interrupted compaction",
+        1, ds.compactSmallFiles(ds, Long.MAX_VALUE, 1024 * 1024 * 1024));
+    checkTestUsers(ds, 6);
+    Assert.assertFalse("Should remove the source", fileSystem.exists(source));
+    Assert.assertTrue("Should move the merged file into the partition",
+        fileSystem.exists(new Path(partition, copyName)));
+    Assert.assertFalse("Should remove the compaction directory",
+        fileSystem.exists(staged));
+
+    Assert.assertEquals(3,
+        ds.compactSmallFiles(ds, Long.MAX_VALUE, 1024 * 1024 * 1024));
+    checkTestUsers(ds, 6);
+  }
+
+  private void writeLines(Path file, String... lines) throws IOException {
+    Writer out = new OutputStreamWriter(fileSystem.create(file, true),
+        Charsets.UTF_8);
+    try {
+      for (String line : lines) {
+        out.write(line);
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+  }
+
   @Test(expected = ValidationException.class)
   public void testCannotMergeDatasetsWithDifferentFormats() throws IOException {
     FileSystemDataset<Record> ds = new FileSystemDataset.Builder<Record>()
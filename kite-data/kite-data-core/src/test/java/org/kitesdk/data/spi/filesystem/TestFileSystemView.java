@@ -18,11 +18,14 @@ package org.kitesdk.data.spi.filesystem;
 
 import org.kitesdk.data.Signalable;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.Closeables;
 import java.util.Iterator;
 import java.util.Map;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.kitesdk.data.Dataset;
+import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetWriter;
 import org.kitesdk.data.PartitionView;
 import org.kitesdk.data.TestHelpers;
@@ -32,6 +35,7 @@ import org.kitesdk.data.spi.LastModifiedAccessor;
 import org.kitesdk.data.spi.TestRefinableViews;
 import org.kitesdk.data.event.StandardEvent;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.junit.After;
 import org.junit.Assert;
@@ -104,6 +108,111 @@ public class TestFileSystemView extends TestRefinableViews {
     assertFalse(iter.hasNext());
   }
 
+  @Test
+  public void testParallelRead() throws IOException {
+    Dataset<StandardEvent> parallel = repo.create("ns", "parallel",
+        new DatasetDescriptor.Builder(testDescriptor)
+            .property(FileSystemProperties.READER_PARALLELISM_PROP, "2")
+            .build(), StandardEvent.class);
+
+    DatasetWriter<StandardEvent> writer = null;
+    try {
+      writer = parallel.newWriter();
+      writer.write(sepEvent);
+      writer.write(octEvent);
+      writer.write(novEvent);
+    } finally {
+      Closeables.close(writer, false);
+    }
+
+    assertContentEquals(Sets.newHashSet(sepEvent, octEvent, novEvent),
+        parallel);
+    assertContentEquals(Sets.newHashSet(octEvent),
+        parallel.with("user_id", 1L));
+    assertContentEquals(Sets.newHashSet(sepEvent, novEvent),
+        parallel.with("session_id", "session-0").toBefore("user_id", 1L));
+  }
+
+  @Test
+  public void testCachedParallelListing() throws IOException {
+    Dataset<StandardEvent> cached = repo.create("ns", "cached",
+        new DatasetDescriptor.Builder(testDescriptor)
+            .property(FileSystemProperties.LISTING_CACHE_TTL_PROP, "3600000")
+            .property(FileSystemProperties.LISTING_PARALLELISM_PROP, "4")
+            .build(), StandardEvent.class);
+
+    DatasetWriter<StandardEvent> writer = null;
+    try {
+      writer = cached.newWriter();
+      writer.write(sepEvent);
+    } finally {
+      Closeables.close(writer, false);
+    }
+
+    assertContentEquals(Sets.newHashSet(sepEvent), cached);
+    long size = ((FileSystemDataset<StandardEvent>) cached).getSize();
+    Assert.assertTrue("Should find data files", size > 0);
+
+    // new partitions are added to the cached listing by the writer
+    try {
+      writer = cached.newWriter();
+      writer.write(octEvent);
+      writer.write(novEvent);
+    } finally {
+      Closeables.close(writer, false);
+    }
+
+    assertContentEquals(Sets.newHashSet(sepEvent, octEvent, novEvent), cached);
+    Assert.assertTrue("Should find new data files",
+        ((FileSystemDataset<StandardEvent>) cached).getSize() > size);
+
+    Assert.assertTrue(((FileSystemDataset<StandardEvent>) cached).deleteAll());
+    assertContentEquals(Sets.<StandardEvent>newHashSet(), cached);
+  }
+
+  @Test
+  public void testManifest() throws IOException {
+    Dataset<StandardEvent> withManifest = repo.create("ns", "manifest",
+        new DatasetDescriptor.Builder(testDescriptor)
+            .property(FileSystemProperties.MANIFEST_PROP, "true")
+            .build(), StandardEvent.class);
+    FileSystemDataset<StandardEvent> dataset =
+        (FileSystemDataset<StandardEvent>) withManifest;
+
+    DatasetWriter<StandardEvent> writer = null;
+    try {
+      writer = withManifest.newWriter();
+      writer.write(sepEvent);
+      writer.write(octEvent);
+      writer.write(novEvent);
+    } finally {
+      Closeables.close(writer, false);
+    }
+
+    assertContentEquals(Sets.newHashSet(sepEvent, octEvent, novEvent),
+        withManifest);
+    assertContentEquals(Sets.newHashSet(octEvent),
+        withManifest.with("user_id", 1L));
+
+    long size = 0;
+    for (Path path : dataset.pathIterator()) {
+      size += fs.getFileStatus(path).getLen();
+    }
+    Assert.assertEquals("Should find size from the manifest",
+        size, dataset.getSize());
+
+    // files that are not in the manifest are not read
+    Path file = dataset.pathIterator().next();
+    FileUtil.copy(fs, file, fs, new Path(file.getParent(), "copy.avro"),
+        false, fs.getConf());
+    Assert.assertEquals("Should only read files in the manifest",
+        3, DatasetTestUtilities.datasetSize(withManifest));
+
+    Assert.assertTrue(dataset.deleteAll());
+    assertContentEquals(Sets.<StandardEvent>newHashSet(), withManifest);
+    Assert.assertEquals(0, dataset.getSize());
+  }
+
   private StandardEvent standardEvent(long timestamp) {
     return StandardEvent.newBuilder(event).setTimestamp(timestamp).build();
   }
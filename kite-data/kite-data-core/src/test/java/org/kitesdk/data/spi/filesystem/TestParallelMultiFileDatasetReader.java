@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.util.List;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitesdk.data.DatasetIOException;
+import org.kitesdk.data.DatasetReader;
+import org.kitesdk.data.TestDatasetReaders;
+import org.kitesdk.data.spi.DataModelUtil;
+import org.kitesdk.data.spi.EntityAccessor;
+
+import static org.kitesdk.data.spi.filesystem.DatasetTestUtilities.*;
+import static org.kitesdk.data.spi.filesystem.TestMultiFileDatasetReader.CONSTRAINTS;
+import static org.kitesdk.data.spi.filesystem.TestMultiFileDatasetReader.DESCRIPTOR;
+import static org.kitesdk.data.spi.filesystem.TestMultiFileDatasetReader.TEST_FILE;
+import static org.kitesdk.data.spi.filesystem.TestMultiFileDatasetReader.VALIDATOR;
+
+public class TestParallelMultiFileDatasetReader extends TestDatasetReaders {
+
+  private static final EntityAccessor<Record> ACCESSOR =
+      DataModelUtil.accessor(Record.class, STRING_SCHEMA);
+
+  @Override
+  public DatasetReader newReader() throws IOException {
+    return new ParallelMultiFileDatasetReader<Record>(
+        FileSystem.get(new Configuration()),
+        Lists.newArrayList(TEST_FILE, TEST_FILE, TEST_FILE, TEST_FILE, TEST_FILE),
+        DESCRIPTOR, CONSTRAINTS, ACCESSOR, 3);
+  }
+
+  @Override
+  public int getTotalRecords() {
+    return 500;
+  }
+
+  @Override
+  public DatasetTestUtilities.RecordValidator getValidator() {
+    return VALIDATOR;
+  }
+
+  private FileSystem fileSystem;
+  @Before
+  public void setUp() throws IOException {
+    this.fileSystem = FileSystem.get(new Configuration());
+  }
+
+  @Test
+  public void testEmptyPathList() throws IOException {
+    ParallelMultiFileDatasetReader<Record> reader =
+        new ParallelMultiFileDatasetReader<Record>(fileSystem,
+            Lists.<Path>newArrayList(), DESCRIPTOR, CONSTRAINTS, ACCESSOR, 3);
+
+    checkReaderBehavior(reader, 0, VALIDATOR);
+  }
+
+  @Test
+  public void testFewerFilesThanThreads() throws IOException {
+    ParallelMultiFileDatasetReader<Record> reader =
+        new ParallelMultiFileDatasetReader<Record>(fileSystem,
+            Lists.newArrayList(TEST_FILE), DESCRIPTOR, CONSTRAINTS, ACCESSOR, 3);
+
+    checkReaderBehavior(reader, 100, VALIDATOR);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRequiresPositiveParallelism() throws IOException {
+    new ParallelMultiFileDatasetReader<Record>(
+        fileSystem, Lists.newArrayList(TEST_FILE), DESCRIPTOR, CONSTRAINTS,
+        ACCESSOR, 0);
+  }
+
+  @Test(expected = DatasetIOException.class)
+  public void testMissingPath() throws IOException {
+    Path missingFile = new Path("data/no-such-file.avro");
+
+    ParallelMultiFileDatasetReader<Record> reader =
+        new ParallelMultiFileDatasetReader<Record>(fileSystem,
+            Lists.newArrayList(TEST_FILE, missingFile, TEST_FILE), DESCRIPTOR,
+            CONSTRAINTS, ACCESSOR, 2);
+
+    try {
+      try {
+        reader.initialize();
+      } catch (Throwable t) {
+        Assert.fail("Reader failed in open: " + t.getClass().getName());
+      }
+
+      // records from the first file are returned before the failure
+      checkReaderIteration(reader, 300, VALIDATOR);
+
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testCloseBeforeFilesAreRead() throws IOException {
+    List<Path> files = Lists.newArrayList();
+    for (int i = 0; i < 50; i += 1) {
+      files.add(TEST_FILE);
+    }
+
+    ParallelMultiFileDatasetReader<Record> reader =
+        new ParallelMultiFileDatasetReader<Record>(fileSystem, files,
+            DESCRIPTOR, CONSTRAINTS, ACCESSOR, 4);
+    reader.initialize();
+
+    Assert.assertTrue(reader.hasNext());
+    VALIDATOR.validate(reader.next(), 0);
+
+    // must not block on background threads waiting for buffer space
+    reader.close();
+    Assert.assertFalse("Reader should be closed", reader.isOpen());
+  }
+}
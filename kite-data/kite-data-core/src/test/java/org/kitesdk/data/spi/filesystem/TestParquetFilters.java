@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitesdk.data.CompressionType;
+import org.kitesdk.data.spi.predicates.Predicates;
+import org.kitesdk.data.spi.predicates.Ranges;
+
+public class TestParquetFilters {
+
+  private static final Schema SCHEMA = SchemaBuilder.record("Message").fields()
+      .requiredLong("id")
+      .requiredString("message")
+      .optionalString("note")
+      .endRecord();
+
+  private static final Schema PROJECTION = SchemaBuilder.record("Message")
+      .fields()
+      .requiredLong("id")
+      .endRecord();
+
+  private static final Schema EVOLVED = SchemaBuilder.record("Message")
+      .fields()
+      .requiredLong("id")
+      .requiredString("message")
+      .optionalString("note")
+      .name("priority").type().intType().intDefault(0)
+      .endRecord();
+
+  private FileSystem fs;
+  private Path path;
+
+  @Before
+  public void writeFile() throws IOException {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.path = new Path(Files.createTempDir().getAbsolutePath(), "test.parquet");
+
+    ParquetAppender<Record> appender = new ParquetAppender<Record>(
+        fs, path, SCHEMA, new Configuration(), CompressionType.Snappy);
+    appender.open();
+    for (long i = 0; i < 100; i += 1) {
+      Record record = new Record(SCHEMA);
+      record.put("id", i);
+      record.put("message", "test-" + (i % 10));
+      record.put("note", null);
+      appender.append(record);
+    }
+    appender.close();
+  }
+
+  @After
+  public void removeFile() throws IOException {
+    fs.delete(path.getParent(), true);
+  }
+
+  @Test
+  public void testProjection() {
+    Assert.assertNull("Should not project if all fields are read",
+        ParquetFilters.projection(SCHEMA, SCHEMA));
+    Schema projection = ParquetFilters.projection(SCHEMA, PROJECTION);
+    Assert.assertNotNull("Should project a subset of fields", projection);
+    Assert.assertEquals("Should only contain the projected field",
+        1, projection.getFields().size());
+    Assert.assertEquals("Should use the dataset's field definition",
+        SCHEMA.getField("id").schema(), projection.getField("id").schema());
+  }
+
+  @Test
+  public void testUnsupportedPredicates() {
+    Map<String, Predicate> predicates = ImmutableMap.<String, Predicate>of(
+        "id", Predicates.exists(),
+        "note", Predicates.in("a"),
+        "year", Predicates.in(2015));
+    Assert.assertNull("Should not push down exists, optional or partitions",
+        ParquetFilters.recordFilter(predicates, SCHEMA));
+  }
+
+  @Test
+  public void testRecordFilter() {
+    Map<String, Predicate> predicates = ImmutableMap.<String, Predicate>of(
+        "id", Ranges.closedOpen(20L, 60L),
+        "message", Predicates.in("test-1", "test-2"));
+
+    List<Record> records = read(SCHEMA, null,
+        ParquetFilters.recordFilter(predicates, SCHEMA));
+    Assert.assertEquals("Should skip records that do not match",
+        8, records.size());
+    for (Record record : records) {
+      long id = (Long) record.get("id");
+      Assert.assertTrue("Should match the range", id >= 20 && id < 60);
+      Assert.assertTrue("Should match the set",
+          id % 10 == 1 || id % 10 == 2);
+    }
+  }
+
+  @Test
+  public void testProjectedRecordFilter() {
+    Map<String, Predicate> predicates = ImmutableMap.<String, Predicate>of(
+        "id", Ranges.atLeast(90L),
+        "message", Predicates.in("test-1"));
+    Schema projection = ParquetFilters.projection(SCHEMA, PROJECTION);
+
+    List<Record> records = read(PROJECTION, projection,
+        ParquetFilters.recordFilter(predicates, projection));
+    Assert.assertEquals("Should only filter on projected columns",
+        10, records.size());
+    for (Record record : records) {
+      Assert.assertEquals("Should read the projection schema",
+          PROJECTION, record.getSchema());
+    }
+  }
+
+  @Test
+  public void testRecordFilterWithMissingColumn() {
+    // files written with an older schema do not have the priority column
+    Map<String, Predicate> predicates = ImmutableMap.<String, Predicate>of(
+        "id", Ranges.closedOpen(20L, 60L),
+        "priority", Predicates.in(1));
+
+    List<Record> records = read(EVOLVED, null,
+        ParquetFilters.recordFilter(predicates, EVOLVED));
+    Assert.assertEquals("Should only filter on columns in the file",
+        40, records.size());
+    for (Record record : records) {
+      long id = (Long) record.get("id");
+      Assert.assertTrue("Should match the range", id >= 20 && id < 60);
+    }
+  }
+
+  private List<Record> read(Schema schema, Schema projection,
+                            parquet.filter.UnboundRecordFilter filter) {
+    ParquetFileSystemDatasetReader<Record> reader =
+        new ParquetFileSystemDatasetReader<Record>(
+            fs, path, schema, Record.class, projection, filter);
+    try {
+      reader.initialize();
+      return Lists.newArrayList((Iterable<Record>) reader);
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -16,11 +16,16 @@
 
 package org.kitesdk.data.spi.filesystem;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericData.Record;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.junit.Assert;
@@ -32,6 +37,7 @@ import org.kitesdk.data.DatasetWriter;
 import org.kitesdk.data.Flushable;
 import org.kitesdk.data.LocalFileSystem;
 import org.kitesdk.data.Syncable;
+import parquet.hadoop.ParquetFileReader;
 
 public class TestParquetWriter extends TestFileSystemWriters {
   @Override
@@ -112,4 +118,141 @@ public class TestParquetWriter extends TestFileSystemWriters {
     Assert.assertEquals("Enabling the non-durable parquet appender should get us a non-durable appender",
         ParquetAppender.class, writer.newAppender(testDirectory).getClass());
   }
+
+  @Test
+  public void testRollOnTargetRecordCount() throws IOException {
+    FileSystemWriter<Record> writer = FileSystemWriter.newWriter(
+        fs, testDirectory,
+        new DatasetDescriptor.Builder()
+            .property(FileSystemProperties.TARGET_RECORD_COUNT_PROP, "1000")
+            .schema(TEST_SCHEMA)
+            .format("parquet")
+            .build());
+    init(writer);
+
+    for (long i = 0; i < 2500; i += 1) {
+      writer.write(record(i, "test-" + i));
+    }
+    writer.close();
+
+    FileStatus[] stats = fs.listStatus(testDirectory, PathFilters.notHidden());
+    Assert.assertEquals("Should contain three visible data files", 3, stats.length);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRollOnTargetFileSize() throws IOException {
+    FileSystemWriter<Record> writer = FileSystemWriter.newWriter(
+        fs, testDirectory,
+        new DatasetDescriptor.Builder()
+            .property(FileSystemProperties.TARGET_FILE_SIZE_PROP, "32768")
+            .schema(TEST_SCHEMA)
+            .format("parquet")
+            .build());
+    init(writer);
+
+    List<Record> written = Lists.newArrayList();
+    for (long i = 0; i < 20000; i += 1) {
+      Record record = record(i, "test-" + i);
+      writer.write(record);
+      written.add(record);
+    }
+    writer.close();
+
+    FileStatus[] stats = fs.listStatus(testDirectory, PathFilters.notHidden());
+    Assert.assertTrue("Should roll to multiple files", stats.length > 1);
+
+    List<Record> read = Lists.newArrayList();
+    for (FileStatus stat : stats) {
+      read.addAll(Lists.newArrayList(
+          (Iterator<Record>) init(newReader(stat.getPath(), TEST_SCHEMA))));
+    }
+    Assert.assertEquals("Should contain all written records",
+        Sets.newHashSet(written), Sets.newHashSet(read));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testMemoryManagedWriters() throws IOException {
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .property(FileSystemProperties.PARQUET_MEMORY_BUDGET_PROP, "65536")
+        .schema(TEST_SCHEMA)
+        .format("parquet")
+        .build();
+    ParquetMemoryManager manager = ParquetMemoryManager.forDescriptor(descriptor);
+    Assert.assertNotNull("Should create a memory manager", manager);
+    Assert.assertEquals(65536, manager.getBudget());
+
+    Path dir1 = new Path(testDirectory, "one");
+    Path dir2 = new Path(testDirectory, "two");
+    Path dir3 = new Path(testDirectory, "three");
+    FileSystemWriter<Record> writer1 = init(FileSystemWriter.<Record>newWriter(
+        fs, dir1, descriptor, null, manager));
+    FileSystemWriter<Record> writer2 = init(FileSystemWriter.<Record>newWriter(
+        fs, dir2, descriptor, null, manager));
+    // not in the group, so it uses its own budget
+    FileSystemWriter<Record> writer3 = init(
+        FileSystemWriter.<Record>newWriter(fs, dir3, descriptor));
+
+    Assert.assertEquals("Should not share the budget with other writers",
+        2, manager.getOpenWriters());
+
+    List<Record> written = Lists.newArrayList();
+    for (long i = 0; i < 20000; i += 1) {
+      Record record = record(i, "test-" + i);
+      (i % 2 == 0 ? writer1 : writer2).write(record);
+      written.add(record);
+    }
+
+    Assert.assertTrue("Should write row groups early",
+        manager.getEarlyFlushes() > 0);
+    Assert.assertTrue("Should stay near the memory budget",
+        manager.getBufferedBytes() < 2 * 65536);
+
+    writer1.close();
+    writer2.close();
+    writer3.close();
+    Assert.assertEquals(0, manager.getOpenWriters());
+    Assert.assertEquals(0, manager.getBufferedBytes());
+
+    List<Record> read = Lists.newArrayList();
+    for (Path dir : new Path[] {dir1, dir2}) {
+      FileStatus[] stats = fs.listStatus(dir, PathFilters.notHidden());
+      Assert.assertEquals("Should contain a visible data file", 1, stats.length);
+      Assert.assertTrue("Should contain several row groups",
+          ParquetFileReader.readFooter(fs.getConf(), stats[0].getPath())
+              .getBlocks().size() > 1);
+      read.addAll(Lists.newArrayList(
+          (Iterator<Record>) init(newReader(stats[0].getPath(), TEST_SCHEMA))));
+    }
+    Assert.assertEquals("Should match written records",
+        Sets.newHashSet(written), Sets.newHashSet(read));
+  }
+
+  @Test
+  public void testFailedMemoryManagedWriterReleasesBudget() throws IOException {
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .property(FileSystemProperties.PARQUET_MEMORY_BUDGET_PROP, "65536")
+        .schema(TEST_SCHEMA)
+        .format("parquet")
+        .build();
+    ParquetMemoryManager manager = ParquetMemoryManager.forDescriptor(descriptor);
+    FileSystemWriter<Record> writer = init(FileSystemWriter.<Record>newWriter(
+        fs, testDirectory, descriptor, null, manager));
+    Assert.assertEquals(1, manager.getOpenWriters());
+
+    writer.write(record(0, "test-0"));
+    try {
+      // a null in a required field fails the writer
+      writer.write(record(1, null));
+      Assert.fail("Should not write a null to a required field");
+    } catch (RuntimeException e) {
+      // expected
+    }
+
+    writer.close();
+    Assert.assertEquals("Should release the failed writer's budget",
+        0, manager.getOpenWriters());
+    Assert.assertEquals(0, manager.getBufferedBytes());
+  }
 }
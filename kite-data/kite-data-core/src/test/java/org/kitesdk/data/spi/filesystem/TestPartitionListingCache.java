@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.filesystem;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPartitionListingCache {
+
+  private static final long TTL = 60 * 60 * 1000;
+
+  private FileSystem fs;
+  private Path root;
+
+  @Before
+  public void createPartitions() throws IOException {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.root = new Path(Files.createTempDir().getAbsolutePath());
+    fs.mkdirs(new Path(root, "a=1/b=1"));
+    fs.mkdirs(new Path(root, "a=1/b=2"));
+    fs.mkdirs(new Path(root, "a=2/b=1"));
+    // not partitions: too shallow, hidden, or files
+    fs.mkdirs(new Path(root, "a=3"));
+    fs.mkdirs(new Path(root, "_tmp/b=1"));
+    fs.mkdirs(new Path(root, "a=2/.b=2"));
+    fs.createNewFile(new Path(root, "a=2/b=3"));
+  }
+
+  @After
+  public void removePartitions() throws IOException {
+    PartitionListingCache.invalidate(fs, root);
+    fs.delete(root, true);
+  }
+
+  @Test
+  public void testList() {
+    Set<List<String>> expected = Sets.newHashSet(
+        partition("a=1", "b=1"), partition("a=1", "b=2"),
+        partition("a=2", "b=1"));
+
+    Assert.assertEquals("Should list leaf partitions",
+        expected, Sets.newHashSet(PartitionListingCache.list(fs, root, 2, 1)));
+    Assert.assertEquals("Should list leaf partitions in parallel",
+        expected, Sets.newHashSet(PartitionListingCache.list(fs, root, 2, 4)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testListMissingRoot() {
+    PartitionListingCache.list(fs, new Path(root, "missing"), 2, 1);
+  }
+
+  @Test
+  public void testCachedListing() throws IOException {
+    Assert.assertEquals(3, count(PartitionListingCache.partitions(
+        fs, root, 2, TTL, 1)));
+
+    fs.mkdirs(new Path(root, "a=4/b=1"));
+    Assert.assertEquals("Should reuse the cached listing",
+        3, count(PartitionListingCache.partitions(fs, root, 2, TTL, 1)));
+    Assert.assertEquals("Should not use the cache without a TTL",
+        4, count(PartitionListingCache.partitions(fs, root, 2, 0, 1)));
+
+    PartitionListingCache.invalidate(fs, root);
+    Assert.assertEquals("Should list partitions after invalidation",
+        4, count(PartitionListingCache.partitions(fs, root, 2, TTL, 1)));
+  }
+
+  @Test
+  public void testExpiredListing() throws Exception {
+    Assert.assertEquals(3, count(PartitionListingCache.partitions(
+        fs, root, 2, TTL, 1)));
+
+    fs.mkdirs(new Path(root, "a=4/b=1"));
+    Thread.sleep(10);
+    Assert.assertEquals("Should list partitions after the TTL",
+        4, count(PartitionListingCache.partitions(fs, root, 2, 5, 1)));
+  }
+
+  @Test
+  public void testPartitionAdded() throws IOException {
+    Assert.assertEquals(3, count(PartitionListingCache.partitions(
+        fs, root, 2, TTL, 1)));
+
+    fs.mkdirs(new Path(root, "a=4/b=1"));
+    PartitionListingCache.partitionAdded(fs, root, new Path("a=4/b=1"));
+    PartitionListingCache.partitionAdded(fs, root, new Path("a=1/b=1"));
+
+    Iterable<List<String>> partitions = PartitionListingCache.partitions(
+        fs, root, 2, TTL, 1);
+    Assert.assertEquals("Should add the new partition to the cached listing",
+        4, count(partitions));
+    Assert.assertTrue(Sets.newHashSet(partitions).contains(
+        partition("a=4", "b=1")));
+  }
+
+  private static List<String> partition(String... dirs) {
+    return ImmutableList.copyOf(dirs);
+  }
+
+  private static int count(Iterable<?> iterable) {
+    int count = 0;
+    for (Object ignored : iterable) {
+      count += 1;
+    }
+    return count;
+  }
+}
@@ -15,6 +15,7 @@
  */
 package org.kitesdk.data.spi.filesystem;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
@@ -28,6 +29,10 @@ import org.kitesdk.data.PartitionStrategy;
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.avro.generic.GenericData.Record;
 import org.apache.avro.generic.GenericRecordBuilder;
 import org.apache.hadoop.conf.Configuration;
@@ -158,6 +163,103 @@ public class TestPartitionedDatasetWriter {
         DatasetTestUtilities.materialize(users.with("version", 7)));
   }
 
+  @Test
+  public void testConcurrentWriter() throws Exception {
+    Assert.assertEquals("Should write one file per partition",
+        2, writeConcurrently("10"));
+  }
+
+  @Test
+  public void testConcurrentWriterWithEviction() throws Exception {
+    // evicted writers are closed while other threads use them
+    Assert.assertTrue("Should write at least one file per partition",
+        writeConcurrently("1") >= 2);
+  }
+
+  @Test
+  public void testConcurrentWriterWithBackgroundCommits() throws Exception {
+    // evicted writers and rolled files are committed by background threads
+    Assert.assertTrue("Should write rolled files for each partition",
+        writeConcurrently("1", "2") > 2);
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentWriterWithEvictionAndOneCommitThread()
+      throws Exception {
+    // rolling threads hold writer locks that queued closers need, so they
+    // must not wait for the only commit thread
+    Assert.assertTrue("Should write rolled files for each partition",
+        writeConcurrently("2", "1", 8) > 8);
+  }
+
+  /**
+   * Writes users to a partitioned dataset from several threads using a single
+   * writer, validates the records, and returns the number of files.
+   */
+  private int writeConcurrently(String cacheSize) throws Exception {
+    return writeConcurrently(cacheSize, null);
+  }
+
+  private int writeConcurrently(String cacheSize, String commitThreads)
+      throws Exception {
+    return writeConcurrently(cacheSize, commitThreads, 2);
+  }
+
+  private int writeConcurrently(String cacheSize, String commitThreads,
+                                int partitions) throws Exception {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder()
+        .hash("username", partitions).build();
+    DatasetDescriptor.Builder descriptor = new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA)
+        .partitionStrategy(partitionStrategy)
+        .property(FileSystemProperties.WRITER_CONCURRENT_PROP, "true")
+        .property(FileSystemProperties.WRITER_CACHE_SIZE_PROP, cacheSize);
+    if (commitThreads != null) {
+      descriptor
+          .property(FileSystemProperties.WRITER_COMMIT_THREADS_PROP, commitThreads)
+          .property(FileSystemProperties.TARGET_RECORD_COUNT_PROP, "100");
+    }
+    final FileSystemDataset<Record> users = (FileSystemDataset<Record>)
+        repo.<Record>create("ns", "concurrent", descriptor.build(), Record.class);
+
+    final int numThreads = 8;
+    final int numRecords = 500;
+    final DatasetWriter<Record> writer = users.newWriter();
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<?>> results = Lists.newArrayList();
+      for (int t = 0; t < numThreads; t += 1) {
+        final int thread = t;
+        results.add(pool.submit(new Runnable() {
+          @Override
+          public void run() {
+            for (int i = 0; i < numRecords; i += 1) {
+              int id = thread * numRecords + i;
+              writer.write(new GenericRecordBuilder(USER_SCHEMA)
+                  .set("username", "test-" + id)
+                  .set("email", "email-" + id)
+                  .build());
+            }
+          }
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      pool.shutdown();
+      writer.close();
+    }
+
+    DatasetTestUtilities.checkTestUsers(users, numThreads * numRecords);
+
+    int files = 0;
+    for (Path path : users.pathIterator()) {
+      files += 1;
+    }
+    return files;
+  }
+
   private static <E> void writeToView(View<E> view, E... entities) {
     DatasetWriter<E> writer = null;
     try {
@@ -20,19 +20,26 @@ import com.google.common.io.Closeables;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Set;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.fs.Path;
 import org.junit.After;
 import org.junit.Test;
 import org.kitesdk.data.Dataset;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetWriter;
+import org.kitesdk.data.Formats;
 import org.kitesdk.data.IncompatibleSchemaException;
+import org.kitesdk.data.ValidationException;
 import org.kitesdk.data.event.IncompatibleEvent;
 import org.kitesdk.data.event.ReflectSmallEvent;
 import org.kitesdk.data.event.ReflectStandardEvent;
 import org.kitesdk.data.event.SmallEvent;
 import org.kitesdk.data.event.StandardEvent;
 import org.kitesdk.data.spi.DatasetRepository;
+import org.kitesdk.data.spi.Projections;
 import org.kitesdk.data.spi.TestRefinableViews;
 
 public class TestProjection extends TestRefinableViews {
@@ -146,6 +153,80 @@ public class TestProjection extends TestRefinableViews {
     repo.load("ns", unbounded.getDataset().getName(), IncompatibleEvent.class);
   }
 
+  @Test
+  public void testSchemaProjection() throws IOException {
+    DatasetWriter<StandardEvent> writer = null;
+    try {
+      writer = unbounded.newWriter();
+      writer.write(sepEvent);
+      writer.write(octEvent);
+      writer.write(novEvent);
+    } finally {
+      Closeables.close(writer, false);
+    }
+
+    Set<GenericRecord> expected = Sets.newHashSet(
+        toProjected(sepEvent), toProjected(octEvent), toProjected(novEvent));
+
+    assertContentEquals(expected,
+        Projections.asSchema(unbounded, PROJECTION));
+  }
+
+  @Test
+  public void testParquetSchemaProjectionWithConstraints() throws IOException {
+    Dataset<StandardEvent> original = repo.create("ns", "parquetProjection",
+        new DatasetDescriptor.Builder(testDescriptor)
+            .format(Formats.PARQUET)
+            .build(), StandardEvent.class);
+
+    DatasetWriter<StandardEvent> writer = null;
+    try {
+      writer = original.newWriter();
+      writer.write(sepEvent);
+      writer.write(octEvent);
+      writer.write(novEvent);
+    } finally {
+      Closeables.close(writer, false);
+    }
+
+    assertContentEquals(Sets.newHashSet(toProjected(octEvent)),
+        Projections.asSchema(original.with("user_id", 1L), PROJECTION));
+    assertContentEquals(Sets.newHashSet(toProjected(octEvent)),
+        Projections.asSchema(original, PROJECTION).from("user_id", 1L));
+    assertContentEquals(
+        Sets.newHashSet(toProjected(sepEvent), toProjected(novEvent)),
+        Projections.asSchema(original, PROJECTION)
+            .with("session_id", "session-0")
+            .toBefore("user_id", 1L));
+  }
+
+  @Test(expected=ValidationException.class)
+  public void testProjectionMissingConstrainedField() {
+    Projections.asSchema(unbounded.with("user_id", 0L),
+        SchemaBuilder.record("Small")
+            .fields()
+            .requiredString("session_id")
+            .endRecord());
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void testCannotWriteProjection() {
+    Projections.asSchema(unbounded, PROJECTION).newWriter();
+  }
+
+  private static final Schema PROJECTION = SchemaBuilder.record("SmallEvent")
+      .fields()
+      .requiredLong("user_id")
+      .requiredString("session_id")
+      .endRecord();
+
+  private static GenericRecord toProjected(StandardEvent event) {
+    GenericRecord record = new GenericData.Record(PROJECTION);
+    record.put("user_id", event.getUserId());
+    record.put("session_id", event.getSessionId());
+    return record;
+  }
+
   private static SmallEvent toSmallEvent(StandardEvent event) {
     return SmallEvent.newBuilder()
         .setUserId(event.getUserId())
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.partition;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCalendarFieldPartitioner {
+
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+  private static final CalendarFieldPartitioner[] PARTITIONERS = {
+      new YearFieldPartitioner("timestamp"),
+      new MonthFieldPartitioner("timestamp"),
+      new DayOfMonthFieldPartitioner("timestamp"),
+      new HourFieldPartitioner("timestamp"),
+      new MinuteFieldPartitioner("timestamp"),
+      // not decomposed, always uses a Calendar
+      new CalendarFieldPartitioner("timestamp", "dow", Calendar.DAY_OF_WEEK, 7)
+  };
+
+  @Test
+  public void testBoundaries() {
+    long[] timestamps = {
+        0L, -1L, 1L,
+        951782400000L, // 2000-02-29
+        951868799999L, // 2000-02-29T23:59:59.999
+        4107542400000L, // 2100-03-01
+        -2208988800001L, // just before 1900
+        -12219292800000L, // the Gregorian cutover
+        -12219292800001L, // just before the cutover
+        -62135596800000L, // 0001-01-01
+        1384912178434L
+    };
+    for (long timestamp : timestamps) {
+      assertMatchesCalendar(timestamp);
+    }
+  }
+
+  @Test
+  public void testRandomTimestamps() {
+    Random random = new Random(8675309);
+    for (int i = 0; i < 100000; i += 1) {
+      // roughly between 1300 and 2600
+      long timestamp = (long) ((random.nextDouble() - 0.5) * 4.0e13);
+      assertMatchesCalendar(timestamp);
+    }
+  }
+
+  @Test
+  public void testSharedDecomposition() {
+    long timestamp = 1384912178434L; // 2013-11-20T01:49:38.434Z
+    long decomposed = CalendarFieldPartitioner.decompose(timestamp);
+    Assert.assertEquals(2013, (int) PARTITIONERS[0].apply(timestamp, decomposed));
+    Assert.assertEquals(11, (int) PARTITIONERS[1].apply(timestamp, decomposed));
+    Assert.assertEquals(20, (int) PARTITIONERS[2].apply(timestamp, decomposed));
+    Assert.assertEquals(1, (int) PARTITIONERS[3].apply(timestamp, decomposed));
+    Assert.assertEquals(49, (int) PARTITIONERS[4].apply(timestamp, decomposed));
+    Assert.assertSame("Should not allocate boxed years",
+        PARTITIONERS[0].apply(timestamp), PARTITIONERS[0].apply(timestamp));
+  }
+
+  private static void assertMatchesCalendar(long timestamp) {
+    Calendar cal = Calendar.getInstance(UTC);
+    cal.setTimeInMillis(timestamp);
+    int[] expected = {
+        cal.get(Calendar.YEAR),
+        cal.get(Calendar.MONTH) + 1,
+        cal.get(Calendar.DAY_OF_MONTH),
+        cal.get(Calendar.HOUR_OF_DAY),
+        cal.get(Calendar.MINUTE),
+        cal.get(Calendar.DAY_OF_WEEK)
+    };
+    for (int i = 0; i < PARTITIONERS.length; i += 1) {
+      Assert.assertEquals("Should match Calendar for " + timestamp + ": " +
+              PARTITIONERS[i].getName(),
+          expected[i], (int) PARTITIONERS[i].apply(timestamp));
+    }
+  }
+}
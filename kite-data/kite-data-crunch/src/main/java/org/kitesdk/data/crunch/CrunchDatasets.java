@@ -15,13 +15,22 @@
  */
 package org.kitesdk.data.crunch;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import java.net.URI;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import javax.annotation.Nullable;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.mapred.AvroKey;
 import org.apache.crunch.DoFn;
 import org.apache.crunch.Emitter;
+import org.apache.crunch.GroupingOptions;
 import org.apache.crunch.MapFn;
 import org.apache.crunch.PCollection;
 import org.apache.crunch.PGroupedTable;
@@ -32,9 +41,11 @@ import org.apache.crunch.io.ReadableSource;
 import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.avro.Avros;
+import org.apache.hadoop.mapreduce.Partitioner;
 import org.kitesdk.data.Dataset;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.PartitionStrategy;
+import org.kitesdk.data.ValidationException;
 import org.kitesdk.data.View;
 import org.kitesdk.data.spi.AbstractRefinableView;
 import org.kitesdk.data.spi.Constraints;
@@ -204,6 +215,194 @@ public class CrunchDatasets {
     }
   }
 
+  /**
+   * Counts the entities that {@code collection} will store in each partition
+   * of {@code view} and returns the number of writers each partition needs to
+   * hold no more than {@code entitiesPerWriter} entities per writer.
+   * <p>
+   * Unlike the other methods in this class, this does not only add to the
+   * plan: it runs the pipeline that produces {@code collection} before it
+   * returns, including any other outputs that are pending in that pipeline.
+   * Call it as a separate step before building the rest of the plan, then
+   * pass the result to {@link #partition(PCollection, View, int,
+   * PartitionWriters)}. Note that {@code collection} is computed again when
+   * the partitioned output is written.
+   *
+   * @param collection a collection of entities
+   * @param view a {@link View} of a partitioned dataset
+   * @param entitiesPerWriter the target number of entities for each writer in
+   *                          a partition, which bounds the size of its files
+   * @param <E> the type of entities in the collection and underlying dataset
+   * @return the number of writers for each partition that needs more than one
+   *
+   * @since 1.1.0
+   */
+  public static <E> PartitionWriters countWriters(PCollection<E> collection,
+                                                  View<E> view,
+                                                  long entitiesPerWriter) {
+    Preconditions.checkArgument(entitiesPerWriter > 0,
+        "Invalid number of entities per writer: " + entitiesPerWriter);
+    Map<List<Object>, Integer> writersByKey = Maps.newHashMap();
+    if (!view.getDataset().getDescriptor().isPartitioned()) {
+      return new PartitionWriters(writersByKey);
+    }
+
+    GetStorageKey<E> getKey = new GetStorageKey<E>(view);
+    PTable<GenericData.Record, Long> counts = collection
+        .parallelDo(getKey, Avros.generics(getKey.schema()))
+        .count();
+    // iterating the materialized counts runs the pipeline
+    for (Pair<GenericData.Record, Long> count : counts.materialize()) {
+      long writers =
+          (count.second() + entitiesPerWriter - 1) / entitiesPerWriter;
+      if (writers > 1) {
+        writersByKey.put(PartitionWriters.valuesOf(count.first()),
+            (int) Math.min(writers, Integer.MAX_VALUE));
+      }
+    }
+    return new PartitionWriters(writersByKey);
+  }
+
+  /**
+   * Partitions {@code collection} to be stored efficiently in {@code View},
+   * spreading large partitions across more than one writer.
+   * <p>
+   * Partitions are processed by the number of writers given by
+   * {@code writers}, usually from {@link #countWriters(PCollection, View,
+   * long)}, and partitions it does not list are processed by a single writer,
+   * like {@link #partition(PCollection, View, int)}. Spreading a few hot
+   * partitions across writers keeps them from holding up the job, at the cost
+   * of writing more files in those partitions.
+   * <p>
+   * If the dataset is not partitioned, then this will structure all of the
+   * entities to produce a number of files equal to {@code numWriters}.
+   *
+   * @param collection a collection of entities
+   * @param view a {@link View} of a dataset to partition the collection for
+   * @param numWriters the number of writers that should be used
+   * @param writers the number of writers for large partitions
+   * @param <E> the type of entities in the collection and underlying dataset
+   * @return an equivalent collection of entities partitioned for the view
+   * @see #countWriters(PCollection, View, long)
+   *
+   * @since 1.1.0
+   */
+  public static <E> PCollection<E> partition(PCollection<E> collection,
+                                             View<E> view,
+                                             int numWriters,
+                                             PartitionWriters writers) {
+    Preconditions.checkNotNull(writers, "Partition writers cannot be null");
+    return partition(collection, view, numWriters, writers,
+        Collections.<String>emptyList());
+  }
+
+  /**
+   * Partitions {@code collection} to be stored efficiently in {@code View},
+   * sorting the entities for each partition by {@code clusterBy} fields.
+   * <p>
+   * This restructures the parallel collection so that all of the entities that
+   * will be stored in a given partition will be processed by the same writer,
+   * in the order of their values for the {@code clusterBy} fields. Writing
+   * similar values together improves compression and lets columnar formats
+   * skip data using column statistics.
+   * <p>
+   * If the dataset is not partitioned, then this will structure all of the
+   * entities to produce a number of sorted files equal to {@code numWriters}.
+   *
+   * @param collection a collection of entities
+   * @param view a {@link View} of a dataset to partition the collection for
+   * @param numWriters the number of writers that should be used
+   * @param clusterBy names of the entity fields to sort by, which may refer
+   *                  to nested fields using dotted names
+   * @param <E> the type of entities in the collection and underlying dataset
+   * @return an equivalent collection of entities partitioned for the view
+   * @see #partition(PCollection, View, int)
+   *
+   * @since 1.1.0
+   */
+  public static <E> PCollection<E> partition(PCollection<E> collection,
+                                             View<E> view,
+                                             int numWriters,
+                                             List<String> clusterBy) {
+    return partition(collection, view, numWriters, null, clusterBy);
+  }
+
+  /**
+   * Partitions {@code collection} to be stored efficiently in {@code View},
+   * spreading large partitions across more than one writer and sorting the
+   * entities for each writer by {@code clusterBy} fields.
+   * <p>
+   * This only adds to the plan; use {@link #countWriters(PCollection, View,
+   * long)} beforehand to find the partitions that need more than one writer.
+   *
+   * @param collection a collection of entities
+   * @param view a {@link View} of a dataset to partition the collection for
+   * @param numWriters the number of writers that should be used
+   * @param writers the number of writers for large partitions, or null to use
+   *                one writer for each partition
+   * @param clusterBy names of the entity fields to sort by, which may be empty
+   * @param <E> the type of entities in the collection and underlying dataset
+   * @return an equivalent collection of entities partitioned for the view
+   * @see #partition(PCollection, View, int, PartitionWriters)
+   * @see #partition(PCollection, View, int, List)
+   *
+   * @since 1.1.0
+   */
+  public static <E> PCollection<E> partition(PCollection<E> collection,
+                                             View<E> view,
+                                             int numWriters,
+                                             @Nullable PartitionWriters writers,
+                                             List<String> clusterBy) {
+    Preconditions.checkNotNull(clusterBy, "Clustering fields cannot be null");
+    DatasetDescriptor descriptor = view.getDataset().getDescriptor();
+    GetClusterKey<E> getCluster = null;
+    PType<GenericData.Record> clusterType = null;
+    if (!clusterBy.isEmpty()) {
+      getCluster = new GetClusterKey<E>(view, clusterBy);
+      clusterType = Avros.generics(getCluster.schema());
+    }
+
+    if (!descriptor.isPartitioned()) {
+      if (getCluster == null) {
+        return partition(collection, numWriters);
+      }
+      PTable<GenericData.Record, E> table = collection
+          .by(getCluster, clusterType);
+      PGroupedTable<GenericData.Record, E> grouped =
+          numWriters > 0 ? table.groupByKey(numWriters) : table.groupByKey();
+      return grouped.ungroup().values();
+    }
+
+    GetStorageKey<E> getKey = new GetStorageKey<E>(view);
+    PType<GenericData.Record> keyType = Avros.generics(getKey.schema());
+    PType<Pair<GenericData.Record, Integer>> writerKeyType =
+        Avros.pairs(keyType, Avros.ints());
+    PTable<Pair<GenericData.Record, Integer>, E> table = collection.parallelDo(
+        new GetWriterKey<E>(getKey, writers),
+        Avros.tableOf(writerKeyType, collection.getPType()));
+
+    if (getCluster == null) {
+      GroupingOptions.Builder options = GroupingOptions.builder()
+          .partitionerClass(WriterKeyPartitioner.class);
+      if (numWriters > 0) {
+        options.numReducers(numWriters);
+      }
+      return table.groupByKey(options.build()).ungroup().values();
+    }
+
+    // sort by the clustering fields, but send each writer key to one reducer
+    PTable<Pair<Pair<GenericData.Record, Integer>, GenericData.Record>, E>
+        clustered = table.parallelDo(new AddClusterKey<E>(getCluster),
+            Avros.tableOf(Avros.pairs(writerKeyType, clusterType),
+                collection.getPType()));
+    GroupingOptions.Builder options = GroupingOptions.builder()
+        .partitionerClass(ClusteredWriterKeyPartitioner.class);
+    if (numWriters > 0) {
+      options.numReducers(numWriters);
+    }
+    return clustered.groupByKey(options.build()).ungroup().values();
+  }
+
   private static <E> PCollection<E> partition(PCollection<E> collection,
                                               int numReducers) {
     PType<E> type = collection.getPType();
@@ -224,6 +423,187 @@ public class CrunchDatasets {
     }
   }
 
+  /**
+   * Pairs each entity with its storage key and the index of the writer that
+   * will handle it. Entities in partitions with more than one writer are
+   * assigned to those writers in turn, starting with a random writer in each
+   * task so that tasks with few entities do not all use the first writers.
+   */
+  @edu.umd.cs.findbugs.annotations.SuppressWarnings(
+      value="SE_NO_SERIALVERSIONID",
+      justification="Purposely not supported across versions")
+  private static class GetWriterKey<E>
+      extends DoFn<E, Pair<Pair<GenericData.Record, Integer>, E>> {
+    private final GetStorageKey<E> getKey;
+    private final PartitionWriters writers;
+    private transient Map<List<Object>, Integer> nextWriter = null;
+    private transient Random random = null;
+
+    private GetWriterKey(GetStorageKey<E> getKey,
+                         @Nullable PartitionWriters writers) {
+      this.getKey = getKey;
+      this.writers = writers;
+    }
+
+    @Override
+    public void initialize() {
+      getKey.initialize();
+      this.nextWriter = Maps.newHashMap();
+      this.random = new Random();
+    }
+
+    @Override
+    public void process(E entity,
+        Emitter<Pair<Pair<GenericData.Record, Integer>, E>> emitter) {
+      GenericData.Record key = getKey.map(entity);
+      int writer = 0;
+      if (writers != null && !writers.isEmpty()) {
+        List<Object> values = PartitionWriters.valuesOf(key);
+        int numWriters = writers.writersFor(values);
+        if (numWriters > 1) {
+          Integer next = nextWriter.get(values);
+          writer = (next == null ? random.nextInt(numWriters) : next);
+          nextWriter.put(values, (writer + 1) % numWriters);
+        }
+      }
+      emitter.emit(Pair.of(Pair.of(key, writer), entity));
+    }
+  }
+
+  /**
+   * Adds the clustering key to the writer key of each entity.
+   */
+  @edu.umd.cs.findbugs.annotations.SuppressWarnings(
+      value="SE_NO_SERIALVERSIONID",
+      justification="Purposely not supported across versions")
+  private static class AddClusterKey<E> extends MapFn<
+      Pair<Pair<GenericData.Record, Integer>, E>,
+      Pair<Pair<Pair<GenericData.Record, Integer>, GenericData.Record>, E>> {
+    private final GetClusterKey<E> getCluster;
+
+    private AddClusterKey(GetClusterKey<E> getCluster) {
+      this.getCluster = getCluster;
+    }
+
+    @Override
+    public void initialize() {
+      getCluster.initialize();
+    }
+
+    @Override
+    public Pair<Pair<Pair<GenericData.Record, Integer>, GenericData.Record>, E>
+        map(Pair<Pair<GenericData.Record, Integer>, E> pair) {
+      return Pair.of(
+          Pair.of(pair.first(), getCluster.map(pair.second())),
+          pair.second());
+    }
+  }
+
+  /**
+   * Assigns reducers for writer keys, pairs of a storage key and a writer
+   * index.
+   * <p>
+   * The storage key is hashed to choose the reducer for its first writer, and
+   * its other writers are sent to the reducers that follow. Hashing each
+   * writer key separately could send several writers for a large partition to
+   * the same reducer.
+   */
+  static class WriterKeyPartitioner
+      extends Partitioner<AvroKey<IndexedRecord>, Object> {
+    @Override
+    public int getPartition(AvroKey<IndexedRecord> key, Object value,
+                            int numPartitions) {
+      return reducerFor(key.datum(), numPartitions);
+    }
+
+    static int reducerFor(IndexedRecord writerKey, int numPartitions) {
+      Schema storageKeySchema =
+          writerKey.getSchema().getFields().get(0).schema();
+      int hash = GenericData.get().hashCode(writerKey.get(0), storageKeySchema);
+      long writer = (Integer) writerKey.get(1);
+      return (int) (((hash & Integer.MAX_VALUE) + writer) % numPartitions);
+    }
+  }
+
+  /**
+   * Assigns reducers using only the writer key, the first half of the map
+   * output key, so that all of the entities for a writer are sent to the same
+   * reducer and arrive sorted by the clustering key.
+   */
+  static class ClusteredWriterKeyPartitioner
+      extends Partitioner<AvroKey<IndexedRecord>, Object> {
+    @Override
+    public int getPartition(AvroKey<IndexedRecord> key, Object value,
+                            int numPartitions) {
+      return WriterKeyPartitioner.reducerFor(
+          (IndexedRecord) key.datum().get(0), numPartitions);
+    }
+  }
+
+  /**
+   * Extracts the values of the clustering fields from each entity.
+   */
+  @edu.umd.cs.findbugs.annotations.SuppressWarnings(
+      value="SE_NO_SERIALVERSIONID",
+      justification="Purposely not supported across versions")
+  private static class GetClusterKey<E> extends MapFn<E, GenericData.Record> {
+    private final String schemaString;
+    private final Class<E> type;
+    private final List<String> fields;
+    private transient GenericData.Record key = null;
+    private transient EntityAccessor<E> accessor = null;
+
+    private GetClusterKey(View<E> view, List<String> fields) {
+      this.schemaString = view.getDataset().getDescriptor().getSchema()
+          .toString(false /* no white space */);
+      this.type = view.getType();
+      this.fields = Lists.newArrayList(fields);
+    }
+
+    public Schema schema() {
+      initialize(); // make sure the key is not null
+      return key.getSchema();
+    }
+
+    @Override
+    public void initialize() {
+      if (key == null) {
+        Schema schema = new Schema.Parser().parse(schemaString);
+        this.key = new GenericData.Record(clusterSchema(schema, fields));
+        this.accessor = DataModelUtil.accessor(type, schema);
+      }
+    }
+
+    @Override
+    public GenericData.Record map(E entity) {
+      for (int i = 0; i < fields.size(); i += 1) {
+        key.put(i, accessor.get(entity, fields.get(i)));
+      }
+      return key;
+    }
+
+    private static Schema clusterSchema(Schema schema, List<String> fields) {
+      List<Schema.Field> clusterFields = Lists.newArrayList();
+      for (int i = 0; i < fields.size(); i += 1) {
+        Schema fieldSchema = SchemaUtil.fieldSchema(schema, fields.get(i));
+        ValidationException.check(fieldSchema.getType() != Schema.Type.MAP,
+            "Cannot cluster by map field: %s", fields.get(i));
+        if (fieldSchema.getType() != Schema.Type.UNION) {
+          // values of optional fields may be null, which sort first
+          fieldSchema = Schema.createUnion(Lists.newArrayList(
+              Schema.create(Schema.Type.NULL), fieldSchema));
+        }
+        // nested field names are not valid Avro names
+        clusterFields.add(
+            new Schema.Field("field_" + i, fieldSchema, null, null));
+      }
+      Schema clusterSchema = Schema.createRecord(
+          schema.getName() + "ClusterKey", null, null, false);
+      clusterSchema.setFields(clusterFields);
+      return clusterSchema;
+    }
+  }
+
   @edu.umd.cs.findbugs.annotations.SuppressWarnings(
       value="SE_NO_SERIALVERSIONID",
       justification="Purposely not supported across versions")
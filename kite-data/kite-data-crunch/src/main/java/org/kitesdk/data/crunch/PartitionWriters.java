@@ -0,0 +1,85 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.crunch;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.generic.IndexedRecord;
+
+/**
+ * The number of writers to use for each partition of a view, as counted by
+ * {@link CrunchDatasets#countWriters(org.apache.crunch.PCollection,
+ * org.kitesdk.data.View, long)}.
+ * <p>
+ * Partitions are identified by the values of their storage key, so a count
+ * can be used by any job that writes the same view. Partitions that are not
+ * listed use a single writer.
+ *
+ * @since 1.1.0
+ */
+public class PartitionWriters implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final Map<List<Object>, Integer> writersByKey;
+
+  PartitionWriters(Map<List<Object>, Integer> writersByKey) {
+    this.writersByKey = writersByKey;
+  }
+
+  /**
+   * @return the number of partitions that use more than one writer
+   */
+  public int size() {
+    return writersByKey.size();
+  }
+
+  /**
+   * @return true if every partition uses a single writer
+   */
+  public boolean isEmpty() {
+    return writersByKey.isEmpty();
+  }
+
+  int writersFor(List<Object> values) {
+    Integer writers = writersByKey.get(values);
+    return (writers == null ? 1 : writers);
+  }
+
+  /**
+   * Returns the values of a storage key record in a form that can be compared
+   * across records and serialized. Avro may return strings as {@code Utf8} or
+   * {@code String}, so all character sequences are converted to strings.
+   */
+  static List<Object> valuesOf(IndexedRecord key) {
+    int size = key.getSchema().getFields().size();
+    List<Object> values = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; i += 1) {
+      Object value = key.get(i);
+      values.add(value instanceof CharSequence ? value.toString() : value);
+    }
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("writersByKey", writersByKey)
+        .toString();
+  }
+}
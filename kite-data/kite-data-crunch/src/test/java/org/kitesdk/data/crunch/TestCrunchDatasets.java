@@ -15,17 +15,20 @@
  */
 package org.kitesdk.data.crunch;
 
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Set;
 
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericData.Record;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
 import org.apache.crunch.CrunchRuntimeException;
 import org.apache.crunch.MapFn;
 import org.apache.crunch.PCollection;
@@ -33,6 +36,7 @@ import org.apache.crunch.Pipeline;
 import org.apache.crunch.Target;
 import org.apache.crunch.impl.mr.MRPipeline;
 import org.apache.crunch.types.avro.Avros;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.junit.After;
@@ -621,6 +625,172 @@ public abstract class TestCrunchDatasets extends MiniDFSTest {
         ((Signalable)outputView).isReady());
   }
 
+  @Test
+  public void testPartitionSkewedWriters() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
+        "username", 2).build();
+
+    Dataset<Record> inputDataset = repo.create("ns", "in", new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA).build());
+    Dataset<Record> outputDataset = repo.create("ns", "out", new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA).partitionStrategy(partitionStrategy).build());
+
+    writeTestUsers(inputDataset, 10);
+
+    Pipeline pipeline = new MRPipeline(TestCrunchDatasets.class);
+    PCollection<GenericData.Record> data = pipeline.read(
+        CrunchDatasets.asSource(inputDataset));
+    // each partition has 5 users, so each is spread across 3 writers
+    PartitionWriters writers =
+        CrunchDatasets.countWriters(data, outputDataset, 2);
+    Assert.assertEquals("Should spread every partition", 2, writers.size());
+    PCollection<GenericData.Record> partitioned =
+        CrunchDatasets.partition(data, outputDataset, 6, writers);
+    pipeline.write(partitioned, CrunchDatasets.asTarget(outputDataset),
+        Target.WriteMode.APPEND);
+    pipeline.run();
+
+    checkTestUsers(outputDataset, 10);
+    PartitionKey key = new PartitionKey(0);
+    Dataset<Record> outputPart0 =
+        ((PartitionedDataset<Record>) outputDataset).getPartition(key, false);
+    Assert.assertEquals(5, datasetSize(outputPart0));
+    Path part0 = new Path(outputPart0.getDescriptor().getLocation());
+    // each writer is sent to a different reducer, so each writes a file
+    Assert.assertEquals("Partition should be written by three writers", 3,
+        dataFiles(part0.getFileSystem(fileSystem.getConf()), part0));
+  }
+
+  @Test
+  public void testWritersForAPartitionUseDifferentReducers() {
+    Schema storageKeySchema = SchemaBuilder.record("StorageKey").fields()
+        .requiredInt("id_hash")
+        .endRecord();
+    Schema writerKeySchema = SchemaBuilder.record("WriterKey").fields()
+        .name("first").type(storageKeySchema).noDefault()
+        .requiredInt("second")
+        .endRecord();
+
+    int numReducers = 4;
+    for (int i = 0; i < 100; i += 1) {
+      GenericData.Record storageKey = new GenericData.Record(storageKeySchema);
+      storageKey.put("id_hash", i);
+      Set<Integer> reducers = Sets.newHashSet();
+      for (int writer = 0; writer < numReducers; writer += 1) {
+        GenericData.Record writerKey = new GenericData.Record(writerKeySchema);
+        writerKey.put("first", storageKey);
+        writerKey.put("second", writer);
+        reducers.add(CrunchDatasets.WriterKeyPartitioner
+            .reducerFor(writerKey, numReducers));
+      }
+      Assert.assertEquals("Each writer should use a different reducer",
+          numReducers, reducers.size());
+    }
+  }
+
+  @Test
+  public void testStorageKeyValuesIgnoreStringClass() {
+    Schema storageKeySchema = SchemaBuilder.record("StorageKey").fields()
+        .requiredString("username")
+        .requiredInt("id_hash")
+        .endRecord();
+    GenericData.Record utf8Key = new GenericData.Record(storageKeySchema);
+    utf8Key.put("username", new Utf8("user-1"));
+    utf8Key.put("id_hash", 3);
+    GenericData.Record stringKey = new GenericData.Record(storageKeySchema);
+    stringKey.put("username", "user-1");
+    stringKey.put("id_hash", 3);
+
+    Assert.assertEquals("Keys with the same values should match",
+        PartitionWriters.valuesOf(stringKey),
+        PartitionWriters.valuesOf(utf8Key));
+  }
+
+  @Test
+  public void testPartitionClustered() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
+        "username", 2).build();
+
+    Dataset<Record> inputDataset = repo.create("ns", "in", new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA).build());
+    Dataset<Record> outputDataset = repo.create("ns", "out", new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA).partitionStrategy(partitionStrategy).build());
+
+    // write the second half of the users first
+    writeTestUsers(inputDataset, 5, 5);
+    writeTestUsers(inputDataset, 5, 0);
+
+    Pipeline pipeline = new MRPipeline(TestCrunchDatasets.class);
+    PCollection<GenericData.Record> data = pipeline.read(
+        CrunchDatasets.asSource(inputDataset));
+    PCollection<GenericData.Record> partitioned = CrunchDatasets.partition(
+        data, outputDataset, 2, Arrays.asList("email"));
+    pipeline.write(partitioned, CrunchDatasets.asTarget(outputDataset),
+        Target.WriteMode.APPEND);
+    pipeline.run();
+
+    checkTestUsers(outputDataset, 10);
+    for (int i = 0; i < 2; i += 1) {
+      Dataset<Record> outputPart = ((PartitionedDataset<Record>) outputDataset)
+          .getPartition(new PartitionKey(i), false);
+      Path partition = new Path(outputPart.getDescriptor().getLocation());
+      Assert.assertEquals("Partition should be written by one writer", 1,
+          dataFiles(partition.getFileSystem(fileSystem.getConf()), partition));
+      assertSortedByEmail(outputPart);
+    }
+  }
+
+  @Test
+  public void testPartitionClusteredUnpartitioned() throws IOException {
+    Dataset<Record> inputDataset = repo.create("ns", "in", new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA).build());
+    Dataset<Record> outputDataset = repo.create("ns", "out", new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA).build());
+
+    writeTestUsers(inputDataset, 5, 5);
+    writeTestUsers(inputDataset, 5, 0);
+
+    Pipeline pipeline = new MRPipeline(TestCrunchDatasets.class);
+    PCollection<GenericData.Record> data = pipeline.read(
+        CrunchDatasets.asSource(inputDataset));
+    PCollection<GenericData.Record> partitioned = CrunchDatasets.partition(
+        data, outputDataset, 1, Arrays.asList("email"));
+    pipeline.write(partitioned, CrunchDatasets.asTarget(outputDataset),
+        Target.WriteMode.APPEND);
+    pipeline.run();
+
+    checkTestUsers(outputDataset, 10);
+    assertSortedByEmail(outputDataset);
+  }
+
+  private static void assertSortedByEmail(View<Record> view) {
+    DatasetReader<Record> reader = view.newReader();
+    try {
+      String last = null;
+      for (Record record : reader) {
+        String email = record.get("email").toString();
+        if (last != null) {
+          Assert.assertTrue("Records should be sorted by email: " +
+              last + " > " + email, last.compareTo(email) <= 0);
+        }
+        last = email;
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static int dataFiles(FileSystem fs, Path dir) throws IOException {
+    int files = 0;
+    for (FileStatus stat : fs.listStatus(dir)) {
+      String name = stat.getPath().getName();
+      if (!name.startsWith(".") && !name.startsWith("_")) {
+        files += 1;
+      }
+    }
+    return files;
+  }
+
   private void runCheckpointPipeline(View<Record> inputView,
       View<Record> outputView) {
     Pipeline pipeline = new MRPipeline(TestCrunchDatasets.class);
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.avro.Schema;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.kitesdk.data.FieldMapping;
+import org.kitesdk.data.hbase.filters.EntityFilter;
+import org.kitesdk.data.hbase.filters.SingleFieldEntityFilter;
+import org.kitesdk.data.hbase.impl.EntitySchema;
+import org.kitesdk.data.hbase.impl.EntitySerDe;
+import org.kitesdk.data.spi.Constraints;
+import org.kitesdk.data.spi.predicates.Exists;
+import org.kitesdk.data.spi.predicates.In;
+import org.kitesdk.data.spi.predicates.Predicates;
+
+/**
+ * Translates the {@link Constraints} of a view into HBase filters, so rows
+ * that cannot match are dropped by the RegionServers.
+ * <p>
+ * Only {@link In} and {@link Exists} predicates on fields with a column
+ * mapping are translated. Values are compared using their serialized bytes,
+ * which match exactly when the values are equal, but are not ordered like
+ * the values, so ranges are left to the client. The filters may keep rows
+ * that do not match, like rows with a stored null, so constraints must still
+ * be checked when entities are read.
+ */
+class ConstraintFilters {
+
+  private static final Set<Schema.Type> COMPARABLE_TYPES = ImmutableSet.of(
+      Schema.Type.BOOLEAN, Schema.Type.INT, Schema.Type.LONG,
+      Schema.Type.FLOAT, Schema.Type.DOUBLE, Schema.Type.STRING,
+      Schema.Type.BYTES);
+
+  private ConstraintFilters() {
+  }
+
+  /**
+   * Returns filters that drop rows that cannot satisfy {@code constraints}.
+   */
+  @SuppressWarnings("unchecked")
+  static List<EntityFilter> filtersFor(Constraints constraints, Schema schema,
+                                       EntitySchema entitySchema,
+                                       EntitySerDe<?> entitySerDe) {
+    List<EntityFilter> filters = Lists.newArrayList();
+    Map<String, ?> predicates = constraints.toPredicateMap(null);
+    for (String name : predicates.keySet()) {
+      FieldMapping mapping = entitySchema.getColumnMappingDescriptor()
+          .getFieldMapping(name);
+      Schema.Field field = schema.getField(name);
+      if (mapping == null || field == null ||
+          mapping.getMappingType() != FieldMapping.MappingType.COLUMN ||
+          !COMPARABLE_TYPES.contains(nonNullType(field.schema()))) {
+        continue;
+      }
+
+      // rows without the column are read with the field's default value
+      Object predicate = predicates.get(name);
+      Object defaultValue = entitySerDe.getDefaultValue(name);
+      if (predicate instanceof In) {
+        In<Object> in = (In<Object>) predicate;
+        filters.add(new ColumnFilter(inFilter(entitySchema, entitySerDe, name,
+            Predicates.asSet(in), !in.apply(defaultValue))));
+      } else if (predicate instanceof Exists && defaultValue == null) {
+        filters.add(new ColumnFilter(existsFilter(mapping)));
+      }
+    }
+    return filters;
+  }
+
+  private static Filter inFilter(EntitySchema entitySchema,
+                                 EntitySerDe<?> entitySerDe, String name,
+                                 Set<Object> values, boolean filterIfMissing) {
+    List<Filter> valueFilters = Lists.newArrayList();
+    for (Object value : values) {
+      SingleColumnValueFilter filter = (SingleColumnValueFilter)
+          new SingleFieldEntityFilter(entitySchema, entitySerDe, name, value,
+              CompareFilter.CompareOp.EQUAL).getFilter();
+      filter.setFilterIfMissing(filterIfMissing);
+      valueFilters.add(filter);
+    }
+    if (valueFilters.size() == 1) {
+      return valueFilters.get(0);
+    }
+    return new FilterList(FilterList.Operator.MUST_PASS_ONE, valueFilters);
+  }
+
+  private static Filter existsFilter(FieldMapping mapping) {
+    // every stored value, including an encoded null, is at least one byte
+    SingleColumnValueFilter filter = new SingleColumnValueFilter(
+        mapping.getFamily(), mapping.getQualifier(),
+        CompareFilter.CompareOp.NOT_EQUAL, new byte[0]);
+    filter.setFilterIfMissing(true);
+    return filter;
+  }
+
+  private static Schema.Type nonNullType(Schema schema) {
+    if (schema.getType() != Schema.Type.UNION) {
+      return schema.getType();
+    }
+    Schema.Type type = null;
+    for (Schema branch : schema.getTypes()) {
+      if (branch.getType() != Schema.Type.NULL) {
+        if (type != null) {
+          return Schema.Type.UNION;
+        }
+        type = branch.getType();
+      }
+    }
+    return type;
+  }
+
+  private static class ColumnFilter implements EntityFilter {
+    private final Filter filter;
+
+    private ColumnFilter(Filter filter) {
+      this.filter = filter;
+    }
+
+    @Override
+    public Filter getFilter() {
+      return filter;
+    }
+  }
+}
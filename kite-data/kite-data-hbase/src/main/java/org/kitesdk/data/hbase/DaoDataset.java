@@ -16,13 +16,18 @@
 package org.kitesdk.data.hbase;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.avro.generic.IndexedRecord;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.kitesdk.data.DatasetDescriptor;
+import org.kitesdk.data.DatasetWriter;
 import org.kitesdk.data.Key;
 import org.kitesdk.data.hbase.impl.BaseDao;
 import org.kitesdk.data.hbase.impl.CompositeBaseDao;
@@ -31,6 +36,7 @@ import org.kitesdk.data.hbase.impl.GetModifier;
 import org.kitesdk.data.hbase.impl.PutActionModifier;
 import org.kitesdk.data.hbase.impl.ScanModifier;
 import org.kitesdk.data.hbase.spi.HBaseActionModifiable;
+import org.kitesdk.data.hbase.spi.HBaseEntityCacheMetrics;
 import org.kitesdk.data.impl.Accessor;
 import org.kitesdk.data.spi.PartitionKey;
 import org.kitesdk.data.PartitionStrategy;
@@ -38,11 +44,18 @@ import org.kitesdk.data.RandomAccessDataset;
 import org.kitesdk.data.RefinableView;
 import org.kitesdk.data.hbase.impl.Dao;
 import org.kitesdk.data.spi.AbstractDataset;
+import org.kitesdk.data.spi.BatchGettable;
 import org.kitesdk.data.spi.Constraints;
+import org.kitesdk.data.spi.DataModelUtil;
+import org.kitesdk.data.spi.DescriptorUtil;
 import org.kitesdk.data.spi.InputFormatAccessor;
+import org.kitesdk.data.spi.Stageable;
 
 class DaoDataset<E> extends AbstractDataset<E> implements RandomAccessDataset<E>,
-    InputFormatAccessor<E>, HBaseActionModifiable {
+    BatchGettable<E>, InputFormatAccessor<E>, Stageable<E>,
+    HBaseActionModifiable, HBaseEntityCacheMetrics {
+
+  private static final long DEFAULT_CACHE_TTL_MS = 60 * 1000;
 
   private final String namespace;
   private final String name;
@@ -50,6 +63,7 @@ class DaoDataset<E> extends AbstractDataset<E> implements RandomAccessDataset<E>
   private final DatasetDescriptor descriptor;
   private final URI uri;
   private final DaoView<E> unbounded;
+  private final EntityCache<E> cache;
 
   public DaoDataset(String namespace, String name, Dao<E> dao, DatasetDescriptor descriptor,
       URI uri, Class<E> type) {
@@ -64,6 +78,20 @@ class DaoDataset<E> extends AbstractDataset<E> implements RandomAccessDataset<E>
     this.descriptor = descriptor;
     this.uri = uri;
     this.unbounded = new DaoView<E>(this, type);
+    this.cache = newCache(dao, descriptor, type);
+  }
+
+  private static <E> EntityCache<E> newCache(Dao<E> dao,
+      DatasetDescriptor descriptor, Class<E> type) {
+    long size = DescriptorUtil.getLong(
+        HBaseProperties.CACHE_SIZE_PROP, descriptor, 0L);
+    if (size <= 0) {
+      return null;
+    }
+    long ttl = DescriptorUtil.getLong(
+        HBaseProperties.CACHE_TTL_MS_PROP, descriptor, DEFAULT_CACHE_TTL_MS);
+    return new EntityCache<E>(size, ttl, getBaseDao(dao).getKeySerDe(),
+        DataModelUtil.getDataModelForType(type), descriptor.getSchema());
   }
 
   Dao<E> getDao() {
@@ -108,29 +136,132 @@ class DaoDataset<E> extends AbstractDataset<E> implements RandomAccessDataset<E>
   @Override
   @SuppressWarnings("deprecation")
   public E get(Key key) {
-    return dao.get(keyFor(getDescriptor().getPartitionStrategy(), key));
+    PartitionKey partitionKey = keyFor(
+        getDescriptor().getPartitionStrategy(), key);
+    if (cache == null) {
+      return dao.get(partitionKey);
+    }
+    ByteBuffer cacheKey = cache.keyFor(partitionKey);
+    E entity = cache.get(cacheKey);
+    if (entity == null) {
+      long generation = cache.generation(cacheKey);
+      entity = dao.get(partitionKey);
+      cache.put(cacheKey, entity, generation);
+    }
+    return entity;
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public List<E> getAll(Collection<Key> keys) {
+    PartitionStrategy strategy = getDescriptor().getPartitionStrategy();
+    List<PartitionKey> partitionKeys = Lists.newArrayListWithCapacity(keys.size());
+    for (Key key : keys) {
+      partitionKeys.add(keyFor(strategy, key));
+    }
+    if (cache == null) {
+      return dao.getAll(partitionKeys);
+    }
+
+    // only fetch the entities that are not cached
+    List<E> entities = Lists.newArrayListWithCapacity(partitionKeys.size());
+    List<ByteBuffer> cacheKeys = Lists.newArrayList();
+    List<Long> generations = Lists.newArrayList();
+    List<PartitionKey> missing = Lists.newArrayList();
+    List<Integer> missingIndexes = Lists.newArrayList();
+    for (PartitionKey partitionKey : partitionKeys) {
+      ByteBuffer cacheKey = cache.keyFor(partitionKey);
+      E entity = cache.get(cacheKey);
+      if (entity == null) {
+        cacheKeys.add(cacheKey);
+        generations.add(cache.generation(cacheKey));
+        missing.add(partitionKey);
+        missingIndexes.add(entities.size());
+      }
+      entities.add(entity);
+    }
+    if (!missing.isEmpty()) {
+      List<E> fetched = dao.getAll(missing);
+      for (int i = 0; i < fetched.size(); i += 1) {
+        cache.put(cacheKeys.get(i), fetched.get(i), generations.get(i));
+        entities.set(missingIndexes.get(i), fetched.get(i));
+      }
+    }
+    return entities;
   }
 
   @Override
   public boolean put(E entity) {
-    return dao.put(entity);
+    try {
+      return dao.put(entity);
+    } finally {
+      invalidate(entity);
+    }
   }
 
   @Override
   @SuppressWarnings("deprecation")
   public long increment(Key key, String fieldName, long amount) {
-    return dao.increment(keyFor(getDescriptor().getPartitionStrategy(), key), fieldName, amount);
+    PartitionKey partitionKey = keyFor(
+        getDescriptor().getPartitionStrategy(), key);
+    try {
+      return dao.increment(partitionKey, fieldName, amount);
+    } finally {
+      invalidate(partitionKey);
+    }
   }
 
   @Override
   @SuppressWarnings("deprecation")
   public void delete(Key key) {
-    dao.delete(keyFor(getDescriptor().getPartitionStrategy(), key));
+    PartitionKey partitionKey = keyFor(
+        getDescriptor().getPartitionStrategy(), key);
+    try {
+      dao.delete(partitionKey);
+    } finally {
+      invalidate(partitionKey);
+    }
   }
 
   @Override
   public boolean delete(E entity) {
-    return dao.delete(entity);
+    try {
+      return dao.delete(entity);
+    } finally {
+      invalidate(entity);
+    }
+  }
+
+  private void invalidate(E entity) {
+    if (cache != null) {
+      cache.invalidate(getBaseDao().getEntityMapper().mapToKey(entity));
+    }
+  }
+
+  private void invalidate(PartitionKey key) {
+    if (cache != null) {
+      cache.invalidate(key);
+    }
+  }
+
+  @Override
+  public boolean isCacheEnabled() {
+    return cache != null;
+  }
+
+  @Override
+  public long getCacheHitCount() {
+    return cache != null ? cache.getHitCount() : 0;
+  }
+
+  @Override
+  public long getCacheMissCount() {
+    return cache != null ? cache.getMissCount() : 0;
+  }
+
+  @Override
+  public long getCacheEvictionCount() {
+    return cache != null ? cache.getEvictionCount() : 0;
   }
 
   @Deprecated
@@ -150,9 +281,32 @@ class DaoDataset<E> extends AbstractDataset<E> implements RandomAccessDataset<E>
     return new HBaseViewKeyInputFormat<E>(this);
   }
 
-  @SuppressWarnings("unchecked")
+  @Override
+  public boolean isStaged() {
+    return unbounded.isStaged();
+  }
+
+  @Override
+  public Path getStagingDirectory(String name) {
+    return unbounded.getStagingDirectory(name);
+  }
+
+  @Override
+  public DatasetWriter<E> newStagingWriter(Path directory) {
+    return unbounded.newStagingWriter(directory);
+  }
+
+  @Override
+  public void loadStaged(Path directory) {
+    unbounded.loadStaged(directory);
+  }
+
   private BaseDao<E> getBaseDao() {
-    Dao<E> dao = getDao();
+    return getBaseDao(getDao());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E> BaseDao<E> getBaseDao(Dao<E> dao) {
     if(dao instanceof CompositeBaseDao) {
       dao = ((CompositeBaseDao) dao).getDao();
     }
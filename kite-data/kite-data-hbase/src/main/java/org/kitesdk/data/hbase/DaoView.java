@@ -16,14 +16,25 @@
 package org.kitesdk.data.hbase;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.mapreduce.InputFormat;
+import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetReader;
 import org.kitesdk.data.DatasetWriter;
 import org.kitesdk.data.Flushable;
+import org.kitesdk.data.hbase.filters.EntityFilter;
+import org.kitesdk.data.hbase.impl.BaseDao;
+import org.kitesdk.data.hbase.impl.BaseEntityScanner;
+import org.kitesdk.data.hbase.impl.Dao;
 import org.kitesdk.data.hbase.impl.EntityBatch;
 import org.kitesdk.data.hbase.impl.EntityScanner;
+import org.kitesdk.data.hbase.impl.EntityScannerBuilder;
+import org.kitesdk.data.hbase.impl.MultiRangeEntityScanner;
 import org.kitesdk.data.impl.Accessor;
 import org.kitesdk.data.spi.AbstractDatasetReader;
 import org.kitesdk.data.spi.AbstractDatasetWriter;
@@ -32,15 +43,22 @@ import org.kitesdk.data.spi.PartitionKey;
 import org.kitesdk.data.PartitionStrategy;
 import org.kitesdk.data.spi.AbstractRefinableView;
 import org.kitesdk.data.spi.Constraints;
+import org.kitesdk.data.spi.DescriptorUtil;
 import org.kitesdk.data.spi.InitializeAccessor;
 import org.kitesdk.data.spi.InputFormatAccessor;
 import org.kitesdk.data.spi.StorageKey;
 import org.kitesdk.data.spi.Marker;
 import org.kitesdk.data.spi.MarkerRange;
+import org.kitesdk.data.spi.Stageable;
 import java.util.List;
+import java.util.UUID;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 
-class DaoView<E> extends AbstractRefinableView<E> implements InputFormatAccessor<E> {
+class DaoView<E> extends AbstractRefinableView<E> implements InputFormatAccessor<E>,
+    Stageable<E> {
+
+  private static final int DEFAULT_ASYNC_WRITE_RETRIES = 3;
 
   private final DaoDataset<E> dataset;
 
@@ -60,12 +78,88 @@ class DaoView<E> extends AbstractRefinableView<E> implements InputFormatAccessor
   }
 
   EntityScanner<E> newEntityScanner() {
-    Iterable<MarkerRange> markerRanges = constraints.toKeyRanges();
-    // TODO: combine all ranges into a single reader
-    MarkerRange range = Iterables.getOnlyElement(markerRanges);
-    return dataset.getDao().getScanner(
-        toPartitionKey(range.getStart()), range.getStart().isInclusive(),
-        toPartitionKey(range.getEnd()), range.getEnd().isInclusive());
+    List<EntityScanner<E>> scanners = newEntityScanners();
+    if (scanners.size() == 1) {
+      return scanners.get(0);
+    }
+
+    DatasetDescriptor descriptor = dataset.getDescriptor();
+    int parallelism = DescriptorUtil.getInt(
+        HBaseProperties.SCAN_PARALLELISM_PROP, descriptor, 1);
+    boolean ordered = !DescriptorUtil.isEnabled(
+        HBaseProperties.SCAN_UNORDERED_PROP, descriptor);
+    return new MultiRangeEntityScanner<E>(scanners, parallelism, ordered);
+  }
+
+  /**
+   * Returns a scanner for each key range of this view, in row key order.
+   * <p>
+   * If row keys start with a hash partition and a range does not select a
+   * bucket, the range is scanned separately in each bucket.
+   * <p>
+   * Constraints on column-mapped fields that can be checked by HBase are
+   * added to each scan as filters; see {@link ConstraintFilters}.
+   */
+  List<EntityScanner<E>> newEntityScanners() {
+    PartitionStrategy strategy = dataset.getDescriptor().getPartitionStrategy();
+    Dao<E> dao = dataset.getDao();
+    List<EntityScanner<E>> scanners = Lists.newArrayList();
+    boolean sortable = true;
+    List<EntityFilter> filters = null;
+    if (dao instanceof BaseDao) {
+      BaseDao<E> baseDao = (BaseDao<E>) dao;
+      filters = ConstraintFilters.filtersFor(constraints,
+          dataset.getDescriptor().getSchema(), baseDao.getEntitySchema(),
+          baseDao.getEntityMapper().getEntitySerDe());
+    }
+    for (MarkerRange range : constraints.toKeyRanges()) {
+      List<EntityScanner<E>> bucketScanners = null;
+      if (filters != null) {
+        bucketScanners = SaltedKeyRanges.bucketScanners(
+            (BaseDao<E>) dao, strategy, range, filters);
+      }
+      if (bucketScanners != null) {
+        scanners.addAll(bucketScanners);
+        continue;
+      }
+      EntityScanner<E> scanner;
+      if (filters != null) {
+        EntityScannerBuilder<E> builder = ((BaseDao<E>) dao)
+            .getScannerBuilder()
+            .setStartKey(toPartitionKey(range.getStart()))
+            .setStartInclusive(range.getStart().isInclusive())
+            .setStopKey(toPartitionKey(range.getEnd()))
+            .setStopInclusive(range.getEnd().isInclusive());
+        for (EntityFilter filter : filters) {
+          builder.addFilter(filter);
+        }
+        scanner = builder.build();
+      } else {
+        scanner = dao.getScanner(
+            toPartitionKey(range.getStart()), range.getStart().isInclusive(),
+            toPartitionKey(range.getEnd()), range.getEnd().isInclusive());
+      }
+      sortable = sortable && (scanner instanceof BaseEntityScanner);
+      scanners.add(scanner);
+    }
+    if (sortable && scanners.size() > 1) {
+      // key ranges do not overlap, so ordering by start row orders the rows
+      Collections.sort(scanners, StartRowComparator.INSTANCE);
+    }
+    return scanners;
+  }
+
+  private static class StartRowComparator
+      implements Comparator<EntityScanner<?>>, Serializable {
+    private static final StartRowComparator INSTANCE = new StartRowComparator();
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public int compare(EntityScanner<?> left, EntityScanner<?> right) {
+      return Bytes.compareTo(
+          ((BaseEntityScanner<?>) left).getScan().getStartRow(),
+          ((BaseEntityScanner<?>) right).getScan().getStartRow());
+    }
   }
 
   @Override
@@ -123,7 +217,45 @@ class DaoView<E> extends AbstractRefinableView<E> implements InputFormatAccessor
 
   @Override
   public DatasetWriter<E> newWriter() {
-    final EntityBatch<E> wrappedWriter = dataset.getDao().newBatch();
+    return newWriter(newBatch());
+  }
+
+  /**
+   * Returns whether writers use bulk load, so that jobs can stage HFiles and
+   * load them when the job commits.
+   */
+  @Override
+  public boolean isStaged() {
+    return bulkLoadBuffer() > 0 && dataset.getDao() instanceof BaseDao;
+  }
+
+  @Override
+  public Path getStagingDirectory(String name) {
+    String stagingDir = dataset.getDescriptor().getProperty(
+        HBaseProperties.BULK_LOAD_DIR_PROP);
+    if (stagingDir != null) {
+      return new Path(stagingDir, name);
+    }
+    return ((BaseDao<E>) dataset.getDao()).getHBaseClientTemplate()
+        .getDefaultBulkLoadDir(name);
+  }
+
+  @Override
+  public DatasetWriter<E> newStagingWriter(Path directory) {
+    Preconditions.checkState(isStaged(),
+        "Writers for this view do not use bulk load: %s", this);
+    return newWriter(((BaseDao<E>) dataset.getDao())
+        .newStagedBulkLoadBatch(bulkLoadBuffer(), directory));
+  }
+
+  @Override
+  public void loadStaged(Path directory) {
+    Preconditions.checkState(isStaged(),
+        "Writers for this view do not use bulk load: %s", this);
+    ((BaseDao<E>) dataset.getDao()).loadStaged(directory);
+  }
+
+  private DatasetWriter<E> newWriter(final EntityBatch<E> wrappedWriter) {
     if (constraints.isUnbounded()) {
       wrappedWriter.initialize();
       return wrappedWriter;
@@ -168,6 +300,33 @@ class DaoView<E> extends AbstractRefinableView<E> implements InputFormatAccessor
     return writer;
   }
 
+  private EntityBatch<E> newBatch() {
+    Dao<E> dao = dataset.getDao();
+    DatasetDescriptor descriptor = dataset.getDescriptor();
+    long bulkLoadBuffer = bulkLoadBuffer();
+    if (bulkLoadBuffer > 0 && dao instanceof BaseDao) {
+      String stagingDir = descriptor.getProperty(
+          HBaseProperties.BULK_LOAD_DIR_PROP);
+      return ((BaseDao<E>) dao).newBulkLoadBatch(bulkLoadBuffer,
+          stagingDir != null ?
+              new Path(stagingDir, UUID.randomUUID().toString()) : null);
+    }
+    long bufferSize = DescriptorUtil.getLong(
+        HBaseProperties.ASYNC_WRITE_BUFFER_PROP, descriptor, 0L);
+    if (bufferSize > 0 && dao instanceof BaseDao) {
+      int retries = DescriptorUtil.getInt(
+          HBaseProperties.ASYNC_WRITE_RETRIES_PROP, descriptor,
+          DEFAULT_ASYNC_WRITE_RETRIES);
+      return ((BaseDao<E>) dao).newAsyncBatch(bufferSize, retries);
+    }
+    return dao.newBatch();
+  }
+
+  private long bulkLoadBuffer() {
+    return DescriptorUtil.getLong(
+        HBaseProperties.BULK_LOAD_BUFFER_PROP, dataset.getDescriptor(), 0L);
+  }
+
   abstract static class AbstractFlushableDatasetWriter<E> extends AbstractDatasetWriter<E>
       implements Flushable {
   }
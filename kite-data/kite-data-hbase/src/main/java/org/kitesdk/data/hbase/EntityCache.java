@@ -0,0 +1,146 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.kitesdk.data.hbase.impl.KeySerDe;
+import org.kitesdk.data.spi.PartitionKey;
+
+/**
+ * A size and TTL bounded cache of entities, keyed by serialized row key.
+ * <p>
+ * Entities are mutable, so copies are stored and returned.
+ * <p>
+ * Entities loaded on a miss are added with the generation of their key from
+ * before the load. Invalidating a key advances its generation, so an entity
+ * that was loaded while its key was invalidated is not kept.
+ */
+class EntityCache<E> {
+
+  // keys share generation counters, which can only cause extra misses
+  private static final int NUM_GENERATIONS = 1024;
+
+  private final Cache<ByteBuffer, E> cache;
+  private final AtomicLongArray generations =
+      new AtomicLongArray(NUM_GENERATIONS);
+  private final KeySerDe keySerDe;
+  private final GenericData model;
+  private final Schema schema;
+
+  // counted here because Guava 12 and later only record stats when asked
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  EntityCache(long maxSize, long ttlMillis, KeySerDe keySerDe,
+              GenericData model, Schema schema) {
+    Preconditions.checkArgument(maxSize > 0,
+        "Cache size must be positive: %s", maxSize);
+    Preconditions.checkArgument(ttlMillis > 0,
+        "Cache TTL must be positive: %s", ttlMillis);
+    this.keySerDe = keySerDe;
+    this.model = model;
+    this.schema = schema;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+        .removalListener(new RemovalListener<ByteBuffer, E>() {
+          @Override
+          public void onRemoval(RemovalNotification<ByteBuffer, E> n) {
+            if (n.wasEvicted()) {
+              evictions.incrementAndGet();
+            }
+          }
+        })
+        .build();
+  }
+
+  ByteBuffer keyFor(PartitionKey key) {
+    return ByteBuffer.wrap(keySerDe.serialize(key));
+  }
+
+  /**
+   * Returns a copy of the entity cached for {@code key}, or null.
+   */
+  E get(ByteBuffer key) {
+    E entity = cache.getIfPresent(key);
+    if (entity == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return copy(entity);
+  }
+
+  /**
+   * Returns the current generation of {@code key}, which must be read before
+   * loading an entity to {@link #put(ByteBuffer, Object, long)}.
+   */
+  long generation(ByteBuffer key) {
+    return generations.get(index(key));
+  }
+
+  /**
+   * Caches an entity unless {@code key} was invalidated after
+   * {@code generation} was read.
+   */
+  void put(ByteBuffer key, E entity, long generation) {
+    if (entity != null && generation(key) == generation) {
+      cache.put(key, copy(entity));
+      // an invalidation may have run between the check and the put
+      if (generation(key) != generation) {
+        cache.invalidate(key);
+      }
+    }
+  }
+
+  void invalidate(PartitionKey key) {
+    ByteBuffer cacheKey = keyFor(key);
+    generations.incrementAndGet(index(cacheKey));
+    cache.invalidate(cacheKey);
+  }
+
+  long getHitCount() {
+    return hits.get();
+  }
+
+  long getMissCount() {
+    return misses.get();
+  }
+
+  long getEvictionCount() {
+    return evictions.get();
+  }
+
+  private static int index(ByteBuffer key) {
+    return (key.hashCode() & Integer.MAX_VALUE) % NUM_GENERATIONS;
+  }
+
+  @SuppressWarnings("unchecked")
+  private E copy(E entity) {
+    return (E) model.deepCopy(schema, entity);
+  }
+}
@@ -19,10 +19,12 @@ import com.google.common.base.Preconditions;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.avro.Schema;
@@ -37,6 +39,7 @@ import org.kitesdk.data.hbase.avro.AvroEntitySchema;
 import org.kitesdk.data.hbase.impl.Constants;
 import org.kitesdk.data.hbase.impl.EntitySchema;
 import org.kitesdk.data.hbase.impl.SchemaManager;
+import org.kitesdk.data.hbase.impl.SchemaPropertyManager;
 import org.kitesdk.data.spi.PartitionStrategyParser;
 import org.kitesdk.data.spi.AbstractMetadataProvider;
 import org.kitesdk.data.spi.Compatibility;
@@ -50,6 +53,7 @@ class HBaseMetadataProvider extends AbstractMetadataProvider {
 
   private static final String DEFAULT_NAMESPACE = "default";
   private static final String REPLICATION_ID_PROP = "hbase.replication.scope";
+  private static final String HBASE_PROPERTY_PREFIX = "kite.hbase.";
 
   private HBaseAdmin hbaseAdmin;
   private SchemaManager schemaManager;
@@ -71,6 +75,7 @@ class HBaseMetadataProvider extends AbstractMetadataProvider {
         descriptor.getSchema());
     Preconditions.checkArgument(descriptor.isColumnMapped(),
         "Cannot create dataset %s: missing column mapping", name);
+    checkPropertiesStored(descriptor);
 
     try {
       String managedSchemaName = "managed_schemas"; // TODO: allow table to be specified
@@ -98,6 +103,7 @@ class HBaseMetadataProvider extends AbstractMetadataProvider {
         "org.kitesdk.data.hbase.avro.AvroKeyEntitySchemaParser",
         "org.kitesdk.data.hbase.avro.AvroKeySerDe",
         "org.kitesdk.data.hbase.avro.AvroEntitySerDe");
+    storeProperties(tableName, entityName, descriptor);
 
     try {
       if (!hbaseAdmin.tableExists(tableName)) {
@@ -137,7 +143,7 @@ class HBaseMetadataProvider extends AbstractMetadataProvider {
     } catch (IOException e) {
       throw new DatasetIOException("Cannot prepare table: " + name, e);
     }
-    return getDatasetDescriptor(schema, descriptor.getLocation());
+    return getDatasetDescriptor(schema, descriptor.getLocation(), descriptor);
   }
 
   @Override
@@ -152,6 +158,7 @@ class HBaseMetadataProvider extends AbstractMetadataProvider {
         descriptor.getSchema());
     Preconditions.checkArgument(descriptor.isColumnMapped(),
         "Cannot update dataset %s: missing column mapping", name);
+    checkPropertiesStored(descriptor);
 
     String tableName = getTableName(name);
     String entityName = getEntityName(name);
@@ -168,7 +175,8 @@ class HBaseMetadataProvider extends AbstractMetadataProvider {
     } else {
       LOG.info("Schema hasn't changed, not migrating: (" + name + ")");
     }
-    return getDatasetDescriptor(newSchema, descriptor.getLocation());
+    storeProperties(tableName, entityName, descriptor);
+    return getDatasetDescriptor(newSchema, descriptor.getLocation(), descriptor);
   }
 
   @Override
@@ -182,10 +190,16 @@ class HBaseMetadataProvider extends AbstractMetadataProvider {
     }
     String tableName = getTableName(name);
     String entityName = getEntityName(name);
-    return new DatasetDescriptor.Builder()
+    DatasetDescriptor.Builder builder = new DatasetDescriptor.Builder()
         .schemaLiteral(schemaManager.getEntitySchema(tableName, entityName)
-            .getRawSchema())
-        .build();
+            .getRawSchema());
+    if (schemaManager instanceof SchemaPropertyManager) {
+      for (Map.Entry<String, String> entry : ((SchemaPropertyManager)
+          schemaManager).getProperties(tableName, entityName).entrySet()) {
+        builder.property(entry.getKey(), entry.getValue());
+      }
+    }
+    return builder.build();
   }
 
   @Override
@@ -281,13 +295,53 @@ class HBaseMetadataProvider extends AbstractMetadataProvider {
     return schema;
   }
 
-  private static DatasetDescriptor getDatasetDescriptor(Schema schema, URI location) {
-    return new DatasetDescriptor.Builder()
+  private DatasetDescriptor getDatasetDescriptor(Schema schema,
+      URI location, DatasetDescriptor properties) {
+    DatasetDescriptor.Builder builder = new DatasetDescriptor.Builder()
         .schema(schema)
-        .location(location)
-        .build();
+        .location(location);
+    for (String property : properties.listProperties()) {
+      builder.property(property, properties.getProperty(property));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Rejects HBase dataset settings that the schema manager cannot store,
+   * because they would be lost when the dataset is loaded. This is called
+   * before any change is made, so a rejected create leaves nothing behind.
+   */
+  private void checkPropertiesStored(DatasetDescriptor descriptor) {
+    if (schemaManager instanceof SchemaPropertyManager) {
+      return;
+    }
+    for (String property : descriptor.listProperties()) {
+      Preconditions.checkArgument(
+          !property.startsWith(HBASE_PROPERTY_PREFIX),
+          "Cannot store property %s: %s does not store properties",
+          property, schemaManager.getClass().getName());
+    }
+  }
+
+  /**
+   * Stores the properties of a descriptor with the managed schema, so they
+   * are returned when the dataset is loaded. Properties are stored in the
+   * schema table rather than the table descriptor so that changing them does
+   * not take the table offline.
+   */
+  private void storeProperties(String tableName, String entityName,
+      DatasetDescriptor descriptor) {
+    if (schemaManager instanceof SchemaPropertyManager) {
+      Map<String, String> properties = Maps.newHashMap();
+      for (String property : descriptor.listProperties()) {
+        properties.put(property, descriptor.getProperty(property));
+      }
+      ((SchemaPropertyManager) schemaManager).updateProperties(
+          tableName, entityName, properties);
+    }
   }
 
+
   private HColumnDescriptor columnFamily(byte[] family, DatasetDescriptor descriptor) {
     return configure(new HColumnDescriptor(family), descriptor);
   }
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase;
+
+/**
+ * Dataset properties used by HBase datasets. These are set in the descriptor
+ * passed to create or update and are stored with the dataset's schema.
+ */
+public class HBaseProperties {
+  /**
+   * Used to scan the key ranges of a view in parallel. When a view's
+   * constraints produce more than one key range, up to this many ranges are
+   * scanned at once by background threads.
+   *
+   * The value should be an integer. Ranges are scanned one at a time by
+   * default.
+   */
+  public static final String SCAN_PARALLELISM_PROP = "kite.hbase.scan-parallelism";
+
+  /**
+   * Used to return entities from parallel range scans as soon as they are
+   * read, rather than in key order.
+   *
+   * The value should be a boolean. Entities are returned in key order by
+   * default.
+   */
+  public static final String SCAN_UNORDERED_PROP = "kite.hbase.scan-unordered";
+
+  /**
+   * Used to send puts to HBase in a background thread. Entities are mapped to
+   * puts by the writing thread and sent in batches while writes continue, up
+   * to this many bytes of buffered or in-flight puts. Flushing or closing the
+   * writer waits for all puts and throws the first failure.
+   *
+   * The value should be a long. Puts are sent by the writing thread by
+   * default.
+   */
+  public static final String ASYNC_WRITE_BUFFER_PROP = "kite.hbase.async-write-buffer";
+
+  /**
+   * Used to set the number of times puts that fail are retried by writers
+   * that use {@link #ASYNC_WRITE_BUFFER_PROP}.
+   *
+   * The value should be an integer. The default is 3.
+   */
+  public static final String ASYNC_WRITE_RETRIES_PROP = "kite.hbase.async-write-retries";
+
+  /**
+   * Used to cache entities read with {@code get} and {@code getAll} on a
+   * {@link org.kitesdk.data.RandomAccessDataset}, up to this many entities.
+   * Cached entities are invalidated by puts, deletes, and increments through
+   * the same dataset instance. Writes from writers or other clients are seen
+   * when cached entities expire, see {@link #CACHE_TTL_MS_PROP}.
+   *
+   * The value should be a long. Entities are not cached by default.
+   */
+  public static final String CACHE_SIZE_PROP = "kite.hbase.cache-size";
+
+  /**
+   * Used to set how long entities cached because of {@link #CACHE_SIZE_PROP}
+   * are kept, in milliseconds.
+   *
+   * The value should be a long. The default is 60000 (one minute).
+   */
+  public static final String CACHE_TTL_MS_PROP = "kite.hbase.cache-ttl-ms";
+
+  /**
+   * Used to write entities to HFiles and bulk load them into the table,
+   * rather than sending puts. Writers sort up to this many bytes of cells in
+   * memory before writing HFiles, and bulk load the HFiles when flushed or
+   * closed. Bulk loads skip the write-ahead log and version checks.
+   *
+   * MapReduce jobs that write with DatasetKeyOutputFormat keep the HFiles of
+   * each task and bulk load them all when the job commits, so failed or
+   * speculative task attempts do not add data.
+   *
+   * The value should be a long. Writers send puts by default.
+   */
+  public static final String BULK_LOAD_BUFFER_PROP = "kite.hbase.bulk-load-buffer";
+
+  /**
+   * Used to set the directory where writers that use
+   * {@link #BULK_LOAD_BUFFER_PROP} write HFiles. Each writer uses a new
+   * directory inside it, and each job uses a directory named by its job ID.
+   *
+   * The default is a directory in the user's home directory.
+   */
+  public static final String BULK_LOAD_DIR_PROP = "kite.hbase.bulk-load-dir";
+}
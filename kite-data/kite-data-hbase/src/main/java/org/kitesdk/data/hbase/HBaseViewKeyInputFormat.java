@@ -15,15 +15,18 @@
  */
 package org.kitesdk.data.hbase;
 
+import com.google.common.collect.Lists;
 import java.io.IOException;
 import java.util.List;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.MultiTableInputFormat;
 import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
 import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
 import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
@@ -35,6 +38,7 @@ import org.kitesdk.data.hbase.impl.BaseDao;
 import org.kitesdk.data.hbase.impl.BaseEntityScanner;
 import org.kitesdk.data.hbase.impl.Dao;
 import org.kitesdk.data.hbase.impl.EntityMapper;
+import org.kitesdk.data.hbase.impl.EntityScanner;
 import org.kitesdk.data.spi.AbstractKeyRecordReaderWrapper;
 import org.kitesdk.data.spi.FilteredRecordReader;
 
@@ -62,7 +66,8 @@ class HBaseViewKeyInputFormat<E> extends InputFormat<E, Void> {
   }
 
   @Override
-  public List<InputSplit> getSplits(JobContext jobContext) throws IOException {
+  public List<InputSplit> getSplits(JobContext jobContext) throws IOException,
+      InterruptedException {
     Configuration conf = Hadoop.JobContext.getConfiguration.invoke(jobContext);
     return getDelegate(conf).getSplits(jobContext);
   }
@@ -82,13 +87,38 @@ class HBaseViewKeyInputFormat<E> extends InputFormat<E, Void> {
     return unfilteredRecordReader;
   }
 
-  private TableInputFormat getDelegate(Configuration conf) throws IOException {
-    TableInputFormat delegate = new TableInputFormat();
+  private InputFormat<ImmutableBytesWritable, Result> getDelegate(
+      Configuration conf) throws IOException {
     String tableName = HBaseMetadataProvider.getTableName(dataset.getName());
+    List<EntityScanner<E>> scanners = (view != null ?
+        view.newEntityScanners() : null);
+
+    if (scanners != null && scanners.size() > 1) {
+      // scan each key range, or each bucket of salted keys, separately. this
+      // produces splits for the regions of each range.
+      List<Scan> scans = Lists.newArrayList();
+      for (EntityScanner<E> scanner : scanners) {
+        Scan scan = new Scan(((BaseEntityScanner<E>) scanner).getScan());
+        scan.setAttribute(Scan.SCAN_ATTRIBUTES_TABLE_NAME,
+            Bytes.toBytes(tableName));
+        scans.add(scan);
+      }
+      Job tempJob = new Job();
+      TableMapReduceUtil.initTableMapperJob(scans, TableMapper.class, null,
+          null, tempJob);
+      Configuration tempConf = Hadoop.JobContext.getConfiguration.invoke(tempJob);
+      conf.setStrings(MultiTableInputFormat.SCANS,
+          tempConf.getStrings(MultiTableInputFormat.SCANS));
+      MultiTableInputFormat delegate = new MultiTableInputFormat();
+      delegate.setConf(conf);
+      return delegate;
+    }
+
+    TableInputFormat delegate = new TableInputFormat();
     conf.set(TableInputFormat.INPUT_TABLE, tableName);
-    if (view != null) {
+    if (scanners != null && scanners.size() == 1) {
       Job tempJob = new Job();
-      Scan scan = ((BaseEntityScanner) view.newEntityScanner()).getScan();
+      Scan scan = ((BaseEntityScanner<E>) scanners.get(0)).getScan();
       TableMapReduceUtil.initTableMapperJob(tableName, scan, TableMapper.class, null,
           null, tempJob);
       Configuration tempConf = Hadoop.JobContext.getConfiguration.invoke(tempJob);
@@ -102,7 +132,8 @@ class HBaseViewKeyInputFormat<E> extends InputFormat<E, Void> {
       AbstractKeyRecordReaderWrapper<E, ImmutableBytesWritable, Result> {
     private final EntityMapper<E> entityMapper;
 
-    public HBaseRecordReaderWrapper(TableInputFormat delegate,
+    public HBaseRecordReaderWrapper(
+        InputFormat<ImmutableBytesWritable, Result> delegate,
                                     EntityMapper<E> entityMapper) {
       super(delegate);
       this.entityMapper = entityMapper;
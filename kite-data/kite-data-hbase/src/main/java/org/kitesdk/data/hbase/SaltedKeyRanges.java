@@ -0,0 +1,190 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase;
+
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.hbase.client.Scan;
+import org.kitesdk.data.PartitionStrategy;
+import org.kitesdk.data.hbase.filters.EntityFilter;
+import org.kitesdk.data.hbase.impl.BaseDao;
+import org.kitesdk.data.hbase.impl.EntityScanner;
+import org.kitesdk.data.hbase.impl.EntityScannerBuilder;
+import org.kitesdk.data.hbase.impl.KeySerDe;
+import org.kitesdk.data.hbase.impl.ScanModifier;
+import org.kitesdk.data.impl.Accessor;
+import org.kitesdk.data.spi.FieldPartitioner;
+import org.kitesdk.data.spi.MarkerRange;
+import org.kitesdk.data.spi.PartitionKey;
+import org.kitesdk.data.spi.partition.HashFieldPartitioner;
+
+/**
+ * Splits key ranges for datasets whose row keys start with a hash partition.
+ * <p>
+ * A leading hash partition salts row keys so that writes are spread across
+ * regions, but a range of the remaining fields, like a time range, is then
+ * stored in every bucket. When a view's key range does not select a bucket,
+ * this produces one range per bucket, each prefixed with the bucket number,
+ * instead of a range that cannot be serialized or that covers the table.
+ */
+class SaltedKeyRanges {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private SaltedKeyRanges() {
+  }
+
+  /**
+   * Returns scanners for each hash bucket of a key range, or null if the
+   * dataset is not salted or the range is already within one bucket. Each
+   * scanner uses the given filters.
+   */
+  static <E> List<EntityScanner<E>> bucketScanners(BaseDao<E> dao,
+      PartitionStrategy strategy, MarkerRange range,
+      List<EntityFilter> filters) {
+    List<FieldPartitioner> fps =
+        Accessor.getDefault().getFieldPartitioners(strategy);
+    if (fps.isEmpty() || !(fps.get(0) instanceof HashFieldPartitioner)) {
+      return null;
+    }
+
+    FieldPartitioner hash = fps.get(0);
+    Integer startBucket = bucketFor(range.getStart(), hash);
+    Integer endBucket = bucketFor(range.getEnd(), hash);
+    if (startBucket != null && endBucket != null) {
+      return null;
+    }
+
+    int first = (startBucket != null ? startBucket : 0);
+    int last = (endBucket != null ? endBucket : hash.getCardinality() - 1);
+    KeySerDe serde = dao.getKeySerDe();
+    List<EntityScanner<E>> scanners = Lists.newArrayList();
+    for (int bucket = first; bucket <= last; bucket += 1) {
+      byte[] startRow = startRow(serde, fps, range.getStart(), bucket);
+      byte[] stopRow = stopRow(serde, fps, range.getEnd(), bucket);
+      EntityScannerBuilder<E> builder = dao.getScannerBuilder()
+          .addScanModifier(new RowRange(startRow, stopRow));
+      for (EntityFilter filter : filters) {
+        builder.addFilter(filter);
+      }
+      scanners.add(builder.build());
+    }
+    return scanners;
+  }
+
+  private static Integer bucketFor(MarkerRange.Boundary boundary,
+                                   FieldPartitioner hash) {
+    if (boundary == null || boundary.getBound() == null) {
+      return null;
+    }
+    // the leading partitioner is checked in bucketScanners
+    return boundary.getBound().valueFor((HashFieldPartitioner) hash);
+  }
+
+  /**
+   * Returns whether a boundary limits the rows of a bucket. A boundary with a
+   * bucket only applies to that bucket.
+   */
+  private static boolean applies(MarkerRange.Boundary boundary,
+                                 FieldPartitioner hash, int bucket) {
+    if (boundary == null || boundary.getBound() == null) {
+      return false;
+    }
+    Integer boundaryBucket = bucketFor(boundary, hash);
+    return boundaryBucket == null || boundaryBucket == bucket;
+  }
+
+  /**
+   * Returns the bucket and the boundary's values that follow it, up to the
+   * first missing value.
+   */
+  @SuppressWarnings("unchecked")
+  private static Object[] prefix(List<FieldPartitioner> fps,
+                                 MarkerRange.Boundary boundary, int bucket) {
+    List<Object> values = Lists.newArrayList();
+    values.add(bucket);
+    if (applies(boundary, fps.get(0), bucket)) {
+      for (int i = 1, n = fps.size(); i < n; i += 1) {
+        Object value = boundary.getBound().valueFor(fps.get(i));
+        if (value == null) {
+          break;
+        }
+        values.add(value);
+      }
+    }
+    return values.toArray(new Object[values.size()]);
+  }
+
+  private static byte[] startRow(KeySerDe serde, List<FieldPartitioner> fps,
+                                 MarkerRange.Boundary boundary, int bucket) {
+    Object[] values = prefix(fps, boundary, bucket);
+    byte[] row = serde.serialize(new PartitionKey(values));
+    if (values.length == fps.size() &&
+        applies(boundary, fps.get(0), bucket) && !boundary.isInclusive()) {
+      // skip the exact key
+      row = Arrays.copyOf(row, row.length + 1);
+    }
+    return row;
+  }
+
+  private static byte[] stopRow(KeySerDe serde, List<FieldPartitioner> fps,
+                                MarkerRange.Boundary boundary, int bucket) {
+    Object[] values = prefix(fps, boundary, bucket);
+    byte[] row = serde.serialize(new PartitionKey(values));
+    if (values.length < fps.size()) {
+      // include every key that starts with the partial key
+      return successor(row);
+    } else if (!applies(boundary, fps.get(0), bucket) ||
+        boundary.isInclusive()) {
+      // include the exact key
+      return Arrays.copyOf(row, row.length + 1);
+    }
+    return row;
+  }
+
+  /**
+   * Returns the first row that does not start with {@code prefix}, or an
+   * empty row if there is none.
+   */
+  static byte[] successor(byte[] prefix) {
+    for (int i = prefix.length - 1; i >= 0; i -= 1) {
+      if (prefix[i] != (byte) 0xFF) {
+        byte[] next = Arrays.copyOf(prefix, i + 1);
+        next[i] += 1;
+        return next;
+      }
+    }
+    return EMPTY;
+  }
+
+  private static class RowRange implements ScanModifier {
+    private final byte[] startRow;
+    private final byte[] stopRow;
+
+    private RowRange(byte[] startRow, byte[] stopRow) {
+      this.startRow = startRow;
+      this.stopRow = stopRow;
+    }
+
+    @Override
+    public Scan modifyScan(Scan scan) {
+      scan.setStartRow(startRow);
+      scan.setStopRow(stopRow);
+      return scan;
+    }
+  }
+}
@@ -17,8 +17,6 @@ package org.kitesdk.data.hbase.avro;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,6 +26,8 @@ import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
@@ -53,6 +53,8 @@ import org.kitesdk.data.hbase.impl.EntitySerDe;
  */
 public class AvroEntitySerDe<E extends IndexedRecord> extends EntitySerDe<E> {
 
+  private static final byte[] EMPTY = new byte[0];
+
   /**
    * Boolean to indicate whether this is a specific record or generic record
    * SerDe. TODO: Eventually use an enum type when we support more than two
@@ -95,6 +97,16 @@ public class AvroEntitySerDe<E extends IndexedRecord> extends EntitySerDe<E> {
    */
   private final Map<String, Object> defaultValueMap;
 
+  /**
+   * Encoders, decoders, and buffers that are reused by each thread
+   */
+  private final ThreadLocal<Codecs> codecs = new ThreadLocal<Codecs>() {
+    @Override
+    protected Codecs initialValue() {
+      return new Codecs();
+    }
+  };
+
   /**
    * Constructor for AvroEntitySerDe instances.
    * 
@@ -166,11 +178,11 @@ public class AvroEntitySerDe<E extends IndexedRecord> extends EntitySerDe<E> {
           + fieldName);
     }
 
-    ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-    Encoder encoder = getColumnEncoder(field.schema(), byteOut);
+    Codecs local = codecs.get();
+    Encoder encoder = local.columnEncoder(field.schema());
     AvroUtils.writeAvroEntity(columnValue, encoder,
         fieldDatumWriters.get(fieldName));
-    return byteOut.toByteArray();
+    return local.toByteArray();
   }
 
   @Override
@@ -223,6 +235,12 @@ public class AvroEntitySerDe<E extends IndexedRecord> extends EntitySerDe<E> {
 
   @Override
   public Object deserializeColumnValueFromBytes(String fieldName, byte[] bytes) {
+    return deserializeColumnValueFromBytes(fieldName, bytes, 0, bytes.length);
+  }
+
+  @Override
+  public Object deserializeColumnValueFromBytes(String fieldName, byte[] bytes,
+      int offset, int length) {
     Field field = avroSchema.getAvroSchema().getField(fieldName);
     DatumReader<Object> datumReader = fieldDatumReaders.get(fieldName);
     if (field == null) {
@@ -234,9 +252,14 @@ public class AvroEntitySerDe<E extends IndexedRecord> extends EntitySerDe<E> {
           + fieldName);
     }
 
-    ByteArrayInputStream byteIn = new ByteArrayInputStream(bytes);
-    Decoder decoder = getColumnDecoder(field.schema(), byteIn);
-    return AvroUtils.readAvroEntity(decoder, datumReader);
+    Codecs local = codecs.get();
+    try {
+      return AvroUtils.readAvroEntity(
+          local.columnDecoder(field.schema(), bytes, offset, length),
+          datumReader);
+    } finally {
+      local.release();
+    }
   }
 
   @Override
@@ -255,7 +278,7 @@ public class AvroEntitySerDe<E extends IndexedRecord> extends EntitySerDe<E> {
         throw new ValidationException("No datum reader for field name: "
             + fieldName);
       }
-      return AvroUtils.readAvroEntity(columnValueBytes, datumReader);
+      return readBinary(columnValueBytes, datumReader);
     } else if (schemaType == Schema.Type.RECORD) {
       if (!kacRecordDatumReaders.containsKey(fieldName)) {
         throw new ValidationException("Invalid field name " + fieldName
@@ -268,13 +291,22 @@ public class AvroEntitySerDe<E extends IndexedRecord> extends EntitySerDe<E> {
       }
       DatumReader<Object> datumReader = kacRecordDatumReaders.get(fieldName)
           .get(columnKey);
-      return AvroUtils.readAvroEntity(columnValueBytes, datumReader);
+      return readBinary(columnValueBytes, datumReader);
     } else {
       throw new ValidationException("Unsupported type for keyAsColumn: "
           + schemaType);
     }
   }
 
+  private Object readBinary(byte[] bytes, DatumReader<Object> datumReader) {
+    Codecs local = codecs.get();
+    try {
+      return AvroUtils.readAvroEntity(local.binaryDecoder(bytes), datumReader);
+    } finally {
+      local.release();
+    }
+  }
+
   @Override
   public CharSequence deserializeKeyAsColumnKeyFromBytes(String fieldName,
       byte[] columnKeyBytes) {
@@ -349,43 +381,97 @@ public class AvroEntitySerDe<E extends IndexedRecord> extends EntitySerDe<E> {
   }
 
   /**
-   * Returns an Avro Decoder. The implementation it chooses will depend on the
-   * schema of the field.
-   * 
-   * @param in
-   *          InputStream to decode bytes from
-   * @return The avro decoder.
+   * Returns whether a field is encoded with a {@link ColumnEncoder} and
+   * decoded with a {@link ColumnDecoder}, rather than Avro's binary encoding.
    */
-  private Decoder getColumnDecoder(Schema writtenFieldAvroSchema, InputStream in) {
-    // Use a special Avro decoder that has special handling for int, long,
-    // and String types. See ColumnDecoder for more information.
-    if (writtenFieldAvroSchema.getType() == Type.INT
-        || writtenFieldAvroSchema.getType() == Type.LONG
-        || writtenFieldAvroSchema.getType() == Type.STRING) {
-      return new ColumnDecoder(in);
-    } else {
-      return DecoderFactory.get().binaryDecoder(in, null);
-    }
+  private static boolean isColumnEncoded(Schema fieldAvroSchema) {
+    // Use a special Avro encoder that has special handling for int, long,
+    // and String types. See ColumnEncoder for more information.
+    return fieldAvroSchema.getType() == Type.INT
+        || fieldAvroSchema.getType() == Type.LONG
+        || fieldAvroSchema.getType() == Type.STRING;
   }
 
   /**
-   * Returns an Avro Encoder. The implementation it chooses will depend on the
-   * schema of the field.
-   * 
-   * @param out
-   *          Output stream to encode bytes to
-   * @return The avro encoder
+   * Encoders, decoders, and buffers used by a single thread. Decoders read
+   * directly from the array they are given, without copying it.
    */
-  private Encoder getColumnEncoder(Schema fieldAvroSchema, OutputStream out) {
-    // Use a special Avro encoder that has special handling for int, long,
-    // and String types. See ColumnEncoder for more information.
-    if (fieldAvroSchema.getType() == Type.INT
-        || fieldAvroSchema.getType() == Type.LONG
-        || fieldAvroSchema.getType() == Type.STRING) {
-      return new ColumnEncoder(out);
-    } else {
-      return EncoderFactory.get().binaryEncoder(out, null);
+  private static class Codecs {
+    // buffers that grow larger than this are not kept between values
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private final ReusableInputStream in = new ReusableInputStream();
+    private final ColumnDecoder columnDecoder = new ColumnDecoder(in);
+    private BinaryDecoder binaryDecoder = null;
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private BinaryEncoder binaryEncoder = null;
+    private ColumnEncoder columnEncoder = null;
+
+    private Decoder columnDecoder(Schema fieldAvroSchema, byte[] bytes,
+                                  int offset, int length) {
+      if (isColumnEncoded(fieldAvroSchema)) {
+        in.reset(bytes, offset, length);
+        return columnDecoder;
+      }
+      this.binaryDecoder = DecoderFactory.get()
+          .binaryDecoder(bytes, offset, length, binaryDecoder);
+      return binaryDecoder;
+    }
+
+    private Decoder binaryDecoder(byte[] bytes) {
+      this.binaryDecoder = DecoderFactory.get()
+          .binaryDecoder(bytes, 0, bytes.length, binaryDecoder);
+      return binaryDecoder;
+    }
+
+    /**
+     * Drops the decoders' references to the last value's array, which is
+     * often a large buffer shared by a whole HBase row.
+     */
+    private void release() {
+      in.reset(EMPTY, 0, 0);
+      if (binaryDecoder != null) {
+        this.binaryDecoder = DecoderFactory.get()
+            .binaryDecoder(EMPTY, 0, 0, binaryDecoder);
+      }
+    }
+
+    private Encoder columnEncoder(Schema fieldAvroSchema) {
+      out.reset();
+      if (isColumnEncoded(fieldAvroSchema)) {
+        this.columnEncoder = (columnEncoder == null ?
+            new ColumnEncoder(out) : new ColumnEncoder(out, columnEncoder));
+        return columnEncoder;
+      }
+      this.binaryEncoder = EncoderFactory.get().binaryEncoder(out, binaryEncoder);
+      return binaryEncoder;
+    }
+
+    private byte[] toByteArray() {
+      byte[] bytes = out.toByteArray();
+      if (bytes.length > MAX_RETAINED_BUFFER) {
+        // encoders write to the stream, so they are replaced with it
+        this.out = new ByteArrayOutputStream();
+        this.binaryEncoder = null;
+        this.columnEncoder = null;
+      }
+      return bytes;
     }
   }
 
+  /**
+   * A ByteArrayInputStream that can be pointed at a new array.
+   */
+  private static class ReusableInputStream extends ByteArrayInputStream {
+    private ReusableInputStream() {
+      super(EMPTY);
+    }
+
+    private void reset(byte[] bytes, int offset, int length) {
+      this.buf = bytes;
+      this.pos = offset;
+      this.count = offset + length;
+      this.mark = offset;
+    }
+  }
 }
@@ -41,12 +41,16 @@ import org.apache.avro.io.Encoder;
 /**
  * Avro implementation of the KeySerDe interface. This will serialize Keys and
  * PartialKeys to a special ordered memcmp-able avro encoding.
+ * <p>
+ * Keys whose fields are all int, long, string, or bytes are encoded directly
+ * by a {@link MemcmpKeyCodec}, which produces the same bytes.
  */
 public class AvroKeySerDe implements KeySerDe {
 
   private final Schema schema;
   private final Schema[] partialSchemas;
   private final PartitionStrategy partitionStrategy;
+  private final MemcmpKeyCodec codec;
 
   public AvroKeySerDe(Schema schema, PartitionStrategy partitionStrategy) {
     this.schema = schema;
@@ -63,10 +67,15 @@ public class AvroKeySerDe implements KeySerDe {
       partialSchemas[i] = Schema.createRecord(partialFieldList);
     }
     this.partitionStrategy = partitionStrategy;
+    this.codec = MemcmpKeyCodec.compile(schema);
   }
 
   @Override
   public byte[] serialize(PartitionKey key) {
+    if (codec != null) {
+      return codec.encode(key);
+    }
+
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
     Encoder encoder = new MemcmpEncoder(outputStream);
 
@@ -110,6 +119,10 @@ public class AvroKeySerDe implements KeySerDe {
 
   @Override
   public PartitionKey deserialize(byte[] keyBytes) {
+    if (codec != null) {
+      return codec.decode(keyBytes);
+    }
+
     ByteArrayInputStream inputStream = new ByteArrayInputStream(keyBytes);
     Decoder decoder = new MemcmpDecoder(inputStream);
     DatumReader<GenericRecord> datumReader = new GenericDatumReader<GenericRecord>(
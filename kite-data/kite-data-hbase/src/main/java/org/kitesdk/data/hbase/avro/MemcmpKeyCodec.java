@@ -0,0 +1,273 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase.avro;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.util.Utf8;
+import org.kitesdk.data.DatasetException;
+import org.kitesdk.data.SerializationException;
+import org.kitesdk.data.spi.PartitionKey;
+
+/**
+ * Encodes and decodes keys whose fields are all int, long, string, or bytes,
+ * using the same format as {@link org.kitesdk.data.hbase.avro.io.MemcmpEncoder}
+ * but without a DatumWriter or DatumReader.
+ * <p>
+ * Values are decoded to the classes GenericDatumReader would return. Keys are
+ * encoded into a buffer that is reused by each thread.
+ */
+class MemcmpKeyCodec {
+
+  private static final String STRING_PROP = "avro.java.string";
+  private static final String JAVA_CLASS_PROP = "java-class";
+
+  private static final int INT = 0;
+  private static final int LONG = 1;
+  private static final int UTF8 = 2;
+  private static final int STRING = 3;
+  private static final int BYTES = 4;
+
+  // buffers larger than this are not kept for reuse
+  private static final int MAX_REUSED_BUFFER = 64 * 1024;
+
+  private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[128];
+    }
+  };
+
+  private final int[] types;
+
+  private MemcmpKeyCodec(int[] types) {
+    this.types = types;
+  }
+
+  /**
+   * Returns a codec for the key schema, or null if any field has a type that
+   * is not supported.
+   */
+  static MemcmpKeyCodec compile(Schema keySchema) {
+    List<Schema.Field> fields = keySchema.getFields();
+    int[] types = new int[fields.size()];
+    for (int i = 0; i < types.length; i += 1) {
+      Schema schema = fields.get(i).schema();
+      if (schema.getProp(JAVA_CLASS_PROP) != null) {
+        return null;
+      }
+      switch (schema.getType()) {
+        case INT:
+          types[i] = INT;
+          break;
+        case LONG:
+          types[i] = LONG;
+          break;
+        case STRING:
+          types[i] = "String".equals(schema.getProp(STRING_PROP)) ?
+              STRING : UTF8;
+          break;
+        case BYTES:
+          types[i] = BYTES;
+          break;
+        default:
+          return null;
+      }
+    }
+    return new MemcmpKeyCodec(types);
+  }
+
+  byte[] encode(PartitionKey key) {
+    byte[] buf = BUFFER.get();
+    int pos = 0;
+    for (int i = 0; i < key.getLength(); i += 1) {
+      Object value = key.get(i);
+      if (value == null) {
+        throw new DatasetException(
+            "Null key field only supported in null type or union type that has a null type.");
+      }
+      switch (types[i]) {
+        case INT: {
+          int n = ((Number) value).intValue();
+          buf = ensure(buf, pos, 4);
+          buf[pos++] = (byte) ((n >>> 24) ^ 0x80);
+          buf[pos++] = (byte) (n >>> 16);
+          buf[pos++] = (byte) (n >>> 8);
+          buf[pos++] = (byte) n;
+          break;
+        }
+        case LONG: {
+          long n = ((Number) value).longValue();
+          buf = ensure(buf, pos, 8);
+          buf[pos++] = (byte) ((n >>> 56) ^ 0x80);
+          buf[pos++] = (byte) (n >>> 48);
+          buf[pos++] = (byte) (n >>> 40);
+          buf[pos++] = (byte) (n >>> 32);
+          buf[pos++] = (byte) (n >>> 24);
+          buf[pos++] = (byte) (n >>> 16);
+          buf[pos++] = (byte) (n >>> 8);
+          buf[pos++] = (byte) n;
+          break;
+        }
+        case UTF8:
+        case STRING: {
+          Utf8 utf8 = (value instanceof Utf8) ?
+              (Utf8) value : new Utf8(value.toString());
+          buf = ensure(buf, pos, 2 * utf8.getByteLength() + 2);
+          pos = writeBytes(buf, pos, utf8.getBytes(), 0, utf8.getByteLength());
+          break;
+        }
+        case BYTES: {
+          // matches MemcmpEncoder, which ignores the array offset
+          ByteBuffer bytes = (ByteBuffer) value;
+          buf = ensure(buf, pos, 2 * bytes.remaining() + 2);
+          pos = writeBytes(buf, pos, bytes.array(), bytes.position(),
+              bytes.remaining());
+          break;
+        }
+      }
+    }
+
+    if (buf.length <= MAX_REUSED_BUFFER) {
+      BUFFER.set(buf);
+    }
+    return Arrays.copyOf(buf, pos);
+  }
+
+  PartitionKey decode(byte[] bytes) {
+    Object[] values = new Object[types.length];
+    int pos = 0;
+    try {
+      for (int i = 0; i < types.length; i += 1) {
+        switch (types[i]) {
+          case INT: {
+            checkAvailable(bytes, pos, 4);
+            int n = (bytes[pos++] ^ 0x80) & 0xff;
+            for (int j = 1; j < 4; j += 1) {
+              n = (n << 8) | (bytes[pos++] & 0xff);
+            }
+            values[i] = n;
+            break;
+          }
+          case LONG: {
+            checkAvailable(bytes, pos, 8);
+            long n = (bytes[pos++] ^ 0x80) & 0xff;
+            for (int j = 1; j < 8; j += 1) {
+              n = (n << 8) | (bytes[pos++] & 0xff);
+            }
+            values[i] = n;
+            break;
+          }
+          case UTF8:
+          case STRING:
+          case BYTES: {
+            int end = terminator(bytes, pos);
+            byte[] value = readBytes(bytes, pos, end);
+            pos = end + 2;
+            if (types[i] == BYTES) {
+              values[i] = ByteBuffer.wrap(value);
+            } else if (types[i] == UTF8) {
+              values[i] = new Utf8(value);
+            } else {
+              values[i] = new Utf8(value).toString();
+            }
+            break;
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new SerializationException("Could not deserialize Avro entity", e);
+    }
+    return new PartitionKey(values);
+  }
+
+  private static byte[] ensure(byte[] buf, int pos, int length) {
+    if (pos + length <= buf.length) {
+      return buf;
+    }
+    return Arrays.copyOf(buf, Math.max(buf.length * 2, pos + length));
+  }
+
+  /**
+   * Writes bytes with each 0 escaped as 0 1, followed by a 0 0 terminator.
+   */
+  private static int writeBytes(byte[] buf, int pos, byte[] bytes, int start,
+                                int length) {
+    for (int i = start; i < start + length; i += 1) {
+      if (bytes[i] == 0x00) {
+        buf[pos++] = 0;
+        buf[pos++] = 1;
+      } else {
+        buf[pos++] = bytes[i];
+      }
+    }
+    buf[pos++] = 0;
+    buf[pos++] = 0;
+    return pos;
+  }
+
+  /**
+   * Returns the position of the 0 0 terminator of escaped bytes.
+   */
+  private static int terminator(byte[] bytes, int pos) throws IOException {
+    while (pos < bytes.length) {
+      if (bytes[pos] == 0) {
+        checkAvailable(bytes, pos, 2);
+        if (bytes[pos + 1] == 0) {
+          return pos;
+        } else if (bytes[pos + 1] != 1) {
+          throw new IOException("Illegal encoding. 0 byte cannot be followed " +
+              "by anything other than 0 or 1. It was followed by " +
+              bytes[pos + 1]);
+        }
+        pos += 2;
+      } else {
+        pos += 1;
+      }
+    }
+    throw new EOFException();
+  }
+
+  private static byte[] readBytes(byte[] bytes, int start, int end) {
+    int length = 0;
+    for (int i = start; i < end; i += 1) {
+      if (bytes[i] == 0) {
+        i += 1;
+      }
+      length += 1;
+    }
+    byte[] value = new byte[length];
+    int pos = 0;
+    for (int i = start; i < end; i += 1) {
+      value[pos++] = bytes[i];
+      if (bytes[i] == 0) {
+        i += 1;
+      }
+    }
+    return value;
+  }
+
+  private static void checkAvailable(byte[] bytes, int pos, int length)
+      throws EOFException {
+    if (pos + length > bytes.length) {
+      throw new EOFException();
+    }
+  }
+}
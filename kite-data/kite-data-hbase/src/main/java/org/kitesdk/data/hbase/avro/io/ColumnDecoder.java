@@ -24,7 +24,6 @@ import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.util.Utf8;
-import org.apache.hadoop.hbase.util.Bytes;
 
 /**
  * An Avro Decoder implementation used for decoding Avro instances from HBase
@@ -46,7 +45,9 @@ public class ColumnDecoder extends Decoder {
 
   public ColumnDecoder(InputStream in) {
     this.in = in;
-    this.wrappedDecoder = new DecoderFactory().binaryDecoder(in, null);
+    // a direct decoder does not read ahead, so reads from dataIn and the
+    // wrapped decoder stay in order and the stream can be reset and reused
+    this.wrappedDecoder = DecoderFactory.get().directBinaryDecoder(in, null);
     this.dataIn = new DataInputStream(in);
   }
 
@@ -62,16 +63,12 @@ public class ColumnDecoder extends Decoder {
 
   @Override
   public int readInt() throws IOException {
-    byte[] b = new byte[4];
-    dataIn.readFully(b);
-    return Bytes.toInt(b);
+    return dataIn.readInt();
   }
 
   @Override
   public long readLong() throws IOException {
-    byte[] b = new byte[8];
-    dataIn.readFully(b);
-    return Bytes.toLong(b);
+    return dataIn.readLong();
   }
 
   @Override
@@ -0,0 +1,402 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase.impl;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.HTablePool;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.kitesdk.data.DatasetException;
+import org.kitesdk.data.DatasetIOException;
+import org.kitesdk.data.DatasetOperationException;
+import org.kitesdk.data.Flushable;
+import org.kitesdk.data.Syncable;
+import org.kitesdk.data.spi.AbstractDatasetWriter;
+import org.kitesdk.data.spi.ReaderWriterState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link EntityBatch} that sends puts to HBase in a background thread.
+ * <p>
+ * Entities are mapped to puts by the calling thread and collected into
+ * batches. Each full batch is sent with {@code HTableInterface#batch} by a
+ * background thread, so the caller can keep writing while RPCs are
+ * outstanding. Batches are sent in order by a single thread, so later puts
+ * to a row are never applied before earlier ones.
+ * <p>
+ * The size of the puts that are buffered or in flight is limited. When the
+ * limit is reached, writes block until a batch completes. Puts that fail are
+ * retried before the next batch is sent, along with any later puts in the
+ * batch to the same rows so that they are applied again after the retried
+ * puts. Puts that still fail cause every later write, {@link #flush()}, and
+ * {@link #close()} to throw.
+ * <p>
+ * Puts with a version check cannot be batched, so they are sent by the
+ * calling thread after all earlier puts complete. Puts that fail because of
+ * an update conflict are logged and counted by {@link #getConflictCount()};
+ * the entities are not kept.
+ *
+ * @param <E>
+ *          The type of entity to write
+ */
+public class AsyncEntityBatch<E> extends AbstractDatasetWriter<E>
+    implements EntityBatch<E>, Flushable, Syncable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(
+      AsyncEntityBatch.class);
+
+  // batches larger than this are split, even if the budget allows more
+  private static final long MAX_BATCH_SIZE = 2 * 1024 * 1024;
+  private static final long RETRY_BACKOFF_MS = 100;
+
+  private final HBaseClientTemplate clientTemplate;
+  private final EntityMapper<E> entityMapper;
+  private final HTablePool pool;
+  private final String tableName;
+  private final long maxBufferSize;
+  private final long batchSize;
+  private final int retries;
+
+  private final Object lock = new Object();
+  private long bufferedSize = 0;
+  private int pending = 0;
+  private Throwable failure = null;
+  private long conflicts = 0;
+
+  private ExecutorService executor = null;
+  private List<Put> batch = Lists.newArrayList();
+  private long currentBatchSize = 0;
+  private ReaderWriterState state;
+
+  /**
+   * @param clientTemplate
+   *          The client template to use
+   * @param entityMapper
+   *          The EntityMapper to use for mapping
+   * @param pool
+   *          The HBase table pool
+   * @param tableName
+   *          The name of the HBase table
+   * @param maxBufferSize
+   *          The size in bytes of puts that may be buffered or in flight
+   * @param retries
+   *          The number of times to retry puts that fail
+   */
+  public AsyncEntityBatch(HBaseClientTemplate clientTemplate,
+      EntityMapper<E> entityMapper, HTablePool pool, String tableName,
+      long maxBufferSize, int retries) {
+    Preconditions.checkArgument(maxBufferSize > 0,
+        "Buffer size must be positive: %s", maxBufferSize);
+    Preconditions.checkArgument(retries >= 0,
+        "Retries must not be negative: %s", retries);
+    this.clientTemplate = clientTemplate;
+    this.entityMapper = entityMapper;
+    this.pool = pool;
+    this.tableName = tableName;
+    this.maxBufferSize = maxBufferSize;
+    // several batches fit in the buffer, so one can fill while others are sent
+    this.batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, maxBufferSize / 4));
+    this.retries = retries;
+    this.state = ReaderWriterState.NEW;
+  }
+
+  @Override
+  public void initialize() {
+    Preconditions.checkState(state.equals(ReaderWriterState.NEW),
+        "Unable to open a writer from state:%s", state);
+    this.executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("kite-hbase-writer-%d")
+            .build());
+    state = ReaderWriterState.OPEN;
+  }
+
+  @Override
+  public void put(E entity) {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+        "Attempt to write to a writer in state:%s", state);
+
+    PutAction putAction = clientTemplate.modifyPutAction(
+        entityMapper.mapFromEntity(entity));
+
+    if (putAction.getVersionCheckAction() != null) {
+      // checkAndPut cannot be batched and must follow earlier puts, including
+      // puts that are buffered but have not been sent
+      send();
+      await();
+      HTableInterface table = pool.getTable(tableName);
+      try {
+        if (!clientTemplate.checkAndPut(putAction, table)) {
+          LOG.debug("Put to row {} failed because of an update conflict",
+              Bytes.toStringBinary(putAction.getPut().getRow()));
+          conflicts += 1;
+        }
+      } finally {
+        closeTable(table);
+      }
+      return;
+    }
+
+    Put put = putAction.getPut();
+    long size = put.heapSize();
+    reserve(size);
+    batch.add(put);
+    currentBatchSize += size;
+    if (currentBatchSize >= batchSize) {
+      send();
+    }
+  }
+
+  /**
+   * Returns the number of puts that failed because of an update conflict.
+   * Puts with a version check are sent before {@link #put(Object)} returns,
+   * so conflicts are counted immediately.
+   *
+   * @return the number of puts that failed
+   */
+  public long getConflictCount() {
+    return conflicts;
+  }
+
+  @Override
+  public void write(E entity) {
+    put(entity);
+  }
+
+  /**
+   * Sends buffered puts and waits for all puts to complete.
+   *
+   * @throws DatasetIOException if a put could not be written
+   */
+  @Override
+  public void flush() {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+        "Attempt to flush a writer in state:%s", state);
+    send();
+    await();
+  }
+
+  @Override
+  public void sync() {
+    flush();
+  }
+
+  @Override
+  public void close() {
+    if (state.equals(ReaderWriterState.OPEN)) {
+      try {
+        send();
+        await();
+      } finally {
+        executor.shutdown();
+        state = ReaderWriterState.CLOSED;
+        if (conflicts > 0) {
+          LOG.warn("{} puts to table {} failed because of update conflicts",
+              conflicts, tableName);
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return state.equals(ReaderWriterState.OPEN);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("table", tableName)
+        .add("maxBufferSize", maxBufferSize)
+        .add("state", state)
+        .toString();
+  }
+
+  /**
+   * Blocks until {@code size} bytes fit in the buffer. Puts that are larger
+   * than the buffer are allowed when no batches are in flight.
+   */
+  private void reserve(long size) {
+    synchronized (lock) {
+      while (pending > 0 && bufferedSize + size > maxBufferSize) {
+        waitForBatch();
+      }
+      throwFailure();
+      bufferedSize += size;
+    }
+  }
+
+  private void send() {
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<Put> toSend = batch;
+    long size = currentBatchSize;
+    this.batch = Lists.newArrayList();
+    this.currentBatchSize = 0;
+    synchronized (lock) {
+      pending += 1;
+    }
+    executor.execute(new BatchTask(toSend, size));
+  }
+
+  /**
+   * Waits for all sent batches to complete and throws the first failure.
+   * <p>
+   * The failure is not cleared, so once a batch fails every later call
+   * throws until the batch is closed.
+   */
+  private void await() {
+    synchronized (lock) {
+      while (pending > 0) {
+        waitForBatch();
+      }
+      throwFailure();
+    }
+  }
+
+  private void waitForBatch() {
+    try {
+      lock.wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasetOperationException(
+          "Interrupted while waiting for puts to table [" + tableName + "]", e);
+    }
+  }
+
+  private void throwFailure() {
+    Throwable toThrow = failure;
+    if (toThrow instanceof DatasetException) {
+      throw (DatasetException) toThrow;
+    } else if (toThrow instanceof Error) {
+      throw (Error) toThrow;
+    } else if (toThrow instanceof IOException) {
+      throw new DatasetIOException(
+          "Error putting rows to table [" + tableName + "]",
+          (IOException) toThrow);
+    } else if (toThrow != null) {
+      throw new DatasetOperationException(
+          "Error putting rows to table [" + tableName + "]", toThrow);
+    }
+  }
+
+  private void closeTable(HTableInterface table) {
+    try {
+      table.close();
+    } catch (IOException e) {
+      throw new DatasetIOException("Error putting table back into pool", e);
+    }
+  }
+
+  /**
+   * Sends a batch of puts, retrying the puts that fail.
+   */
+  private class BatchTask implements Runnable {
+    private final List<Put> puts;
+    private final long size;
+
+    private BatchTask(List<Put> puts, long size) {
+      this.puts = puts;
+      this.size = size;
+    }
+
+    @Override
+    public void run() {
+      Throwable error = null;
+      try {
+        putAll(puts);
+      } catch (Throwable t) {
+        LOG.warn("Failed to put " + puts.size() + " rows to table " +
+            tableName, t);
+        error = t;
+      } finally {
+        synchronized (lock) {
+          if (error != null && failure == null) {
+            failure = error;
+          }
+          bufferedSize -= size;
+          pending -= 1;
+          lock.notifyAll();
+        }
+      }
+    }
+
+    private void putAll(List<Put> toPut) throws IOException,
+        InterruptedException {
+      List<Put> remaining = toPut;
+      for (int attempt = 0; ; attempt += 1) {
+        Object[] results = new Object[remaining.size()];
+        Throwable lastError = null;
+        HTableInterface table = pool.getTable(tableName);
+        try {
+          table.batch(remaining, results);
+        } catch (IOException e) {
+          // failed puts are reported in results
+          lastError = e;
+        } finally {
+          closeTable(table);
+        }
+
+        // a put that succeeded after a failed put to the same row is sent
+        // again, or the retry would overwrite it with the older value
+        List<Put> failed = Lists.newArrayList();
+        Set<ByteBuffer> failedRows = Sets.newHashSet();
+        int failures = 0;
+        for (int i = 0; i < results.length; i += 1) {
+          Put put = remaining.get(i);
+          ByteBuffer row = ByteBuffer.wrap(put.getRow());
+          if (results[i] == null || results[i] instanceof Throwable) {
+            failed.add(put);
+            failedRows.add(row);
+            failures += 1;
+            if (results[i] != null) {
+              lastError = (Throwable) results[i];
+            }
+          } else if (failedRows.contains(row)) {
+            failed.add(put);
+          }
+        }
+
+        if (failures == 0) {
+          return;
+        } else if (attempt >= retries) {
+          throw new DatasetOperationException("Failed to put " +
+              failures + " rows to table [" + tableName + "] after " +
+              (attempt + 1) + " attempts", lastError);
+        }
+
+        LOG.debug("Retrying {} failed puts to table {}",
+            failures, tableName);
+        Thread.sleep(RETRY_BACKOFF_MS * (attempt + 1));
+        remaining = failed;
+      }
+    }
+  }
+}
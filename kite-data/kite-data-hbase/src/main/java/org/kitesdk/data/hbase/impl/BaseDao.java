@@ -15,9 +15,12 @@
  */
 package org.kitesdk.data.hbase.impl;
 
+import java.util.Collection;
+import java.util.List;
 import org.kitesdk.data.spi.PartitionKey;
 import org.kitesdk.data.PartitionStrategy;
 
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.client.HTablePool;
 
 /**
@@ -70,11 +73,21 @@ public class BaseDao<E> implements Dao<E> {
     return clientTemplate.get(key, entityMapper);
   }
 
+  @Override
+  public List<E> getAll(Collection<PartitionKey> keys) {
+    return clientTemplate.getAll(keys, entityMapper);
+  }
+
   @Override
   public boolean put(E entity) {
     return clientTemplate.put(entity, entityMapper);
   }
 
+  @Override
+  public List<Boolean> putAll(List<E> entities) {
+    return clientTemplate.putAll(entities, entityMapper);
+  }
+
   @Override
   public long increment(PartitionKey key, String fieldName, long amount) {
     return clientTemplate.increment(key, fieldName, amount, entityMapper);
@@ -126,6 +139,65 @@ public class BaseDao<E> implements Dao<E> {
     return clientTemplate.createBatch(entityMapper);
   }
 
+  /**
+   * Create an EntityBatch that sends puts to HBase in a background thread.
+   *
+   * @param maxBufferSize
+   *          The size in bytes of puts that may be buffered or in flight
+   * @param retries
+   *          The number of times to retry puts that fail
+   * @return EntityBatch
+   */
+  public EntityBatch<E> newAsyncBatch(long maxBufferSize, int retries) {
+    return clientTemplate.createAsyncBatch(entityMapper, maxBufferSize,
+        retries);
+  }
+
+  /**
+   * Create an EntityBatch that writes HFiles and bulk loads them into the
+   * table when it is flushed or closed.
+   *
+   * @param bufferSize
+   *          The size in bytes of KeyValues to sort in memory before writing
+   *          HFiles
+   * @param stagingDir
+   *          A directory for HFiles, or null to use a new directory in the
+   *          user's home directory
+   * @return An instance of EntityBatch
+   */
+  public EntityBatch<E> newBulkLoadBatch(long bufferSize, Path stagingDir) {
+    return clientTemplate.createBulkLoadBatch(entityMapper, bufferSize,
+        stagingDir);
+  }
+
+  /**
+   * Create an EntityBatch that writes HFiles to a staging directory and
+   * leaves them there to be loaded by {@link #loadStaged(Path)}.
+   *
+   * @param bufferSize
+   *          The size in bytes of KeyValues to sort in memory before writing
+   *          HFiles
+   * @param stagingDir
+   *          A directory for HFiles
+   * @return An instance of EntityBatch
+   */
+  public EntityBatch<E> newStagedBulkLoadBatch(long bufferSize,
+      Path stagingDir) {
+    return clientTemplate.createBulkLoadBatch(entityMapper, bufferSize,
+        stagingDir, true);
+  }
+
+  /**
+   * Bulk loads the HFiles left by staged batches in subdirectories of
+   * {@code directory}.
+   *
+   * @param directory
+   *          A directory that contains staging directories
+   */
+  public void loadStaged(Path directory) {
+    clientTemplate.loadStagedBulkLoadBatches(directory);
+  }
+
   /**
    * Get the HBaseClientTemplate instance this DAO is using to interact with
    * HBase.
@@ -20,17 +20,38 @@ import org.kitesdk.data.Flushable;
 import org.kitesdk.data.spi.AbstractDatasetWriter;
 import org.kitesdk.data.spi.ReaderWriterState;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.HTablePool;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * An {@link EntityBatch} that buffers puts in an HTable's write buffer.
+ * <p>
+ * Puts with a version check can't be sent with the write buffer, so they are
+ * buffered separately until the buffered puts reach the write buffer size,
+ * and then sent with {@link HBaseClientTemplate#putAll(List)}. Puts that fail
+ * because of an update conflict are logged and counted by
+ * {@link #getConflictCount()}; the entities are not kept. Use
+ * {@link Dao#putAll(List)} to find which entities conflicted.
+ */
 public class BaseEntityBatch<E> extends AbstractDatasetWriter<E>
     implements EntityBatch<E>, Flushable {
+  private static final Logger LOG = LoggerFactory.getLogger(
+      BaseEntityBatch.class);
+
   private final HTableInterface table;
   private final EntityMapper<E> entityMapper;
   private final HBaseClientTemplate clientTemplate;
+  private final List<PutAction> checkedPuts = Lists.newArrayList();
+  private long checkedSize = 0;
+  private long conflicts = 0;
   private ReaderWriterState state;
 
   /**
@@ -106,8 +127,34 @@ public class BaseEntityBatch<E> extends AbstractDatasetWriter<E>
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
         "Attempt to write to a writer in state:%s", state);
 
-    PutAction putAction = entityMapper.mapFromEntity(entity);
-    clientTemplate.put(putAction, table);
+    PutAction putAction = clientTemplate.modifyPutAction(
+        entityMapper.mapFromEntity(entity));
+    if (putAction.getVersionCheckAction() != null) {
+      checkedPuts.add(putAction);
+      checkedSize += putAction.getPut().heapSize();
+      if (checkedSize >= table.getWriteBufferSize()) {
+        flushChecked();
+      }
+    } else {
+      // earlier puts with a version check must not be applied after this put
+      flushChecked();
+      try {
+        table.put(putAction.getPut());
+      } catch (IOException e) {
+        throw new DatasetIOException("Error putting row from table", e);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of puts that failed because of an update conflict.
+   * Puts are not sent until the batch is flushed, so conflicts may not be
+   * counted until then.
+   *
+   * @return the number of puts that failed
+   */
+  public long getConflictCount() {
+    return conflicts;
   }
 
   @Override
@@ -120,6 +167,7 @@ public class BaseEntityBatch<E> extends AbstractDatasetWriter<E>
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
         "Attempt to flush a writer in state:%s", state);
 
+    flushChecked();
     try {
       table.flushCommits();
     } catch (IOException e) {
@@ -128,10 +176,43 @@ public class BaseEntityBatch<E> extends AbstractDatasetWriter<E>
     }
   }
 
+  /**
+   * Sends the buffered puts that have a version check, after the puts in the
+   * write buffer.
+   */
+  private void flushChecked() {
+    if (checkedPuts.isEmpty()) {
+      return;
+    }
+    try {
+      table.flushCommits();
+    } catch (IOException e) {
+      throw new DatasetIOException("Error flushing commits for table ["
+          + table + "]", e);
+    }
+    List<Boolean> succeeded = clientTemplate.executeAll(checkedPuts);
+    int failed = 0;
+    for (int i = 0; i < succeeded.size(); i += 1) {
+      if (!succeeded.get(i)) {
+        LOG.debug("Put to row {} failed because of an update conflict",
+            Bytes.toStringBinary(checkedPuts.get(i).getPut().getRow()));
+        failed += 1;
+      }
+    }
+    if (failed > 0) {
+      LOG.warn("{} puts to table {} failed because of update conflicts",
+          failed, Bytes.toString(table.getTableName()));
+      conflicts += failed;
+    }
+    checkedPuts.clear();
+    checkedSize = 0;
+  }
+
   @Override
   public void close() {
     if (state.equals(ReaderWriterState.OPEN)) {
       try {
+        flushChecked();
         table.flushCommits();
         table.setAutoFlush(true);
         table.close();
@@ -0,0 +1,516 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase.impl;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.HFileOutputFormat;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.kitesdk.compat.DynMethods;
+import org.kitesdk.compat.Hadoop;
+import org.kitesdk.data.DatasetIOException;
+import org.kitesdk.data.DatasetOperationException;
+import org.kitesdk.data.Flushable;
+import org.kitesdk.data.spi.AbstractDatasetWriter;
+import org.kitesdk.data.spi.ReaderWriterState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link EntityBatch} that writes entities to HFiles and bulk loads them
+ * into the table, rather than sending puts.
+ * <p>
+ * Entities are mapped to KeyValues and sorted in memory. When the buffered
+ * KeyValues reach the buffer size, they are written to HFiles in a staging
+ * directory, starting a new set of HFiles at each region boundary. HFiles
+ * use the compression, bloom filter, block size, and encoding of each column
+ * family. The HFiles of every spill are moved into one directory, and when
+ * the batch is flushed or closed, they are all moved into the table's
+ * regions with a single {@link LoadIncrementalHFiles} call.
+ * <p>
+ * A staging batch only writes HFiles and leaves them in its directory, so
+ * that a job can load the HFiles of all committed tasks at once with
+ * {@link #loadStaged(Configuration, String, Path)}.
+ * <p>
+ * Bulk loading bypasses the write-ahead log and version checks, so entities
+ * with a version field are written without checking for update conflicts.
+ * <p>
+ * HBase loads the HFiles for each region atomically, so a region never shows
+ * part of a load, but the table as a whole is not loaded atomically. If a
+ * load fails partway through, some regions are loaded. HFiles are moved into
+ * the table as they are loaded. The HFiles that were not loaded are left in
+ * the staging directory so that they can be loaded again.
+ *
+ * @param <E>
+ *          The type of entity to write
+ */
+public class BulkLoadEntityBatch<E> extends AbstractDatasetWriter<E>
+    implements EntityBatch<E>, Flushable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(
+      BulkLoadEntityBatch.class);
+
+  private static final TaskAttemptID FAKE_ID =
+      new TaskAttemptID("", 0, false, 0, 0);
+
+  // the directory that holds the HFiles of all spills, by column family
+  private static final String HFILES_DIR = "hfiles";
+
+  // the TreeSet entry that holds each KeyValue: a header, five references,
+  // and a boolean
+  private static final long ENTRY_OVERHEAD = ClassSize.align(
+      ClassSize.OBJECT + 5 * ClassSize.REFERENCE + Bytes.SIZEOF_BOOLEAN);
+
+  // configuration keys used by HFileOutputFormat for column family settings
+  private static final String COMPRESSION_KEY =
+      "hbase.hfileoutputformat.families.compression";
+  private static final String BLOOM_TYPE_KEY =
+      "hbase.hfileoutputformat.families.bloomtype";
+  private static final String BLOCK_SIZE_KEY =
+      "hbase.mapreduce.hfileoutputformat.blocksize";
+  private static final String ENCODING_KEY =
+      "hbase.mapreduce.hfileoutputformat.families.datablock.encoding";
+
+  // HBase 0.94 and 0.98 return different BloomType classes
+  private static final DynMethods.UnboundMethod GET_BLOOM_FILTER_TYPE =
+      new DynMethods.Builder("getBloomFilterType")
+          .impl(HColumnDescriptor.class)
+          .build();
+
+  // HBase 0.98 reads a block size for each family from BLOCK_SIZE_KEY, but
+  // HBase 0.94 reads a single int. This method was added with the family map.
+  private static final boolean FAMILY_BLOCK_SIZES = hasFamilyBlockSizes();
+
+  private final HBaseClientTemplate clientTemplate;
+  private final EntityMapper<E> entityMapper;
+  private final Configuration conf;
+  private final String tableName;
+  private final long bufferSize;
+  private final Path stagingDir;
+  private final boolean staged;
+
+  private TreeSet<KeyValue> buffer = new TreeSet<KeyValue>(KeyValue.COMPARATOR);
+  private long currentBufferSize = 0;
+  private int numSpills = 0;
+  private HTable table = null;
+  private Configuration hfileConf = null;
+  private FileSystem fs = null;
+  private ReaderWriterState state;
+
+  /**
+   * @param clientTemplate
+   *          The client template to use
+   * @param entityMapper
+   *          The EntityMapper to use for mapping
+   * @param conf
+   *          The HBase configuration
+   * @param tableName
+   *          The name of the HBase table
+   * @param bufferSize
+   *          The size in bytes of KeyValues to sort in memory before writing
+   *          HFiles
+   * @param stagingDir
+   *          A directory for HFiles, which is deleted when the batch is closed
+   *          unless the batch is staged
+   * @param staged
+   *          Whether to leave HFiles in the staging directory rather than
+   *          load them
+   */
+  public BulkLoadEntityBatch(HBaseClientTemplate clientTemplate,
+      EntityMapper<E> entityMapper, Configuration conf, String tableName,
+      long bufferSize, Path stagingDir, boolean staged) {
+    Preconditions.checkArgument(bufferSize > 0,
+        "Buffer size must be positive: %s", bufferSize);
+    this.clientTemplate = clientTemplate;
+    this.entityMapper = entityMapper;
+    this.conf = conf;
+    this.tableName = tableName;
+    this.bufferSize = bufferSize;
+    this.stagingDir = stagingDir;
+    this.staged = staged;
+    this.state = ReaderWriterState.NEW;
+  }
+
+  @Override
+  public void initialize() {
+    Preconditions.checkState(state.equals(ReaderWriterState.NEW),
+        "Unable to open a writer from state:%s", state);
+    try {
+      this.table = new HTable(conf, tableName);
+      this.hfileConf = familyConf(conf, table);
+      this.fs = stagingDir.getFileSystem(conf);
+    } catch (IOException e) {
+      throw new DatasetIOException(
+          "Cannot open table [" + tableName + "] for bulk load", e);
+    }
+    state = ReaderWriterState.OPEN;
+  }
+
+  @Override
+  public void put(E entity) {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+        "Attempt to write to a writer in state:%s", state);
+
+    PutAction putAction = clientTemplate.modifyPutAction(
+        entityMapper.mapFromEntity(entity));
+    byte[] now = Bytes.toBytes(System.currentTimeMillis());
+    for (List<KeyValue> kvs : HBaseUtils.getFamilyMap(putAction.getPut())
+        .values()) {
+      for (KeyValue kv : kvs) {
+        kv.updateLatestStamp(now);
+        // a later put of the same cell replaces the earlier one
+        if (buffer.remove(kv)) {
+          currentBufferSize -= kv.heapSize() + ENTRY_OVERHEAD;
+        }
+        buffer.add(kv);
+        currentBufferSize += kv.heapSize() + ENTRY_OVERHEAD;
+      }
+    }
+
+    if (currentBufferSize >= bufferSize) {
+      spill();
+    }
+  }
+
+  @Override
+  public void write(E entity) {
+    put(entity);
+  }
+
+  /**
+   * Writes buffered entities to HFiles and, unless the batch is staged, bulk
+   * loads all HFiles written since the last flush with one load.
+   */
+  @Override
+  public void flush() {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+        "Attempt to flush a writer in state:%s", state);
+    spill();
+    if (!staged) {
+      load();
+    }
+  }
+
+  @Override
+  public void close() {
+    if (state.equals(ReaderWriterState.OPEN)) {
+      boolean loaded = false;
+      try {
+        spill();
+        if (!staged) {
+          load();
+        }
+        loaded = true;
+      } finally {
+        try {
+          table.close();
+          if (!staged && loaded) {
+            fs.delete(stagingDir, true);
+          } else if (!staged) {
+            LOG.warn("HFiles that were not loaded into table {} are in {}",
+                tableName, stagingDir);
+          }
+        } catch (IOException e) {
+          LOG.warn("Failed to clean up after bulk load to table " + tableName,
+              e);
+        }
+        state = ReaderWriterState.CLOSED;
+      }
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return state.equals(ReaderWriterState.OPEN);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("table", tableName)
+        .add("stagingDir", stagingDir)
+        .add("staged", staged)
+        .add("state", state)
+        .toString();
+  }
+
+  /**
+   * Writes the buffered KeyValues to HFiles, with separate HFiles for each
+   * region so that they can be loaded without splitting. The HFiles are
+   * moved into the HFiles directory with those of earlier spills.
+   */
+  private void spill() {
+    if (buffer.isEmpty()) {
+      return;
+    }
+
+    Path outputPath = new Path(stagingDir, "spill-" + numSpills);
+    TaskAttemptContext context = contextFor(outputPath);
+
+    try {
+      byte[][] startKeys = table.getStartKeys();
+      int region = 0;
+      byte[] nextRegion = nextStartKey(startKeys, region);
+      HFileOutputFormat format = new HFileOutputFormat();
+      RecordWriter<ImmutableBytesWritable, KeyValue> writer =
+          format.getRecordWriter(context);
+      try {
+        ImmutableBytesWritable row = new ImmutableBytesWritable();
+        for (KeyValue kv : buffer) {
+          if (nextRegion != null && Bytes.compareTo(kv.getBuffer(),
+              kv.getRowOffset(), kv.getRowLength(),
+              nextRegion, 0, nextRegion.length) >= 0) {
+            // start new HFiles for the region that contains this row
+            writer.close(context);
+            writer = format.getRecordWriter(context);
+            do {
+              region += 1;
+              nextRegion = nextStartKey(startKeys, region);
+            } while (nextRegion != null && Bytes.compareTo(kv.getBuffer(),
+                kv.getRowOffset(), kv.getRowLength(),
+                nextRegion, 0, nextRegion.length) >= 0);
+          }
+          row.set(kv.getBuffer(), kv.getRowOffset(), kv.getRowLength());
+          writer.write(row, kv);
+        }
+      } finally {
+        writer.close(context);
+      }
+
+      // HFileOutputFormat writes to the work path of its output committer
+      Path hfiles = new FileOutputCommitter(outputPath, context).getWorkPath();
+      moveHFiles(fs, hfiles, new Path(stagingDir, HFILES_DIR),
+          "spill-" + numSpills + "-");
+      fs.delete(outputPath, true);
+      numSpills += 1;
+    } catch (IOException e) {
+      throw new DatasetIOException(
+          "Cannot write HFiles for table [" + tableName + "]", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasetOperationException(
+          "Interrupted while writing HFiles for table [" + tableName + "]", e);
+    }
+
+    this.buffer = new TreeSet<KeyValue>(KeyValue.COMPARATOR);
+    this.currentBufferSize = 0;
+  }
+
+  /**
+   * Bulk loads the HFiles written by all spills since the last load.
+   */
+  private void load() {
+    load(conf, fs, table, stagingDir);
+  }
+
+  /**
+   * Bulk loads the HFiles left by staging batches in subdirectories of
+   * {@code directory}. The HFiles of all batches are moved into one
+   * directory and loaded together.
+   *
+   * @param conf
+   *          The HBase configuration
+   * @param tableName
+   *          The name of the HBase table
+   * @param directory
+   *          A directory that contains the staging directories of batches
+   */
+  public static void loadStaged(Configuration conf, String tableName,
+                                Path directory) {
+    try {
+      FileSystem fs = directory.getFileSystem(conf);
+      if (!fs.exists(directory)) {
+        return; // no data was written
+      }
+      Path combined = new Path(directory, HFILES_DIR);
+      for (FileStatus stat : fs.listStatus(directory)) {
+        String name = stat.getPath().getName();
+        Path hfiles = new Path(stat.getPath(), HFILES_DIR);
+        if (stat.isDir() && !HFILES_DIR.equals(name) && fs.exists(hfiles)) {
+          moveHFiles(fs, hfiles, combined, name + "-");
+        }
+      }
+      HTable table = new HTable(conf, tableName);
+      try {
+        load(conf, fs, table, directory);
+      } finally {
+        table.close();
+      }
+    } catch (IOException e) {
+      throw new DatasetIOException(
+          "Cannot bulk load HFiles into table [" + tableName + "]", e);
+    }
+  }
+
+  private static void load(Configuration conf, FileSystem fs, HTable table,
+                           Path stagingDir) {
+    String tableName = Bytes.toString(table.getTableName());
+    Path hfiles = new Path(stagingDir, HFILES_DIR);
+    try {
+      if (!fs.exists(hfiles)) {
+        return;
+      }
+      new LoadIncrementalHFiles(conf).doBulkLoad(hfiles, table);
+      // loaded HFiles were moved into the table, so only empty family
+      // directories are left
+      fs.delete(hfiles, true);
+    } catch (IOException e) {
+      throw new DatasetIOException(
+          "Cannot bulk load HFiles into table [" + tableName + "]", e);
+    } catch (Exception e) {
+      throw new DatasetOperationException(
+          "Cannot bulk load HFiles into table [" + tableName + "]", e);
+    }
+  }
+
+  /**
+   * Moves the HFiles in each column family directory of {@code source} to the
+   * same family directory of {@code dest}. The prefix is added to each name
+   * so that HFiles from different sources do not collide.
+   */
+  private static void moveHFiles(FileSystem fs, Path source, Path dest,
+                                 String prefix) throws IOException {
+    for (FileStatus family : fs.listStatus(source)) {
+      // LoadIncrementalHFiles also skips directories that start with _
+      if (!family.isDir() || family.getPath().getName().startsWith("_")) {
+        continue;
+      }
+      Path familyDir = new Path(dest, family.getPath().getName());
+      fs.mkdirs(familyDir);
+      for (FileStatus hfile : fs.listStatus(family.getPath())) {
+        Path moved = new Path(familyDir, prefix + hfile.getPath().getName());
+        if (!fs.rename(hfile.getPath(), moved)) {
+          throw new IOException("Failed to move HFile to " + moved);
+        }
+      }
+    }
+  }
+
+  private TaskAttemptContext contextFor(Path outputPath) {
+    Configuration spillConf = new Configuration(hfileConf);
+    spillConf.set("mapred.output.dir", outputPath.toString());
+    spillConf.set("mapreduce.output.fileoutputformat.outputdir",
+        outputPath.toString());
+    return Hadoop.TaskAttemptContext.ctor.newInstance(spillConf, FAKE_ID);
+  }
+
+  /**
+   * Returns a copy of {@code conf} with the settings of each of the table's
+   * column families, which HFileOutputFormat uses when it writes HFiles. This
+   * sets the same properties as HFileOutputFormat#configureIncrementalLoad.
+   */
+  private static Configuration familyConf(Configuration conf, HTable table)
+      throws IOException {
+    Map<String, String> compression = Maps.newTreeMap();
+    Map<String, String> bloomType = Maps.newTreeMap();
+    Map<String, String> blockSize = Maps.newTreeMap();
+    int minBlockSize = Integer.MAX_VALUE;
+    Map<String, String> encoding = Maps.newTreeMap();
+    for (HColumnDescriptor family : table.getTableDescriptor().getFamilies()) {
+      String name = family.getNameAsString();
+      compression.put(name, family.getCompression().getName());
+      bloomType.put(name, GET_BLOOM_FILTER_TYPE.invoke(family).toString());
+      blockSize.put(name, String.valueOf(family.getBlocksize()));
+      minBlockSize = Math.min(minBlockSize, family.getBlocksize());
+      encoding.put(name, family.getDataBlockEncoding().toString());
+    }
+    Configuration familyConf = new Configuration(conf);
+    familyConf.set(COMPRESSION_KEY, encode(compression));
+    familyConf.set(BLOOM_TYPE_KEY, encode(bloomType));
+    if (FAMILY_BLOCK_SIZES) {
+      familyConf.set(BLOCK_SIZE_KEY, encode(blockSize));
+    } else if (!blockSize.isEmpty()) {
+      // one size is used for all families, so use the smallest
+      familyConf.setInt(BLOCK_SIZE_KEY, minBlockSize);
+    }
+    familyConf.set(ENCODING_KEY, encode(encoding));
+    return familyConf;
+  }
+
+  private static boolean hasFamilyBlockSizes() {
+    try {
+      new DynMethods.Builder("createFamilyBlockSizeMap")
+          .hiddenImpl("org.apache.hadoop.hbase.mapreduce.HFileOutputFormat2",
+              Configuration.class)
+          .buildChecked();
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static String encode(Map<String, String> familyValues)
+      throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, String> entry : familyValues.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append('&');
+      }
+      sb.append(URLEncoder.encode(entry.getKey(), "UTF-8"))
+          .append('=')
+          .append(URLEncoder.encode(entry.getValue(), "UTF-8"));
+    }
+    return sb.toString();
+  }
+
+  private static byte[] nextStartKey(byte[][] startKeys, int region) {
+    if (region + 1 < startKeys.length) {
+      return startKeys[region + 1];
+    }
+    return null;
+  }
+
+  /**
+   * Returns a new directory for HFiles in the user's home directory.
+   */
+  static Path defaultStagingDir(Configuration conf) {
+    return defaultStagingDir(conf, UUID.randomUUID().toString());
+  }
+
+  /**
+   * Returns the directory for HFiles with the given name in the user's home
+   * directory.
+   */
+  static Path defaultStagingDir(Configuration conf, String name) {
+    try {
+      return new Path(FileSystem.get(conf).getHomeDirectory(),
+          ".kite-hbase-bulk-load/" + name);
+    } catch (IOException e) {
+      throw new DatasetIOException("Cannot get home directory", e);
+    }
+  }
+}
@@ -17,6 +17,7 @@ package org.kitesdk.data.hbase.impl;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -184,11 +185,21 @@ public abstract class CompositeBaseDao<E, S> implements CompositeDao<E, S> {
     return baseDao.get(key);
   }
 
+  @Override
+  public List<E> getAll(Collection<PartitionKey> keys) {
+    return baseDao.getAll(keys);
+  }
+
   @Override
   public boolean put(E entity) {
     return baseDao.put(entity);
   }
 
+  @Override
+  public List<Boolean> putAll(List<E> entities) {
+    return baseDao.putAll(entities);
+  }
+
   @Override
   public long increment(PartitionKey key, String fieldName, long amount) {
     throw new UnsupportedOperationException(
@@ -15,6 +15,8 @@
  */
 package org.kitesdk.data.hbase.impl;
 
+import java.util.Collection;
+import java.util.List;
 import org.kitesdk.data.spi.PartitionKey;
 import org.kitesdk.data.PartitionStrategy;
 
@@ -38,6 +40,17 @@ public interface Dao<E> {
    */
   public E get(PartitionKey key);
 
+  /**
+   * Return the entities stored in HBase at the rows keyed on each
+   * PartitionKey. The rows are fetched with a single batch of Gets.
+   * 
+   * @param keys
+   *          The keys of the rows to fetch
+   * @return A List of entities in the same order as the keys, with null for
+   *         each key that is not found
+   */
+  public List<E> getAll(Collection<PartitionKey> keys);
+
   /**
    * Put the entity into the HBase table with K key.
    * 
@@ -48,6 +61,20 @@ public interface Dao<E> {
    */
   public boolean put(E entity);
 
+  /**
+   * Put each entity into the HBase table. Puts without a version check are
+   * sent with a single batch. Puts with a version check are each sent with
+   * a checkAndPut call; the calls are made concurrently, in order for each
+   * row.
+   * 
+   * @param entities
+   *          The entities to store
+   * @return A List with True for each put that succeeded and False for each
+   *         put that failed due to update conflict, in the same order as the
+   *         entities
+   */
+  public List<Boolean> putAll(List<E> entities);
+
   /**
    * Increment a field named fieldName on the entity by value.
    * 
@@ -20,6 +20,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -155,6 +156,27 @@ public abstract class EntitySerDe<E> {
   public abstract Object deserializeColumnValueFromBytes(String fieldName,
       byte[] columnBytes);
 
+  /**
+   * Deserialize a column mapped entity field's bytes, stored in part of an
+   * array, to its type. Implementations should override this to decode the
+   * bytes without copying them.
+   * 
+   * @param fieldName
+   *          The name of the entity's field
+   * @param bytes
+   *          The array that holds the bytes to deserialize
+   * @param offset
+   *          The position of the first byte to deserialize
+   * @param length
+   *          The number of bytes to deserialize
+   * @return The field value we've deserialized.
+   */
+  public Object deserializeColumnValueFromBytes(String fieldName,
+      byte[] bytes, int offset, int length) {
+    return deserializeColumnValueFromBytes(fieldName,
+        Arrays.copyOfRange(bytes, offset, offset + length));
+  }
+
   /**
    * Deserialize a value from a keyAsColumn entity field. The value is keyed on
    * key.
@@ -300,11 +322,13 @@ public abstract class EntitySerDe<E> {
    */
   private Object deserializeColumn(String fieldName, byte[] family,
       byte[] qualifier, Result result) {
-    byte[] bytes = result.getValue(family, qualifier);
-    if (bytes == null) {
+    // decode from the cell's backing array rather than a copy of the value
+    KeyValue kv = result.getColumnLatest(family, qualifier);
+    if (kv == null) {
       return getDefaultValue(fieldName);
     } else {
-      return deserializeColumnValueFromBytes(fieldName, bytes);
+      return deserializeColumnValueFromBytes(fieldName, kv.getBuffer(),
+          kv.getValueOffset(), kv.getValueLength());
     }
   }
 
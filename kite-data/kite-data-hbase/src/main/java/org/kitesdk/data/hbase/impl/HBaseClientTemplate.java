@@ -16,15 +16,31 @@
 package org.kitesdk.data.hbase.impl;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.kitesdk.data.DatasetException;
 import org.kitesdk.data.DatasetIOException;
+import org.kitesdk.data.DatasetOperationException;
 import org.kitesdk.data.spi.PartitionKey;
 import com.google.common.annotations.VisibleForTesting;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
@@ -44,8 +60,17 @@ import org.apache.hadoop.hbase.util.Bytes;
  */
 public class HBaseClientTemplate {
 
+  // the number of row ranges written concurrently by putAll
+  private static final int MAX_CONCURRENT_RANGES = 8;
+
+  // the number of threads shared by concurrent putAll calls to one table.
+  // when all are busy, the calling thread writes the range itself
+  private static final int MAX_CHECK_AND_PUT_THREADS = 2 * MAX_CONCURRENT_RANGES;
+
   private final HTablePool pool;
   private final String tableName;
+  // shared with copies of this template, which use the same table
+  private final ExecutorService checkAndPutExecutor;
 
   private final List<GetModifier> getModifiers = new ArrayList<GetModifier>();
   private final List<PutActionModifier> putActionModifiers = new ArrayList<PutActionModifier>();
@@ -64,6 +89,15 @@ public class HBaseClientTemplate {
   public HBaseClientTemplate(HTablePool pool, String tableName) {
     this.pool = pool;
     this.tableName = tableName;
+    // idle threads time out, so the executor does not need to be shut down
+    this.checkAndPutExecutor = new ThreadPoolExecutor(
+        0, MAX_CHECK_AND_PUT_THREADS,
+        60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("kite-hbase-check-and-put-" + tableName + "-%d")
+            .build(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
   }
 
   /**
@@ -74,6 +108,7 @@ public class HBaseClientTemplate {
   public HBaseClientTemplate(HBaseClientTemplate clientTemplate) {
     this.pool = clientTemplate.pool;
     this.tableName = clientTemplate.tableName;
+    this.checkAndPutExecutor = clientTemplate.checkAndPutExecutor;
 
     this.getModifiers.addAll(clientTemplate.getModifiers);
     this.putActionModifiers.addAll(clientTemplate.putActionModifiers);
@@ -356,6 +391,112 @@ public class HBaseClientTemplate {
     }
   }
 
+  /**
+   * Execute a batch of Gets on HBase in a single call.
+   * 
+   * Any GetModifers registered with registerGetModifier will be invoked on
+   * each Get before the batch is executed.
+   * 
+   * @param gets
+   *          The Gets to execute
+   * @return Results returned from the Gets, in the same order as the Gets.
+   */
+  public Result[] get(List<Get> gets) {
+    List<Get> modified = new ArrayList<Get>(gets.size());
+    for (Get get : gets) {
+      for (GetModifier getModifier : getModifiers) {
+        get = getModifier.modifyGet(get);
+      }
+      modified.add(get);
+    }
+
+    HTableInterface table = pool.getTable(tableName);
+    try {
+      try {
+        return table.get(modified);
+      } catch (IOException e) {
+        throw new DatasetIOException("Error performing batch get", e);
+      }
+    } finally {
+      if (table != null) {
+        try {
+          table.close();
+        } catch (IOException e) {
+          throw new DatasetIOException("Error putting table back into pool", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Execute a batch of Gets on HBase, creating each Get from a key's
+   * toByteArray method. The returned Results will be mapped to entities with
+   * the entityMapper.
+   * 
+   * Any GetModifers registered with registerGetModifier will be invoked on
+   * each Get before the batch is executed.
+   * 
+   * @param keys
+   *          The StorageKeys to create Gets from.
+   * @param entityMapper
+   *          The EntityMapper to use to map the Results to entities.
+   * @return A list of entities in the same order as the keys, with null for
+   *         keys that are not found.
+   */
+  public <E> List<E> getAll(Collection<PartitionKey> keys,
+      EntityMapper<E> entityMapper) {
+    return getAll(keys, null, entityMapper);
+  }
+
+  /**
+   * Execute a batch of Gets on HBase, creating each Get from a key's
+   * toByteArray method. The returned Results will be mapped to entities with
+   * the entityMapper.
+   * 
+   * If the getModifier is not null, it will be invoked on each created Get.
+   * 
+   * Any GetModifers registered with registerGetModifier will be invoked after
+   * the getModifier passed to this method is invoked, and before the batch is
+   * executed.
+   * 
+   * @param keys
+   *          The StorageKeys to create Gets from.
+   * @param getModifier
+   *          Invoked on each Get to give callers a chance to modify the Get
+   *          before it is executed.
+   * @param entityMapper
+   *          The EntityMapper to use to map the Results to entities.
+   * @return A list of entities in the same order as the keys, with null for
+   *         keys that are not found.
+   */
+  public <E> List<E> getAll(Collection<PartitionKey> keys,
+      GetModifier getModifier, EntityMapper<E> entityMapper) {
+    List<Get> gets = new ArrayList<Get>(keys.size());
+    for (PartitionKey key : keys) {
+      Get get = new Get(entityMapper.getKeySerDe().serialize(key));
+      HBaseUtils.addColumnsToGet(entityMapper.getRequiredColumns(), get);
+      if (getModifier != null) {
+        get = getModifier.modifyGet(get);
+      }
+      gets.add(get);
+    }
+
+    if (gets.isEmpty()) {
+      return new ArrayList<E>();
+    }
+
+    Result[] results = get(gets);
+    List<E> entities = new ArrayList<E>(results.length);
+    for (Result result : results) {
+      if (result == null || result.isEmpty()) {
+        entities.add(null);
+      } else {
+        entities.add(entityMapper.mapToEntity(result));
+      }
+    }
+    return entities;
+  }
+
   /**
    * Execute a Put on HBase.
    * 
@@ -396,31 +537,250 @@ public class HBaseClientTemplate {
    *         conflict
    */
   public boolean put(PutAction putAction, HTableInterface table) {
+    putAction = modifyPutAction(putAction);
+    Put put = putAction.getPut();
+    if (putAction.getVersionCheckAction() != null) {
+      return checkAndPut(putAction, table);
+    } else {
+      try {
+        table.put(put);
+        return true;
+      } catch (IOException e) {
+        throw new DatasetIOException("Error putting row from table", e);
+      }
+    }
+  }
+
+  /**
+   * Applies the PutActionModifiers registered with registerPutActionModifier
+   * to a PutAction.
+   *
+   * @param putAction
+   *          The PutAction to modify
+   * @return The modified PutAction
+   */
+  PutAction modifyPutAction(PutAction putAction) {
     for (PutActionModifier putActionModifier : putActionModifiers) {
       putAction = putActionModifier.modifyPutAction(putAction);
     }
+    return putAction;
+  }
+
+  /**
+   * Execute a PutAction that has a VersionCheckAction with checkAndPut. The
+   * registered PutActionModifiers are not invoked.
+   *
+   * @param putAction
+   *          The PutAction to execute on HBase.
+   * @param table
+   *          The HTableInterface object to interface with
+   * @return True if the put succeeded, False if the put failed due to update
+   *         conflict
+   */
+  boolean checkAndPut(PutAction putAction, HTableInterface table) {
     Put put = putAction.getPut();
-    if (putAction.getVersionCheckAction() != null) {
-      byte[] versionBytes = null;
-      long version = putAction.getVersionCheckAction().getVersion();
-      if (version != 0) {
-        versionBytes = Bytes.toBytes(version);
+    byte[] versionBytes = null;
+    long version = putAction.getVersionCheckAction().getVersion();
+    if (version != 0) {
+      versionBytes = Bytes.toBytes(version);
+    }
+    try {
+      return table.checkAndPut(put.getRow(), Constants.SYS_COL_FAMILY,
+          Constants.VERSION_CHECK_COL_QUALIFIER, versionBytes, put);
+    } catch (IOException e) {
+      throw new DatasetIOException(
+          "Error putting row from table with checkAndPut", e);
+    }
+  }
+
+  /**
+   * Execute a list of PutActions on HBase.
+   * 
+   * Any PutModifers registered with registerPutModifier will be invoked on
+   * each PutAction before it is executed.
+   * 
+   * Rows that only have puts without a VersionCheckAction are written with a
+   * single batch. HBase can't batch checkAndPut, so each put with a
+   * VersionCheckAction is still sent as its own checkAndPut RPC. This only
+   * adds client-side parallelism: those rows are sorted, split into
+   * contiguous ranges, and the ranges are written concurrently using a
+   * bounded pool of threads for this table. The puts for each row are
+   * executed in order.
+   * 
+   * @param putActions
+   *          The puts to execute on HBase.
+   * @return A List with True for each put that succeeded and False for each
+   *         put that failed due to update conflict, in the same order as the
+   *         putActions
+   */
+  public List<Boolean> putAll(List<PutAction> putActions) {
+    List<PutAction> modified = new ArrayList<PutAction>(putActions.size());
+    for (PutAction putAction : putActions) {
+      modified.add(modifyPutAction(putAction));
+    }
+    return executeAll(modified);
+  }
+
+  /**
+   * Execute a list of PutActions that have already been modified, as
+   * described in {@link #putAll(List)}.
+   */
+  List<Boolean> executeAll(final List<PutAction> modified) {
+    // group the puts by row, keeping the order of puts to each row
+    SortedMap<byte[], List<Integer>> rows =
+        new TreeMap<byte[], List<Integer>>(Bytes.BYTES_COMPARATOR);
+    Set<byte[]> checkedRows = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+    for (int i = 0; i < modified.size(); i += 1) {
+      PutAction putAction = modified.get(i);
+      byte[] row = putAction.getPut().getRow();
+      List<Integer> indexes = rows.get(row);
+      if (indexes == null) {
+        indexes = new ArrayList<Integer>();
+        rows.put(row, indexes);
+      }
+      indexes.add(i);
+      if (putAction.getVersionCheckAction() != null) {
+        checkedRows.add(row);
       }
+    }
+
+    final boolean[] succeeded = new boolean[modified.size()];
+    List<Put> unchecked = new ArrayList<Put>();
+    List<Integer> uncheckedIndexes = new ArrayList<Integer>();
+    List<List<Integer>> checked = new ArrayList<List<Integer>>();
+    for (Map.Entry<byte[], List<Integer>> entry : rows.entrySet()) {
+      if (checkedRows.contains(entry.getKey())) {
+        checked.add(entry.getValue());
+      } else {
+        for (Integer index : entry.getValue()) {
+          unchecked.add(modified.get(index).getPut());
+          uncheckedIndexes.add(index);
+        }
+      }
+    }
+
+    if (!unchecked.isEmpty()) {
+      HTableInterface table = pool.getTable(tableName);
       try {
-        return table.checkAndPut(put.getRow(), Constants.SYS_COL_FAMILY,
-            Constants.VERSION_CHECK_COL_QUALIFIER, versionBytes, put);
+        table.batch(unchecked, new Object[unchecked.size()]);
       } catch (IOException e) {
-        throw new DatasetIOException(
-            "Error putting row from table with checkAndPut", e);
+        throw new DatasetIOException("Error performing batch put", e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DatasetOperationException(
+            "Interrupted while performing batch put", e);
+      } finally {
+        closeTable(table);
       }
-    } else {
+      for (Integer index : uncheckedIndexes) {
+        succeeded[index] = true;
+      }
+    }
+
+    int numRanges = Math.min(checked.size(), MAX_CONCURRENT_RANGES);
+    List<Future<?>> futures = new ArrayList<Future<?>>(numRanges);
+    for (int range = 0; range < numRanges; range += 1) {
+      final List<List<Integer>> rangeRows = checked.subList(
+          range * checked.size() / numRanges,
+          (range + 1) * checked.size() / numRanges);
+      futures.add(checkAndPutExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          HTableInterface table = pool.getTable(tableName);
+          try {
+            for (List<Integer> indexes : rangeRows) {
+              for (Integer index : indexes) {
+                succeeded[index] = execute(modified.get(index), table);
+              }
+            }
+          } finally {
+            closeTable(table);
+          }
+        }
+      }));
+    }
+    awaitAll(futures);
+
+    List<Boolean> results = new ArrayList<Boolean>(succeeded.length);
+    for (boolean result : succeeded) {
+      results.add(result);
+    }
+    return results;
+  }
+
+  /**
+   * Execute a list of Puts on HBase, creating each Put by mapping an entity
+   * with the entityMapper.
+   * 
+   * Any PutModifers registered with registerPutModifier will be invoked on
+   * each PutAction before it is executed.
+   * 
+   * @param entities
+   *          The entities to map to Puts with the entityMapper.
+   * @param entityMapper
+   *          The EntityMapper to map the entities to puts.
+   * @return A List with True for each put that succeeded and False for each
+   *         put that failed due to update conflict, in the same order as the
+   *         entities
+   */
+  public <E> List<Boolean> putAll(List<E> entities,
+      EntityMapper<E> entityMapper) {
+    List<PutAction> putActions = new ArrayList<PutAction>(entities.size());
+    for (E entity : entities) {
+      putActions.add(entityMapper.mapFromEntity(entity));
+    }
+    return putAll(putActions);
+  }
+
+  /**
+   * Executes a PutAction that has already been modified.
+   */
+  private boolean execute(PutAction putAction, HTableInterface table) {
+    if (putAction.getVersionCheckAction() != null) {
+      return checkAndPut(putAction, table);
+    }
+    try {
+      table.put(putAction.getPut());
+      return true;
+    } catch (IOException e) {
+      throw new DatasetIOException("Error putting row from table", e);
+    }
+  }
+
+  private static void awaitAll(List<Future<?>> futures) {
+    RuntimeException failure = null;
+    for (Future<?> future : futures) {
       try {
-        table.put(put);
-        return true;
-      } catch (IOException e) {
-        throw new DatasetIOException("Error putting row from table", e);
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DatasetOperationException(
+            "Interrupted while performing checkAndPut", e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          Throwable cause = e.getCause();
+          if (cause instanceof DatasetException) {
+            failure = (DatasetException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          } else {
+            failure = new DatasetOperationException(
+                "Error performing checkAndPut", cause);
+          }
+        }
       }
     }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static void closeTable(HTableInterface table) {
+    try {
+      table.close();
+    } catch (IOException e) {
+      throw new DatasetIOException("Error putting table back into pool", e);
+    }
   }
 
   /**
@@ -695,4 +1055,100 @@ public class HBaseClientTemplate {
   public <E> EntityBatch<E> createBatch(EntityMapper<E> entityMapper) {
     return new BaseEntityBatch<E>(this, entityMapper, pool, tableName);
   }
+
+  /**
+   * Create an EntityBatch that sends puts to HBase in a background thread.
+   *
+   * @param entityMapper
+   *          The EntityMapper to use for mapping
+   * @param maxBufferSize
+   *          The size in bytes of puts that may be buffered or in flight
+   * @param retries
+   *          The number of times to retry puts that fail
+   * @return EntityBatch
+   */
+  public <E> EntityBatch<E> createAsyncBatch(EntityMapper<E> entityMapper,
+      long maxBufferSize, int retries) {
+    return new AsyncEntityBatch<E>(this, entityMapper, pool, tableName,
+        maxBufferSize, retries);
+  }
+
+  /**
+   * Create an EntityBatch that writes HFiles and bulk loads them into the
+   * table.
+   *
+   * @param entityMapper
+   *          The EntityMapper to use for mapping
+   * @param bufferSize
+   *          The size in bytes of KeyValues to sort in memory before writing
+   *          HFiles
+   * @param stagingDir
+   *          A directory for HFiles, or null to use a new directory in the
+   *          user's home directory
+   * @return EntityBatch
+   */
+  public <E> EntityBatch<E> createBulkLoadBatch(EntityMapper<E> entityMapper,
+      long bufferSize, Path stagingDir) {
+    return createBulkLoadBatch(entityMapper, bufferSize, stagingDir, false);
+  }
+
+  /**
+   * Create an EntityBatch that writes HFiles and, unless it is staged, bulk
+   * loads them into the table.
+   *
+   * @param entityMapper
+   *          The EntityMapper to use for mapping
+   * @param bufferSize
+   *          The size in bytes of KeyValues to sort in memory before writing
+   *          HFiles
+   * @param stagingDir
+   *          A directory for HFiles, or null to use a new directory in the
+   *          user's home directory
+   * @param staged
+   *          Whether to leave HFiles in the staging directory to be loaded by
+   *          {@link #loadStagedBulkLoadBatches(Path)}
+   * @return EntityBatch
+   */
+  public <E> EntityBatch<E> createBulkLoadBatch(EntityMapper<E> entityMapper,
+      long bufferSize, Path stagingDir, boolean staged) {
+    Configuration conf = getTableConfiguration();
+    if (stagingDir == null) {
+      stagingDir = BulkLoadEntityBatch.defaultStagingDir(conf);
+    }
+    return new BulkLoadEntityBatch<E>(this, entityMapper, conf, tableName,
+        bufferSize, stagingDir, staged);
+  }
+
+  /**
+   * Bulk loads the HFiles of staged batches whose staging directories are in
+   * {@code directory}.
+   *
+   * @param directory
+   *          A directory that contains staging directories
+   */
+  public void loadStagedBulkLoadBatches(Path directory) {
+    BulkLoadEntityBatch.loadStaged(getTableConfiguration(), tableName,
+        directory);
+  }
+
+  /**
+   * Returns the directory for bulk load HFiles with the given name in the
+   * user's home directory.
+   *
+   * @param name
+   *          A name for the directory
+   * @return a Path in the user's home directory
+   */
+  public Path getDefaultBulkLoadDir(String name) {
+    return BulkLoadEntityBatch.defaultStagingDir(getTableConfiguration(), name);
+  }
+
+  private Configuration getTableConfiguration() {
+    HTableInterface table = pool.getTable(tableName);
+    try {
+      return table.getConfiguration();
+    } finally {
+      closeTable(table);
+    }
+  }
 }
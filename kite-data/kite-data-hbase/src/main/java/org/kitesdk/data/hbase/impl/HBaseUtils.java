@@ -65,9 +65,8 @@ public class HBaseUtils {
   public static Put mergePuts(byte[] keyBytes, List<Put> putList) {
     Put put = new Put(keyBytes);
     for (Put putToMerge : putList) {
-      Map<byte[], List<KeyValue>> familyMap = 
-          (Map<byte[], List<KeyValue>>) GET_FAMILY_MAP_METHOD.invoke(putToMerge);
-      
+      Map<byte[], List<KeyValue>> familyMap = getFamilyMap(putToMerge);
+
       for (List<KeyValue> keyValueList : familyMap.values()) {
         for (KeyValue keyValue : keyValueList) {
           // don't use put.add(KeyValue) since it doesn't work with HBase 0.96 onwards
@@ -79,6 +78,19 @@ public class HBaseUtils {
     return put;
   }
 
+  /**
+   * Returns the KeyValues in a put, grouped by column family. This works with
+   * HBase 0.94 and 0.98.
+   *
+   * @param put
+   *          The put
+   * @return a Map from column family to the KeyValues in that family
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<byte[], List<KeyValue>> getFamilyMap(Put put) {
+    return (Map<byte[], List<KeyValue>>) GET_FAMILY_MAP_METHOD.invoke(put);
+  }
+
   /**
    * Given a list of PutActions, create a new PutAction with the values in each
    * put merged together. It is expected that no puts have a value for the same
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase.impl;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.kitesdk.data.DatasetOperationException;
+import org.kitesdk.data.spi.AbstractDatasetReader;
+import org.kitesdk.data.spi.ReaderWriterState;
+
+/**
+ * An {@link EntityScanner} that reads several key ranges, each with its own
+ * scanner, and returns the entities from all of them.
+ * <p>
+ * When parallelism is 1, the scanners are read one at a time in order. When
+ * it is greater than 1, up to that many scanners are read ahead of the caller
+ * by background threads. Ordered scanners drain a buffer per range, in range
+ * order, so entities are returned in the same order as a sequential read.
+ * Unordered scanners share one buffer and return entities as soon as any
+ * range produces them.
+ * <p>
+ * Entities are handed between threads, so they should not be reused by the
+ * underlying scanners.
+ *
+ * @param <E>
+ *          The type of the entity to return
+ */
+public class MultiRangeEntityScanner<E> extends AbstractDatasetReader<E>
+    implements EntityScanner<E> {
+
+  private static final int RANGE_BUFFER_SIZE = 1000;
+  private static final Object END = new Object();
+
+  private final List<EntityScanner<E>> scanners;
+  private final int parallelism;
+  private final boolean ordered;
+
+  private ExecutorService executor = null;
+  private List<BlockingQueue<Object>> buffers = null;
+  private int currentIndex = 0;
+  private EntityScanner<E> current = null;
+  private int finished = 0;
+  private Object next = null;
+
+  private ReaderWriterState state;
+
+  /**
+   * @param scanners
+   *          A scanner for each key range, in key order
+   * @param parallelism
+   *          The number of ranges to read at once
+   * @param ordered
+   *          Whether entities must be returned in range order
+   */
+  public MultiRangeEntityScanner(List<EntityScanner<E>> scanners,
+      int parallelism, boolean ordered) {
+    Preconditions.checkArgument(parallelism > 0,
+        "Parallelism must be positive: %s", parallelism);
+    this.scanners = ImmutableList.copyOf(scanners);
+    this.parallelism = Math.min(parallelism, Math.max(1, scanners.size()));
+    this.ordered = ordered;
+    this.state = ReaderWriterState.NEW;
+  }
+
+  @Override
+  public void initialize() {
+    Preconditions.checkState(state.equals(ReaderWriterState.NEW),
+        "A scanner may not be opened more than once - current state:%s", state);
+
+    if (parallelism > 1) {
+      this.executor = Executors.newFixedThreadPool(parallelism,
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("kite-range-scanner-%d")
+              .build());
+      ImmutableList.Builder<BlockingQueue<Object>> builder =
+          ImmutableList.builder();
+      BlockingQueue<Object> shared = null;
+      for (EntityScanner<E> scanner : scanners) {
+        BlockingQueue<Object> buffer;
+        if (ordered) {
+          buffer = new ArrayBlockingQueue<Object>(RANGE_BUFFER_SIZE);
+        } else {
+          if (shared == null) {
+            shared = new ArrayBlockingQueue<Object>(RANGE_BUFFER_SIZE);
+          }
+          buffer = shared;
+        }
+        builder.add(buffer);
+        // tasks run in range order, so the range being drained always has a
+        // thread and ordered reads cannot deadlock
+        executor.execute(new RangeTask(scanner, buffer));
+      }
+      this.buffers = builder.build();
+    }
+
+    state = ReaderWriterState.OPEN;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+        "Attempt to read from a scanner in state:%s", state);
+
+    if (executor == null) {
+      return sequentialHasNext();
+    }
+
+    while (next == null) {
+      if (finished >= scanners.size()) {
+        return false;
+      }
+
+      // ordered reads drain the current range; unordered reads share a buffer
+      Object item = take(buffers.get(ordered ? currentIndex : 0));
+      if (item == END) {
+        this.finished += 1;
+        this.currentIndex += 1;
+      } else if (item instanceof Failure) {
+        this.finished = scanners.size();
+        throw ((Failure) item).propagate();
+      } else {
+        this.next = item;
+      }
+    }
+
+    return true;
+  }
+
+  private boolean sequentialHasNext() {
+    while (true) {
+      if (current == null) {
+        if (currentIndex >= scanners.size()) {
+          return false;
+        }
+        this.current = scanners.get(currentIndex);
+        current.initialize();
+      }
+
+      if (current.hasNext()) {
+        return true;
+      }
+
+      current.close();
+      this.current = null;
+      this.currentIndex += 1;
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E next() {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+        "Attempt to read from a scanner in state:%s", state);
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    if (executor == null) {
+      return current.next();
+    }
+    E entity = (E) next;
+    this.next = null;
+    return entity;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException(
+        "Remove is not supported when scanning multiple ranges");
+  }
+
+  @Override
+  public void close() {
+    if (!state.equals(ReaderWriterState.OPEN)) {
+      return;
+    }
+    if (executor != null) {
+      // interrupts background scans that are waiting on full buffers
+      executor.shutdownNow();
+    } else if (current != null) {
+      current.close();
+    }
+    this.current = null;
+    this.next = null;
+    state = ReaderWriterState.CLOSED;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return state.equals(ReaderWriterState.OPEN);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("ranges", scanners.size())
+        .add("parallelism", parallelism)
+        .add("ordered", ordered)
+        .add("state", state)
+        .toString();
+  }
+
+  private static Object take(BlockingQueue<Object> buffer) {
+    try {
+      return buffer.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasetOperationException(
+          "Interrupted while scanning key ranges", e);
+    }
+  }
+
+  /**
+   * Reads a single range into a buffer, followed by either {@link #END} or a
+   * {@link Failure}.
+   */
+  private class RangeTask implements Runnable {
+    private final EntityScanner<E> scanner;
+    private final BlockingQueue<Object> buffer;
+
+    private RangeTask(EntityScanner<E> scanner, BlockingQueue<Object> buffer) {
+      this.scanner = scanner;
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void run() {
+      Object last = END;
+      try {
+        scanner.initialize();
+        while (scanner.hasNext()) {
+          buffer.put(scanner.next());
+        }
+      } catch (InterruptedException e) {
+        // the scanner was closed
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Throwable t) {
+        last = new Failure(t);
+      } finally {
+        try {
+          scanner.close();
+        } catch (Throwable t) {
+          if (last == END) {
+            last = new Failure(t);
+          }
+        }
+      }
+
+      try {
+        buffer.put(last);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static class Failure {
+    private final Throwable cause;
+
+    private Failure(Throwable cause) {
+      this.cause = cause;
+    }
+
+    private RuntimeException propagate() {
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new DatasetOperationException(
+          "Failed to scan range: " + cause.getMessage(), cause);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase.impl;
+
+import java.util.Map;
+
+/**
+ * Implemented by {@link SchemaManager} implementations that can store dataset
+ * properties with each managed schema.
+ */
+public interface SchemaPropertyManager {
+
+  /**
+   * Returns the dataset properties stored with a managed schema.
+   *
+   * @param tableName
+   *          The table name of the managed schema
+   * @param entityName
+   *          The entity name of the managed schema
+   * @return The properties, or an empty map if none are stored
+   * @throws org.kitesdk.data.SchemaNotFoundException
+   */
+  public Map<String, String> getProperties(String tableName,
+      String entityName);
+
+  /**
+   * Replaces the dataset properties stored with a managed schema.
+   *
+   * @param tableName
+   *          The table name of the managed schema
+   * @param entityName
+   *          The entity name of the managed schema
+   * @param properties
+   *          The properties to store
+   * @throws org.kitesdk.data.SchemaNotFoundException
+   * @throws org.kitesdk.data.ConcurrentSchemaModificationException
+   */
+  public void updateProperties(String tableName, String entityName,
+      Map<String, String> properties);
+}
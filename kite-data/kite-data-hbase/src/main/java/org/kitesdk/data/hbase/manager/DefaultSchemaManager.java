@@ -39,6 +39,7 @@ import org.kitesdk.data.hbase.impl.EntitySchema;
 import org.kitesdk.data.hbase.impl.KeyEntitySchemaParser;
 import org.kitesdk.data.hbase.impl.KeySchema;
 import org.kitesdk.data.hbase.impl.SchemaManager;
+import org.kitesdk.data.hbase.impl.SchemaPropertyManager;
 import org.kitesdk.data.hbase.manager.generated.ManagedSchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,7 +49,8 @@ import org.slf4j.LoggerFactory;
  * implementation, passed in the constructor, to read schema metadata, and
  * persist schema metadata for schema creations and migrations.
  */
-public class DefaultSchemaManager implements SchemaManager {
+public class DefaultSchemaManager implements SchemaManager,
+    SchemaPropertyManager {
 
   private static Logger LOG = LoggerFactory
       .getLogger(DefaultSchemaManager.class);
@@ -332,6 +334,37 @@ public class DefaultSchemaManager implements SchemaManager {
             managedSchema.getName()));
   }
 
+  @Override
+  public Map<String, String> getProperties(String tableName,
+      String entityName) {
+    Map<String, String> properties = getManagedSchema(tableName, entityName)
+        .getProperties();
+    return (properties != null ?
+        new HashMap<String, String>(properties) :
+        new HashMap<String, String>());
+  }
+
+  @Override
+  public void updateProperties(String tableName, String entityName,
+      Map<String, String> properties) {
+    // We want to make sure the managed schema map has as recent
+    // a copy of the managed schema in HBase as possible.
+    refreshManagedSchemaCache(tableName, entityName);
+
+    ManagedSchema managedSchema = getManagedSchema(tableName, entityName);
+    if (properties.equals(managedSchema.getProperties())) {
+      return;
+    }
+
+    managedSchema = ManagedSchema.newBuilder(managedSchema)
+        .setProperties(new HashMap<String, String>(properties))
+        .build();
+    if (!managedSchemaDao.save(managedSchema)) {
+      throw new ConcurrentSchemaModificationException(
+          "The schema has been updated concurrently.");
+    }
+  }
+
   /**
    * Update the managedSchemaMap for the entry defined by tableName and
    * entityName.
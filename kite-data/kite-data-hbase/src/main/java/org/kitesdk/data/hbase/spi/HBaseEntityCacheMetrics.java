@@ -0,0 +1,52 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase.spi;
+
+/**
+ * Exposes the counters of the entity cache used by HBase datasets that set
+ * {@code kite.hbase.cache-size}. Counters are zero when the cache is not
+ * enabled.
+ */
+public interface HBaseEntityCacheMetrics {
+  /**
+   * Returns whether gets are served from an entity cache.
+   *
+   * @return true if the cache is enabled
+   */
+  boolean isCacheEnabled();
+
+  /**
+   * Returns the number of gets that were served from the cache.
+   *
+   * @return the number of cache hits
+   */
+  long getCacheHitCount();
+
+  /**
+   * Returns the number of gets that were sent to HBase.
+   *
+   * @return the number of cache misses
+   */
+  long getCacheMissCount();
+
+  /**
+   * Returns the number of entities removed from the cache because of its size
+   * or TTL.
+   *
+   * @return the number of cache evictions
+   */
+  long getCacheEvictionCount();
+}
@@ -15,22 +15,36 @@
  */
 package org.kitesdk.data.hbase;
 
+import com.google.common.collect.Lists;
 import java.io.IOException;
 import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetReader;
 import org.kitesdk.data.DatasetWriter;
+import org.kitesdk.data.PartitionStrategy;
 import org.kitesdk.data.View;
 import org.kitesdk.data.hbase.avro.AvroUtils;
 import org.kitesdk.data.hbase.avro.entities.ArrayRecord;
 import org.kitesdk.data.hbase.avro.entities.EmbeddedRecord;
 import org.kitesdk.data.hbase.avro.entities.TestEntity;
 import org.kitesdk.data.hbase.avro.entities.TestEnum;
+import org.kitesdk.data.hbase.impl.AsyncEntityBatch;
+import org.kitesdk.data.hbase.impl.BaseDao;
+import org.kitesdk.data.hbase.impl.BaseEntityScanner;
+import org.kitesdk.data.hbase.impl.BulkLoadEntityBatch;
+import org.kitesdk.data.hbase.impl.EntityScanner;
+import org.kitesdk.data.hbase.impl.MultiRangeEntityScanner;
 import org.kitesdk.data.hbase.testing.HBaseTestUtils;
 
 import org.kitesdk.data.spi.AbstractRefinableView;
+import org.kitesdk.data.spi.InitializeAccessor;
+import org.kitesdk.data.spi.PartitionKey;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -183,6 +197,231 @@ public class DaoViewTest {
 
   }
 
+  @Test
+  public void testMultipleRanges() {
+    populateTestEntities(10);
+
+    // each combination of values is a separate key range
+    DaoView<TestEntity> view = (DaoView<TestEntity>)
+        new DaoView<TestEntity>(ds, TestEntity.class)
+            .with(NAMES[0], "7", "2", "5")
+            .with(NAMES[1], "7", "2", "5");
+    List<String> expected = Lists.newArrayList("2", "5", "7");
+
+    Assert.assertEquals("Should read each range in key order",
+        expected, readPart1(view.newReader()));
+
+    Assert.assertEquals("Should read ranges in parallel in key order",
+        expected, readPart1(new MultiRangeEntityScanner<TestEntity>(
+            view.newEntityScanners(), 3, true)));
+
+    List<String> unordered = readPart1(new MultiRangeEntityScanner<TestEntity>(
+        view.newEntityScanners(), 3, false));
+    Collections.sort(unordered);
+    Assert.assertEquals("Should read all ranges in parallel",
+        expected, unordered);
+  }
+
+  @Test
+  public void testSaltedRange() throws IOException {
+    // salted keys are not compatible with the keys of the shared table
+    String saltedName = "saltedtable";
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schemaLiteral(testEntity)
+        .partitionStrategy(new PartitionStrategy.Builder()
+            .hash(NAMES[0], "salt", 4)
+            .identity(NAMES[0])
+            .identity(NAMES[1])
+            .build())
+        .build();
+    DaoDataset<TestEntity> salted = (DaoDataset<TestEntity>) repo.create(
+        "default", saltedName, descriptor, TestEntity.class);
+    try {
+      for (int i = 0; i < 10; i++) {
+        salted.put(newTestEntity(Integer.toString(i), Integer.toString(i)));
+      }
+
+      // the range does not select a bucket, so each bucket is scanned
+      DaoView<TestEntity> view = (DaoView<TestEntity>)
+          new DaoView<TestEntity>(salted, TestEntity.class)
+              .from(NAMES[0], "2").to(NAMES[0], "7");
+      Assert.assertEquals("Should scan each bucket",
+          4, view.newEntityScanners().size());
+
+      List<String> values = readPart1(view.newReader());
+      Collections.sort(values);
+      Assert.assertEquals("Should read the range from every bucket",
+          Lists.newArrayList("2", "3", "4", "5", "6", "7"), values);
+
+      List<String> all = readPart1(
+          new DaoView<TestEntity>(salted, TestEntity.class).newReader());
+      Assert.assertEquals("Should read all buckets", 10, all.size());
+    } finally {
+      repo.delete("default", saltedName);
+      HBaseTestUtils.util.deleteTable(Bytes.toBytes(saltedName));
+    }
+  }
+
+  @Test
+  public void testAsyncWriter() throws IOException {
+    String asyncName = "asynctable";
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schemaLiteral(testEntity)
+        .property(HBaseProperties.ASYNC_WRITE_BUFFER_PROP, "4096")
+        .build();
+    DaoDataset<TestEntity> async = (DaoDataset<TestEntity>) repo.create(
+        "default", asyncName, descriptor, TestEntity.class);
+    try {
+      DatasetWriter<TestEntity> writer = async.newWriter();
+      Assert.assertTrue("Should use an async writer",
+          writer instanceof AsyncEntityBatch);
+      try {
+        for (int i = 0; i < 10; i++) {
+          writer.write(newTestEntity(Integer.toString(i), Integer.toString(i)));
+        }
+      } finally {
+        writer.close();
+      }
+
+      Assert.assertEquals("Should read all written entities", 10,
+          readPart1(async.newReader()).size());
+    } finally {
+      repo.delete("default", asyncName);
+      HBaseTestUtils.util.deleteTable(Bytes.toBytes(asyncName));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testBulkLoadWriter() throws Exception {
+    String bulkName = "bulktable";
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schemaLiteral(testEntity)
+        .property(HBaseProperties.BULK_LOAD_BUFFER_PROP, "4096")
+        .build();
+    DaoDataset<TestEntity> bulk = (DaoDataset<TestEntity>) repo.create(
+        "default", bulkName, descriptor, TestEntity.class);
+    try {
+      // split the table so HFiles are written for two regions
+      byte[] splitKey = ((BaseDao<TestEntity>) bulk.getDao()).getKeySerDe()
+          .serialize(new PartitionKey("5", "0"));
+      HBaseAdmin admin = new HBaseAdmin(HBaseTestUtils.getConf());
+      try {
+        admin.split(Bytes.toBytes(bulkName), splitKey);
+        HTable table = new HTable(HBaseTestUtils.getConf(), bulkName);
+        try {
+          for (int i = 0; i < 100 && table.getStartKeys().length < 2; i++) {
+            Thread.sleep(100);
+          }
+          Assert.assertEquals("Should have two regions", 2,
+              table.getStartKeys().length);
+        } finally {
+          table.close();
+        }
+      } finally {
+        admin.close();
+      }
+
+      DatasetWriter<TestEntity> writer = bulk.newWriter();
+      Assert.assertTrue("Should use a bulk load writer",
+          writer instanceof BulkLoadEntityBatch);
+      try {
+        for (int i = 0; i < 10; i++) {
+          for (int j = 0; j < 20; j++) {
+            writer.write(newTestEntity(Integer.toString(i), Integer.toString(j)));
+          }
+        }
+        // nothing is visible until HFiles are loaded
+        Assert.assertEquals("Should not read unloaded entities", 0,
+            count(bulk.newReader()));
+      } finally {
+        writer.close();
+      }
+
+      Assert.assertEquals("Should read all written entities", 200,
+          count(bulk.newReader()));
+      TestEntity entity = bulk.getDao().get(new PartitionKey("7", "13"));
+      Assert.assertEquals("7", entity.getPart1());
+      Assert.assertEquals("13", entity.getPart2());
+    } finally {
+      repo.delete("default", bulkName);
+      HBaseTestUtils.util.deleteTable(Bytes.toBytes(bulkName));
+    }
+  }
+
+  @Test
+  public void testSuccessor() {
+    Assert.assertArrayEquals(new byte[] { 1, 3 },
+        SaltedKeyRanges.successor(new byte[] { 1, 2 }));
+    Assert.assertArrayEquals(new byte[] { 2 },
+        SaltedKeyRanges.successor(new byte[] { 1, (byte) 0xFF }));
+    Assert.assertArrayEquals(new byte[0],
+        SaltedKeyRanges.successor(new byte[] { (byte) 0xFF, (byte) 0xFF }));
+  }
+
+  @Test
+  public void testColumnFilters() {
+    for (int i = 0; i < 10; i++) {
+      ds.put(TestEntity.newBuilder(
+          newTestEntity(Integer.toString(i), Integer.toString(i)))
+          .setField1(i >= 3 && i < 6 ? "other" : "field1")
+          .build());
+    }
+
+    DaoView<TestEntity> view = (DaoView<TestEntity>)
+        new DaoView<TestEntity>(ds, TestEntity.class)
+            .with("field1", "other", "missing");
+    List<EntityScanner<TestEntity>> scanners = view.newEntityScanners();
+    Assert.assertEquals(1, scanners.size());
+    Assert.assertNotNull("Should filter field1 in HBase",
+        ((BaseEntityScanner<TestEntity>) scanners.get(0)).getScan().getFilter());
+
+    Assert.assertEquals("Should only read rows that match on the server",
+        Lists.newArrayList("3", "4", "5"),
+        readPart1(new MultiRangeEntityScanner<TestEntity>(scanners, 1, true)));
+    Assert.assertEquals("Should read matching rows",
+        Lists.newArrayList("3", "4", "5"), readPart1(view.newReader()));
+
+    DaoView<TestEntity> ranged = (DaoView<TestEntity>)
+        new DaoView<TestEntity>(ds, TestEntity.class)
+            .from(NAMES[0], "2").to(NAMES[0], "4")
+            .from(NAMES[1], "2").to(NAMES[1], "4")
+            .with("field1", "other");
+    Assert.assertEquals("Should combine key ranges and filters",
+        Lists.newArrayList("3", "4"), readPart1(ranged.newReader()));
+  }
+
+  private static int count(DatasetReader<TestEntity> reader) {
+    int count = 0;
+    if (reader instanceof InitializeAccessor && !reader.isOpen()) {
+      ((InitializeAccessor) reader).initialize();
+    }
+    try {
+      for (TestEntity entity : reader) {
+        count += 1;
+      }
+    } finally {
+      reader.close();
+    }
+    return count;
+  }
+
+  private static List<String> readPart1(DatasetReader<TestEntity> reader) {
+    List<String> values = Lists.newArrayList();
+    if (reader instanceof InitializeAccessor && !reader.isOpen()) {
+      ((InitializeAccessor) reader).initialize();
+    }
+    try {
+      for (TestEntity entity : reader) {
+        Assert.assertEquals(entity.getPart1(), entity.getPart2());
+        values.add(entity.getPart1());
+      }
+    } finally {
+      reader.close();
+    }
+    return values;
+  }
+
   private TestEntity newTestEntity(String part1, String part2) {
     return TestEntity
         .newBuilder()
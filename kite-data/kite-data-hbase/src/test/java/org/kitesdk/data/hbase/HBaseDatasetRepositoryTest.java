@@ -25,8 +25,11 @@ import org.kitesdk.data.hbase.avro.entities.ArrayRecord;
 import org.kitesdk.data.hbase.avro.entities.EmbeddedRecord;
 import org.kitesdk.data.hbase.avro.entities.TestEntity;
 import org.kitesdk.data.hbase.avro.entities.TestEnum;
+import org.kitesdk.data.hbase.spi.HBaseEntityCacheMetrics;
 import org.kitesdk.data.hbase.testing.HBaseTestUtils;
+import org.kitesdk.data.spi.BatchGettable;
 
+import com.google.common.collect.Lists;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -226,6 +229,104 @@ public class HBaseDatasetRepositoryTest {
     assertNull(deletedRecord);
   }
 
+  @Test
+  public void testGetAll() throws Exception {
+    String datasetName = tableName + ".TestEntity";
+    HBaseDatasetRepository repo = new HBaseDatasetRepository.Builder()
+        .configuration(HBaseTestUtils.getConf()).build();
+
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schemaLiteral(testEntity)
+        .build();
+    RandomAccessDataset<TestEntity> ds = repo.create("default", datasetName, descriptor);
+
+    for (int i = 0; i < 10; ++i) {
+      ds.put(createSpecificEntity(i));
+    }
+
+    // request keys in reverse order, with a missing key in the middle
+    List<Key> keys = Lists.newArrayList();
+    for (int i = 9; i >= 0; --i) {
+      String iStr = Long.toString(i);
+      keys.add(new Key.Builder(ds)
+          .add("part1", "part1_" + iStr)
+          .add("part2", "part2_" + iStr).build());
+      if (i == 5) {
+        keys.add(new Key.Builder(ds)
+            .add("part1", "part1_missing")
+            .add("part2", "part2_missing").build());
+      }
+    }
+
+    BatchGettable<TestEntity> batches = (BatchGettable<TestEntity>) ds;
+    List<TestEntity> entities = batches.getAll(keys);
+    assertEquals("Should return one result per key", 11, entities.size());
+    int expected = 9;
+    for (int i = 0; i < entities.size(); ++i) {
+      if (i == 5) {
+        assertNull("Should return null for a missing key", entities.get(i));
+      } else {
+        compareEntitiesWithString(expected, entities.get(i));
+        expected -= 1;
+      }
+    }
+
+    assertTrue("Should return an empty list for no keys",
+        batches.getAll(Lists.<Key>newArrayList()).isEmpty());
+  }
+
+  @Test
+  public void testEntityCache() throws Exception {
+    String datasetName = tableName + ".TestEntity";
+    HBaseDatasetRepository repo = new HBaseDatasetRepository.Builder()
+        .configuration(HBaseTestUtils.getConf()).build();
+
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schemaLiteral(testEntity)
+        .property(HBaseProperties.CACHE_SIZE_PROP, "100")
+        .build();
+    RandomAccessDataset<TestEntity> ds = repo.create("default", datasetName, descriptor);
+    HBaseEntityCacheMetrics metrics = (HBaseEntityCacheMetrics) ds;
+    assertTrue(metrics.isCacheEnabled());
+
+    for (int i = 0; i < 3; ++i) {
+      ds.put(createSpecificEntity(i));
+    }
+
+    Key key = new Key.Builder(ds)
+        .add("part1", "part1_0")
+        .add("part2", "part2_0").build();
+    TestEntity entity = ds.get(key);
+    assertEquals(0, metrics.getCacheHitCount());
+    assertEquals(1, metrics.getCacheMissCount());
+
+    // changing a returned entity does not change the cached copy
+    entity.put(entity.getSchema().getField("field1").pos(), "changed");
+    compareEntitiesWithString(0, ds.get(key));
+    assertEquals(1, metrics.getCacheHitCount());
+
+    List<Key> keys = Lists.newArrayList();
+    for (int i = 0; i < 3; ++i) {
+      keys.add(new Key.Builder(ds)
+          .add("part1", "part1_" + i)
+          .add("part2", "part2_" + i).build());
+    }
+    List<TestEntity> entities = ((BatchGettable<TestEntity>) ds).getAll(keys);
+    for (int i = 0; i < 3; ++i) {
+      compareEntitiesWithString(i, entities.get(i));
+    }
+    assertEquals(2, metrics.getCacheHitCount());
+    assertEquals(3, metrics.getCacheMissCount());
+
+    // a put through the dataset invalidates the cached entity
+    assertTrue(ds.put(entity));
+    assertEquals("changed", ds.get(key).getField1());
+    assertEquals(4, metrics.getCacheMissCount());
+
+    ds.delete(key);
+    assertNull(ds.get(key));
+  }
+
   @Test
   public void testDeleteDataset() throws Exception {
 
@@ -32,12 +32,15 @@ import org.kitesdk.data.hbase.testing.HBaseTestUtils;
 import org.kitesdk.data.impl.Accessor;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class HBaseMetadataProviderTest {
 
   private static final String testEntity;
   private static final String tableName = "testtable";
   private static final String managedTableName = "managed_schemas";
+  private static HTablePool tablePool;
   private static HBaseMetadataProvider provider;
 
   static {
@@ -52,7 +55,7 @@ public class HBaseMetadataProviderTest {
 
   @BeforeClass
   public static void beforeClass() throws Exception {
-    HTablePool tablePool = HBaseTestUtils.startHBaseAndGetPool();
+    tablePool = HBaseTestUtils.startHBaseAndGetPool();
 
     // managed table should be created by HBaseDatasetRepository
     HBaseTestUtils.util.deleteTable(Bytes.toBytes(managedTableName));
@@ -83,4 +86,33 @@ public class HBaseMetadataProviderTest {
     assertEquals(2, Accessor.getDefault().getFieldPartitioners(partStrat).size());
   }
 
+  @Test
+  public void testProperties() throws Exception {
+    // schema managers cache schemas, so this uses a new one because the
+    // managed schema table is truncated between tests
+    HBaseMetadataProvider provider = new HBaseMetadataProvider(
+        new HBaseAdmin(HBaseTestUtils.getConf()),
+        new DefaultSchemaManager(tablePool));
+    String name = tableName + ".TestEntity";
+    provider.create("default", name, new DatasetDescriptor.Builder()
+        .schemaLiteral(testEntity)
+        .property(HBaseProperties.CACHE_SIZE_PROP, "100")
+        .build());
+    assertEquals("Should store descriptor properties", "100",
+        provider.load("default", name)
+            .getProperty(HBaseProperties.CACHE_SIZE_PROP));
+
+    provider.update("default", name, new DatasetDescriptor.Builder()
+        .schemaLiteral(testEntity)
+        .property(HBaseProperties.ASYNC_WRITE_BUFFER_PROP, "8192")
+        .build());
+    DatasetDescriptor loaded = provider.load("default", name);
+    assertFalse("Should remove the old property",
+        loaded.hasProperty(HBaseProperties.CACHE_SIZE_PROP));
+    assertEquals("8192",
+        loaded.getProperty(HBaseProperties.ASYNC_WRITE_BUFFER_PROP));
+    assertTrue("Should not disable the table to change properties",
+        HBaseTestUtils.util.getHBaseAdmin().isTableEnabled(tableName));
+  }
+
 }
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase;
+
+import java.nio.ByteBuffer;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kitesdk.data.hbase.impl.KeySerDe;
+import org.kitesdk.data.spi.PartitionKey;
+
+public class TestEntityCache {
+
+  private static final Schema SCHEMA = Schema.create(Schema.Type.STRING);
+
+  private static final KeySerDe KEYS = new KeySerDe() {
+    @Override
+    public byte[] serialize(PartitionKey partitionKey) {
+      return ((String) partitionKey.get(0)).getBytes();
+    }
+
+    @Override
+    public byte[] serialize(Object... keyPartValues) {
+      return ((String) keyPartValues[0]).getBytes();
+    }
+
+    @Override
+    public PartitionKey deserialize(byte[] keyBytes) {
+      return new PartitionKey(new String(keyBytes));
+    }
+  };
+
+  @Test
+  public void testPutAfterLoad() {
+    EntityCache<String> cache = new EntityCache<String>(
+        10, 60000, KEYS, GenericData.get(), SCHEMA);
+    ByteBuffer key = cache.keyFor(new PartitionKey("a"));
+
+    long generation = cache.generation(key);
+    cache.put(key, "loaded", generation);
+    Assert.assertEquals("loaded", cache.get(key));
+  }
+
+  @Test
+  public void testInvalidatedDuringLoad() {
+    EntityCache<String> cache = new EntityCache<String>(
+        10, 60000, KEYS, GenericData.get(), SCHEMA);
+    ByteBuffer key = cache.keyFor(new PartitionKey("a"));
+
+    long generation = cache.generation(key);
+    // a concurrent write invalidates the key while the old entity is loaded
+    cache.invalidate(new PartitionKey("a"));
+    cache.put(key, "stale", generation);
+
+    Assert.assertNull("Should not cache an entity loaded before invalidation",
+        cache.get(key));
+    long current = cache.generation(key);
+    cache.put(key, "fresh", current);
+    Assert.assertEquals("fresh", cache.get(key));
+  }
+}
@@ -22,20 +22,30 @@ import org.kitesdk.data.hbase.avro.entities.EmbeddedRecord;
 import org.kitesdk.data.hbase.avro.entities.TestEnum;
 import org.kitesdk.data.hbase.avro.entities.TestIncrement;
 import org.kitesdk.data.hbase.avro.entities.TestRecord;
+import org.kitesdk.data.hbase.impl.AsyncEntityBatch;
+import org.kitesdk.data.hbase.impl.BaseEntityBatch;
 import org.kitesdk.data.hbase.impl.Dao;
 import org.kitesdk.data.hbase.impl.EntityBatch;
 import org.kitesdk.data.hbase.impl.EntityScanner;
 import org.kitesdk.data.hbase.testing.HBaseTestUtils;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.HTablePool;
+import org.apache.hadoop.hbase.client.Row;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -341,6 +351,190 @@ public class AvroDaoTest {
     }
   }
 
+  @Test
+  public void testAsyncBatchPutOperation() throws Exception {
+    SpecificAvroDao<TestIncrement> dao = new SpecificAvroDao<TestIncrement>(
+        tablePool, incrementTableName, incrementSchemaString,
+        TestIncrement.class);
+
+    // a small buffer keeps several batches in flight
+    EntityBatch<TestIncrement> batch = dao.newAsyncBatch(4 * 1024, 3);
+    batch.initialize();
+    for (int i = 0; i < 500; i++) {
+      batch.put(TestIncrement.newBuilder().setKeyPart1("async_" + i)
+          .setKeyPart2("part2").setField1(i).build());
+      if (i == 250) {
+        batch.flush();
+        TestIncrement flushed = dao.get(new PartitionKey("async_250", "part2"));
+        assertEquals(250L, flushed.getField1().longValue());
+      }
+    }
+    batch.close();
+    assertFalse("Batch should be closed", batch.isOpen());
+
+    for (int i = 0; i < 500; i++) {
+      TestIncrement record = dao.get(new PartitionKey("async_" + i, "part2"));
+      assertEquals((long) i, record.getField1().longValue());
+    }
+  }
+
+  @Test
+  public void testAsyncBatchRetryKeepsRowOrder() throws Exception {
+    // fails the first put of the first batch, so the retried put is older
+    // than the put after it to the same row
+    final AtomicBoolean failNext = new AtomicBoolean(true);
+    HTablePool failingPool = new HTablePool(HBaseTestUtils.getConf(), 10) {
+      @Override
+      public HTableInterface getTable(String name) {
+        final HTableInterface table = super.getTable(name);
+        return (HTableInterface) Proxy.newProxyInstance(
+            HTableInterface.class.getClassLoader(),
+            new Class<?>[] { HTableInterface.class },
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args)
+                  throws Throwable {
+                if ("batch".equals(method.getName()) && args.length == 2 &&
+                    failNext.getAndSet(false)) {
+                  @SuppressWarnings("unchecked")
+                  List<Row> puts = (List<Row>) args[0];
+                  Object[] results = (Object[]) args[1];
+                  Object[] sentResults = new Object[puts.size() - 1];
+                  table.batch(puts.subList(1, puts.size()), sentResults);
+                  results[0] = new IOException("Injected failure");
+                  System.arraycopy(sentResults, 0, results, 1,
+                      sentResults.length);
+                  return null;
+                }
+                try {
+                  return method.invoke(table, args);
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+              }
+            });
+      }
+    };
+
+    try {
+      SpecificAvroDao<TestIncrement> dao = new SpecificAvroDao<TestIncrement>(
+          failingPool, incrementTableName, incrementSchemaString,
+          TestIncrement.class);
+      EntityBatch<TestIncrement> batch = dao.newAsyncBatch(1024 * 1024, 3);
+      batch.initialize();
+      batch.put(TestIncrement.newBuilder().setKeyPart1("retry")
+          .setKeyPart2("part2").setField1(1).build());
+      batch.put(TestIncrement.newBuilder().setKeyPart1("retry")
+          .setKeyPart2("part2").setField1(2).build());
+      batch.close();
+
+      assertFalse("Should have injected a failure", failNext.get());
+      TestIncrement record = dao.get(new PartitionKey("retry", "part2"));
+      assertEquals("Should keep the last put to the row",
+          2L, record.getField1().longValue());
+    } finally {
+      failingPool.close();
+    }
+  }
+
+  @Test
+  public void testAsyncBatchPutWithVersionCheck() throws Exception {
+    SpecificAvroDao<TestRecord> dao = new SpecificAvroDao<TestRecord>(
+        tablePool, tableName, schemaString, TestRecord.class);
+
+    EntityBatch<TestRecord> batch = dao.newAsyncBatch(4 * 1024, 3);
+    batch.initialize();
+    for (TestRecord entity : createSpecificEntities(100)) {
+      batch.put(entity);
+    }
+    batch.close();
+
+    for (int i = 0; i < 100; i++) {
+      PartitionKey key = new PartitionKey("part1_" + i, "part2_" + i);
+      TestRecord record = dao.get(key);
+      assertEquals("field1_" + i, record.getField1());
+    }
+  }
+
+  @Test
+  public void testPutAll() throws Exception {
+    SpecificAvroDao<TestRecord> dao = new SpecificAvroDao<TestRecord>(
+        tablePool, tableName, schemaString, TestRecord.class);
+
+    List<TestRecord> entities = createSpecificEntities(50);
+    for (Boolean succeeded : dao.putAll(entities)) {
+      assertTrue(succeeded);
+    }
+    // the stored versions no longer match, so every put conflicts
+    for (Boolean succeeded : dao.putAll(entities)) {
+      assertFalse(succeeded);
+    }
+
+    for (int i = 0; i < 50; i++) {
+      PartitionKey key = new PartitionKey("part1_" + i, "part2_" + i);
+      TestRecord record = dao.get(key);
+      assertEquals("field1_" + i, record.getField1());
+    }
+  }
+
+  @Test
+  public void testAsyncBatchPutWithVersionCheckConflicts() throws Exception {
+    SpecificAvroDao<TestRecord> dao = new SpecificAvroDao<TestRecord>(
+        tablePool, tableName, schemaString, TestRecord.class);
+
+    List<TestRecord> entities = createSpecificEntities(50);
+    AsyncEntityBatch<TestRecord> batch =
+        (AsyncEntityBatch<TestRecord>) dao.newAsyncBatch(4 * 1024, 3);
+    batch.initialize();
+    for (TestRecord entity : entities.subList(0, 25)) {
+      batch.put(entity);
+    }
+    batch.flush();
+    assertEquals(0, batch.getConflictCount());
+
+    for (TestRecord entity : entities) {
+      batch.put(entity);
+    }
+    batch.flush();
+    assertEquals(25, batch.getConflictCount());
+    batch.close();
+
+    for (int i = 0; i < 50; i++) {
+      PartitionKey key = new PartitionKey("part1_" + i, "part2_" + i);
+      TestRecord record = dao.get(key);
+      assertEquals("field1_" + i, record.getField1());
+    }
+  }
+
+  @Test
+  public void testBatchPutWithVersionCheckConflicts() throws Exception {
+    SpecificAvroDao<TestRecord> dao = new SpecificAvroDao<TestRecord>(
+        tablePool, tableName, schemaString, TestRecord.class);
+
+    List<TestRecord> entities = createSpecificEntities(50);
+    BaseEntityBatch<TestRecord> batch =
+        (BaseEntityBatch<TestRecord>) dao.newBatch(4 * 1024);
+    batch.initialize();
+    for (TestRecord entity : entities.subList(0, 25)) {
+      batch.put(entity);
+    }
+    batch.flush();
+    assertEquals(0, batch.getConflictCount());
+
+    for (TestRecord entity : entities) {
+      batch.put(entity);
+    }
+    batch.flush();
+    assertEquals(25, batch.getConflictCount());
+    batch.close();
+
+    for (int i = 0; i < 50; i++) {
+      PartitionKey key = new PartitionKey("part1_" + i, "part2_" + i);
+      TestRecord record = dao.get(key);
+      assertEquals("field1_" + i, record.getField1());
+    }
+  }
+
   @Test(expected = DatasetException.class)
   public void testPutWithNullKey() throws Exception {
     Dao<GenericRecord> dao = new GenericAvroDao(tablePool, tableName,
@@ -76,6 +76,29 @@ public class AvroEntityMapperTest {
       + "    \"mapping\": { \"type\": \"keyAsColumn\", \"value\": \"record:\"} "
       + "}]}";
 
+  @Test
+  public void testColumnValueRoundTrip() throws Exception {
+    AvroEntitySchema entitySchema = schemaParser.parseEntitySchema(schemaString);
+    AvroEntitySerDe<GenericRecord> entitySerDe = new AvroEntitySerDe<GenericRecord>(
+        new AvroEntityComposer<GenericRecord>(entitySchema, false),
+        entitySchema, entitySchema, false);
+
+    // encoders and decoders are reused, so check many values in a row
+    for (int i = -100; i < 100; i++) {
+      byte[] bytes = entitySerDe.serializeColumnValueToBytes("field1", i);
+      assertEquals(4, bytes.length);
+      assertEquals(i, entitySerDe.deserializeColumnValueFromBytes(
+          "field1", bytes));
+
+      // decode from the middle of a larger array
+      byte[] padded = new byte[bytes.length + 6];
+      Arrays.fill(padded, (byte) 0xff);
+      System.arraycopy(bytes, 0, padded, 3, bytes.length);
+      assertEquals(i, entitySerDe.deserializeColumnValueFromBytes(
+          "field1", padded, 3, bytes.length));
+    }
+  }
+
   @Test
   public void testMapToEntity() throws Exception {
     AvroKeySchema keySchema = schemaParser.parseKeySchema(schemaString);
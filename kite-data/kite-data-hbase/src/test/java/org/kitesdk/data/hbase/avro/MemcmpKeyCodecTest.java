@@ -0,0 +1,115 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.hbase.avro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+import org.junit.Test;
+import org.kitesdk.data.SerializationException;
+import org.kitesdk.data.hbase.avro.io.MemcmpDecoder;
+import org.kitesdk.data.hbase.avro.io.MemcmpEncoder;
+import org.kitesdk.data.spi.PartitionKey;
+
+public class MemcmpKeyCodecTest {
+
+  private static final Schema SCHEMA = new Schema.Parser().parse(
+      "{\"type\": \"record\", \"name\": \"Key\", \"fields\": [" +
+      "{\"name\": \"i\", \"type\": \"int\"}," +
+      "{\"name\": \"l\", \"type\": \"long\"}," +
+      "{\"name\": \"s\", \"type\": \"string\"}," +
+      "{\"name\": \"js\", \"type\": {\"type\": \"string\"," +
+      " \"avro.java.string\": \"String\"}}," +
+      "{\"name\": \"b\", \"type\": \"bytes\"}]}");
+
+  @Test
+  public void testMatchesMemcmpEncoder() throws Exception {
+    MemcmpKeyCodec codec = MemcmpKeyCodec.compile(SCHEMA);
+    assertNotNull(codec);
+
+    Object[][] keys = new Object[][] {
+        { 0, 0L, "", "", ByteBuffer.wrap(new byte[0]) },
+        { -1, Long.MIN_VALUE, "a\u0000b", "caf\u00e9",
+            ByteBuffer.wrap(new byte[] { 0, 1, 0, 0 }) },
+        { Integer.MAX_VALUE, 34L, new Utf8("utf8"), "string",
+            ByteBuffer.wrap(new byte[] { -1, 127 }) } };
+
+    for (Object[] values : keys) {
+      byte[] expected = encode(values);
+      assertArrayEquals(expected, codec.encode(new PartitionKey(values)));
+
+      PartitionKey decoded = codec.decode(expected);
+      GenericRecord record = decode(expected);
+      for (int i = 0; i < values.length; i += 1) {
+        assertEquals(record.get(i).getClass(), decoded.get(i).getClass());
+        assertEquals(record.get(i), decoded.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testPartialKey() throws Exception {
+    MemcmpKeyCodec codec = MemcmpKeyCodec.compile(SCHEMA);
+    byte[] full = codec.encode(new PartitionKey(
+        5, 6L, "s", "js", ByteBuffer.wrap(new byte[] { 1 })));
+    byte[] partial = codec.encode(new PartitionKey(5, 6L, "s"));
+    assertArrayEquals(Arrays.copyOf(full, partial.length), partial);
+  }
+
+  @Test(expected = SerializationException.class)
+  public void testTruncatedKey() {
+    MemcmpKeyCodec codec = MemcmpKeyCodec.compile(SCHEMA);
+    byte[] full = codec.encode(new PartitionKey(
+        5, 6L, "s", "js", ByteBuffer.wrap(new byte[] { 1 })));
+    codec.decode(Arrays.copyOf(full, full.length - 1));
+  }
+
+  @Test
+  public void testUnsupportedSchema() {
+    Schema schema = new Schema.Parser().parse(
+        "{\"type\": \"record\", \"name\": \"Key\", \"fields\": [" +
+        "{\"name\": \"s\", \"type\": [\"null\", \"string\"]}]}");
+    assertNull(MemcmpKeyCodec.compile(schema));
+  }
+
+  private static byte[] encode(Object[] values) throws Exception {
+    GenericRecord record = new GenericData.Record(SCHEMA);
+    for (int i = 0; i < values.length; i += 1) {
+      record.put(i, values[i]);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new GenericDatumWriter<GenericRecord>(SCHEMA)
+        .write(record, new MemcmpEncoder(out));
+    return out.toByteArray();
+  }
+
+  private static GenericRecord decode(byte[] bytes) throws Exception {
+    return new GenericDatumReader<GenericRecord>(SCHEMA).read(null,
+        new MemcmpDecoder(new ByteArrayInputStream(bytes)));
+  }
+}
@@ -19,12 +19,14 @@ package org.kitesdk.data.spi.hive;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import javax.annotation.Nullable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -36,14 +38,14 @@ import org.kitesdk.data.DatasetIOException;
 import org.kitesdk.data.DatasetNotFoundException;
 import org.kitesdk.data.URIBuilder;
 import org.kitesdk.data.spi.AbstractMetadataProvider;
+import org.kitesdk.data.spi.BatchPartitionListener;
 import org.kitesdk.data.spi.Compatibility;
-import org.kitesdk.data.spi.PartitionListener;
 import org.kitesdk.data.spi.filesystem.SchemaManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 abstract class HiveAbstractMetadataProvider extends AbstractMetadataProvider implements
-    PartitionListener {
+    BatchPartitionListener {
 
   static final String SCHEMA_DIRECTORY = ".metadata/schemas";
 
@@ -51,7 +53,7 @@ abstract class HiveAbstractMetadataProvider extends AbstractMetadataProvider imp
       .getLogger(HiveAbstractMetadataProvider.class);
 
   protected final Configuration conf;
-  private MetaStoreUtil metastore;
+  private volatile MetaStoreUtil metastore;
 
   HiveAbstractMetadataProvider(Configuration conf) {
     Preconditions.checkNotNull(conf, "Configuration cannot be null");
@@ -60,7 +62,11 @@ abstract class HiveAbstractMetadataProvider extends AbstractMetadataProvider imp
 
   protected MetaStoreUtil getMetaStoreUtil() {
     if (metastore == null) {
-      metastore = new MetaStoreUtil(conf);
+      synchronized (this) {
+        if (metastore == null) {
+          metastore = new MetaStoreUtil(conf);
+        }
+      }
     }
     return metastore;
   }
@@ -99,10 +105,11 @@ abstract class HiveAbstractMetadataProvider extends AbstractMetadataProvider imp
   public DatasetDescriptor load(String namespace, String name) {
     Compatibility.checkDatasetName(namespace, name);
 
-    String resolved = resolveNamespace(namespace, name);
+    // use cached table lookups to avoid MetaStore calls when loading
+    String resolved = resolveNamespace(namespace, name, null, true);
     if (resolved != null) {
       return HiveUtils.descriptorForTable(
-          conf, getMetaStoreUtil().getTable(resolved, name));
+          conf, getMetaStoreUtil().getCachedTable(resolved, name));
     }
     throw new DatasetNotFoundException(
         "Hive table not found: " + namespace + "." + name);
@@ -156,7 +163,7 @@ abstract class HiveAbstractMetadataProvider extends AbstractMetadataProvider imp
   @Override
   public boolean exists(String namespace, String name) {
     Compatibility.checkDatasetName(namespace, name);
-    return (resolveNamespace(namespace, name) != null);
+    return (resolveNamespace(namespace, name, null, true) != null);
   }
 
   @Override
@@ -231,7 +238,7 @@ abstract class HiveAbstractMetadataProvider extends AbstractMetadataProvider imp
   @Override
   @SuppressWarnings("unchecked")
   public void partitionAdded(String namespace, String name, String path) {
-    getMetaStoreUtil().addPartition(namespace, name, path);
+    addPartitions(namespace, name, ImmutableList.of(path));
   }
 
 
@@ -242,6 +249,42 @@ abstract class HiveAbstractMetadataProvider extends AbstractMetadataProvider imp
     getMetaStoreUtil().dropPartition(namespace, name, path);
   }
 
+  @Override
+  public void partitionsAdded(String namespace, String name,
+                              List<String> paths) {
+    addPartitions(namespace, name, paths);
+  }
+
+  @Override
+  public void partitionsDeleted(String namespace, String name,
+                                List<String> paths) {
+    getMetaStoreUtil().dropPartitions(namespace, name, paths);
+  }
+
+  private void addPartitions(String namespace, String name,
+                             List<String> paths) {
+    // a batch fails if any of its partitions exist, so only new partitions
+    // are batched. the listing may be stale, so partitions it includes are
+    // still appended, which succeeds if they already exist.
+    Set<String> known = getMetaStoreUtil()
+        .getCachedPartitionNames(namespace, name);
+    List<String> toAdd = Lists.newArrayList();
+    List<String> toAppend = Lists.newArrayList();
+    for (String path : paths) {
+      if (known != null && known.contains(path)) {
+        toAppend.add(path);
+      } else {
+        toAdd.add(path);
+      }
+    }
+    if (!toAdd.isEmpty()) {
+      getMetaStoreUtil().addPartitions(namespace, name, toAdd);
+    }
+    if (!toAppend.isEmpty()) {
+      getMetaStoreUtil().appendPartitions(namespace, name, toAppend);
+    }
+  }
+
   /**
    * Checks whether the Hive table {@code namespace.name} exists or if
    * {@code default.name} exists and should be used.
@@ -267,12 +310,22 @@ abstract class HiveAbstractMetadataProvider extends AbstractMetadataProvider imp
    */
   protected String resolveNamespace(String namespace, String name,
                                     @Nullable URI location) {
-    if (getMetaStoreUtil().exists(namespace, name)) {
+    return resolveNamespace(namespace, name, location, false);
+  }
+
+  private String resolveNamespace(String namespace, String name,
+                                  @Nullable URI location, boolean cached) {
+    MetaStoreUtil metastore = getMetaStoreUtil();
+    if (cached ?
+        metastore.cachedTableExists(namespace, name) :
+        metastore.exists(namespace, name)) {
       return namespace;
     }
     try {
-      DatasetDescriptor descriptor = HiveUtils.descriptorForTable(
-          conf, getMetaStoreUtil().getTable(URIBuilder.NAMESPACE_DEFAULT, name));
+      Table table = cached ?
+          metastore.getCachedTable(URIBuilder.NAMESPACE_DEFAULT, name) :
+          metastore.getTable(URIBuilder.NAMESPACE_DEFAULT, name);
+      DatasetDescriptor descriptor = HiveUtils.descriptorForTable(conf, table);
       URI expectedLocation = location;
       if (location == null) {
         expectedLocation = expectedLocation(namespace, name);
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.spi.hive;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+/**
+ * Recent MetaStore lookups, shared by every {@link MetaStoreUtil} in the JVM.
+ * <p>
+ * A new {@code MetaStoreUtil} is usually created each time a dataset is
+ * loaded, so lookups are cached for the MetaStore rather than for each
+ * instance. This also makes changes made through one instance visible to the
+ * others immediately. Changes made by other processes are visible once the
+ * cached entry is older than the caller's time to live.
+ * <p>
+ * Lookups are cached for each user because the MetaStore may not show every
+ * user the same tables. Changes made by one user are applied to the entries
+ * of all users.
+ */
+class MetaStoreCache {
+
+  private static final int MAX_TABLES = 1000;
+
+  private static class Entry<T> {
+    // null for a table that is known to exist but has not been loaded
+    private final T value;
+    private final long cachedAt;
+
+    private Entry(@Nullable T value) {
+      this.value = value;
+      this.cachedAt = System.currentTimeMillis();
+    }
+  }
+
+  private static final Cache<String, Entry<Table>> TABLES =
+      CacheBuilder.newBuilder().maximumSize(MAX_TABLES).build();
+
+  private static final Cache<String, Entry<Set<String>>> PARTITIONS =
+      CacheBuilder.newBuilder().maximumSize(MAX_TABLES).build();
+
+  private final String metastore;
+  private final String user;
+  private final long tableTtl;
+  private final long partitionTtl;
+
+  /**
+   * @param metastore identifies the MetaStore that entries come from
+   * @param user identifies the user that entries are looked up for
+   * @param tableTtl how long table lookups are used, in milliseconds
+   * @param partitionTtl how long partition listings are used, in milliseconds
+   */
+  MetaStoreCache(String metastore, String user, long tableTtl,
+                 long partitionTtl) {
+    this.metastore = metastore;
+    this.user = user;
+    this.tableTtl = tableTtl;
+    this.partitionTtl = partitionTtl;
+  }
+
+  /**
+   * Returns a copy of a recently loaded table, or null.
+   */
+  Table getTable(String dbName, String tableName) {
+    Entry<Table> entry = fresh(
+        TABLES.getIfPresent(key(dbName, tableName)), tableTtl);
+    if (entry != null && entry.value != null) {
+      return new Table(entry.value);
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if the table was recently found, false if it is not known.
+   */
+  boolean exists(String dbName, String tableName) {
+    return fresh(TABLES.getIfPresent(key(dbName, tableName)), tableTtl) != null;
+  }
+
+  void tableLoaded(Table table) {
+    if (tableTtl > 0) {
+      TABLES.put(key(table.getDbName(), table.getTableName()),
+          new Entry<Table>(new Table(table)));
+    }
+  }
+
+  void tableExists(String dbName, String tableName) {
+    if (tableTtl > 0) {
+      String key = key(dbName, tableName);
+      if (fresh(TABLES.getIfPresent(key), tableTtl) == null) {
+        TABLES.put(key, new Entry<Table>(null));
+      }
+    }
+  }
+
+  /**
+   * Returns whether partition listings are cached.
+   */
+  boolean cachesPartitions() {
+    return partitionTtl > 0;
+  }
+
+  /**
+   * Returns the partitions of a table from a recent listing, or null.
+   * <p>
+   * The returned set is updated when partitions are added or dropped.
+   */
+  Set<String> getPartitions(String dbName, String tableName) {
+    Entry<Set<String>> entry = fresh(
+        PARTITIONS.getIfPresent(key(dbName, tableName)), partitionTtl);
+    return (entry != null ? entry.value : null);
+  }
+
+  Set<String> partitionsListed(String dbName, String tableName,
+                               Collection<String> partitions) {
+    Set<String> names = Sets.newSetFromMap(
+        new ConcurrentHashMap<String, Boolean>());
+    names.addAll(partitions);
+    if (partitionTtl > 0) {
+      PARTITIONS.put(key(dbName, tableName), new Entry<Set<String>>(names));
+    }
+    return names;
+  }
+
+  void partitionsAdded(String dbName, String tableName,
+                       Collection<String> partitions) {
+    for (Entry<Set<String>> entry : allUsers(PARTITIONS, dbName, tableName).values()) {
+      entry.value.addAll(partitions);
+    }
+  }
+
+  void partitionsDropped(String dbName, String tableName,
+                         Collection<String> partitions) {
+    for (Entry<Set<String>> entry : allUsers(PARTITIONS, dbName, tableName).values()) {
+      entry.value.removeAll(partitions);
+    }
+  }
+
+  /**
+   * Removes all entries for a table after it is created, changed, or dropped.
+   */
+  void invalidate(String dbName, String tableName) {
+    TABLES.invalidateAll(allUsers(TABLES, dbName, tableName).keySet());
+    PARTITIONS.invalidateAll(allUsers(PARTITIONS, dbName, tableName).keySet());
+  }
+
+  /**
+   * Removes all entries after a database is dropped.
+   */
+  void invalidateAll() {
+    TABLES.invalidateAll();
+    PARTITIONS.invalidateAll();
+  }
+
+  private String key(String dbName, String tableName) {
+    return tableKey(dbName, tableName) + user;
+  }
+
+  private String tableKey(String dbName, String tableName) {
+    // Hive database and table names are case-insensitive
+    return metastore + "/" +
+        (dbName + "." + tableName).toLowerCase(Locale.ENGLISH) + "#";
+  }
+
+  /**
+   * Returns the entries for a table that were cached for any user.
+   */
+  private <T> Map<String, Entry<T>> allUsers(Cache<String, Entry<T>> cache,
+                                             String dbName, String tableName) {
+    String prefix = tableKey(dbName, tableName);
+    Map<String, Entry<T>> entries = Maps.newHashMap();
+    for (Map.Entry<String, Entry<T>> entry : cache.asMap().entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        entries.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return entries;
+  }
+
+  private static <T> Entry<T> fresh(@Nullable Entry<T> entry, long ttl) {
+    if (entry != null &&
+        (System.currentTimeMillis() - entry.cachedAt) < ttl) {
+      return entry;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitesdk.data.spi.hive;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.thrift.TException;
+import org.kitesdk.data.DatasetOperationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of {@link HiveMetaStoreClient} connections.
+ * <p>
+ * Clients are created when they are needed, up to a maximum number. A thread
+ * that needs a client when all of them are in use waits for one to be
+ * released. Clients that have been idle for longer than the check interval
+ * are checked before they are used again and are reconnected or replaced if
+ * the check fails.
+ * <p>
+ * A pool that is closed closes its idle clients, and closes clients that are
+ * in use when they are released. Clients can still be borrowed from a closed
+ * pool, but are not reused.
+ */
+class MetaStoreClientPool {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MetaStoreClientPool.class);
+
+  private static final String CHECK_DATABASE = "default";
+
+  private static class IdleClient {
+    private final HiveMetaStoreClient client;
+    private final long idleSince;
+
+    private IdleClient(HiveMetaStoreClient client, long idleSince) {
+      this.client = client;
+      this.idleSince = idleSince;
+    }
+  }
+
+  private final HiveConf conf;
+  private final int maxClients;
+  private final long checkIntervalMillis;
+
+  // the most recently used client is first so that extra clients stay idle
+  private final Deque<IdleClient> idle = new ArrayDeque<IdleClient>();
+  private int numClients = 0;
+  private boolean closed = false;
+
+  MetaStoreClientPool(HiveConf conf, int maxClients,
+                      long checkIntervalMillis) {
+    Preconditions.checkArgument(maxClients > 0,
+        "Maximum number of clients must be positive: %s", maxClients);
+    this.conf = conf;
+    this.maxClients = maxClients;
+    this.checkIntervalMillis = checkIntervalMillis;
+  }
+
+  int getMaxClients() {
+    return maxClients;
+  }
+
+  /**
+   * Returns a client that is reserved for the caller until it is passed to
+   * {@link #release(HiveMetaStoreClient)} or
+   * {@link #discard(HiveMetaStoreClient)}.
+   *
+   * @return a HiveMetaStoreClient
+   * @throws DatasetOperationException if a new client cannot connect or if
+   *          the thread is interrupted while waiting for a client
+   */
+  HiveMetaStoreClient borrow() {
+    IdleClient reused = null;
+    synchronized (this) {
+      while (idle.isEmpty() && numClients >= maxClients) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new DatasetOperationException(
+              "Interrupted while waiting for a Hive MetaStore client", e);
+        }
+      }
+      if (idle.isEmpty()) {
+        // reserve a place for a new client
+        numClients += 1;
+      } else {
+        reused = idle.removeFirst();
+      }
+    }
+
+    if (reused == null) {
+      return newClient();
+    }
+
+    long idleMillis = System.currentTimeMillis() - reused.idleSince;
+    if (idleMillis < checkIntervalMillis || isHealthy(reused.client)) {
+      return reused.client;
+    }
+
+    try {
+      reused.client.reconnect();
+      return reused.client;
+    } catch (MetaException e) {
+      LOG.debug("Replacing Hive MetaStore client that cannot reconnect", e);
+      reused.client.close();
+      return newClient();
+    }
+  }
+
+  /**
+   * Returns a client to the pool so that it can be reused.
+   *
+   * @param client a HiveMetaStoreClient from {@link #borrow()}
+   */
+  void release(HiveMetaStoreClient client) {
+    synchronized (this) {
+      if (!closed) {
+        idle.addFirst(new IdleClient(client, System.currentTimeMillis()));
+        notifyAll();
+        return;
+      }
+    }
+    discard(client);
+  }
+
+  /**
+   * Closes a client that may not be usable and frees its place in the pool.
+   *
+   * @param client a HiveMetaStoreClient from {@link #borrow()}
+   */
+  void discard(HiveMetaStoreClient client) {
+    try {
+      client.close();
+    } finally {
+      freeClient();
+    }
+  }
+
+  /**
+   * Closes the idle clients in this pool. Clients that are in use are closed
+   * when they are released.
+   */
+  void close() {
+    List<IdleClient> toClose;
+    synchronized (this) {
+      this.closed = true;
+      toClose = Lists.newArrayList(idle);
+      idle.clear();
+      numClients -= toClose.size();
+      notifyAll();
+    }
+    for (IdleClient idleClient : toClose) {
+      idleClient.client.close();
+    }
+  }
+
+  private HiveMetaStoreClient newClient() {
+    boolean connected = false;
+    try {
+      HiveMetaStoreClient client = new HiveMetaStoreClient(conf);
+      connected = true;
+      return client;
+    } catch (TException e) {
+      throw new DatasetOperationException("Hive metastore exception", e);
+    } finally {
+      if (!connected) {
+        freeClient();
+      }
+    }
+  }
+
+  private synchronized void freeClient() {
+    numClients -= 1;
+    notifyAll();
+  }
+
+  private static boolean isHealthy(HiveMetaStoreClient client) {
+    try {
+      client.getDatabase(CHECK_DATABASE);
+      return true;
+    } catch (NoSuchObjectException e) {
+      // the MetaStore responded
+      return true;
+    } catch (TException e) {
+      LOG.debug("Hive MetaStore client check failed", e);
+      return false;
+    } catch (RuntimeException e) {
+      LOG.debug("Hive MetaStore client check failed", e);
+      return false;
+    }
+  }
+}
@@ -16,12 +16,32 @@
 package org.kitesdk.data.spi.hive;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.security.PrivilegedExceptionAction;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.Warehouse;
 import org.apache.hadoop.hive.metastore.api.AlreadyExistsException;
 import org.apache.hadoop.hive.metastore.api.Database;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
@@ -30,48 +50,170 @@ import org.apache.hadoop.hive.metastore.api.InvalidOperationException;
 import org.apache.hadoop.hive.metastore.api.MetaException;
 import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
 import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
 import org.apache.hadoop.hive.metastore.api.Table;
 import org.apache.hadoop.hive.metastore.api.UnknownDBException;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.thrift.TException;
 import org.kitesdk.data.DatasetExistsException;
+import org.kitesdk.data.DatasetIOException;
 import org.kitesdk.data.DatasetNotFoundException;
 import org.kitesdk.data.DatasetOperationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+@edu.umd.cs.findbugs.annotations.SuppressWarnings(
+    value="SIC_INNER_SHOULD_BE_STATIC_ANON",
+    justification="ClientActions are passed the client to use")
 public class MetaStoreUtil {
 
   private static final Logger LOG = LoggerFactory.getLogger(MetaStoreUtil.class);
   private static final String ALLOW_LOCAL_METASTORE = "kite.hive.allow-local-metastore";
 
-  private final HiveMetaStoreClient client;
+  /**
+   * The maximum number of connections to a MetaStore that are used at once.
+   */
+  static final String MAX_CLIENTS_PROP = "kite.hive.metastore.max-clients";
+  private static final int DEFAULT_MAX_CLIENTS = 4;
+
+  /**
+   * How long, in milliseconds, a connection can be idle before it is checked.
+   */
+  static final String CLIENT_CHECK_INTERVAL_PROP =
+      "kite.hive.metastore.client-check-interval-ms";
+  private static final long DEFAULT_CLIENT_CHECK_INTERVAL = 60000;
+
+  /**
+   * How long, in milliseconds, table lookups used to load datasets are cached.
+   * 0 disables the table cache.
+   */
+  static final String TABLE_CACHE_TTL_PROP =
+      "kite.hive.metastore.table-cache-ttl-ms";
+  private static final long DEFAULT_TABLE_CACHE_TTL = 5000;
+
+  /**
+   * How long, in milliseconds, a table's partition listing is used to choose
+   * which new partitions are added in batches. 0 disables the listing cache.
+   * <p>
+   * The listing can be out of date, for example if another process drops a
+   * partition. Partitions in the listing are still added, one at a time, so
+   * an old listing makes adding them slower but never skips them.
+   */
+  static final String PARTITION_CACHE_TTL_PROP =
+      "kite.hive.partition-cache-ttl-ms";
+  private static final long DEFAULT_PARTITION_CACHE_TTL = 30000;
+
+  private static final int PARTITION_BATCH_SIZE = 100;
+
+  // the number of threads shared by all concurrent partition updates. each
+  // update uses at most as many threads as its pool has clients. when all
+  // are busy, the calling thread runs the batches itself
+  private static final int MAX_BATCH_THREADS = 16;
+
+  private static final ExecutorService BATCH_EXECUTOR =
+      new ThreadPoolExecutor(0, MAX_BATCH_THREADS,
+          60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("kite-metastore-batch-%d")
+              .build(),
+          new ThreadPoolExecutor.CallerRunsPolicy());
+
+  // settings that change how a pool's clients connect. pools are shared by
+  // instances with the same settings.
+  private static final String[] POOL_PROPS = new String[] {
+      MAX_CLIENTS_PROP,
+      CLIENT_CHECK_INTERVAL_PROP,
+      "hive.metastore.sasl.enabled",
+      "hive.metastore.kerberos.principal",
+      "hive.metastore.execute.setugi",
+      "hive.metastore.token.signature",
+      "hive.metastore.client.socket.timeout",
+      "hive.metastore.connect.retries"
+  };
+
+  private static final long POOL_IDLE_MINUTES = 10;
+
+  // pools for remote MetaStores are shared by all instances. connections are
+  // authenticated as the user that opened them, so each user has a pool.
+  // pools that are not used for a while are closed, so that a service that
+  // acts for many proxy users does not keep connections for all of them.
+  private static final Cache<String, MetaStoreClientPool> POOLS =
+      CacheBuilder.newBuilder()
+          .expireAfterAccess(POOL_IDLE_MINUTES, TimeUnit.MINUTES)
+          .removalListener(new RemovalListener<String, MetaStoreClientPool>() {
+            @Override
+            public void onRemoval(
+                RemovalNotification<String, MetaStoreClientPool> removed) {
+              removed.getValue().close();
+            }
+          })
+          .build();
+
   private final HiveConf hiveConf;
+  // used instead of the shared pools for a local MetaStore
+  private final MetaStoreClientPool localClients;
 
   private static interface ClientAction<R> {
-    R call() throws TException;
+    R call(HiveMetaStoreClient client) throws TException;
+  }
+
+  private static interface BatchAction {
+    void run(HiveMetaStoreClient client, List<String> batch);
   }
 
   private <R> R doWithRetry(ClientAction<R> action) throws TException {
+    MetaStoreClientPool clients = clients();
+    HiveMetaStoreClient client = clients.borrow();
+    boolean reusable = false;
     try {
-      synchronized (client) {
-        return action.call();
+      R result = doWithRetry(client, action);
+      reusable = true;
+      return result;
+    } catch (TException e) {
+      reusable = isResponse(e);
+      throw e;
+    } finally {
+      if (reusable) {
+        clients.release(client);
+      } else {
+        clients.discard(client);
       }
+    }
+  }
+
+  private static <R> R doWithRetry(HiveMetaStoreClient client,
+                                   ClientAction<R> action) throws TException {
+    try {
+      return action.call(client);
     } catch (TException e) {
+      if (isResponse(e)) {
+        // the MetaStore answered, so retrying would get the same answer
+        throw e;
+      }
       try {
-        synchronized (client) {
-          client.reconnect();
-        }
+        client.reconnect();
       } catch (MetaException swallowedException) {
         // reconnect failed, throw the original exception
         throw e;
       }
-      synchronized (client) {
-        // retry the action. if this fails, its exception is propagated
-        return action.call();
-      }
+      // retry the action. if this fails, its exception is propagated
+      return action.call(client);
     }
   }
 
+  /**
+   * Returns whether an exception is the MetaStore's answer to a request,
+   * rather than a sign that the connection failed.
+   */
+  private static boolean isResponse(TException e) {
+    return (e instanceof NoSuchObjectException ||
+        e instanceof AlreadyExistsException ||
+        e instanceof InvalidObjectException ||
+        e instanceof InvalidOperationException ||
+        e instanceof UnknownDBException);
+  }
+
   public MetaStoreUtil(Configuration conf) {
     this.hiveConf = new HiveConf(conf, HiveConf.class);
     if (!allowLocalMetaStore(hiveConf) &&
@@ -82,18 +224,92 @@ public class MetaStoreUtil {
       throw new IllegalArgumentException(
           "Missing Hive MetaStore connection URI");
     }
+    this.localClients = (isEmpty(hiveConf, Loader.HIVE_METASTORE_URI_PROP) ?
+        newPool(hiveConf) : null);
+    // connect now so that configuration problems are found early
+    MetaStoreClientPool clients = clients();
+    clients.release(clients.borrow());
+  }
+
+  /**
+   * Returns the pool of clients for the current user.
+   */
+  private MetaStoreClientPool clients() {
+    if (localClients != null) {
+      return localClients;
+    }
+    String key = metaStoreId(hiveConf) + "#" + userId(currentUser()) + "#" +
+        poolSettings(hiveConf);
     try {
-      client = new HiveMetaStoreClient(hiveConf);
-    } catch (TException e) {
-      throw new DatasetOperationException("Hive metastore exception", e);
+      return POOLS.get(key, new Callable<MetaStoreClientPool>() {
+        @Override
+        public MetaStoreClientPool call() {
+          return newPool(hiveConf);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private static String poolSettings(HiveConf conf) {
+    List<String> settings = Lists.newArrayListWithCapacity(POOL_PROPS.length);
+    for (String prop : POOL_PROPS) {
+      settings.add(prop + "=" + conf.get(prop));
+    }
+    return Joiner.on(',').join(settings);
+  }
+
+  /**
+   * Returns the cache of lookups made by the current user.
+   */
+  private MetaStoreCache cache() {
+    return new MetaStoreCache(metaStoreId(hiveConf), userId(currentUser()),
+        hiveConf.getLong(TABLE_CACHE_TTL_PROP, DEFAULT_TABLE_CACHE_TTL),
+        hiveConf.getLong(PARTITION_CACHE_TTL_PROP, DEFAULT_PARTITION_CACHE_TTL));
+  }
+
+  private static MetaStoreClientPool newPool(HiveConf conf) {
+    return new MetaStoreClientPool(conf,
+        Math.max(1, conf.getInt(MAX_CLIENTS_PROP, DEFAULT_MAX_CLIENTS)),
+        conf.getLong(CLIENT_CHECK_INTERVAL_PROP, DEFAULT_CLIENT_CHECK_INTERVAL));
+  }
+
+  private static UserGroupInformation currentUser() {
+    try {
+      return UserGroupInformation.getCurrentUser();
+    } catch (IOException e) {
+      throw new DatasetIOException("Cannot get the current user", e);
     }
   }
 
+  /**
+   * Identifies the user that MetaStore connections and lookups belong to.
+   * Proxy users are also identified by the user they act through.
+   */
+  private static String userId(UserGroupInformation user) {
+    String id = user.getShortUserName() + ":" + user.getAuthenticationMethod();
+    UserGroupInformation realUser = user.getRealUser();
+    if (realUser != null) {
+      id += "@" + userId(realUser);
+    }
+    return id;
+  }
+
+  private static String metaStoreId(HiveConf conf) {
+    if (isEmpty(conf, Loader.HIVE_METASTORE_URI_PROP)) {
+      return "local:" + conf.getVar(HiveConf.ConfVars.METASTORECONNECTURLKEY);
+    }
+    return conf.get(Loader.HIVE_METASTORE_URI_PROP);
+  }
+
   private boolean allowLocalMetaStore(HiveConf conf) {
     return conf.getBoolean(ALLOW_LOCAL_METASTORE, false);
   }
 
-  private boolean isEmpty(HiveConf conf, String prop) {
+  private static boolean isEmpty(HiveConf conf, String prop) {
     String value = conf.get(prop);
     return (value == null || value.isEmpty());
   }
@@ -102,7 +318,7 @@ public class MetaStoreUtil {
     ClientAction<Table> getTable =
         new ClientAction<Table>() {
           @Override
-          public Table call() throws TException {
+          public Table call(HiveMetaStoreClient client) throws TException {
             return new Table(client.getTable(dbName, tableName));
           }
         };
@@ -123,14 +339,72 @@ public class MetaStoreUtil {
     if (table == null) {
       throw new DatasetNotFoundException("Could not find info for table: " + tableName);
     }
+    cache().tableLoaded(table);
     return table;
   }
-  
+
+  /**
+   * Returns a table like {@link #getTable(String, String)}, but may return a
+   * copy that was looked up recently instead of calling the MetaStore.
+   * <p>
+   * Tables are cached for {@code kite.hive.metastore.table-cache-ttl-ms}.
+   * Changes made by other processes are not visible until the cached copy
+   * expires.
+   */
+  Table getCachedTable(String dbName, String tableName) {
+    Table cached = cache().getTable(dbName, tableName);
+    if (cached != null) {
+      return cached;
+    }
+    return getTable(dbName, tableName);
+  }
+
+  /**
+   * Returns whether a table exists like {@link #tableExists(String, String)},
+   * but may use a recent lookup instead of calling the MetaStore.
+   * <p>
+   * Only tables that exist are cached, so a table created by another process
+   * is found immediately.
+   */
+  boolean cachedTableExists(String dbName, String tableName) {
+    MetaStoreCache cache = cache();
+    if (cache.exists(dbName, tableName)) {
+      return true;
+    }
+    boolean exists = tableExists(dbName, tableName);
+    if (exists) {
+      cache.tableExists(dbName, tableName);
+    }
+    return exists;
+  }
+
+  /**
+   * Returns the names of a table's partitions from a listing that is at most
+   * {@code kite.hive.partition-cache-ttl-ms} old, or null if partition
+   * listings are not cached.
+   * <p>
+   * The listing includes partitions that were added or dropped in this JVM
+   * since it was created, but not changes made by other processes. It must
+   * not be used to skip adding a partition.
+   */
+  Set<String> getCachedPartitionNames(String dbName, String tableName) {
+    MetaStoreCache cache = cache();
+    if (!cache.cachesPartitions()) {
+      return null;
+    }
+    Set<String> partitions = cache.getPartitions(dbName, tableName);
+    if (partitions == null) {
+      partitions = cache.partitionsListed(dbName, tableName,
+          listPartitionNames(dbName, tableName));
+    }
+    return partitions;
+  }
+
   public boolean tableExists(final String dbName, final String tableName) {
     ClientAction<Boolean> exists =
         new ClientAction<Boolean>() {
           @Override
-          public Boolean call() throws TException {
+          public Boolean call(HiveMetaStoreClient client) throws TException {
             return client.tableExists(dbName, tableName);
           }
         };
@@ -151,7 +425,7 @@ public class MetaStoreUtil {
     ClientAction<Void> create =
         new ClientAction<Void>() {
           @Override
-          public Void call() throws TException {
+          public Void call(HiveMetaStoreClient client) throws TException {
             client.createDatabase(
                 new Database(dbName, "Database created by Kite",
                     null /* default location */,
@@ -179,7 +453,7 @@ public class MetaStoreUtil {
     ClientAction<Void> create =
         new ClientAction<Void>() {
           @Override
-          public Void call() throws TException {
+          public Void call(HiveMetaStoreClient client) throws TException {
             client.createTable(tbl);
             return null;
           }
@@ -193,6 +467,7 @@ public class MetaStoreUtil {
 
     try {
       doWithRetry(create);
+      cache().invalidate(tbl.getDbName(), tbl.getTableName());
     } catch (NoSuchObjectException e) {
       throw new DatasetNotFoundException("Hive table not found: " +
           tbl.getDbName() + "." + tbl.getTableName());
@@ -213,7 +488,7 @@ public class MetaStoreUtil {
     ClientAction<Void> alter =
         new ClientAction<Void>() {
           @Override
-          public Void call() throws TException {
+          public Void call(HiveMetaStoreClient client) throws TException {
             client.alter_table(
                 tbl.getDbName(), tbl.getTableName(), tbl);
             return null;
@@ -222,6 +497,7 @@ public class MetaStoreUtil {
 
     try {
       doWithRetry(alter);
+      cache().invalidate(tbl.getDbName(), tbl.getTableName());
     } catch (NoSuchObjectException e) {
       throw new DatasetNotFoundException("Hive table not found: " +
           tbl.getDbName() + "." + tbl.getTableName());
@@ -241,7 +517,7 @@ public class MetaStoreUtil {
     ClientAction<Void> drop =
         new ClientAction<Void>() {
           @Override
-          public Void call() throws TException {
+          public Void call(HiveMetaStoreClient client) throws TException {
             client.dropTable(dbName, tableName, true /* deleteData */,
                 true /* ignoreUnknownTable */);
             return null;
@@ -258,14 +534,20 @@ public class MetaStoreUtil {
       throw new DatasetOperationException(
           "Exception communicating with the Hive MetaStore", e);
     }
+    cache().invalidate(dbName, tableName);
+  }
+
+  public void addPartition(String dbName, String tableName, String path) {
+    addPartitions(dbName, tableName, ImmutableList.of(path));
   }
 
-  public void addPartition(final String dbName, final String tableName,
-                           final String path) {
+  private static void addPartition(final HiveMetaStoreClient client,
+                                   final String dbName, final String tableName,
+                                   final String path) {
     ClientAction<Void> addPartition =
         new ClientAction<Void>() {
           @Override
-          public Void call() throws TException {
+          public Void call(HiveMetaStoreClient client) throws TException {
             // purposely don't check if the partition already exists because
             // getPartition(db, table, path) will throw an exception to indicate the
             // partition doesn't exist also. this way, it's only one call.
@@ -275,7 +557,7 @@ public class MetaStoreUtil {
         };
 
     try {
-      doWithRetry(addPartition);
+      doWithRetry(client, addPartition);
     } catch (AlreadyExistsException e) {
       // this is okay
     } catch (InvalidObjectException e) {
@@ -289,12 +571,17 @@ public class MetaStoreUtil {
     }
   }
 
-  public void dropPartition(final String dbName, final String tableName,
-                            final String path) {
+  public void dropPartition(String dbName, String tableName, String path) {
+    dropPartitions(dbName, tableName, ImmutableList.of(path));
+  }
+
+  private static void dropPartition(final HiveMetaStoreClient client,
+                                    final String dbName, final String tableName,
+                                    final String path) {
     ClientAction<Void> dropPartition =
         new ClientAction<Void>() {
           @Override
-          public Void call() throws TException {
+          public Void call(HiveMetaStoreClient client) throws TException {
 
             client.dropPartition(dbName, tableName, path, false);
             return null;
@@ -302,7 +589,7 @@ public class MetaStoreUtil {
         };
 
     try {
-      doWithRetry(dropPartition);
+      doWithRetry(client, dropPartition);
     } catch (NoSuchObjectException e) {
       // this is okay
     } catch (InvalidObjectException e) {
@@ -316,13 +603,313 @@ public class MetaStoreUtil {
     }
   }
 
+  /**
+   * Adds partitions to a table one at a time, in parallel. This is faster than
+   * {@link #addPartitions(String, String, List)} for partitions that probably
+   * exist already.
+   * <p>
+   * Partitions that already exist are ignored.
+   *
+   * @param dbName a Hive database name
+   * @param tableName a table name
+   * @param paths partition names, relative to the table location
+   */
+  void appendPartitions(String dbName, String tableName, List<String> paths) {
+    forEachBatch(paths, new AppendPartitions(dbName, tableName));
+    cache().partitionsAdded(dbName, tableName, paths);
+  }
+
+  /**
+   * Adds partitions to a table, in batches that are sent to the MetaStore in
+   * parallel.
+   * <p>
+   * Partitions that already exist are ignored.
+   *
+   * @param dbName a Hive database name
+   * @param tableName a table name
+   * @param paths partition names, relative to the table location
+   */
+  public void addPartitions(String dbName, String tableName,
+                            List<String> paths) {
+    if (paths.size() == 1) {
+      // a single partition does not need the table's partition columns
+      forEachBatch(paths, new AppendPartitions(dbName, tableName));
+    } else {
+      forEachBatch(paths, new AddPartitions(getTable(dbName, tableName)));
+    }
+    cache().partitionsAdded(dbName, tableName, paths);
+  }
+
+  private static class AppendPartitions implements BatchAction {
+    private final String dbName;
+    private final String tableName;
+
+    private AppendPartitions(String dbName, String tableName) {
+      this.dbName = dbName;
+      this.tableName = tableName;
+    }
+
+    @Override
+    public void run(HiveMetaStoreClient client, List<String> batch) {
+      for (String path : batch) {
+        addPartition(client, dbName, tableName, path);
+      }
+    }
+  }
+
+  private static class AddPartitions implements BatchAction {
+    private final Table table;
+
+    private AddPartitions(Table table) {
+      this.table = table;
+    }
+
+    @Override
+    public void run(HiveMetaStoreClient client, List<String> batch) {
+      addPartitionBatch(client, table, batch);
+    }
+  }
+
+  private static void addPartitionBatch(final HiveMetaStoreClient client,
+                                 Table table, List<String> paths) {
+    final String dbName = table.getDbName();
+    final String tableName = table.getTableName();
+
+    final List<Partition> partitions = Lists.newArrayList();
+    List<String> unparsed = Lists.newArrayList();
+    for (String path : paths) {
+      Partition partition = partitionForName(table, path);
+      if (partition != null) {
+        partitions.add(partition);
+      } else {
+        unparsed.add(path);
+      }
+    }
+
+    boolean added = partitions.isEmpty();
+    if (!added) {
+      try {
+        doWithRetry(client, new ClientAction<Void>() {
+          @Override
+          public Void call(HiveMetaStoreClient client) throws TException {
+            client.add_partitions(partitions);
+            return null;
+          }
+        });
+        added = true;
+      } catch (AlreadyExistsException e) {
+        // at least one partition exists. add_partitions does not add any of
+        // the batch in this case, so add them individually below.
+      } catch (InvalidObjectException e) {
+        // add individually to find and report the invalid partition
+      } catch (MetaException e) {
+        throw new DatasetOperationException("Hive MetaStore exception", e);
+      } catch (TException e) {
+        throw new DatasetOperationException(
+            "Exception communicating with the Hive MetaStore", e);
+      }
+    }
+
+    List<String> remaining = (added ? unparsed : paths);
+    for (String path : remaining) {
+      addPartition(client, dbName, tableName, path);
+    }
+  }
+
+  /**
+   * Builds a {@link Partition} for a partition name, like
+   * {@code year=2015/month=01}, or returns null if the name does not match the
+   * table's partition columns.
+   */
+  private static Partition partitionForName(Table table, String path) {
+    Map<String, String> spec;
+    try {
+      spec = Warehouse.makeSpecFromName(path);
+    } catch (MetaException e) {
+      return null;
+    }
+
+    List<FieldSchema> keys = table.getPartitionKeys();
+    if (spec.size() != keys.size()) {
+      return null;
+    }
+    List<String> values = Lists.newArrayListWithCapacity(keys.size());
+    for (FieldSchema key : keys) {
+      String value = spec.get(key.getName());
+      if (value == null) {
+        return null;
+      }
+      values.add(value);
+    }
+
+    // the MetaStore sets the location using the table location
+    StorageDescriptor sd = table.getSd().deepCopy();
+    sd.setLocation(null);
+
+    Partition partition = new Partition();
+    partition.setDbName(table.getDbName());
+    partition.setTableName(table.getTableName());
+    partition.setValues(values);
+    partition.setSd(sd);
+    partition.setParameters(Maps.<String, String>newHashMap());
+    return partition;
+  }
+
+  /**
+   * Drops partitions from a table, using the same parallelism as
+   * {@link #addPartitions(String, String, List)}.
+   *
+   * @param dbName a Hive database name
+   * @param tableName a table name
+   * @param paths partition names, relative to the table location
+   */
+  public void dropPartitions(String dbName, String tableName,
+                             List<String> paths) {
+    forEachBatch(paths, new DropPartitions(dbName, tableName));
+    cache().partitionsDropped(dbName, tableName, paths);
+  }
+
+  private static class DropPartitions implements BatchAction {
+    private final String dbName;
+    private final String tableName;
+
+    private DropPartitions(String dbName, String tableName) {
+      this.dbName = dbName;
+      this.tableName = tableName;
+    }
+
+    @Override
+    public void run(HiveMetaStoreClient client, List<String> batch) {
+      for (String path : batch) {
+        dropPartition(client, dbName, tableName, path);
+      }
+    }
+  }
+
+  /**
+   * Splits {@code paths} into batches and runs {@code action} on each one.
+   * Each thread borrows its own client so that batches are not serialized.
+   */
+  private void forEachBatch(List<String> paths, BatchAction action) {
+    List<List<String>> batches = Lists.partition(paths, PARTITION_BATCH_SIZE);
+    MetaStoreClientPool clients = clients();
+    int numThreads = Math.min(batches.size(), clients.getMaxClients());
+    if (numThreads <= 1) {
+      runBatches(clients, batches, action, 0, 1);
+    } else {
+      forEachBatch(clients, batches, action, numThreads);
+    }
+  }
+
+  private static void forEachBatch(final MetaStoreClientPool clients,
+                                   final List<List<String>> batches,
+                                   final BatchAction action,
+                                   final int numThreads) {
+    final UserGroupInformation user = currentUser();
+    List<Future<?>> futures = Lists.newArrayListWithCapacity(numThreads);
+    try {
+      for (int i = 0; i < numThreads; i += 1) {
+        final int thread = i;
+        futures.add(BATCH_EXECUTOR.submit(new Runnable() {
+          @Override
+          public void run() {
+            // new clients must connect as the caller, not the pool's user
+            try {
+              user.doAs(new PrivilegedExceptionAction<Void>() {
+                @Override
+                public Void run() {
+                  runBatches(clients, batches, action, thread, numThreads);
+                  return null;
+                }
+              });
+            } catch (IOException e) {
+              throw new DatasetIOException("Cannot update partitions", e);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new DatasetOperationException(
+                  "Interrupted while updating partitions", e);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasetOperationException(
+          "Interrupted while updating partitions", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new DatasetOperationException(
+          "Cannot update partitions", e.getCause());
+    } finally {
+      for (Future<?> future : futures) {
+        future.cancel(true /* stop updating after a failure */ );
+      }
+    }
+  }
+
+  /**
+   * Runs every {@code step}-th batch, starting with {@code first}, using one
+   * client from the pool.
+   */
+  private static void runBatches(MetaStoreClientPool clients,
+                                 List<List<String>> batches,
+                                 BatchAction action, int first, int step) {
+    HiveMetaStoreClient client = clients.borrow();
+    boolean succeeded = false;
+    try {
+      for (int b = first; b < batches.size(); b += step) {
+        action.run(client, batches.get(b));
+      }
+      succeeded = true;
+    } finally {
+      if (succeeded) {
+        clients.release(client);
+      } else {
+        // the failure may have been caused by the connection
+        clients.discard(client);
+      }
+    }
+  }
+
+  /**
+   * Returns the names of a table's partitions, like
+   * {@code year=2015/month=01}.
+   *
+   * @param dbName a Hive database name
+   * @param tableName a table name
+   * @return a List of partition names
+   */
+  public List<String> listPartitionNames(final String dbName,
+                                         final String tableName) {
+    ClientAction<List<String>> listPartitionNames =
+        new ClientAction<List<String>>() {
+          @Override
+          public List<String> call(HiveMetaStoreClient client) throws TException {
+            return client.listPartitionNames(dbName, tableName, (short) -1);
+          }
+        };
+    try {
+      return doWithRetry(listPartitionNames);
+    } catch (NoSuchObjectException e) {
+      return ImmutableList.of();
+    } catch (MetaException e) {
+      throw new DatasetOperationException("Hive MetaStore exception", e);
+    } catch (TException e) {
+      throw new DatasetOperationException(
+          "Exception communicating with the Hive MetaStore", e);
+    }
+  }
+
   public List<String> listPartitions(final String dbName,
                                      final String tableName,
                                      final short max) {
     ClientAction<List<String>> listPartitions =
         new ClientAction<List<String>>() {
           @Override
-          public List<String> call() throws TException {
+          public List<String> call(HiveMetaStoreClient client) throws TException {
             List<Partition> partitions =
                 client.listPartitions(dbName, tableName, max);
             List<String> paths = Lists.newArrayList();
@@ -353,7 +940,7 @@ public class MetaStoreUtil {
     ClientAction<List<String>> create =
         new ClientAction<List<String>>() {
           @Override
-          public List<String> call() throws TException {
+          public List<String> call(HiveMetaStoreClient client) throws TException {
             return client.getAllTables(dbName);
           }
         };
@@ -374,7 +961,7 @@ public class MetaStoreUtil {
     ClientAction<List<String>> create =
         new ClientAction<List<String>>() {
           @Override
-          public List<String> call() throws TException {
+          public List<String> call(HiveMetaStoreClient client) throws TException {
             return client.getAllDatabases();
           }
         };
@@ -396,7 +983,7 @@ public class MetaStoreUtil {
         new ClientAction<Void>() {
 
         @Override
-        public Void call() throws TException {
+        public Void call(HiveMetaStoreClient client) throws TException {
           client.dropDatabase(name, deleteData, true);
           return null;
         }
@@ -411,5 +998,6 @@ public class MetaStoreUtil {
       throw new DatasetOperationException(
           "Exception communicating with the Hive MetaStore", e);
     }
+    cache().invalidateAll();
   }
 }
@@ -16,6 +16,9 @@
 
 package org.kitesdk.data.spi.hive;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.List;
 import org.apache.avro.generic.GenericData;
 import org.kitesdk.data.Dataset;
 import org.kitesdk.data.DatasetDescriptor;
@@ -212,6 +215,106 @@ public class TestHiveExternalDatasetRepository extends TestFileSystemDatasetRepo
 
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testMergeManyPartitions() throws Exception {
+    final String NAME2 = "test2";
+    final String NAME3 = "test3";
+
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder()
+        .identity("username", "user").build();
+
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schema(testSchema)
+        .partitionStrategy(partitionStrategy)
+        .build();
+
+    Dataset<GenericRecord> dataset = repo.create(NAMESPACE, NAME2, descriptor);
+    Dataset<GenericRecord> dsUpdate = repo.create(NAMESPACE, NAME3, descriptor);
+
+    // enough partitions for several batches
+    DatasetWriter<GenericRecord> writer = dsUpdate.newWriter();
+    try {
+      for (int i = 0; i < 250; i += 1) {
+        writer.write(new GenericRecordBuilder(descriptor.getSchema())
+            .set("username", "user-" + i)
+            .set("email", i + "@example.com")
+            .build());
+      }
+    } finally {
+      writer.close();
+    }
+
+    ((Mergeable<Dataset<GenericRecord>>) dataset).merge(dsUpdate);
+
+    Assert.assertEquals("Should register all partitions", 250,
+        client.listPartitionNames(NAMESPACE, NAME2, (short) -1).size());
+  }
+
+  @Test
+  public void testAddPartitionsIgnoresExisting() throws Exception {
+    final String NAME2 = "test2";
+
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder()
+        .identity("username", "user").build();
+
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schema(testSchema)
+        .partitionStrategy(partitionStrategy)
+        .build();
+
+    repo.create(NAMESPACE, NAME2, descriptor);
+
+    MetaStoreUtil metastore = new MetaStoreUtil(getConfiguration());
+    metastore.addPartition(NAMESPACE, NAME2, "user=user-7");
+
+    List<String> partitions = Lists.newArrayList();
+    for (int i = 0; i < 150; i += 1) {
+      partitions.add("user=user-" + i);
+    }
+    metastore.addPartitions(NAMESPACE, NAME2, partitions);
+
+    List<String> registered = client.listPartitionNames(
+        NAMESPACE, NAME2, (short) -1);
+    Assert.assertEquals("Should register all partitions", 150,
+        registered.size());
+    Assert.assertEquals("Should register the expected partitions",
+        Sets.newHashSet(partitions), Sets.newHashSet(registered));
+
+    metastore.dropPartitions(NAMESPACE, NAME2, partitions.subList(0, 120));
+    Assert.assertEquals("Should drop partitions", 30,
+        client.listPartitionNames(NAMESPACE, NAME2, (short) -1).size());
+  }
+
+  @Test
+  public void testPartitionDroppedByAnotherClientIsAddedAgain()
+      throws Exception {
+    final String NAME2 = "test2";
+
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder()
+        .identity("username", "user").build();
+
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schema(testSchema)
+        .partitionStrategy(partitionStrategy)
+        .build();
+
+    repo.create(NAMESPACE, NAME2, descriptor);
+
+    HiveExternalMetadataProvider provider = new HiveExternalMetadataProvider(
+        getConfiguration(), testDirectory);
+    provider.partitionAdded(NAMESPACE, NAME2, "user=a");
+    Assert.assertEquals("Should register the partition", 1,
+        client.listPartitionNames(NAMESPACE, NAME2, (short) -1).size());
+
+    // the provider's cached listing does not see this change
+    client.dropPartition(NAMESPACE, NAME2, "user=a", false);
+
+    provider.partitionAdded(NAMESPACE, NAME2, "user=a");
+    Assert.assertEquals("Should register the partition again", 1,
+        client.listPartitionNames(NAMESPACE, NAME2, (short) -1).size());
+  }
+
   private void writeRecord(Dataset<GenericRecord> dataset, int partition) {
     PartitionKey key = new PartitionKey(partition);
     DatasetWriter<GenericRecord> writer =
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kitesdk.data.spi.hive;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitesdk.data.DatasetDescriptor;
+import org.kitesdk.data.Datasets;
+
+public class TestMetaStoreUtil {
+  private static final DatasetDescriptor descriptor =
+      new DatasetDescriptor.Builder()
+          .schemaLiteral("\"string\"")
+          .build();
+
+  @Before
+  public void createTable() {
+    cleanHive();
+    Datasets.create("dataset:hive?dataset=cached", descriptor);
+  }
+
+  @After
+  public void cleanHive() {
+    // ensures all tables are removed
+    MetaStoreUtil metastore = new MetaStoreUtil(new Configuration());
+    for (String database : metastore.getAllDatabases()) {
+      for (String table : metastore.getAllTables(database)) {
+        metastore.dropTable(database, table);
+      }
+      if (!"default".equals(database)) {
+        metastore.dropDatabase(database, true);
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentLookups() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(MetaStoreUtil.MAX_CLIENTS_PROP, 2);
+    conf.setLong(MetaStoreUtil.TABLE_CACHE_TTL_PROP, 0);
+    final MetaStoreUtil metastore = new MetaStoreUtil(conf);
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = Lists.newArrayList();
+      for (int i = 0; i < 8; i += 1) {
+        results.add(pool.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            for (int j = 0; j < 10; j += 1) {
+              if (!metastore.tableExists("default", "cached") ||
+                  metastore.getTable("default", "cached") == null) {
+                return false;
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        Assert.assertTrue("Should find the table from every thread",
+            result.get());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCachedTableSeesChangesFromOtherInstances() {
+    MetaStoreUtil reader = new MetaStoreUtil(new Configuration());
+    MetaStoreUtil writer = new MetaStoreUtil(new Configuration());
+
+    Assert.assertTrue("Should find the table",
+        reader.cachedTableExists("default", "cached"));
+    Table cached = reader.getCachedTable("default", "cached");
+    Assert.assertNull("Should not have the new property",
+        cached.getParameters().get("test.property"));
+
+    Table table = writer.getTable("default", "cached");
+    table.getParameters().put("test.property", "value");
+    writer.alterTable(table);
+
+    Assert.assertEquals("Should see the change from the other instance",
+        "value", reader.getCachedTable("default", "cached")
+            .getParameters().get("test.property"));
+
+    writer.dropTable("default", "cached");
+    Assert.assertFalse("Should see the drop from the other instance",
+        reader.cachedTableExists("default", "cached"));
+  }
+
+  @Test
+  public void testCachedTableIsACopy() {
+    MetaStoreUtil metastore = new MetaStoreUtil(new Configuration());
+    metastore.getCachedTable("default", "cached")
+        .getParameters().put("test.property", "value");
+    Assert.assertNull("Should not change the cached table",
+        metastore.getCachedTable("default", "cached")
+            .getParameters().get("test.property"));
+  }
+
+  @Test
+  public void testCacheIsKeptForEachUser() {
+    MetaStoreCache alice = new MetaStoreCache("test", "alice", 60000, 60000);
+    MetaStoreCache bob = new MetaStoreCache("test", "bob", 60000, 60000);
+    Table table = new MetaStoreUtil(new Configuration())
+        .getTable("default", "cached");
+
+    alice.tableLoaded(table);
+    Assert.assertNotNull("Should find the table for the same user",
+        alice.getTable("default", "cached"));
+    Assert.assertNull("Should not find the table for another user",
+        bob.getTable("default", "cached"));
+    Assert.assertFalse("Should not find the table for another user",
+        bob.exists("default", "cached"));
+
+    bob.invalidate("default", "cached");
+    Assert.assertNull("Should remove the table for every user",
+        alice.getTable("default", "cached"));
+  }
+
+  @Test
+  public void testPoolIsBounded() throws Exception {
+    final MetaStoreClientPool clients = new MetaStoreClientPool(
+        new HiveConf(new Configuration(), HiveConf.class), 1, 60000);
+    HiveMetaStoreClient client = clients.borrow();
+
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      Future<HiveMetaStoreClient> waiting = pool.submit(
+          new Callable<HiveMetaStoreClient>() {
+            @Override
+            public HiveMetaStoreClient call() {
+              return clients.borrow();
+            }
+          });
+
+      try {
+        waiting.get(200, TimeUnit.MILLISECONDS);
+        Assert.fail("Should wait for a client to be released");
+      } catch (TimeoutException e) {
+        // expected
+      }
+
+      clients.release(client);
+      Assert.assertSame("Should reuse the released client",
+          client, waiting.get(10, TimeUnit.SECONDS));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testClosedPoolDoesNotReuseClients() throws Exception {
+    MetaStoreClientPool clients = new MetaStoreClientPool(
+        new HiveConf(new Configuration(), HiveConf.class), 1, 60000);
+    HiveMetaStoreClient client = clients.borrow();
+    clients.close();
+    clients.release(client);
+
+    HiveMetaStoreClient next = clients.borrow();
+    try {
+      Assert.assertNotSame("Should not reuse a client released after close",
+          client, next);
+    } finally {
+      clients.release(next);
+    }
+  }
+}
@@ -23,6 +23,7 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.reflect.ReflectData;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.JobContext;
@@ -51,6 +52,7 @@ import org.kitesdk.data.spi.Mergeable;
 import org.kitesdk.data.spi.PartitionKey;
 import org.kitesdk.data.spi.Registration;
 import org.kitesdk.data.spi.Replaceable;
+import org.kitesdk.data.spi.Stageable;
 import org.kitesdk.data.spi.TemporaryDatasetRepository;
 import org.kitesdk.data.spi.TemporaryDatasetRepositoryAccessor;
 import org.kitesdk.data.spi.filesystem.FileSystemDataset;
@@ -76,6 +78,8 @@ public class DatasetKeyOutputFormat<E> extends OutputFormat<E, Void> {
   }
 
   private static final String TEMP_NAMESPACE = "mr";
+  private static final String ATTEMPTS_DIR = "attempts";
+  private static final String COMMITTED_DIR = "committed";
 
   public static class ConfigBuilder {
     private final Configuration conf;
@@ -308,7 +312,11 @@ public class DatasetKeyOutputFormat<E> extends OutputFormat<E, Void> {
     private Schema schema;
 
     public DatasetRecordWriter(View<E> view) {
-      this.datasetWriter = view.newWriter();
+      this(view, view.newWriter());
+    }
+
+    public DatasetRecordWriter(View<E> view, DatasetWriter<E> datasetWriter) {
+      this.datasetWriter = datasetWriter;
 
       this.schema = view.getDataset().getDescriptor().getSchema();
       this.dataModel = DataModelUtil.getDataModelForType(
@@ -437,6 +445,82 @@ public class DatasetKeyOutputFormat<E> extends OutputFormat<E, Void> {
     }
   }
 
+  /**
+   * Commits the output of views that stage data, such as HBase bulk loads.
+   * Each task attempt stages data in its own directory, which is moved to a
+   * directory for the task when the attempt commits. All committed tasks are
+   * added to the view in one step when the job commits, so data from failed
+   * or speculative attempts is never added.
+   */
+  static class StagedOutputCommitter<E> extends OutputCommitter {
+    @Override
+    public void setupJob(JobContext jobContext) { }
+
+    @Override
+    public void commitJob(JobContext jobContext) throws IOException {
+      View<E> targetView = load(jobContext);
+      Stageable<E> stageable = asStageable(targetView);
+      Path jobDir = getJobStagingDirectory(stageable, jobContext);
+
+      stageable.loadStaged(new Path(jobDir, COMMITTED_DIR));
+
+      if (targetView instanceof Signalable) {
+        ((Signalable)targetView).signalReady();
+      }
+
+      delete(jobDir, jobContext);
+    }
+
+    @Override
+    public void abortJob(JobContext jobContext, JobStatus.State state)
+        throws IOException {
+      View<E> targetView = load(jobContext);
+      Stageable<E> stageable = asStageable(targetView);
+      delete(getJobStagingDirectory(stageable, jobContext), jobContext);
+    }
+
+    @Override
+    public void setupTask(TaskAttemptContext taskContext) {
+      // do nothing: the staging directory is created by the writer
+    }
+
+    @Override
+    public boolean needsTaskCommit(TaskAttemptContext taskContext) {
+      return true;
+    }
+
+    @Override
+    public void commitTask(TaskAttemptContext taskContext) throws IOException {
+      View<E> targetView = load(taskContext);
+      Stageable<E> stageable = asStageable(targetView);
+      Path jobDir = getJobStagingDirectory(stageable, taskContext);
+      Path attemptDir = getTaskAttemptStagingDirectory(jobDir, taskContext);
+      Path taskDir = new Path(new Path(jobDir, COMMITTED_DIR),
+          taskContext.getTaskAttemptID().getTaskID().toString());
+
+      Configuration conf = Hadoop.TaskAttemptContext
+          .getConfiguration.invoke(taskContext);
+      FileSystem fs = attemptDir.getFileSystem(conf);
+      if (!fs.exists(attemptDir)) {
+        return; // nothing was written
+      }
+      // replace output from an earlier attempt of the same task
+      fs.delete(taskDir, true);
+      fs.mkdirs(taskDir.getParent());
+      if (!fs.rename(attemptDir, taskDir)) {
+        throw new IOException("Failed to commit staged data: " + attemptDir);
+      }
+    }
+
+    @Override
+    public void abortTask(TaskAttemptContext taskContext) throws IOException {
+      View<E> targetView = load(taskContext);
+      Stageable<E> stageable = asStageable(targetView);
+      Path jobDir = getJobStagingDirectory(stageable, taskContext);
+      delete(getTaskAttemptStagingDirectory(jobDir, taskContext), taskContext);
+    }
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public RecordWriter<E, Void> getRecordWriter(TaskAttemptContext taskAttemptContext) {
@@ -445,6 +529,15 @@ public class DatasetKeyOutputFormat<E> extends OutputFormat<E, Void> {
     View<E> target = load(taskAttemptContext);
     View<E> working;
 
+    if (useStaging(target)) {
+      Stageable<E> stageable = asStageable(target);
+      Path attemptDir = getTaskAttemptStagingDirectory(
+          getJobStagingDirectory(stageable, taskAttemptContext),
+          taskAttemptContext);
+      return new DatasetRecordWriter<E>(target,
+          stageable.newStagingWriter(attemptDir));
+    }
+
     if (usePerTaskAttemptDatasets(target)) {
       working = loadOrCreateTaskAttemptView(taskAttemptContext);
     } else {
@@ -500,10 +593,44 @@ public class DatasetKeyOutputFormat<E> extends OutputFormat<E, Void> {
   @Override
   public OutputCommitter getOutputCommitter(TaskAttemptContext taskAttemptContext) {
     View<E> view = load(taskAttemptContext);
+    if (useStaging(view)) {
+      return new StagedOutputCommitter<E>();
+    }
     return usePerTaskAttemptDatasets(view) ?
         new MergeOutputCommitter<E>() : new NullOutputCommitter();
   }
 
+  private static <E> boolean useStaging(View<E> target) {
+    // new API output committers are not called properly in Hadoop 1
+    return !Hadoop.isHadoop1() && target instanceof Stageable &&
+        ((Stageable) target).isStaged();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E> Stageable<E> asStageable(View<E> view) {
+    if (view instanceof Stageable) {
+      return (Stageable<E>) view;
+    }
+    throw new DatasetException("View does not support staging: " + view);
+  }
+
+  private static Path getJobStagingDirectory(Stageable<?> stageable,
+                                             JobContext jobContext) {
+    return stageable.getStagingDirectory(getJobDatasetName(jobContext));
+  }
+
+  private static Path getTaskAttemptStagingDirectory(
+      Path jobDir, TaskAttemptContext taskContext) {
+    return new Path(new Path(jobDir, ATTEMPTS_DIR),
+        getTaskAttemptDatasetName(taskContext));
+  }
+
+  private static void delete(Path path, JobContext jobContext)
+      throws IOException {
+    Configuration conf = Hadoop.JobContext.getConfiguration.invoke(jobContext);
+    path.getFileSystem(conf).delete(path, true);
+  }
+
   private static <E> boolean usePerTaskAttemptDatasets(View<E> target) {
     // new API output committers are not called properly in Hadoop 1
     return !Hadoop.isHadoop1() && target.getDataset() instanceof Mergeable;
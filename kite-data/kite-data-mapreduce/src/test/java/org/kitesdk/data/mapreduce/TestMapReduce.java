@@ -41,6 +41,7 @@ import org.kitesdk.data.Format;
 import org.kitesdk.data.DatasetWriter;
 import org.kitesdk.data.Signalable;
 import org.kitesdk.data.View;
+import org.kitesdk.data.spi.filesystem.FileSystemProperties;
 
 @RunWith(Parameterized.class)
 public class TestMapReduce extends FileSystemTestBase {
@@ -224,6 +225,42 @@ public class TestMapReduce extends FileSystemTestBase {
         ((Signalable)outputView).isReady());
   }
 
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testJobCombinedSplits() throws Exception {
+    repo.delete("ns", "in");
+    inputDataset = repo.create("ns", "in",
+        new DatasetDescriptor.Builder()
+            .property("kite.allow.csv", "true")
+            .property(FileSystemProperties.COMBINE_SPLIT_SIZE_PROP,
+                String.valueOf(64 * 1024 * 1024))
+            .schema(STRING_SCHEMA)
+            .format(format)
+            .build(), GenericData.Record.class);
+    // each writer creates a separate file
+    populateInputDataset();
+    populateInputDataset();
+
+    Job job = createJob();
+    DatasetKeyInputFormat<GenericData.Record> inputFormat =
+        new DatasetKeyInputFormat<GenericData.Record>();
+    inputFormat.setConf(job.getConfiguration());
+    Assert.assertEquals("Should combine small files into one split",
+        1, inputFormat.getSplits(job).size());
+
+    Assert.assertTrue(job.waitForCompletion(true));
+
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    DatasetReader<GenericData.Record> reader = outputDataset.newReader();
+    for (GenericData.Record record : reader) {
+      counts.put(record.get("name").toString(), (Integer) record.get("count"));
+    }
+    reader.close();
+    Assert.assertEquals(6, counts.get("apple").intValue());
+    Assert.assertEquals(4, counts.get("banana").intValue());
+    Assert.assertEquals(2, counts.get("carrot").intValue());
+  }
+
   private void populateInputDataset() {
     DatasetWriter<GenericData.Record> writer = inputDataset.newWriter();
     writer.write(newStringRecord("apple"));
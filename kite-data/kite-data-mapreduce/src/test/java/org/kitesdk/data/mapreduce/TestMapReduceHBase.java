@@ -32,6 +32,7 @@ import org.kitesdk.data.DatasetDescriptor;
 import org.kitesdk.data.DatasetReader;
 import org.kitesdk.data.DatasetWriter;
 import org.kitesdk.data.hbase.HBaseDatasetRepositoryTest;
+import org.kitesdk.data.hbase.HBaseProperties;
 import org.kitesdk.data.hbase.testing.HBaseTestUtils;
 import org.kitesdk.data.spi.DatasetRepository;
 
@@ -62,6 +63,13 @@ public class TestMapReduceHBase extends HBaseTestBase {
     }
   }
 
+  private static class FailingReducer extends AvroKeyWrapperReducer {
+    @Override
+    protected void cleanup(Context context) {
+      throw new RuntimeException("Fail after writing all records");
+    }
+  }
+
   @Test
   @SuppressWarnings("deprecation")
   public void testJob() throws Exception {
@@ -119,6 +127,110 @@ public class TestMapReduceHBase extends HBaseTestBase {
 
   }
 
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testBulkLoadJob() throws Exception {
+    Job job = new Job(HBaseTestUtils.getConf());
+
+    String datasetName = tableName + ".TestGenericEntity";
+
+    Dataset<GenericRecord> inputDataset = repo.create("default", "in",
+        new DatasetDescriptor.Builder()
+        .schemaLiteral(testGenericEntity).build());
+
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schemaLiteral(testGenericEntity)
+        .property(HBaseProperties.BULK_LOAD_BUFFER_PROP, "1024")
+        .build();
+    Dataset<GenericRecord> outputDataset = repo.create("default", datasetName, descriptor);
+
+    DatasetWriter<GenericRecord> writer = inputDataset.newWriter();
+    try {
+      for (int i = 0; i < 10; ++i) {
+        GenericRecord entity = HBaseDatasetRepositoryTest.createGenericEntity(i);
+        writer.write(entity);
+      }
+    } finally {
+      writer.close();
+    }
+
+    DatasetKeyInputFormat.configure(job).readFrom(inputDataset);
+
+    job.setMapperClass(AvroKeyWrapperMapper.class);
+    job.setMapOutputKeyClass(AvroKey.class);
+    job.setMapOutputValueClass(NullWritable.class);
+    AvroJob.setMapOutputKeySchema(job, new Schema.Parser().parse(testGenericEntity));
+
+    job.setReducerClass(AvroKeyWrapperReducer.class);
+    job.setOutputKeyClass(GenericData.Record.class);
+    job.setOutputValueClass(Void.class);
+    AvroJob.setOutputKeySchema(job, new Schema.Parser().parse(testGenericEntity));
+
+    DatasetKeyOutputFormat.configure(job).writeTo(outputDataset);
+
+    Assert.assertTrue(job.waitForCompletion(true));
+
+    int cnt = 0;
+    DatasetReader<GenericRecord> reader = outputDataset.newReader();
+    try {
+      for (GenericRecord entity : reader) {
+        HBaseDatasetRepositoryTest.compareEntitiesWithUtf8(cnt, entity);
+        cnt++;
+      }
+      assertEquals(10, cnt);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testFailedBulkLoadJob() throws Exception {
+    Job job = new Job(HBaseTestUtils.getConf());
+
+    String datasetName = tableName + ".TestGenericEntity";
+
+    Dataset<GenericRecord> inputDataset = repo.create("default", "in",
+        new DatasetDescriptor.Builder()
+        .schemaLiteral(testGenericEntity).build());
+
+    // write HFiles for every record before the reducer fails
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schemaLiteral(testGenericEntity)
+        .property(HBaseProperties.BULK_LOAD_BUFFER_PROP, "1")
+        .build();
+    Dataset<GenericRecord> outputDataset = repo.create("default", datasetName, descriptor);
+
+    DatasetWriter<GenericRecord> writer = inputDataset.newWriter();
+    try {
+      for (int i = 0; i < 10; ++i) {
+        GenericRecord entity = HBaseDatasetRepositoryTest.createGenericEntity(i);
+        writer.write(entity);
+      }
+    } finally {
+      writer.close();
+    }
+
+    DatasetKeyInputFormat.configure(job).readFrom(inputDataset);
+
+    job.setMapperClass(AvroKeyWrapperMapper.class);
+    job.setMapOutputKeyClass(AvroKey.class);
+    job.setMapOutputValueClass(NullWritable.class);
+    AvroJob.setMapOutputKeySchema(job, new Schema.Parser().parse(testGenericEntity));
+
+    job.setReducerClass(FailingReducer.class);
+    job.setOutputKeyClass(GenericData.Record.class);
+    job.setOutputValueClass(Void.class);
+    AvroJob.setOutputKeySchema(job, new Schema.Parser().parse(testGenericEntity));
+
+    DatasetKeyOutputFormat.configure(job).writeTo(outputDataset);
+
+    Assert.assertFalse(job.waitForCompletion(true));
+
+    Assert.assertTrue("Should not load data from a failed task",
+        outputDataset.isEmpty());
+  }
+
   @Test
   @SuppressWarnings("deprecation")
   public void testJobEmptyView() throws Exception {
@@ -86,6 +86,10 @@ public class CSVImportCommand extends BaseDatasetCommand {
       description="The number of writer processes to use")
   int numWriters = -1;
 
+  @Parameter(names={"--cluster-by"},
+      description="Comma-separated fields to sort records by within each partition")
+  List<String> clusterBy;
+
   @Parameter(names={"--transform"},
       description="A transform DoFn class name")
   String transform = null;
@@ -183,6 +187,10 @@ public class CSVImportCommand extends BaseDatasetCommand {
         task.setNumWriters(numWriters);
       }
 
+      if (clusterBy != null) {
+        task.setClusterBy(clusterBy);
+      }
+
       PipelineResult result = task.run();
 
       if (result.succeeded()) {
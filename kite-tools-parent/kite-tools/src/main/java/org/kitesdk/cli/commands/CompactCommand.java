@@ -32,6 +32,8 @@ import static org.apache.avro.generic.GenericData.Record;
 @Parameters(commandDescription="Compact all or part of a dataset")
 public class CompactCommand extends BaseDatasetCommand {
 
+  private static final long DEFAULT_TARGET_FILE_SIZE = 128 * 1024 * 1024;
+
   public CompactCommand(Logger console) {
     super(console);
   }
@@ -43,6 +45,22 @@ public class CompactCommand extends BaseDatasetCommand {
       description="The number of writer processes to use")
   int numWriters = -1;
 
+  @Parameter(names={"--cluster-by"},
+      description="Comma-separated fields to sort records by within each partition")
+  List<String> clusterBy;
+
+  @Parameter(names={"--entities-per-writer"},
+      description="Spread partitions with more entities across several writers")
+  long entitiesPerWriter = -1;
+
+  @Parameter(names={"--small-file-size"},
+      description="Only merge files smaller than this many bytes in each partition")
+  long smallFileSize = -1;
+
+  @Parameter(names={"--target-file-size"},
+      description="Target size in bytes for files merged by --small-file-size")
+  long targetFileSize = DEFAULT_TARGET_FILE_SIZE;
+
   @Override
   public int run() throws IOException {
     Preconditions.checkArgument(datasets.size() == 1,
@@ -56,6 +74,17 @@ public class CompactCommand extends BaseDatasetCommand {
           "Resolved view does not match requested view: " + view.getUri());
     }
 
+    if (smallFileSize > 0) {
+      Preconditions.checkArgument(numWriters < 0 && clusterBy == null &&
+          entitiesPerWriter <= 0,
+          "--small-file-size cannot be used with --num-writers, " +
+          "--cluster-by, or --entities-per-writer");
+    } else {
+      Preconditions.checkArgument(
+          targetFileSize == DEFAULT_TARGET_FILE_SIZE,
+          "--target-file-size requires --small-file-size");
+    }
+
     CompactionTask task = new CompactionTask<Record>(view);
 
     task.setConf(getConf());
@@ -64,11 +93,28 @@ public class CompactCommand extends BaseDatasetCommand {
       task.setNumWriters(numWriters);
     }
 
+    if (clusterBy != null) {
+      task.setClusterBy(clusterBy);
+    }
+
+    if (entitiesPerWriter > 0) {
+      task.setEntitiesPerWriter(entitiesPerWriter);
+    }
+
+    if (smallFileSize > 0) {
+      task.setIncremental(smallFileSize, targetFileSize);
+    }
+
     PipelineResult result = task.run();
 
     if (result.succeeded()) {
-      console.info("Compacted {} records in \"{}\"",
-          task.getCount(), uriOrName);
+      if (smallFileSize > 0) {
+        console.info("Compacted {} small files in \"{}\"",
+            task.getCompactedFileCount(), uriOrName);
+      } else {
+        console.info("Compacted {} records in \"{}\"",
+            task.getCount(), uriOrName);
+      }
       return 0;
     } else {
       return 1;
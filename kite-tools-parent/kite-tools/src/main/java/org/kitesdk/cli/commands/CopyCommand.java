@@ -48,6 +48,14 @@ public class CopyCommand extends BaseDatasetCommand {
       description="The number of writer processes to use")
   int numWriters = -1;
 
+  @Parameter(names={"--cluster-by"},
+      description="Comma-separated fields to sort records by within each partition")
+  List<String> clusterBy;
+
+  @Parameter(names={"--entities-per-writer"},
+      description="Spread partitions with more entities across several writers")
+  long entitiesPerWriter = -1;
+
   @Parameter(
       names={"--overwrite"},
       description="Remove any data already in the target view or dataset")
@@ -75,6 +83,14 @@ public class CopyCommand extends BaseDatasetCommand {
       task.setNumWriters(numWriters);
     }
 
+    if (clusterBy != null) {
+      task.setClusterBy(clusterBy);
+    }
+
+    if (entitiesPerWriter > 0) {
+      task.setEntitiesPerWriter(entitiesPerWriter);
+    }
+
     if (overwrite) {
       task.setWriteMode(Target.WriteMode.OVERWRITE);
     }
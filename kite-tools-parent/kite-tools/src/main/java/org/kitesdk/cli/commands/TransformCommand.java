@@ -53,6 +53,14 @@ public class TransformCommand extends BaseDatasetCommand {
       description="The number of writer processes to use")
   int numWriters = -1;
 
+  @Parameter(names={"--cluster-by"},
+      description="Comma-separated fields to sort records by within each partition")
+  List<String> clusterBy;
+
+  @Parameter(names={"--entities-per-writer"},
+      description="Spread partitions with more entities across several writers")
+  long entitiesPerWriter = -1;
+
   @Parameter(names={"--transform"},
       description="A transform DoFn class name")
   String transform = null;
@@ -102,6 +110,14 @@ public class TransformCommand extends BaseDatasetCommand {
       task.setNumWriters(numWriters);
     }
 
+    if (clusterBy != null) {
+      task.setClusterBy(clusterBy);
+    }
+
+    if (entitiesPerWriter > 0) {
+      task.setEntitiesPerWriter(entitiesPerWriter);
+    }
+
     PipelineResult result = task.run();
 
     if (result.succeeded()) {
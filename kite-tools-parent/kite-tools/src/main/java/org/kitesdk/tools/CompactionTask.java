@@ -18,6 +18,7 @@ package org.kitesdk.tools;
 
 import com.google.common.base.Preconditions;
 import java.io.IOException;
+import java.util.List;
 import org.apache.crunch.PipelineResult;
 import org.apache.crunch.Target;
 import org.apache.hadoop.conf.Configurable;
@@ -25,16 +26,24 @@ import org.apache.hadoop.conf.Configuration;
 import org.kitesdk.data.Dataset;
 import org.kitesdk.data.View;
 import org.kitesdk.data.spi.Replaceable;
+import org.kitesdk.data.spi.filesystem.FileSystemDatasets;
 
 /**
  * @since 1.1.0
  */
 public class CompactionTask<T> implements Configurable {
 
+  private final View<T> view;
   private final CopyTask<T> task;
+  private long smallFileSize = -1;
+  private long targetFileSize = -1;
+  private long compactedFiles = 0;
+  // writer options only apply when the whole view is rewritten
+  private boolean hasWriterOptions = false;
 
   public CompactionTask(View<T> view) {
     checkCompactable(view);
+    this.view = view;
     this.task = new CopyTask<T>(view, view);
     task.setWriteMode(Target.WriteMode.OVERWRITE);
   }
@@ -43,12 +52,63 @@ public class CompactionTask<T> implements Configurable {
     return task.getCount();
   }
 
+  /**
+   * Returns the number of small files replaced by an incremental compaction.
+   */
+  public long getCompactedFileCount() {
+    return compactedFiles;
+  }
+
+  /**
+   * Compacts only the data files smaller than {@code smallFileSize} in each
+   * leaf partition, merging them into files of about {@code targetFileSize}
+   * bytes. Larger files are left as they are.
+   * <p>
+   * Incremental compaction runs in this process rather than as a MapReduce
+   * job, so it cannot be combined with {@link #setNumWriters(int)},
+   * {@link #setEntitiesPerWriter(long)}, or {@link #setClusterBy(List)}.
+   *
+   * @param smallFileSize files smaller than this many bytes are merged
+   * @param targetFileSize the target size in bytes for merged files
+   * @return this for method chaining
+   */
+  public CompactionTask setIncremental(long smallFileSize, long targetFileSize) {
+    Preconditions.checkArgument(smallFileSize > 0,
+        "Invalid small file size: " + smallFileSize);
+    Preconditions.checkArgument(targetFileSize > 0,
+        "Invalid target file size: " + targetFileSize);
+    this.smallFileSize = smallFileSize;
+    this.targetFileSize = targetFileSize;
+    return this;
+  }
+
   public CompactionTask setNumWriters(int numWriters) {
     task.setNumWriters(numWriters);
+    this.hasWriterOptions = true;
+    return this;
+  }
+
+  public CompactionTask setEntitiesPerWriter(long entitiesPerWriter) {
+    task.setEntitiesPerWriter(entitiesPerWriter);
+    this.hasWriterOptions = true;
+    return this;
+  }
+
+  public CompactionTask setClusterBy(List<String> clusterBy) {
+    task.setClusterBy(clusterBy);
+    this.hasWriterOptions = true;
     return this;
   }
 
   public PipelineResult run() throws IOException {
+    if (smallFileSize > 0) {
+      Preconditions.checkArgument(!hasWriterOptions,
+          "Incremental compaction does not support writer options: " +
+          "number of writers, entities per writer, or clustering fields");
+      this.compactedFiles = FileSystemDatasets.compactSmallFiles(
+          view, smallFileSize, targetFileSize);
+      return PipelineResult.DONE;
+    }
     return task.run();
   }
 
@@ -17,9 +17,12 @@
 package org.kitesdk.tools;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collections;
+import java.util.List;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.crunch.DoFn;
 import org.apache.crunch.MapFn;
@@ -40,6 +43,7 @@ import org.kitesdk.data.Dataset;
 import org.kitesdk.data.DatasetException;
 import org.kitesdk.data.View;
 import org.kitesdk.data.crunch.CrunchDatasets;
+import org.kitesdk.data.crunch.PartitionWriters;
 
 /**
  * @since 0.16.0
@@ -62,6 +66,8 @@ public class TransformTask<S, T> extends Configured {
   private final DoFn<S, T> transform;
   private boolean compact = true;
   private int numWriters = -1;
+  private long entitiesPerWriter = -1;
+  private List<String> clusterBy = Collections.emptyList();
   private Target.WriteMode mode = Target.WriteMode.APPEND;
 
   private long count = 0;
@@ -93,6 +99,38 @@ public class TransformTask<S, T> extends Configured {
     return this;
   }
 
+  /**
+   * Spreads output partitions with more than {@code entitiesPerWriter}
+   * entities across multiple writers, rather than using one writer for each
+   * partition. This adds a job, run before the transform is written, that
+   * counts the entities in each partition.
+   *
+   * @param entitiesPerWriter the target number of entities for each writer
+   * @return this for method chaining
+   * @see CrunchDatasets#countWriters(PCollection, View, long)
+   */
+  public TransformTask setEntitiesPerWriter(long entitiesPerWriter) {
+    Preconditions.checkArgument(entitiesPerWriter > 0,
+        "Invalid number of entities per writer: " + entitiesPerWriter);
+    this.entitiesPerWriter = entitiesPerWriter;
+    return this;
+  }
+
+  /**
+   * Sorts the entities written to each output partition by the values of the
+   * given fields, which improves compression and makes selective reads of
+   * columnar formats cheaper.
+   *
+   * @param clusterBy names of the fields to sort by
+   * @return this for method chaining
+   * @see CrunchDatasets#partition(PCollection, View, int, List)
+   */
+  public TransformTask setClusterBy(List<String> clusterBy) {
+    Preconditions.checkNotNull(clusterBy, "Clustering fields cannot be null");
+    this.clusterBy = ImmutableList.copyOf(clusterBy);
+    return this;
+  }
+
   public TransformTask setWriteMode(Target.WriteMode mode) {
     Preconditions.checkArgument(mode != Target.WriteMode.CHECKPOINT,
         "Checkpoint is not an allowed write mode");
@@ -125,7 +163,18 @@ public class TransformTask<S, T> extends Configured {
 
     if (compact) {
       // the transform must be run before partitioning
-      collection = CrunchDatasets.partition(collection, to, numWriters);
+      if (entitiesPerWriter > 0 || !clusterBy.isEmpty()) {
+        PartitionWriters writers = null;
+        if (entitiesPerWriter > 0) {
+          // runs the read and transform to count entities in each partition
+          writers = CrunchDatasets.countWriters(
+              collection, to, entitiesPerWriter);
+        }
+        collection = CrunchDatasets.partition(
+            collection, to, numWriters, writers, clusterBy);
+      } else {
+        collection = CrunchDatasets.partition(collection, to, numWriters);
+      }
     }
 
     pipeline.write(collection, CrunchDatasets.asTarget(to), mode);